@@ -0,0 +1,105 @@
+package au.com.wow.codetestapp;
+
+import android.test.InstrumentationTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FuelStationChannelTest extends InstrumentationTestCase {
+    private static final String URL = "http://localhost/feed";
+
+    private FuelStationChannel mChannel;
+    private RecordingSubscriber mSubscriber;
+
+    private static class RecordingSubscriber implements FuelStationChannel.Subscriber {
+        final List<FuelStationList> received = new ArrayList<FuelStationList>();
+
+        @Override
+        public void onFuelStations(String url, FuelStationList list) {
+            received.add(list);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mChannel = new FuelStationChannel();
+        mSubscriber = new RecordingSubscriber();
+    }
+
+    private static FuelStationList newList() {
+        return new FuelStationList.Builder("N/A").build();
+    }
+
+    private void subscribe() {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mChannel.subscribe(URL, mSubscriber);
+            }
+        });
+    }
+
+    private void unsubscribe() {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mChannel.unsubscribe(URL, mSubscriber);
+            }
+        });
+    }
+
+    public void testListIsPassedByReference() {
+        FuelStationList list = newList();
+        subscribe();
+
+        mChannel.publish(URL, list);
+        getInstrumentation().waitForIdleSync();
+
+        assertEquals(1, mSubscriber.received.size());
+        assertSame(list, mSubscriber.received.get(0));
+    }
+
+    public void testLateSubscriberGetsLatest() {
+        FuelStationList first = newList();
+        FuelStationList second = newList();
+
+        mChannel.publish(URL, first);
+        mChannel.publish(URL, second);
+        getInstrumentation().waitForIdleSync();
+        subscribe();
+
+        assertEquals(1, mSubscriber.received.size());
+        assertSame(second, mSubscriber.received.get(0));
+    }
+
+    public void testOvertakenResultsAreDropped() {
+        final FuelStationList last = newList();
+        subscribe();
+
+        // Publishing from the main thread means none of them can be delivered in between.
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mChannel.publish(URL, newList());
+                mChannel.publish(URL, newList());
+                mChannel.publish(URL, last);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+
+        assertEquals(1, mSubscriber.received.size());
+        assertSame(last, mSubscriber.received.get(0));
+    }
+
+    public void testPausedSubscriberIsNotTold() {
+        subscribe();
+        unsubscribe();
+
+        mChannel.publish(URL, newList());
+        getInstrumentation().waitForIdleSync();
+
+        assertTrue(mSubscriber.received.isEmpty());
+    }
+}
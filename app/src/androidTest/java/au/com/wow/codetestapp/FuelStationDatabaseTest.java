@@ -0,0 +1,160 @@
+package au.com.wow.codetestapp;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+public class FuelStationDatabaseTest extends AndroidTestCase {
+    private FuelStationDatabase mDatabase;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // A null name keeps the database in memory.
+        mDatabase = new FuelStationDatabase(getContext(), null);
+        mDatabase.replace(buildList(300));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDatabase.close();
+
+        super.tearDown();
+    }
+
+    private static FuelStationList buildList(int stations) {
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        FuelStationRecord record = new FuelStationRecord();
+
+        for (int i = 0; i < stations; i++) {
+            record.clear();
+            record.brand = i % 3 == 0 ? "Shell" : "Mobil";
+            record.address = i + " Broadway";
+            record.distance = String.valueOf((i % 20) * 0.5);
+            record.regular = 250 + i % 17;
+
+            // Only every fourth station sells diesel.
+            if (i % 4 == 0) {
+                record.diesel = 400 - i % 37;
+            }
+
+            builder.onFuelStation(record);
+        }
+
+        return builder.build();
+    }
+
+    private static int count(Cursor cursor) {
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testFeedOrderIsKept() {
+        Cursor cursor = mDatabase.query(new FuelStationSorter.Query(FuelStationSorter.FEED_ORDER),
+                FuelStationDatabase.ANY_DISTANCE);
+
+        try {
+            assertEquals(300, cursor.getCount());
+            int address = cursor.getColumnIndexOrThrow(FuelStationDatabase.COLUMN_ADDRESS);
+
+            for (int i = 0; cursor.moveToNext(); i++) {
+                assertEquals(i + " Broadway", cursor.getString(address));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testCheapestDieselNearby() {
+        FuelStationSorter.Query query = new FuelStationSorter.Query(
+                FuelStationSorter.PRICE + FuelStationList.DIESEL);
+        Cursor cursor = mDatabase.query(query, 5);
+
+        try {
+            assertTrue(cursor.getCount() > 0);
+            int diesel = cursor.getColumnIndexOrThrow(
+                    FuelStationDatabase.COLUMN_PRICES[FuelStationList.DIESEL]);
+            int distance = cursor.getColumnIndexOrThrow(FuelStationDatabase.COLUMN_DISTANCE_VALUE);
+            int last = 0;
+
+            while (cursor.moveToNext()) {
+                assertFalse(cursor.isNull(diesel));
+                assertTrue(cursor.getInt(diesel) >= last);
+                assertTrue(cursor.getFloat(distance) <= 5);
+                last = cursor.getInt(diesel);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testBrandIsMatchedIgnoringCase() {
+        FuelStationSorter.Query query = new FuelStationSorter.Query(FuelStationSorter.DISTANCE,
+                FuelStationSorter.ANY_GRADE, "shell");
+
+        assertEquals(100, count(mDatabase.query(query, FuelStationDatabase.ANY_DISTANCE)));
+    }
+
+    public void testReplaceDropsTheOldStations() {
+        mDatabase.replace(buildList(10));
+
+        assertEquals(10, count(mDatabase.query(new FuelStationSorter.Query(
+                FuelStationSorter.BRAND), FuelStationDatabase.ANY_DISTANCE)));
+    }
+
+    public void testRowsLeadBackToTheirStationsInTheList() {
+        FuelStationList list = buildList(300);
+        Cursor cursor = mDatabase.query(new FuelStationSorter.Query(FuelStationSorter.PRICE
+                + FuelStationList.DIESEL), FuelStationDatabase.ANY_DISTANCE);
+
+        try {
+            int position = cursor.getColumnIndexOrThrow(FuelStationDatabase.COLUMN_POSITION);
+            int id = cursor.getColumnIndexOrThrow(FuelStationDatabase.COLUMN_STATION_ID);
+            int diesel = cursor.getColumnIndexOrThrow(
+                    FuelStationDatabase.COLUMN_PRICES[FuelStationList.DIESEL]);
+
+            while (cursor.moveToNext()) {
+                int index = cursor.getInt(position);
+                assertEquals(list.getId(index), cursor.getLong(id));
+                assertEquals(list.getPrice(FuelStationList.DIESEL, index), cursor.getInt(diesel));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testStationsWithTheSameIdAreBothKept() {
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        FuelStationRecord record = new FuelStationRecord();
+
+        for (int regular : new int[] {250, 260}) {
+            record.clear();
+            record.brand = "Shell";
+            record.address = "1 Broadway";
+            record.regular = regular;
+            builder.onFuelStation(record);
+        }
+
+        FuelStationList list = builder.build();
+        assertEquals(list.getId(0), list.getId(1));
+
+        mDatabase.replace(list);
+        assertEquals(2, count(mDatabase.query(new FuelStationSorter.Query(
+                FuelStationSorter.FEED_ORDER), FuelStationDatabase.ANY_DISTANCE)));
+    }
+
+    public void testSortedQueriesUseTheIndexes() {
+        String plan = mDatabase.explain(new FuelStationSorter.Query(
+                FuelStationSorter.PRICE + FuelStationList.DIESEL), 5);
+
+        assertTrue(plan, plan.contains("stations_diesel"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+
+        plan = mDatabase.explain(new FuelStationSorter.Query(FuelStationSorter.BRAND,
+                FuelStationSorter.ANY_GRADE, "Shell"), FuelStationDatabase.ANY_DISTANCE);
+        assertTrue(plan, plan.contains("stations_brand"));
+    }
+}
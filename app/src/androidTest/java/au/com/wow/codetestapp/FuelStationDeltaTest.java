@@ -0,0 +1,289 @@
+package au.com.wow.codetestapp;
+
+import android.test.InstrumentationTestCase;
+
+import com.kizio.net.HttpClient;
+import com.kizio.reader.JSONStreamReader;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.List;
+
+public class FuelStationDeltaTest extends InstrumentationTestCase {
+    private static final String V1 = "\"v1\"";
+    private static final String V2 = "\"v2\"";
+
+    private LocalHttpServer mServer;
+    private FuelStationCache mCache;
+    private FuelStationFetcher mFetcher;
+    private FuelStationList mBase;
+    private byte[] mFeed;
+    private volatile String mDeltaBase = V1;
+    private volatile int mDeltaCount = 50;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mFeed = readAsset("fuelstationlist.json");
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        new FuelStationParser(builder).parse(new JSONStreamReader(new StringReader(
+                new String(mFeed, "UTF-8"))));
+        mBase = builder.build();
+
+        // A stand-in for a server that knows the version it sent last, and can send the changes.
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(LocalHttpServer.Request request)
+                    throws IOException {
+                String offered = request.header("A-IM");
+                if (offered != null && offered.contains(FuelStationFetcher.DELTA_ENCODING)
+                        && V1.equals(request.header("If-None-Match"))) {
+                    return new LocalHttpServer.Response(FuelStationFetcher.HTTP_IM_USED,
+                            buildDelta(mDeltaCount).getBytes("UTF-8"))
+                            .header("Content-Type", "application/json")
+                            .header("IM", FuelStationFetcher.DELTA_ENCODING)
+                            .header("Delta-Base", mDeltaBase)
+                            .header("ETag", V2);
+                }
+                return new LocalHttpServer.Response(200, mFeed)
+                        .header("Content-Type", "application/json")
+                        .header("ETag", V1);
+            }
+        });
+        mServer.start();
+
+        File directory = new File(getInstrumentation().getTargetContext().getCacheDir(),
+                "test-deltas");
+        mCache = new FuelStationCache(directory, directory);
+        mCache.remove(mServer.getUrl("/feed"));
+        mFetcher = new FuelStationFetcher(getInstrumentation().getTargetContext(), mCache,
+                new HttpClient(5000, 5000, 1, 10));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * The first station gets cheaper, the second closes, and a new one opens.
+     */
+    private String buildDelta(int count) {
+        try {
+            JSONObject changed = new JSONObject()
+                    .put("brand", mBase.getBrandValue(0))
+                    .put("address", mBase.getAddress(0))
+                    .put("regular", 3.99)
+                    .put("pupdate", mBase.getUpdated(0) + 3600);
+            JSONObject opened = new JSONObject()
+                    .put("brand", "Sunoco")
+                    .put("address", "1 New Street, New York, NY 10025")
+                    .put("regular", 3.59)
+                    .put("pupdate", mBase.getUpdated(0) + 3600);
+            JSONObject closed = new JSONObject()
+                    .put("brand", mBase.getBrandValue(1))
+                    .put("address", mBase.getAddress(1));
+
+            return new JSONObject()
+                    .put("count", count)
+                    .put("item", new JSONArray().put(changed).put(opened))
+                    .put("removed", new JSONArray().put(closed))
+                    .toString();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void testDeltaIsAppliedInFeedOrder() throws Exception {
+        FuelStationDelta delta = FuelStationDelta.read(new JSONStreamReader(new StringReader(
+                buildDelta(50))), "N/A");
+        FuelStationList list = delta.apply(mBase, "N/A", null);
+
+        assertEquals(2, delta.getChangedCount());
+        assertEquals(1, delta.getRemovedCount());
+        assertEquals(50, list.getSize());
+        assertEquals(mBase.getId(0), list.getId(0));
+        assertEquals(399, list.getPrice(FuelStationList.REGULAR, 0));
+        assertEquals(mBase.getId(2), list.getId(1));
+        assertEquals(mBase.getId(49), list.getId(48));
+        assertEquals("Sunoco", list.getBrand(49));
+
+        // Applying it again changes nothing.
+        FuelStationList again = delta.apply(list, "N/A", null);
+        assertEquals(50, again.getSize());
+        for (int i = 0; i < list.getSize(); i++) {
+            assertEquals(list.getId(i), again.getId(i));
+            assertEquals(list.getPrice(FuelStationList.REGULAR, i),
+                    again.getPrice(FuelStationList.REGULAR, i));
+        }
+    }
+
+    public void testOlderCopyOfAStationIsIgnored() throws Exception {
+        String stale = buildDelta(50).replace(
+                String.valueOf(mBase.getUpdated(0) + 3600), String.valueOf(mBase.getUpdated(0) - 1));
+        FuelStationList list = FuelStationDelta.read(new JSONStreamReader(new StringReader(stale)),
+                "N/A").apply(mBase, "N/A", null);
+
+        assertEquals(mBase.getPrice(FuelStationList.REGULAR, 0),
+                list.getPrice(FuelStationList.REGULAR, 0));
+    }
+
+    public void testStationThatIsChangedAndRemovedIsRemoved() throws Exception {
+        JSONObject delta = new JSONObject(buildDelta(48));
+        // The first station is changed and removed, and so is the new one.
+        delta.getJSONArray("removed")
+                .put(new JSONObject()
+                        .put("brand", mBase.getBrandValue(0))
+                        .put("address", mBase.getAddress(0)))
+                .put(new JSONObject()
+                        .put("brand", "Sunoco")
+                        .put("address", "1 New Street, New York, NY 10025"));
+        FuelStationList list = FuelStationDelta.read(new JSONStreamReader(new StringReader(
+                delta.toString())), "N/A").apply(mBase, "N/A", null);
+
+        assertEquals(48, list.getSize());
+        assertEquals(mBase.getId(2), list.getId(0));
+        assertEquals(mBase.getId(49), list.getId(47));
+        for (int i = 0; i < list.getSize(); i++) {
+            assertFalse(list.getId(i) == mBase.getId(0));
+            assertFalse("1 New Street, New York, NY 10025".equals(list.getAddress(i)));
+        }
+    }
+
+    /**
+     * "Aa" and "BB" have the same hash code, so these stations have the same ID.
+     */
+    private static FuelStationList buildColliding(String... addresses) {
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        FuelStationRecord record = new FuelStationRecord();
+        for (String address : addresses) {
+            record.clear();
+            record.brand = "Shell";
+            record.address = address;
+            record.regular = 300;
+            record.updated = 1000;
+            builder.onFuelStation(record);
+        }
+        return builder.build();
+    }
+
+    public void testChangeToAStationWithACollidingIdIsANewStation() throws Exception {
+        FuelStationList base = buildColliding("Aa");
+        String json = new JSONObject()
+                .put("count", 1)
+                .put("item", new JSONArray().put(new JSONObject()
+                        .put("brand", "Shell")
+                        .put("address", "BB")
+                        .put("regular", 2.99)
+                        .put("pupdate", 2000)))
+                .put("removed", new JSONArray().put(new JSONObject()
+                        .put("brand", "Shell")
+                        .put("address", "BB")))
+                .toString();
+        assertEquals(base.getId(0), buildColliding("BB").getId(0));
+
+        // Removing BB leaves Aa alone, and the change to BB is dropped along with it.
+        FuelStationList list = FuelStationDelta.read(new JSONStreamReader(new StringReader(
+                json)), "N/A").apply(base, "N/A", null);
+        assertEquals(1, list.getSize());
+        assertEquals("Aa", list.getAddress(0));
+        assertEquals(300, list.getPrice(FuelStationList.REGULAR, 0));
+
+        // Without the removal, BB is added rather than written over Aa.
+        json = json.replace("\"count\":1", "\"count\":2").replace("\"removed\"", "\"gone\"");
+        list = FuelStationDelta.read(new JSONStreamReader(new StringReader(json)), "N/A")
+                .apply(base, "N/A", null);
+        assertEquals(2, list.getSize());
+        assertEquals("Aa", list.getAddress(0));
+        assertEquals(300, list.getPrice(FuelStationList.REGULAR, 0));
+        assertEquals("BB", list.getAddress(1));
+        assertEquals(299, list.getPrice(FuelStationList.REGULAR, 1));
+    }
+
+    public void testCopyWithCollidingIdsFallsBackToTheFeed() throws Exception {
+        FuelStationList base = buildColliding("Aa", "BB");
+        FuelStationDelta delta = FuelStationDelta.read(new JSONStreamReader(new StringReader(
+                "{\"count\": 2, \"item\": [{\"brand\": \"Shell\", \"address\": \"BB\", "
+                        + "\"regular\": 2.99, \"pupdate\": 2000}]}")), "N/A");
+
+        assertNull(delta.apply(base, "N/A", null));
+    }
+
+    public void testDeltaAgainstAnotherCountDoesNotApply() throws Exception {
+        FuelStationDelta delta = FuelStationDelta.read(new JSONStreamReader(new StringReader(
+                buildDelta(49))), "N/A");
+
+        assertNull(delta.apply(mBase, "N/A", null));
+    }
+
+    public void testOnlyTheChangesAreDownloaded() throws Exception {
+        String url = mServer.getUrl("/feed");
+        mFetcher.fetch(url, null);
+        FuelStationCache.Entry entry = mFetcher.fetch(url, mCache.get(url));
+
+        List<LocalHttpServer.Request> requests = mServer.getRequests();
+        assertEquals(2, requests.size());
+        assertNull(requests.get(0).header("A-IM"));
+        assertEquals(FuelStationFetcher.DELTA_ENCODING, requests.get(1).header("A-IM"));
+
+        assertEquals(V2, entry.getETag());
+        assertEquals(50, entry.getList().getSize());
+        assertEquals(399, entry.getList().getPrice(FuelStationList.REGULAR, 0));
+        assertEquals("Sunoco", entry.getList().getBrand(49));
+
+        // The patched list is what's cached for next time.
+        assertEquals(V2, mCache.get(url).getETag());
+        assertEquals(399, mCache.get(url).getList().getPrice(FuelStationList.REGULAR, 0));
+    }
+
+    public void testDeltaAgainstAnotherVersionFallsBackToTheFeed() throws Exception {
+        mDeltaBase = "\"v0\"";
+        assertFallsBack();
+    }
+
+    public void testDeltaThatDoesNotAddUpFallsBackToTheFeed() throws Exception {
+        mDeltaCount = 51;
+        assertFallsBack();
+    }
+
+    private void assertFallsBack() throws Exception {
+        String url = mServer.getUrl("/feed");
+        mFetcher.fetch(url, null);
+        FuelStationCache.Entry entry = mFetcher.fetch(url, mCache.get(url));
+
+        List<LocalHttpServer.Request> requests = mServer.getRequests();
+        assertEquals(3, requests.size());
+        assertNull(requests.get(2).header("A-IM"));
+        assertNull(requests.get(2).header("If-None-Match"));
+
+        assertEquals(V1, entry.getETag());
+        assertEquals(50, entry.getList().getSize());
+        assertEquals(mBase.getPrice(FuelStationList.REGULAR, 0),
+                entry.getList().getPrice(FuelStationList.REGULAR, 0));
+    }
+
+    private byte[] readAsset(String name) throws IOException {
+        InputStream in = getInstrumentation().getContext().getAssets().open(name);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+
+        try {
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,103 @@
+package au.com.wow.codetestapp;
+
+import android.content.Context;
+import android.test.InstrumentationTestCase;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ListView;
+
+import com.kizio.reader.JSONStreamReader;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+public class FuelStationDiffTest extends InstrumentationTestCase {
+    private FuelStationList mList;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mList = load(-1);
+    }
+
+    // Decodes the sample feed, bumping the regular price of the given stations and dropping one.
+    private FuelStationList load(final int dropped, final int... bumped) throws Exception {
+        InputStream raw = getInstrumentation().getContext().getAssets().open("fuelstationlist.json");
+        final FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        new FuelStationParser(new FuelStationParser.Handler() {
+            private int mIndex;
+
+            @Override
+            public void onFuelStation(FuelStationRecord record) {
+                int index = mIndex++;
+                for (int bump : bumped) {
+                    if (bump == index) {
+                        record.regular += 10;
+                    }
+                }
+                if (index != dropped) {
+                    builder.onFuelStation(record);
+                }
+            }
+        }).parse(new JSONStreamReader(new InputStreamReader(raw)));
+        return builder.build();
+    }
+
+    public void testIdenticalListsAreEmpty() throws Exception {
+        FuelStationDiff diff = FuelStationDiff.compute(mList, null, load(-1), null);
+        assertTrue(diff.isEmpty());
+    }
+
+    public void testPriceChangesAreNotStructural() throws Exception {
+        FuelStationDiff diff = FuelStationDiff.compute(mList, null, load(-1, 0, 2, 5), null);
+        assertFalse(diff.isStructural());
+        assertEquals(3, diff.getChanged().length);
+        assertEquals(5, diff.getChanged()[2]);
+    }
+
+    public void testRemovalIsStructural() throws Exception {
+        FuelStationDiff diff = FuelStationDiff.compute(mList, null, load(1), null);
+        assertTrue(diff.isStructural());
+        assertEquals(1, diff.getRemoved());
+        assertEquals(0, diff.getInserted());
+    }
+
+    public void testReorderIsStructural() {
+        int[] order = FuelStationSorter.sort(mList,
+                new FuelStationSorter.Query(FuelStationSorter.PRICE + FuelStationList.REGULAR));
+        FuelStationDiff diff = FuelStationDiff.compute(mList, null, mList, order);
+        assertTrue(diff.isStructural());
+        assertEquals(0, diff.getChanged().length);
+    }
+
+    public void testUpdateOnlyRebindsChangedRows() throws Exception {
+        final FuelStationList refreshed = load(-1, 0, 2, 5);
+        final FuelStationDiff diff = FuelStationDiff.compute(mList, null, refreshed, null);
+        final Context context = getInstrumentation().getTargetContext();
+        final int[] binds = new int[1];
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                FuelStationListAdapter adapter = new FuelStationListAdapter(context, mList, null) {
+                    @Override
+                    public View getView(int position, View convertView, ViewGroup parent) {
+                        binds[0]++;
+                        return super.getView(position, convertView, parent);
+                    }
+                };
+                ListView listView = new ListView(context);
+                listView.setAdapter(adapter);
+                listView.measure(View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(4000, View.MeasureSpec.EXACTLY));
+                listView.layout(0, 0, 480, 4000);
+
+                binds[0] = 0;
+                adapter.update(refreshed, null, diff, listView);
+            }
+        });
+
+        assertEquals(3, binds[0]);
+    }
+}
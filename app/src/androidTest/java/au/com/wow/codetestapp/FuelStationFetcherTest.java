@@ -0,0 +1,277 @@
+package au.com.wow.codetestapp;
+
+import android.test.InstrumentationTestCase;
+
+import com.kizio.net.HttpClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPOutputStream;
+
+public class FuelStationFetcherTest extends InstrumentationTestCase {
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Wed, 01 Apr 2015 10:00:00 GMT";
+
+    private LocalHttpServer mServer;
+    private FuelStationCache mCache;
+    private HttpClient mClient;
+    private FuelStationFetcher mFetcher;
+    private byte[] mFeed;
+    private byte[] mCompressedFeed;
+    private volatile int mFailuresLeft;
+    private volatile boolean mNotModifiedNamesEncoding;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mFeed = readAsset("fuelstationlist.json");
+        mCompressedFeed = gzip(mFeed);
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+                if (mFailuresLeft > 0) {
+                    mFailuresLeft--;
+                    return new LocalHttpServer.Response(503, new byte[0]);
+                }
+                if (ETAG.equals(request.header("If-None-Match"))) {
+                    LocalHttpServer.Response response = new LocalHttpServer.Response(304, null);
+                    return mNotModifiedNamesEncoding
+                            ? response.header("Content-Encoding", "gzip") : response;
+                }
+                String encoding = request.header("Accept-Encoding");
+                if (encoding != null && encoding.contains("gzip")) {
+                    return new LocalHttpServer.Response(200, mCompressedFeed)
+                            .header("Content-Type", "application/json")
+                            .header("Content-Encoding", "gzip")
+                            .header("ETag", ETAG)
+                            .header("Last-Modified", LAST_MODIFIED);
+                }
+                return new LocalHttpServer.Response(200, mFeed)
+                        .header("Content-Type", "application/json")
+                        .header("ETag", ETAG)
+                        .header("Last-Modified", LAST_MODIFIED);
+            }
+        });
+        mServer.start();
+
+        File directory = new File(getInstrumentation().getTargetContext().getCacheDir(), "test-feeds");
+        mCache = new FuelStationCache(directory, directory);
+        mCache.remove(mServer.getUrl("/feed"));
+        mClient = new HttpClient(5000, 5000, 3, 10);
+        mFetcher = new FuelStationFetcher(getInstrumentation().getTargetContext(), mCache, mClient);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testFirstFetchIsStoredWithValidators() throws Exception {
+        String url = mServer.getUrl("/feed");
+        FuelStationCache.Entry entry = mFetcher.fetch(url, mCache.get(url));
+
+        assertEquals(50, entry.getList().getSize());
+
+        FuelStationCache.Entry cached = mCache.get(url);
+        assertNotNull(cached);
+        assertEquals(ETAG, cached.getETag());
+        assertEquals(LAST_MODIFIED, cached.getLastModified());
+        assertEquals(50, cached.getList().getSize());
+        assertEquals(entry.getList().getAddress(7), cached.getList().getAddress(7));
+    }
+
+    public void testRevalidationReusesCachedList() throws Exception {
+        String url = mServer.getUrl("/feed");
+        mFetcher.fetch(url, null);
+
+        FuelStationCache.Entry cached = mCache.get(url);
+        FuelStationCache.Entry revalidated = mFetcher.fetch(url, cached);
+
+        assertSame(cached.getList(), revalidated.getList());
+        assertTrue(revalidated.getFetched() >= cached.getFetched());
+
+        List<LocalHttpServer.Request> requests = mServer.getRequests();
+        assertEquals(2, requests.size());
+        assertNull(requests.get(0).header("If-None-Match"));
+        assertEquals(ETAG, requests.get(1).header("If-None-Match"));
+        assertEquals(LAST_MODIFIED, requests.get(1).header("If-Modified-Since"));
+    }
+
+    public void testNotModifiedWithAnEncodingIsStillARevalidation() throws Exception {
+        String url = mServer.getUrl("/feed");
+        mFetcher.fetch(url, null);
+        mNotModifiedNamesEncoding = true;
+
+        FuelStationCache.Entry cached = mCache.get(url);
+        FuelStationCache.Entry revalidated = mFetcher.fetch(url, cached);
+
+        assertSame(cached.getList(), revalidated.getList());
+        assertEquals(2, mServer.getRequests().size());
+    }
+
+    public void testRevalidationOnlyRecordsTheFetchTime() throws Exception {
+        String url = mServer.getUrl("/feed");
+        mFetcher.fetch(url, null);
+
+        // Backdate the stored feeds, so that rewriting one would show.
+        File directory = new File(getInstrumentation().getTargetContext().getCacheDir(),
+                "test-feeds");
+        for (File file : directory.listFiles()) {
+            assertTrue(file.setLastModified(1000));
+        }
+
+        FuelStationCache.Entry revalidated = mFetcher.fetch(url, mCache.get(url));
+
+        for (File file : directory.listFiles()) {
+            if (!file.getName().endsWith(".fetched")) {
+                assertEquals(1000, file.lastModified());
+            }
+        }
+        assertEquals(revalidated.getFetched(), mCache.get(url).getFetched());
+        assertEquals(50, mCache.get(url).getList().getSize());
+    }
+
+    public void testFeedIsFetchedCompressed() throws Exception {
+        String url = mServer.getUrl("/feed");
+        assertEquals(50, mFetcher.fetch(url, null).getList().getSize());
+
+        assertTrue(mServer.getRequests().get(0).header("Accept-Encoding").contains("gzip"));
+        assertEquals(mCompressedFeed.length, mClient.getWireBytes());
+        assertEquals(mFeed.length, mClient.getDecodedBytes());
+    }
+
+    public void testConnectionIsReusedAcrossRefreshes() throws Exception {
+        String url = mServer.getUrl("/feed");
+        mFetcher.fetch(url, null);
+        mFetcher.fetch(url, mCache.get(url));
+        mFetcher.fetch(url, null);
+
+        assertEquals(3, mServer.getRequests().size());
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    public void testServerErrorsAreRetried() throws Exception {
+        mFailuresLeft = 2;
+        String url = mServer.getUrl("/feed");
+
+        assertEquals(50, mFetcher.fetch(url, null).getList().getSize());
+        assertEquals(3, mServer.getRequests().size());
+    }
+
+    public void testRetriesAreBounded() throws Exception {
+        mFailuresLeft = 3;
+        try {
+            mFetcher.fetch(mServer.getUrl("/feed"), null);
+            fail("Expected the fetch to fail");
+        } catch (IOException e) {
+            assertEquals(3, mServer.getRequests().size());
+        }
+    }
+
+    public void testResponseIsDecodedWithServerCharset() throws Exception {
+        final byte[] latin1 = "{\"item\":[{\"brand\":\"Caf\u00e9\",\"address\":\"1 Main St\"}]}"
+                .getBytes("ISO-8859-1");
+        LocalHttpServer server = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+                return new LocalHttpServer.Response(200, latin1)
+                        .header("Content-Type", "application/json; charset=ISO-8859-1");
+            }
+        });
+        server.start();
+
+        try {
+            String url = server.getUrl("/latin1");
+            mCache.remove(url);
+            assertEquals("Caf\u00e9", mFetcher.fetch(url, null).getList().getBrand(0));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    public void testFirstPageIsPublishedBeforeTheBodyHasArrived() throws Exception {
+        final CountDownLatch resume = new CountDownLatch(1);
+        LocalHttpServer server = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+                // Not compressed, so the length is known up front.
+                return new LocalHttpServer.Response(200, mFeed)
+                        .header("Content-Type", "application/json")
+                        .pause(mFeed.length / 2, resume);
+            }
+        });
+        server.start();
+
+        final String url = server.getUrl("/paged");
+        final FuelStationPager pager = new FuelStationPager("N/A",
+                getInstrumentation().getTargetContext().getCacheDir(), 5, 2, null);
+        final FuelStationCache.Entry[] result = new FuelStationCache.Entry[1];
+        Thread download = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result[0] = mFetcher.fetch(url, null, pager);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    pager.finish();
+                }
+            }
+        });
+
+        try {
+            mCache.remove(url);
+            download.start();
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (pager.getCount() < 5 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+
+            // Half the body is still held back, and the first page is already out.
+            assertTrue(pager.getCount() >= 5);
+            assertFalse(pager.isComplete());
+            assertNotNull(pager.getPage(0));
+
+            resume.countDown();
+            download.join(10000);
+            assertEquals(50, result[0].getList().getSize());
+            assertEquals(50, pager.getCount());
+        } finally {
+            resume.countDown();
+            pager.close();
+            server.shutdown();
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private byte[] readAsset(String name) throws IOException {
+        InputStream in = getInstrumentation().getContext().getAssets().open(name);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+
+        try {
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+
+        return out.toByteArray();
+    }
+}
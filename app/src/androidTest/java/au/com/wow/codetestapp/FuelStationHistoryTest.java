@@ -0,0 +1,230 @@
+package au.com.wow.codetestapp;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+public class FuelStationHistoryTest extends AndroidTestCase {
+    private static final String TAG = "FuelStationHistoryTest";
+    private static final long HOUR = 60 * 60;
+    private static final long DAY = 24 * HOUR;
+    private static final long START = 1428883200L;
+
+    private File mFile;
+    private FuelStationHistory mHistory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mFile = new File(getContext().getCacheDir(), "history-test");
+        mFile.delete();
+        mHistory = new FuelStationHistory(mFile, FuelStationHistory.DEFAULT_RETENTION);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+
+        super.tearDown();
+    }
+
+    private static FuelStationList buildList(int[] diesel) {
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        FuelStationRecord record = new FuelStationRecord();
+
+        for (int i = 0; i < diesel.length; i++) {
+            record.clear();
+            record.brand = "Shell";
+            record.address = i + " Broadway";
+            record.regular = 250;
+            record.diesel = diesel[i];
+            builder.onFuelStation(record);
+        }
+
+        return builder.build();
+    }
+
+    private static void assertTrend(FuelStationHistory.Trend trend, long[] times, int[] prices) {
+        assertEquals(times.length, trend.getCount());
+
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(times[i], trend.getTime(i));
+            assertEquals(prices[i], trend.getPrice(i));
+        }
+    }
+
+    public void testOnlyChangesAreWritten() throws Exception {
+        assertTrue(mHistory.record(buildList(new int[] {300, 310}), START));
+        long size = mHistory.getSize();
+
+        assertFalse(mHistory.record(buildList(new int[] {300, 310}), START + HOUR));
+        assertEquals(size, mHistory.getSize());
+
+        // One station, one grade, one cent: a handful of bytes.
+        assertTrue(mHistory.record(buildList(new int[] {300, 311}), START + 2 * HOUR));
+        assertTrue(mHistory.getSize() - size <= 12);
+    }
+
+    public void testStationsSharingAnIdAreNotMixedTogether() throws Exception {
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        FuelStationRecord record = new FuelStationRecord();
+
+        // "Aa" and "BB" have the same hash code, so the first two stations have the same ID.
+        String[] addresses = {"Aa", "BB", "1 Broadway"};
+        for (int i = 0; i < addresses.length; i++) {
+            record.clear();
+            record.brand = "Shell";
+            record.address = addresses[i];
+            record.diesel = 300 + i;
+            builder.onFuelStation(record);
+        }
+        FuelStationList list = builder.build();
+        assertEquals(list.getId(0), list.getId(1));
+
+        assertTrue(mHistory.record(list, START));
+
+        assertEquals(0, mHistory.getTrend(list.getId(0), FuelStationList.DIESEL).getCount());
+        assertTrend(mHistory.getTrend(list.getId(2), FuelStationList.DIESEL),
+                new long[] {START}, new int[] {302});
+    }
+
+    public void testTrendFollowsOneGrade() throws Exception {
+        FuelStationList first = buildList(new int[] {300, 310});
+        mHistory.record(first, START);
+        mHistory.record(buildList(new int[] {305, 310}), START + HOUR);
+        mHistory.record(buildList(new int[] {305, 290}), START + 2 * HOUR);
+        mHistory.record(buildList(new int[] {FuelStationRecord.NO_PRICE, 290}), START + 3 * HOUR);
+
+        assertTrend(mHistory.getTrend(first.getId(0), FuelStationList.DIESEL),
+                new long[] {START, START + HOUR, START + 3 * HOUR},
+                new int[] {300, 305, FuelStationRecord.NO_PRICE});
+        assertTrend(mHistory.getTrend(first.getId(1), FuelStationList.REGULAR),
+                new long[] {START}, new int[] {250});
+        assertEquals(0, mHistory.getTrend(12345L, FuelStationList.DIESEL).getCount());
+    }
+
+    public void testHistorySurvivesReopening() throws Exception {
+        FuelStationList first = buildList(new int[] {300});
+        mHistory.record(first, START);
+        mHistory.record(buildList(new int[] {320}), START + DAY);
+
+        FuelStationHistory reopened = new FuelStationHistory(mFile,
+                FuelStationHistory.DEFAULT_RETENTION);
+        assertTrend(reopened.getTrend(first.getId(0), FuelStationList.DIESEL),
+                new long[] {START, START + DAY}, new int[] {300, 320});
+    }
+
+    public void testTornBlockIsCutOff() throws Exception {
+        FuelStationList first = buildList(new int[] {300});
+        mHistory.record(first, START);
+        long size = mHistory.getSize();
+
+        // Half a block, as if the app died while writing it.
+        FileOutputStream out = new FileOutputStream(mFile, true);
+        out.write(new byte[] {0, 0, 0, 20, 1, 2, 3});
+        out.close();
+
+        FuelStationHistory reopened = new FuelStationHistory(mFile,
+                FuelStationHistory.DEFAULT_RETENTION);
+        assertEquals(size, reopened.getSize());
+        assertTrue(reopened.record(buildList(new int[] {301}), START + HOUR));
+        assertEquals(2, new FuelStationHistory(mFile, FuelStationHistory.DEFAULT_RETENTION)
+                .getTrend(first.getId(0), FuelStationList.DIESEL).getCount());
+    }
+
+    public void testCompactionKeepsThePricesInForce() throws Exception {
+        FuelStationHistory history = new FuelStationHistory(mFile, 10 * DAY);
+        FuelStationList first = buildList(new int[] {300, 400});
+
+        history.record(first, START);
+
+        // The second station stops selling diesel, and then disappears from the feed.
+        for (int day = 1; day <= 60; day++) {
+            history.record(buildList(day < 5 ? new int[] {300 + day, FuelStationRecord.NO_PRICE}
+                    : new int[] {300 + day}), START + day * DAY);
+        }
+
+        long compacted = history.getSize();
+        FuelStationHistory.Trend trend = history.getTrend(first.getId(0), FuelStationList.DIESEL);
+
+        // Compacted on day 41, back to day 31: the price in force then, and each change since.
+        assertEquals(30, trend.getCount());
+        assertEquals(START + 31 * DAY, trend.getTime(0));
+        assertEquals(331, trend.getPrice(0));
+        assertEquals(360, trend.getPrice(29));
+        assertEquals(0, history.getTrend(first.getId(1), FuelStationList.DIESEL).getCount());
+        assertTrend(history.getTrend(first.getId(1), FuelStationList.REGULAR),
+                new long[] {START + 31 * DAY}, new int[] {250});
+        assertTrue(compacted < 60 * 8);
+        assertTrend(new FuelStationHistory(mFile, 10 * DAY).getTrend(first.getId(0),
+                FuelStationList.DIESEL), toTimes(trend), toPrices(trend));
+    }
+
+    private static long[] toTimes(FuelStationHistory.Trend trend) {
+        long[] times = new long[trend.getCount()];
+
+        for (int i = 0; i < times.length; i++) {
+            times[i] = trend.getTime(i);
+        }
+
+        return times;
+    }
+
+    private static int[] toPrices(FuelStationHistory.Trend trend) {
+        int[] prices = new int[trend.getCount()];
+
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = trend.getPrice(i);
+        }
+
+        return prices;
+    }
+
+    public void testAQuarterOfHourlyRefreshesIsSmall() throws Exception {
+        // Each station's diesel price moves about once a day, and its regular about twice a week.
+        int stations = 2000;
+        int[] regular = new int[stations];
+        int[] diesel = new int[stations];
+        Random random = new Random(5);
+
+        for (int i = 0; i < stations; i++) {
+            regular[i] = 250 + random.nextInt(50);
+            diesel[i] = 300 + random.nextInt(50);
+        }
+
+        int hours = 90 * 24;
+
+        for (int hour = 0; hour < hours; hour++) {
+            FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+            FuelStationRecord record = new FuelStationRecord();
+
+            for (int i = 0; i < stations; i++) {
+                if (random.nextInt(24) == 0) {
+                    diesel[i] += random.nextInt(11) - 5;
+                }
+
+                if (random.nextInt(84) == 0) {
+                    regular[i] += random.nextInt(11) - 5;
+                }
+
+                record.clear();
+                record.brand = "Brand " + (i % 9);
+                record.address = i + " Main Street";
+                record.regular = regular[i];
+                record.diesel = diesel[i];
+                builder.onFuelStation(record);
+            }
+
+            mHistory.record(builder.build(), START + hour * HOUR);
+        }
+
+        long perYear = mHistory.getSize() * 365 / 90;
+        Log.i(TAG, stations + " stations, hourly for 90 days: " + mHistory.getSize()
+                + " bytes, about " + perYear + " a year");
+        assertTrue("A year would take " + perYear + " bytes", perYear < 4 * 1024 * 1024);
+    }
+}
@@ -0,0 +1,162 @@
+package au.com.wow.codetestapp;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+public class FuelStationIndexTest extends AndroidTestCase {
+    private static final String TAG = "FuelStationIndexTest";
+
+    // Roughly Manhattan.
+    private static final double LATITUDE = 40.78;
+    private static final double LONGITUDE = -73.97;
+
+    private FuelStationList mList;
+    private FuelStationIndex mIndex;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mList = buildList(2000, new Random(42));
+        mIndex = new FuelStationIndex(mList);
+    }
+
+    private static FuelStationList buildList(int stations, Random random) {
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        FuelStationRecord record = new FuelStationRecord();
+
+        for (int i = 0; i < stations; i++) {
+            record.clear();
+            record.brand = "Brand " + (i % 7);
+            record.address = i + " Broadway";
+            record.distance = "1.5";
+
+            // Every tenth station has no coordinates.
+            if (i % 10 != 0) {
+                record.latitude = LATITUDE + (random.nextDouble() - 0.5) * 0.4;
+                record.longitude = LONGITUDE + (random.nextDouble() - 0.5) * 0.4;
+            }
+
+            builder.onFuelStation(record);
+        }
+
+        return builder.build();
+    }
+
+    private int[] bruteForce(double latitude, double longitude) {
+        float[] distances = mIndex.getDistances(latitude, longitude);
+        long[] packed = new long[distances.length];
+        int count = 0;
+
+        for (int i = 0; i < distances.length; i++) {
+            if (!Float.isNaN(distances[i])) {
+                packed[count++] = ((long) Float.floatToIntBits(distances[i]) << 32) | i;
+            }
+        }
+
+        Arrays.sort(packed, 0, count);
+        int[] order = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) packed[i];
+        }
+
+        return order;
+    }
+
+    public void testUnlocatedStationsAreNotIndexed() {
+        assertEquals(1800, mIndex.getCount());
+
+        for (int index : mIndex.within(LATITUDE, LONGITUDE, 100)) {
+            assertTrue(index % 10 != 0);
+        }
+    }
+
+    public void testNearestMatchesBruteForce() {
+        Random random = new Random(7);
+
+        for (int query = 0; query < 50; query++) {
+            // Some of the queries are well outside the area the stations cover.
+            double latitude = LATITUDE + (random.nextDouble() - 0.5) * 0.8;
+            double longitude = LONGITUDE + (random.nextDouble() - 0.5) * 0.8;
+            int[] expected = bruteForce(latitude, longitude);
+
+            assertTrue(Arrays.equals(Arrays.copyOf(expected, 10), mIndex.nearest(latitude, longitude, 10)));
+        }
+    }
+
+    public void testWithinMatchesBruteForce() {
+        float[] distances = mIndex.getDistances(LATITUDE, LONGITUDE);
+        int[] expected = bruteForce(LATITUDE, LONGITUDE);
+        int count = 0;
+
+        while (count < expected.length && distances[expected[count]] <= 2.0) {
+            count++;
+        }
+
+        int[] within = mIndex.within(LATITUDE, LONGITUDE, 2.0);
+        assertTrue(count > 0);
+        assertTrue(Arrays.equals(Arrays.copyOf(expected, count), within));
+    }
+
+    public void testNearestAskingForMoreThanThereAre() {
+        assertEquals(1800, mIndex.nearest(LATITUDE, LONGITUDE, 5000).length);
+        assertEquals(0, new FuelStationIndex(new FuelStationList.Builder("N/A").build())
+                .nearest(LATITUDE, LONGITUDE, 3).length);
+    }
+
+    public void testRelocateRemeasuresDistances() {
+        FuelStationList relocated = mIndex.relocate(mList.getLatitude(1), mList.getLongitude(1));
+
+        assertEquals("0.00", relocated.getDistance(1));
+        assertEquals(0f, relocated.getDistanceValue(1));
+
+        // A station without coordinates keeps the distance from the feed.
+        assertEquals("1.5", relocated.getDistance(0));
+        assertEquals(mList.getBrand(5), relocated.getBrand(5));
+        assertEquals(mList.getId(5), relocated.getId(5));
+    }
+
+    public void testFormatDistance() {
+        assertEquals("0.05", FuelStationIndex.formatDistance(0.049f));
+        assertEquals("1.50", FuelStationIndex.formatDistance(1.5f));
+        assertEquals("12.34", FuelStationIndex.formatDistance(12.3449f));
+    }
+
+    public void testCoordinatesSurviveTheBinaryForm() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        mList.write(new DataOutputStream(bytes));
+        FuelStationList copy = FuelStationList.read(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(mList.getLatitude(3), copy.getLatitude(3));
+        assertEquals(mList.getLongitude(3), copy.getLongitude(3));
+        assertTrue(Float.isNaN(copy.getLatitude(0)));
+    }
+
+    public void testQueriesAreFast() {
+        FuelStationIndex index = new FuelStationIndex(buildList(20000, new Random(1)));
+        Random random = new Random(3);
+        int queries = 2000;
+        int found = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            double latitude = LATITUDE + (random.nextDouble() - 0.5) * 0.4;
+            double longitude = LONGITUDE + (random.nextDouble() - 0.5) * 0.4;
+            found += index.nearest(latitude, longitude, 10).length;
+            found += index.within(latitude, longitude, 0.5).length;
+        }
+        long micros = (System.nanoTime() - start) / 1000 / (queries * 2);
+
+        Log.i(TAG, "Average query over 20000 stations: " + micros + "us, " + found + " found");
+        assertTrue("Queries took " + micros + "us on average", micros < 1000);
+    }
+}
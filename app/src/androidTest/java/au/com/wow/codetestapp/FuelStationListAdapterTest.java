@@ -0,0 +1,73 @@
+package au.com.wow.codetestapp;
+
+import android.content.Context;
+import android.os.Debug;
+import android.test.InstrumentationTestCase;
+import android.view.View;
+import android.widget.ListView;
+
+import com.kizio.reader.JSONStreamReader;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+public class FuelStationListAdapterTest extends InstrumentationTestCase {
+    private static final int FLING_PASSES = 4;
+
+    private FuelStationList mList;
+    private FuelStationListAdapter mAdapter;
+    private ListView mParent;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        InputStream raw = getInstrumentation().getContext().getAssets().open("fuelstationlist.json");
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        new FuelStationParser(builder).parse(new JSONStreamReader(new InputStreamReader(raw)));
+        mList = builder.build();
+
+        final Context context = getInstrumentation().getTargetContext();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter = new FuelStationListAdapter(context, mList, null);
+                mParent = new ListView(context);
+            }
+        });
+    }
+
+    public void testIdsAreStableAcrossDecodes() {
+        assertTrue(mAdapter.hasStableIds());
+        assertEquals(FuelStationList.getStationId(mList.getBrand(3), mList.getAddress(3)),
+                mAdapter.getItemId(3));
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testRecycledBindDoesNotAllocate() throws Throwable {
+        final int[] allocations = new int[1];
+
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                // The first pass inflates the row and creates its holder.
+                View row = mAdapter.getView(0, null, mParent);
+                for (int i = 0; i < mList.getSize(); i++) {
+                    row = mAdapter.getView(i, row, mParent);
+                }
+
+                Debug.startAllocCounting();
+                Debug.resetThreadAllocCount();
+                for (int pass = 0; pass < FLING_PASSES; pass++) {
+                    for (int i = 0; i < mList.getSize(); i++) {
+                        row = mAdapter.getView(i, row, mParent);
+                    }
+                }
+                allocations[0] = Debug.getThreadAllocCount();
+                Debug.stopAllocCounting();
+            }
+        });
+
+        assertEquals(0, allocations[0]);
+    }
+}
@@ -1,9 +1,12 @@
 package au.com.wow.codetestapp;
 
 import android.content.res.Resources;
+import android.os.Parcel;
 import android.test.InstrumentationTestCase;
 import android.util.Log;
 
+import com.kizio.reader.JSONStreamReader;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -38,5 +41,145 @@ public class FuelStationListTest extends InstrumentationTestCase {
         assertEquals(mJsonObject.getJSONArray("item").length(), 50);
     }
 
+    public void testStreamingParserReadsAllStations() throws Exception {
+        final int[] count = new int[1];
+        final FuelStationRecord first = new FuelStationRecord();
+        InputStream raw = getInstrumentation().getContext().getAssets().open("fuelstationlist.json");
+        FuelStationParser parser = new FuelStationParser(new FuelStationParser.Handler() {
+            @Override
+            public void onFuelStation(FuelStationRecord record) {
+                if (count[0]++ == 0) {
+                    first.brand = record.brand;
+                    first.regular = record.regular;
+                    first.plus = record.plus;
+                }
+            }
+        });
+
+        assertEquals(50, parser.parse(new JSONStreamReader(new InputStreamReader(raw))));
+        assertEquals(50, count[0]);
+        assertEquals("Mobil", first.brand);
+        assertEquals(407, first.regular);
+        assertEquals(FuelStationRecord.NO_PRICE, first.plus);
+    }
+
+    public void testDecodedListHoldsPricesInCents() throws Exception {
+        InputStream raw = getInstrumentation().getContext().getAssets().open("fuelstationlist.json");
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        new FuelStationParser(builder).parse(new JSONStreamReader(new InputStreamReader(raw)));
+        FuelStationList list = builder.build();
+
+        assertEquals(50, list.getSize());
+        assertEquals("Mobil", list.getBrand(0));
+        assertEquals(407, list.getPrice(FuelStationList.REGULAR, 0));
+        assertEquals(447, list.getPrice(FuelStationList.PREMIUM, 0));
+        assertEquals(FuelStationRecord.NO_PRICE, list.getPrice(FuelStationList.DIESEL, 0));
+        assertEquals(0.8847563f, list.getDistanceValue(0));
+        assertEquals("$4.47", list.get(0).getPremiumPrice());
+        assertEquals("N/A", list.get(0).getDieselPrice());
+    }
+
+    public void testParcelRoundTrip() throws Exception {
+        InputStream raw = getInstrumentation().getContext().getAssets().open("fuelstationlist.json");
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        new FuelStationParser(builder).parse(new JSONStreamReader(new InputStreamReader(raw)));
+        FuelStationList list = builder.build();
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            list.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            FuelStationList copy = FuelStationList.CREATOR.createFromParcel(parcel);
+
+            assertEquals(list.getSize(), copy.getSize());
+            for (int i = 0; i < list.getSize(); i++) {
+                assertEquals(list.getBrand(i), copy.getBrand(i));
+                assertEquals(list.getAddress(i), copy.getAddress(i));
+                assertEquals(list.getImageUrl(i), copy.getImageUrl(i));
+                assertEquals(list.getBrandId(i), copy.getBrandId(i));
+                for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+                    assertEquals(list.getPrice(grade, i), copy.getPrice(grade, i));
+                }
+            }
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    public void testBrandsAreHeldOnceInTheSymbolTable() throws Exception {
+        InputStream raw = getInstrumentation().getContext().getAssets().open("fuelstationlist.json");
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        new FuelStationParser(builder).parse(new JSONStreamReader(new InputStreamReader(raw)));
+        FuelStationList list = builder.build();
+
+        // Every station with the same brand shares one string, and one ID.
+        for (int i = 0; i < list.getSize(); i++) {
+            for (int j = 0; j < i; j++) {
+                boolean sameBrand = list.getBrand(i).equals(list.getBrand(j));
+                assertEquals(sameBrand, list.getBrandId(i) == list.getBrandId(j));
+
+                if (sameBrand) {
+                    assertSame(list.getBrandValue(i), list.getBrandValue(j));
+                    assertSame(list.getImageUrl(i), list.getImageUrl(j));
+                }
+            }
+
+            assertEquals(list.getBrandValue(i), list.getSymbol(list.getBrandId(i)));
+        }
+
+        assertNull(list.getSymbol(0));
+        // Eleven brands, their eleven logos, and the null.
+        assertEquals(23, list.getSymbolCount());
+
+        // Roughly what a String costs on ART: a 24 byte object, and its chars in a 12 byte array.
+        long perStation = 0;
+        long shared = 0;
+
+        for (int i = 0; i < list.getSize(); i++) {
+            perStation += stringBytes(list.getBrandValue(i)) + stringBytes(list.getImageUrl(i));
+        }
+
+        for (int id = 1; id < list.getSymbolCount(); id++) {
+            shared += stringBytes(list.getSymbol(id)) + 4;
+        }
+
+        Log.i("FuelStationListTest", list.getSize() + " stations: " + perStation
+                + " bytes of brands and image URLs as separate strings, " + shared + " shared");
+        assertTrue(shared * 4 < perStation);
+    }
+
+    private static long stringBytes(String value) {
+        return value != null ? 24 + ((12 + value.length() * 2 + 7) & ~7) : 0;
+    }
+
+    public void testMergedListsShareOneSymbolTable() throws Exception {
+        FuelStationRecord record = new FuelStationRecord();
+        FuelStationList.Builder first = new FuelStationList.Builder("N/A");
+        FuelStationList.Builder second = new FuelStationList.Builder("N/A");
+
+        record.brand = "Shell";
+        record.address = "1 Broadway";
+        first.onFuelStation(record);
+        record.brand = "Mobil";
+        record.address = "2 Broadway";
+        second.onFuelStation(record);
+        record.brand = new String("Shell");
+        record.address = "3 Broadway";
+        second.onFuelStation(record);
+
+        FuelStationList.Builder merged = new FuelStationList.Builder("N/A");
+        FuelStationList firstList = first.build();
+        FuelStationList secondList = second.build();
+        merged.add(firstList, 0);
+        merged.add(secondList, 0);
+        merged.add(secondList, 1);
+        FuelStationList list = merged.build();
+
+        assertEquals(3, list.getSymbolCount());
+        assertEquals(list.getBrandId(0), list.getBrandId(2));
+        assertSame(list.getBrandValue(0), list.getBrandValue(2));
+        assertEquals("Mobil", list.getBrand(1));
+    }
+
     // add more test cases
 }
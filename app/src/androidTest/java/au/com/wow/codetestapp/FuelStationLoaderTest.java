@@ -0,0 +1,196 @@
+package au.com.wow.codetestapp;
+
+import android.test.InstrumentationTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FuelStationLoaderTest extends InstrumentationTestCase {
+    private LocalHttpServer mServer;
+    private FuelStationCache mCache;
+    private FuelStationLoader mLoader;
+    private byte[] mFeed;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mFeed = readAsset("fuelstationlist.json");
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+                try {
+                    // Slow enough that the concurrent loads all arrive while this one is in flight.
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new LocalHttpServer.Response(200, mFeed).header("ETag", "\"v1\"");
+            }
+        });
+        mServer.start();
+
+        File directory = new File(getInstrumentation().getTargetContext().getCacheDir(), "test-loader");
+        mCache = new FuelStationCache(directory, directory);
+        mCache.remove(mServer.getUrl("/feed"));
+        mLoader = new FuelStationLoader(mCache,
+                new FuelStationFetcher(getInstrumentation().getTargetContext(), mCache),
+                Executors.newFixedThreadPool(4));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testConcurrentLoadsShareOneDownload() throws Exception {
+        String url = mServer.getUrl("/feed");
+        RecordingCallback callback = new RecordingCallback(3);
+
+        mLoader.load(url, FuelStationLoader.DEFAULT_MAX_AGE, callback);
+        mLoader.load(url, FuelStationLoader.DEFAULT_MAX_AGE, callback);
+        mLoader.load(url, 0, callback);
+
+        assertTrue(callback.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(1, mServer.getRequests().size());
+        assertEquals(3, callback.lists.get());
+    }
+
+    public void testFreshCopyIsServedWithoutNetwork() throws Exception {
+        String url = mServer.getUrl("/feed");
+        RecordingCallback first = new RecordingCallback(1);
+        mLoader.load(url, FuelStationLoader.DEFAULT_MAX_AGE, first);
+        assertTrue(first.completed.await(10, TimeUnit.SECONDS));
+
+        RecordingCallback second = new RecordingCallback(1);
+        mLoader.load(url, FuelStationLoader.DEFAULT_MAX_AGE, second);
+
+        // Delivered synchronously from memory.
+        assertEquals(0, second.completed.getCount());
+        assertEquals(1, second.lists.get());
+        assertEquals(1, mServer.getRequests().size());
+    }
+
+    public void testStaleCopyIsEmittedBeforeRevalidation() throws Exception {
+        String url = mServer.getUrl("/feed");
+        RecordingCallback first = new RecordingCallback(1);
+        mLoader.load(url, FuelStationLoader.DEFAULT_MAX_AGE, first);
+        assertTrue(first.completed.await(10, TimeUnit.SECONDS));
+
+        RecordingCallback second = new RecordingCallback(1);
+        mLoader.load(url, 0, second);
+
+        // The last good copy arrives before the revalidation has finished.
+        assertEquals(1, second.lists.get());
+        assertTrue(second.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(2, mServer.getRequests().size());
+    }
+
+    public void testCopyGoingStaleDuringTheCallbackIsStillCompleted() throws Exception {
+        String url = mServer.getUrl("/feed");
+        RecordingCallback first = new RecordingCallback(1);
+        mLoader.load(url, FuelStationLoader.DEFAULT_MAX_AGE, first);
+        assertTrue(first.completed.await(10, TimeUnit.SECONDS));
+
+        // Fresh when the load starts, but not by the time the callback has had the copy.
+        final long maxAge = 1000;
+        Thread.sleep(50);
+        RecordingCallback second = new RecordingCallback(1) {
+            @Override
+            public void onFuelStations(String url, FuelStationList list) {
+                super.onFuelStations(url, list);
+                try {
+                    Thread.sleep(maxAge * 2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        mLoader.load(url, maxAge, second);
+
+        assertEquals(0, second.completed.getCount());
+        assertEquals(1, second.lists.get());
+        assertEquals(1, mServer.getRequests().size());
+    }
+
+    public void testRefreshJoiningDuringTheDiskReadReachesTheNetwork() throws Exception {
+        String url = mServer.getUrl("/feed");
+        RecordingCallback first = new RecordingCallback(1);
+        mLoader.load(url, FuelStationLoader.DEFAULT_MAX_AGE, first);
+        assertTrue(first.completed.await(10, TimeUnit.SECONDS));
+
+        // A cold start, with a fresh copy on disk that takes a while to read.
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        File directory = new File(getInstrumentation().getTargetContext().getCacheDir(),
+                "test-loader");
+        FuelStationCache slowCache = new FuelStationCache(directory, directory) {
+            @Override
+            public Entry get(String key) {
+                reading.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.get(key);
+            }
+        };
+        FuelStationLoader loader = new FuelStationLoader(slowCache,
+                new FuelStationFetcher(getInstrumentation().getTargetContext(), slowCache),
+                Executors.newFixedThreadPool(4));
+
+        RecordingCallback second = new RecordingCallback(2);
+        loader.load(url, FuelStationLoader.DEFAULT_MAX_AGE, second);
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+        loader.load(url, 0, second);
+        release.countDown();
+
+        assertTrue(second.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(2, mServer.getRequests().size());
+    }
+
+    private static class RecordingCallback implements FuelStationLoader.Callback {
+        final AtomicInteger lists = new AtomicInteger();
+        final CountDownLatch completed;
+
+        RecordingCallback(int loads) {
+            completed = new CountDownLatch(loads);
+        }
+
+        @Override
+        public void onFuelStations(String url, FuelStationList list) {
+            lists.incrementAndGet();
+        }
+
+        @Override
+        public void onComplete(String url, Exception error) {
+            assertNull(error);
+            completed.countDown();
+        }
+    }
+
+    private byte[] readAsset(String name) throws IOException {
+        InputStream in = getInstrumentation().getContext().getAssets().open(name);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+
+        try {
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,83 @@
+package au.com.wow.codetestapp;
+
+import android.test.AndroidTestCase;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+public class FuelStationMetricsTest extends AndroidTestCase {
+    private FuelStationMetrics mMetrics;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mMetrics = new FuelStationMetrics();
+    }
+
+    private String dump() {
+        StringWriter text = new StringWriter();
+        PrintWriter writer = new PrintWriter(text);
+        mMetrics.dump(writer);
+        writer.flush();
+        return text.toString();
+    }
+
+    public void testPercentilesAreBucketUpperBounds() {
+        // 90 fast times of 100us, and 10 slow ones of 50ms.
+        for (int i = 0; i < 90; i++) {
+            mMetrics.record(FuelStationMetrics.DECODE, 100 * 1000);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            mMetrics.record(FuelStationMetrics.DECODE, 50 * 1000 * 1000);
+        }
+
+        FuelStationMetrics.Histogram histogram = mMetrics.getHistogram(FuelStationMetrics.DECODE);
+        assertEquals(100, histogram.getCount());
+        assertEquals(128, histogram.getPercentile(50));
+        assertEquals(128, histogram.getPercentile(90));
+        assertEquals(65536, histogram.getPercentile(99));
+        assertEquals(0, mMetrics.getHistogram(FuelStationMetrics.BUILD).getPercentile(50));
+    }
+
+    public void testBeginAndEndRecordAStage() {
+        long start = mMetrics.begin(FuelStationMetrics.BUILD);
+        mMetrics.end(FuelStationMetrics.BUILD, start);
+
+        assertEquals(1, mMetrics.getHistogram(FuelStationMetrics.BUILD).getCount());
+    }
+
+    public void testRefreshesCollectTheirStages() {
+        mMetrics.beginRefresh("http://localhost/feed");
+        mMetrics.record(FuelStationMetrics.DOWNLOAD, 3 * 1000 * 1000);
+        mMetrics.count(FuelStationMetrics.STATIONS, 42);
+        mMetrics.endRefresh("changed");
+
+        // Outside a refresh, only the totals are kept.
+        mMetrics.count(FuelStationMetrics.STATIONS, 8);
+        assertEquals(50, mMetrics.getCount(FuelStationMetrics.STATIONS));
+
+        String dump = dump();
+        assertTrue(dump, dump.contains("(1 in all)"));
+        assertTrue(dump, dump.contains("http://localhost/feed"));
+        assertTrue(dump, dump.contains("download=3.0ms"));
+        assertTrue(dump, dump.contains("stations=42 changed"));
+    }
+
+    public void testOnlyTheLastRefreshesAreKept() {
+        for (int i = 0; i < 25; i++) {
+            mMetrics.beginRefresh("http://localhost/" + i);
+            mMetrics.endRefresh("fresh");
+        }
+
+        String dump = dump();
+        assertTrue(dump, dump.contains("(25 in all)"));
+        assertTrue(dump, dump.contains("http://localhost/24 "));
+        assertTrue(dump, dump.contains("http://localhost/5 "));
+        assertFalse(dump, dump.contains("http://localhost/4 "));
+
+        // Newest first.
+        assertTrue(dump.indexOf("localhost/24 ") < dump.indexOf("localhost/23 "));
+    }
+}
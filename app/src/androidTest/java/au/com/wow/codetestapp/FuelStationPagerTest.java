@@ -0,0 +1,136 @@
+package au.com.wow.codetestapp;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+
+public class FuelStationPagerTest extends AndroidTestCase {
+    private static final int PAGE_SIZE = 10;
+    private static final int MAX_PAGES = 2;
+    private static final int STATIONS = 53;
+
+    private File mDirectory;
+    private FuelStationPager mPager;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mDirectory = new File(getContext().getCacheDir(), "pager-test");
+        mDirectory.mkdirs();
+        mPager = new FuelStationPager("N/A", mDirectory, PAGE_SIZE, MAX_PAGES, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPager.close();
+
+        for (File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+
+        mDirectory.delete();
+        super.tearDown();
+    }
+
+    private void feed(int count) {
+        FuelStationRecord record = new FuelStationRecord();
+
+        for (int i = 0; i < count; i++) {
+            record.clear();
+            record.brand = "Station " + i;
+            record.address = i + " Broadway";
+            record.regular = 300 + i;
+            mPager.onFuelStation(record);
+        }
+    }
+
+    private FuelStationList awaitPage(int position) throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            FuelStationList page = mPager.getPage(position);
+
+            if (page != null) {
+                return page;
+            }
+
+            Thread.sleep(10);
+        }
+
+        fail("Page for " + position + " was never reloaded");
+        return null;
+    }
+
+    public void testPagesArePublishedAsTheyFill() {
+        feed(PAGE_SIZE - 1);
+        assertEquals(0, mPager.getCount());
+
+        feed(1);
+        assertEquals(PAGE_SIZE, mPager.getCount());
+        assertFalse(mPager.isComplete());
+        assertEquals("Station 0", mPager.getPage(0).getBrand(0));
+    }
+
+    public void testFinishPublishesTheRemainder() {
+        feed(STATIONS);
+        assertEquals(STATIONS - STATIONS % PAGE_SIZE, mPager.getCount());
+
+        mPager.finish();
+        assertEquals(STATIONS, mPager.getCount());
+        assertTrue(mPager.isComplete());
+        assertEquals(STATIONS % PAGE_SIZE, mPager.getPage(STATIONS - 1).getSize());
+    }
+
+    public void testOnlyAWindowIsKept() throws InterruptedException {
+        feed(STATIONS);
+        mPager.finish();
+
+        // The last pages published are resident; the first has been evicted.
+        assertNotNull(mPager.getPage(STATIONS - 1));
+        assertNull(mPager.getPage(0));
+
+        FuelStationList page = awaitPage(0);
+        assertEquals(PAGE_SIZE, page.getSize());
+        assertEquals("Station 0", page.getBrand(0));
+        assertEquals(300, page.getPrice(FuelStationList.REGULAR, 0));
+
+        page = awaitPage(25);
+        assertEquals("Station 25", page.getBrand(25 % PAGE_SIZE));
+        assertEquals("25 Broadway", page.getAddress(25 % PAGE_SIZE));
+    }
+
+    public void testCompleteListIsBuiltFromThePages() throws Exception {
+        feed(STATIONS);
+
+        // The partly filled last page is included without waiting for finish().
+        FuelStationList list = mPager.buildList();
+        assertEquals(STATIONS, list.getSize());
+
+        for (int i = 0; i < STATIONS; i++) {
+            assertEquals("Station " + i, list.getBrand(i));
+            assertEquals(i + " Broadway", list.getAddress(i));
+            assertEquals(300 + i, list.getPrice(FuelStationList.REGULAR, i));
+        }
+    }
+
+    public void testListCanBeBuiltAfterClosingUntilFinished() throws Exception {
+        feed(PAGE_SIZE * 3);
+        mPager.close();
+        feed(STATIONS - PAGE_SIZE * 3);
+
+        assertEquals(STATIONS, mPager.buildList().getSize());
+        assertTrue(mDirectory.listFiles().length > 0);
+
+        mPager.finish();
+        assertEquals(0, mDirectory.listFiles().length);
+    }
+
+    public void testCloseDeletesTheSpillFile() {
+        feed(STATIONS);
+        mPager.finish();
+        assertTrue(mDirectory.listFiles().length > 0);
+
+        mPager.close();
+        assertEquals(0, mDirectory.listFiles().length);
+        assertNull(mPager.getPage(0));
+    }
+}
@@ -0,0 +1,155 @@
+package au.com.wow.codetestapp;
+
+import android.test.AndroidTestCase;
+
+import com.kizio.reader.JSONStreamReader;
+
+import org.json.JSONException;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class FuelStationParallelParserTest extends AndroidTestCase {
+    private ExecutorService mExecutor;
+    private FuelStationParallelParser mParser;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // No threshold, so that even small feeds are split up.
+        mExecutor = Executors.newFixedThreadPool(2);
+        mParser = new FuelStationParallelParser(mExecutor, 3, 0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mExecutor.shutdown();
+
+        super.tearDown();
+    }
+
+    private static String buildFeed(int stations) {
+        StringBuilder json = new StringBuilder("{\"zip\": \"10025\", \"extra\": {\"item\": 1},\n"
+                + " \"item\": [\n");
+
+        for (int i = 0; i < stations; i++) {
+            if (i > 0) {
+                json.append(",\n  ");
+            }
+
+            // Brackets, braces and escaped quotes in the strings mustn't confuse the scan.
+            json.append("{\"brand\": \"Shell ").append(i % 3 == 0 ? "[\\\"}{\\\"]" : "")
+                    .append("\", \"address\": \"").append(i).append(" Broadway\"")
+                    .append(", \"regular\": ").append(i % 4 == 0 ? "false" : "3.4" + (i % 10))
+                    .append(", \"diesel\": 3.99, \"pupdate\": ").append(1428883200L + i)
+                    .append(", \"tags\": [{\"a\": [1, 2]}, \"]\"]}");
+
+            if (i % 7 == 0) {
+                json.append(", null");
+            }
+        }
+
+        return json.append("\n ]\n}").toString();
+    }
+
+    private static FuelStationList parseSerially(String feed) throws Exception {
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        new FuelStationParser(builder).parse(new JSONStreamReader(CharBuffer.wrap(
+                feed.toCharArray())));
+        return builder.build();
+    }
+
+    private static void assertSameStations(FuelStationList expected, FuelStationList actual) {
+        assertEquals(expected.getSize(), actual.getSize());
+
+        for (int i = 0; i < expected.getSize(); i++) {
+            assertEquals(expected.getId(i), actual.getId(i));
+            assertEquals(expected.getBrand(i), actual.getBrand(i));
+            assertEquals(expected.getAddress(i), actual.getAddress(i));
+            assertEquals(expected.getUpdated(i), actual.getUpdated(i));
+
+            for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+                assertEquals(expected.getPrice(grade, i), actual.getPrice(grade, i));
+            }
+        }
+    }
+
+    public void testChunksAreJoinedInFeedOrder() throws Exception {
+        for (int stations : new int[] {0, 1, 2, 5, 50, 333}) {
+            String feed = buildFeed(stations);
+            FuelStationList list = mParser.parse(CharBuffer.wrap(feed.toCharArray()), "N/A", null);
+
+            assertSameStations(parseSerially(feed), list);
+        }
+    }
+
+    public void testFeedIsCutAtStationBoundaries() {
+        char[] feed = buildFeed(40).toCharArray();
+        int[] bounds = FuelStationParallelParser.split(feed, 0, feed.length, 6);
+
+        assertNotNull(bounds);
+        assertTrue(bounds.length >= 8);
+
+        for (int i = 0; i < bounds.length; i += 2) {
+            // Every few stations are followed by a null, which can start or end a chunk too.
+            assertTrue(feed[bounds[i]] == '{' || feed[bounds[i]] == 'n');
+            assertTrue(feed[bounds[i + 1] - 1] == '}' || feed[bounds[i + 1] - 1] == 'l');
+        }
+    }
+
+    public void testUnexpectedFeedsAreLeftToTheSerialParser() throws Exception {
+        char[] twoArrays = "{\"item\": [{}], \"item\": [{}]}".toCharArray();
+        char[] trailing = "{\"item\": [{}]} x".toCharArray();
+        char[] noArray = "{\"zip\": \"10025\"}".toCharArray();
+
+        assertNull(FuelStationParallelParser.split(twoArrays, 0, twoArrays.length, 4));
+        assertNull(FuelStationParallelParser.split(trailing, 0, trailing.length, 4));
+        assertNull(FuelStationParallelParser.split(noArray, 0, noArray.length, 4));
+
+        assertEquals(2, mParser.parse(CharBuffer.wrap(twoArrays), "N/A", null).getSize());
+    }
+
+    public void testChunkIsDecodedInPlace() throws Exception {
+        char[] feed = "[{\"brand\": \"A\"}, {\"brand\": \"B\"}, null ,{\"brand\": \"C\"}]"
+                .toCharArray();
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+
+        // Just the middle station and the null, with neither bracket in view.
+        new FuelStationParser(builder).parseStations(new JSONStreamReader(
+                CharBuffer.wrap(feed, 17, 20)));
+
+        FuelStationList list = builder.build();
+        assertEquals(1, list.getSize());
+        assertEquals("B", list.getBrand(0));
+    }
+
+    public void testChunkStationsMustBeSeparated() {
+        char[] chunk = "{\"brand\": \"A\"} {\"brand\": \"B\"}".toCharArray();
+
+        try {
+            new FuelStationParser(new FuelStationList.Builder("N/A")).parseStations(
+                    new JSONStreamReader(CharBuffer.wrap(chunk)));
+            fail("Expected a JSONException");
+        } catch (JSONException expected) {
+            // A missing comma is still caught without the brackets.
+        } catch (Exception e) {
+            fail("Expected a JSONException, not " + e);
+        }
+    }
+
+    public void testBadStationFailsTheWholeFeed() {
+        // The scan only looks for the end of a string, so the bad escape reaches a chunk.
+        String feed = buildFeed(30).replace("20 Broadway", "20 Broadway\\q");
+
+        try {
+            mParser.parse(CharBuffer.wrap(feed.toCharArray()), "N/A", null);
+            fail("Expected a JSONException");
+        } catch (JSONException expected) {
+            // The chunk's error is passed back to the caller.
+        } catch (Exception e) {
+            fail("Expected a JSONException, not " + e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package au.com.wow.codetestapp;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+
+public class FuelStationRefreshSchedulerTest extends AndroidTestCase {
+    private static final long HOUR = AlarmManager.INTERVAL_HOUR;
+
+    public void testSuccessKeepsTheInterval() {
+        assertEquals(HOUR, FuelStationRefreshScheduler.getDelay(HOUR, 0));
+        assertEquals(15 * 60 * 1000, FuelStationRefreshScheduler.getDelay(15 * 60 * 1000, 0));
+    }
+
+    public void testFailuresBackOffExponentially() {
+        assertEquals(2 * HOUR, FuelStationRefreshScheduler.getDelay(HOUR, 1));
+        assertEquals(4 * HOUR, FuelStationRefreshScheduler.getDelay(HOUR, 2));
+        assertEquals(16 * HOUR, FuelStationRefreshScheduler.getDelay(HOUR, 4));
+    }
+
+    public void testBackOffIsCappedAtADay() {
+        assertEquals(FuelStationRefreshScheduler.MAX_BACKOFF,
+                FuelStationRefreshScheduler.getDelay(HOUR, 5));
+        assertEquals(FuelStationRefreshScheduler.MAX_BACKOFF,
+                FuelStationRefreshScheduler.getDelay(HOUR, 1000));
+
+        // An interval longer than the cap is never shortened.
+        assertEquals(2 * AlarmManager.INTERVAL_DAY,
+                FuelStationRefreshScheduler.getDelay(2 * AlarmManager.INTERVAL_DAY, 3));
+    }
+
+    public void testScheduleSurvivesANewScheduler() {
+        SharedPreferences preferences = getContext().getSharedPreferences("refresh-test",
+                Context.MODE_PRIVATE);
+        preferences.edit().clear().commit();
+
+        FuelStationRefreshScheduler scheduler = new FuelStationRefreshScheduler(getContext(),
+                preferences);
+        assertEquals(FuelStationRefreshScheduler.DEFAULT_INTERVAL, scheduler.getInterval());
+
+        // Turned off, so no alarm is left behind by the test.
+        scheduler.setInterval(0);
+        scheduler.onRefreshed(false);
+        scheduler.onRefreshed(false);
+
+        FuelStationRefreshScheduler reopened = new FuelStationRefreshScheduler(getContext(),
+                preferences);
+        assertEquals(0, reopened.getInterval());
+        assertEquals(2, reopened.getFailures());
+
+        reopened.onRefreshed(true);
+        assertEquals(0, reopened.getFailures());
+
+        preferences.edit().clear().commit();
+    }
+}
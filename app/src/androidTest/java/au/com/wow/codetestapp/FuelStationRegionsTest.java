@@ -0,0 +1,106 @@
+package au.com.wow.codetestapp;
+
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class FuelStationRegionsTest extends AndroidTestCase {
+    private static final String NORTH = "http://localhost/north";
+    private static final String SOUTH = "http://localhost/south";
+    private static final String EAST = "http://localhost/east";
+
+    private FuelStationRegions mRegions;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mRegions = new FuelStationRegions("N/A", null);
+        mRegions.show(Arrays.asList(NORTH, SOUTH));
+    }
+
+    private static FuelStationList buildList(String[] addresses, long updated, int regular) {
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        FuelStationRecord record = new FuelStationRecord();
+
+        for (String address : addresses) {
+            record.clear();
+            record.brand = "Shell";
+            record.address = address;
+            record.distance = "1.5";
+            record.regular = regular;
+            record.updated = updated;
+            builder.onFuelStation(record);
+        }
+
+        return builder.build();
+    }
+
+    public void testSingleRegionIsNotCopied() {
+        FuelStationList north = buildList(new String[] {"1 Broadway", "2 Broadway"}, 100, 250);
+
+        assertSame(north, mRegions.put(NORTH, north));
+        assertSame(north, mRegions.getMerged());
+    }
+
+    public void testOverlappingStationsAppearOnce() {
+        mRegions.put(NORTH, buildList(new String[] {"1 Broadway", "2 Broadway", "3 Broadway"}, 100, 250));
+        FuelStationList merged = mRegions.put(SOUTH,
+                buildList(new String[] {"3 Broadway", "4 Broadway"}, 100, 260));
+
+        assertEquals(4, merged.getSize());
+        assertEquals("1 Broadway", merged.getAddress(0));
+        assertEquals("3 Broadway", merged.getAddress(2));
+        assertEquals("4 Broadway", merged.getAddress(3));
+
+        // Same age, so the first region's copy wins.
+        assertEquals(250, merged.getPrice(FuelStationList.REGULAR, 2));
+    }
+
+    public void testFresherPricesWinButKeepThePosition() {
+        mRegions.put(NORTH, buildList(new String[] {"1 Broadway", "2 Broadway"}, 100, 250));
+        FuelStationList merged = mRegions.put(SOUTH,
+                buildList(new String[] {"2 Broadway", "5 Broadway"}, 200, 270));
+
+        assertEquals(3, merged.getSize());
+        assertEquals("2 Broadway", merged.getAddress(1));
+        assertEquals(270, merged.getPrice(FuelStationList.REGULAR, 1));
+        assertEquals(200, merged.getUpdated(1));
+        assertEquals(250, merged.getPrice(FuelStationList.REGULAR, 0));
+    }
+
+    public void testReplacingARegionDropsItsOldStations() {
+        mRegions.put(NORTH, buildList(new String[] {"1 Broadway"}, 100, 250));
+        mRegions.put(SOUTH, buildList(new String[] {"7 Broadway", "8 Broadway"}, 100, 250));
+        FuelStationList merged = mRegions.put(SOUTH, buildList(new String[] {"9 Broadway"}, 100, 250));
+
+        assertEquals(2, merged.getSize());
+        assertEquals("1 Broadway", merged.getAddress(0));
+        assertEquals("9 Broadway", merged.getAddress(1));
+    }
+
+    public void testRegionsNotOnShowAreNotMerged() {
+        FuelStationList north = buildList(new String[] {"1 Broadway"}, 100, 250);
+        mRegions.put(NORTH, north);
+
+        // A prefetched neighbour is measured from a different centre, so it stays out.
+        assertNull(mRegions.put(EAST, buildList(new String[] {"6 Broadway"}, 100, 250)));
+        assertSame(north, mRegions.getMerged());
+    }
+
+    public void testRegionsTakenOffShowAreDropped() {
+        mRegions.put(NORTH, buildList(new String[] {"1 Broadway"}, 100, 250));
+        FuelStationList south = buildList(new String[] {"7 Broadway"}, 100, 250);
+        mRegions.put(SOUTH, south);
+
+        mRegions.show(Collections.singletonList(SOUTH));
+        assertSame(south, mRegions.getMerged());
+
+        // Showing it again doesn't bring it back until a new copy arrives.
+        mRegions.show(Arrays.asList(NORTH, SOUTH));
+        assertSame(south, mRegions.getMerged());
+        assertEquals(2, mRegions.put(NORTH,
+                buildList(new String[] {"1 Broadway"}, 100, 250)).getSize());
+    }
+}
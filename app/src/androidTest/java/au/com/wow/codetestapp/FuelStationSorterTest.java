@@ -0,0 +1,69 @@
+package au.com.wow.codetestapp;
+
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+
+public class FuelStationSorterTest extends AndroidTestCase {
+    private FuelStationList mList;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        add(builder, "shell", "3.5", 399, FuelStationRecord.NO_PRICE);
+        add(builder, "Mobil", "0.8", 407, 419);
+        add(builder, null, null, 385, 402);
+        add(builder, "Shell", "1.2", FuelStationRecord.NO_PRICE, 411);
+        add(builder, "BP", "2.0", 399, FuelStationRecord.NO_PRICE);
+        mList = builder.build();
+    }
+
+    private static void add(FuelStationList.Builder builder, String brand, String distance,
+                            int regular, int diesel) {
+        FuelStationRecord record = new FuelStationRecord();
+        record.brand = brand;
+        record.address = brand + " " + distance;
+        record.distance = distance;
+        record.regular = regular;
+        record.plus = FuelStationRecord.NO_PRICE;
+        record.premium = FuelStationRecord.NO_PRICE;
+        record.diesel = diesel;
+        builder.onFuelStation(record);
+    }
+
+    private int[] sort(int order, int grade, String brand) {
+        return FuelStationSorter.sort(mList, new FuelStationSorter.Query(order, grade, brand));
+    }
+
+    public void testFeedOrderIsIdentity() {
+        assertEquals("[0, 1, 2, 3, 4]", Arrays.toString(
+                sort(FuelStationSorter.FEED_ORDER, FuelStationSorter.ANY_GRADE, null)));
+    }
+
+    public void testBrandIgnoresCaseAndIsStable() {
+        assertEquals("[4, 1, 0, 3, 2]", Arrays.toString(
+                sort(FuelStationSorter.BRAND, FuelStationSorter.ANY_GRADE, null)));
+    }
+
+    public void testDistanceSortsUnknownLast() {
+        assertEquals("[1, 3, 4, 0, 2]", Arrays.toString(
+                sort(FuelStationSorter.DISTANCE, FuelStationSorter.ANY_GRADE, null)));
+    }
+
+    public void testPriceSortsMissingLast() {
+        assertEquals("[2, 0, 4, 1, 3]", Arrays.toString(sort(
+                FuelStationSorter.PRICE + FuelStationList.REGULAR, FuelStationSorter.ANY_GRADE, null)));
+        assertEquals("[2, 3, 1, 0, 4]", Arrays.toString(sort(
+                FuelStationSorter.PRICE + FuelStationList.DIESEL, FuelStationSorter.ANY_GRADE, null)));
+    }
+
+    public void testFilters() {
+        assertEquals("[2, 3, 1]", Arrays.toString(sort(
+                FuelStationSorter.PRICE + FuelStationList.DIESEL, FuelStationList.DIESEL, null)));
+        assertEquals("[3, 0]", Arrays.toString(
+                sort(FuelStationSorter.DISTANCE, FuelStationSorter.ANY_GRADE, "SHELL")));
+        assertEquals(0, sort(FuelStationSorter.BRAND, FuelStationSorter.ANY_GRADE, "Texaco").length);
+    }
+}
@@ -0,0 +1,78 @@
+package au.com.wow.codetestapp;
+
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.widget.ListView;
+
+import com.kizio.reader.JSONStreamReader;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+public class FuelStationStartupTest extends ActivityInstrumentationTestCase2<FuelStationListActivity> {
+    private static final String TAG = "FuelStationStartupTest";
+
+    // The most a cold start may take to show the first row from the cached snapshot. Anything
+    // slower means the startup path has started waiting on the service or the network again.
+    private static final long TIME_TO_FIRST_ROW_BUDGET_MS = 1000;
+
+    private static final long TIMEOUT_MS = 10 * 1000;
+
+    private FuelStationList mSnapshot;
+
+    public FuelStationStartupTest() {
+        super(FuelStationListActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        InputStream raw = getInstrumentation().getContext().getAssets().open("fuelstationlist.json");
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        new FuelStationParser(builder).parse(new JSONStreamReader(new InputStreamReader(raw)));
+        mSnapshot = builder.build();
+
+        // A fresh snapshot, so the service has no reason to touch the network.
+        new FuelStationCache(getInstrumentation().getTargetContext()).put(FuelStationListFragment.URL,
+                new FuelStationCache.Entry(mSnapshot, null, null, System.currentTimeMillis()));
+    }
+
+    private int getChildCount(final ListView listView) {
+        final int[] count = new int[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                count[0] = listView.getChildCount();
+            }
+        });
+        return count[0];
+    }
+
+    public void testTimeToFirstRow() throws Exception {
+        long start = System.nanoTime();
+        FuelStationListActivity activity = getActivity();
+        ListView listView = (ListView) activity.findViewById(android.R.id.list);
+        long elapsed;
+
+        while (getChildCount(listView) == 0) {
+            assertTrue("No rows were shown", System.nanoTime() - start < TIMEOUT_MS * 1000000L);
+            Thread.sleep(5);
+        }
+
+        elapsed = (System.nanoTime() - start) / 1000000L;
+        Log.i(TAG, "Time to first row: " + elapsed + "ms");
+
+        assertTrue("Time to first row was " + elapsed + "ms, over the budget of "
+                + TIME_TO_FIRST_ROW_BUDGET_MS + "ms", elapsed <= TIME_TO_FIRST_ROW_BUDGET_MS);
+    }
+
+    public void testFirstFrameShowsTheSnapshot() {
+        FuelStationListActivity activity = getActivity();
+        ListView listView = (ListView) activity.findViewById(android.R.id.list);
+
+        // Launching waits for the first frame, and the snapshot must already be in it.
+        assertTrue(getChildCount(listView) > 0);
+        assertTrue(listView.getAdapter() instanceof FuelStationListAdapter);
+    }
+}
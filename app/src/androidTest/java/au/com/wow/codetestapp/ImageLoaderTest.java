@@ -0,0 +1,199 @@
+package au.com.wow.codetestapp;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.test.InstrumentationTestCase;
+import android.widget.ImageView;
+
+import com.kizio.image.ImageLoader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ImageLoaderTest extends InstrumentationTestCase {
+    private static final int SIZE = 16;
+
+    private LocalHttpServer mServer;
+    private ImageLoader mLoader;
+    private volatile CountDownLatch mGate = new CountDownLatch(0);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+                try {
+                    // Held until the test has bound everything it wants in flight.
+                    mGate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                int color = request.path.hashCode() | Color.BLACK;
+                return new LocalHttpServer.Response(200, png(color))
+                        .header("Content-Type", "image/png");
+            }
+        });
+        mServer.start();
+
+        File directory = new File(getInstrumentation().getTargetContext().getCacheDir(),
+                "test-images");
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+
+        // Room for exactly one decoded image in memory.
+        mLoader = new ImageLoader(SIZE, SIZE, SIZE * SIZE * 4, directory, 1024 * 1024);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mGate.countDown();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLoader.shutdown();
+            }
+        });
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    private static byte[] png(int color) {
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    private ImageView newView() {
+        return new ImageView(getInstrumentation().getTargetContext());
+    }
+
+    private void bind(final ImageView view, final String url) {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLoader.bind(view, url);
+            }
+        });
+    }
+
+    private Bitmap awaitBitmap(final ImageView view) throws InterruptedException {
+        final Bitmap[] bitmap = new Bitmap[1];
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (bitmap[0] == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    Drawable drawable = view.getDrawable();
+                    if (drawable instanceof BitmapDrawable) {
+                        bitmap[0] = ((BitmapDrawable) drawable).getBitmap();
+                    }
+                }
+            });
+        }
+
+        assertNotNull("The image never arrived", bitmap[0]);
+        return bitmap[0];
+    }
+
+    private int countRequests(String path) {
+        int count = 0;
+        for (LocalHttpServer.Request request : mServer.getRequests()) {
+            if (request.path.equals(path)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void awaitRequests(String path, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (countRequests(path) < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, countRequests(path));
+    }
+
+    public void testViewsBoundToOneUrlShareOneRequest() throws Exception {
+        mGate = new CountDownLatch(1);
+        String url = mServer.getUrl("/shell.png");
+        ImageView first = newView();
+        ImageView second = newView();
+
+        bind(first, url);
+        bind(second, url);
+        awaitRequests("/shell.png", 1);
+        mGate.countDown();
+
+        assertSame(awaitBitmap(first), awaitBitmap(second));
+        assertEquals(1, mServer.getRequests().size());
+    }
+
+    public void testRebindingCancelsARequestNobodyElseWants() throws Exception {
+        mGate = new CountDownLatch(1);
+        String old = mServer.getUrl("/mobil.png");
+        ImageView view = newView();
+
+        bind(view, old);
+        awaitRequests("/mobil.png", 1);
+        bind(view, mServer.getUrl("/bp.png"));
+
+        // The old request was cancelled, so binding its URL again starts a new one.
+        bind(newView(), old);
+        awaitRequests("/mobil.png", 2);
+        mGate.countDown();
+        awaitBitmap(view);
+    }
+
+    public void testRebindingKeepsARequestOthersAreWaitingOn() throws Exception {
+        mGate = new CountDownLatch(1);
+        String shared = mServer.getUrl("/mobil.png");
+        ImageView view = newView();
+        ImageView other = newView();
+
+        bind(view, shared);
+        bind(other, shared);
+        awaitRequests("/mobil.png", 1);
+        bind(view, mServer.getUrl("/bp.png"));
+
+        // The other view is still waiting, so a third view joins the same request.
+        ImageView late = newView();
+        bind(late, shared);
+        mGate.countDown();
+
+        assertSame(awaitBitmap(other), awaitBitmap(late));
+        assertEquals(1, countRequests("/mobil.png"));
+    }
+
+    public void testEvictedBitmapsAreDecodedInto() throws Exception {
+        ImageView view = newView();
+
+        bind(view, mServer.getUrl("/mobil.png"));
+        Bitmap first = awaitBitmap(view);
+
+        // Loading the second image pushes the first out of memory, and nothing displays it now.
+        bind(view, mServer.getUrl("/bp.png"));
+        Bitmap second = awaitBitmap(view);
+        assertNotSame(first, second);
+
+        bind(view, mServer.getUrl("/shell.png"));
+        Bitmap third = awaitBitmap(view);
+
+        assertSame(first, third);
+        assertEquals("/shell.png".hashCode() | Color.BLACK, third.getPixel(0, 0));
+    }
+}
@@ -0,0 +1,237 @@
+package au.com.wow.codetestapp;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal HTTP/1.1 server bound to the loopback interface, standing in for the gas price API in
+ * tests. Each response is produced by a {@link Handler}, and every request is recorded so tests
+ * can check the headers that were sent. Connections are kept alive between requests.
+ */
+public class LocalHttpServer {
+
+    /**
+     * Produces the response to a request.
+     */
+    public interface Handler {
+        Response handle(Request request) throws IOException;
+    }
+
+    /**
+     * A request received by the server. Header names are lower case.
+     */
+    public static final class Request {
+        public final String method;
+        public final String path;
+        public final Map<String, String> headers;
+        public final int connection;
+
+        Request(String method, String path, Map<String, String> headers, int connection) {
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+            this.connection = connection;
+        }
+
+        public String header(String name) {
+            return headers.get(name.toLowerCase());
+        }
+    }
+
+    /**
+     * A response to send back.
+     */
+    public static final class Response {
+        public final int code;
+        public final Map<String, String> headers = new LinkedHashMap<String, String>();
+        public final byte[] body;
+        private int pauseAt = -1;
+        private CountDownLatch resume;
+
+        public Response(int code, byte[] body) {
+            this.code = code;
+            this.body = body != null ? body : new byte[0];
+        }
+
+        public Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        /**
+         * Sends the body up to an offset, then holds back the rest until the latch opens.
+         */
+        public Response pause(int offset, CountDownLatch latch) {
+            pauseAt = offset;
+            resume = latch;
+            return this;
+        }
+    }
+
+    private final Handler handler;
+    private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+    private final AtomicInteger connections = new AtomicInteger();
+    private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+    private ServerSocket serverSocket;
+
+    public LocalHttpServer(Handler handler) {
+        this.handler = handler;
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "LocalHttpServer");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public void shutdown() throws IOException {
+        serverSocket.close();
+
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    public String getUrl(String path) {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+    }
+
+    public List<Request> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<Request>(requests);
+        }
+    }
+
+    /**
+     * Gets the number of TCP connections that have been accepted.
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    private void acceptConnections() {
+        try {
+            while (true) {
+                final Socket socket = serverSocket.accept();
+                final int id = connections.incrementAndGet();
+
+                sockets.add(socket);
+
+                Thread worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket, id);
+                    }
+                }, "LocalHttpServer-" + id);
+                worker.setDaemon(true);
+                worker.start();
+            }
+        } catch (IOException e) {
+            // The server has been shut down.
+        }
+    }
+
+    private void serve(Socket socket, int id) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+
+            while ((requestLine = readLine(in)) != null && !requestLine.isEmpty()) {
+                String[] parts = requestLine.split(" ");
+                Map<String, String> headers = new HashMap<String, String>();
+                String line;
+
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    headers.put(line.substring(0, colon).trim().toLowerCase(),
+                            line.substring(colon + 1).trim());
+                }
+
+                Request request = new Request(parts[0], parts[1], headers, id);
+                requests.add(request);
+
+                Response response = handler.handle(request);
+                StringBuilder head = new StringBuilder();
+                boolean hasBody = response.code != 304 && !"HEAD".equals(request.method);
+
+                head.append("HTTP/1.1 ").append(response.code).append(" Status\r\n");
+                for (Map.Entry<String, String> header : response.headers.entrySet()) {
+                    head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+                }
+                if (hasBody) {
+                    head.append("Content-Length: ").append(response.body.length).append("\r\n");
+                }
+                head.append("\r\n");
+
+                out.write(head.toString().getBytes("ISO-8859-1"));
+                if (hasBody && response.pauseAt >= 0) {
+                    out.write(response.body, 0, response.pauseAt);
+                    out.flush();
+                    try {
+                        response.resume.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    out.write(response.body, response.pauseAt,
+                            response.body.length - response.pauseAt);
+                } else if (hasBody) {
+                    out.write(response.body);
+                }
+                out.flush();
+
+                if ("close".equalsIgnoreCase(headers.get("connection"))) {
+                    break;
+                }
+            }
+        } catch (SocketException e) {
+            // The connection was closed.
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed.
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+
+        return c == -1 && line.size() == 0 ? null : line.toString("ISO-8859-1");
+    }
+}
@@ -0,0 +1,106 @@
+package au.com.wow.codetestapp;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+
+public class PriceFormatterTest extends AndroidTestCase {
+    private static final String TAG = "PriceFormatterTest";
+    private static final int STATIONS = 5000;
+    private static final int PASSES = 5;
+
+    private FuelStationList mList;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // Prices between $2.50 and $5.50, with a few grades missing, like the real feed.
+        Random random = new Random(42);
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+        FuelStationRecord record = new FuelStationRecord();
+        for (int i = 0; i < STATIONS; i++) {
+            record.clear();
+            record.brand = "Brand " + (i % 20);
+            record.address = i + " Main St";
+            record.regular = 250 + random.nextInt(300);
+            record.plus = record.regular + 10;
+            record.premium = random.nextInt(4) == 0 ? FuelStationRecord.NO_PRICE : record.regular + 20;
+            record.diesel = random.nextInt(3) == 0 ? FuelStationRecord.NO_PRICE : record.regular + 5;
+            builder.onFuelStation(record);
+        }
+        mList = builder.build();
+    }
+
+    public void testMatchesNumberFormat() {
+        NumberFormat currency = NumberFormat.getCurrencyInstance(Locale.US);
+        for (int cents = 0; cents < 20000; cents++) {
+            assertEquals(currency.format(cents / 100.0), PriceFormatter.format(cents));
+        }
+        assertEquals("$1,234,567.89", PriceFormatter.format(123456789));
+    }
+
+    public void testCachedStringsAreShared() {
+        assertSame(PriceFormatter.format(399), PriceFormatter.format(399));
+    }
+
+    public void testItemsUseListPlaceholder() {
+        FuelStationItem item = mList.get(0);
+        assertEquals(PriceFormatter.format(mList.getPrice(FuelStationList.REGULAR, 0)),
+                item.getRegularPrice());
+
+        for (int i = 0; i < mList.getSize(); i++) {
+            if (mList.getPrice(FuelStationList.PREMIUM, i) == FuelStationRecord.NO_PRICE) {
+                assertEquals("N/A", mList.get(i).getPremiumPrice());
+                return;
+            }
+        }
+        fail("No station without premium");
+    }
+
+    public void testBenchmarkAgainstNumberFormat() {
+        long before = Long.MAX_VALUE;
+        long after = Long.MAX_VALUE;
+
+        for (int pass = 0; pass < PASSES; pass++) {
+            long start = System.nanoTime();
+            int length = bindWithNumberFormat();
+            before = Math.min(before, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            assertEquals(length, bindWithFormatter());
+            after = Math.min(after, System.nanoTime() - start);
+        }
+
+        Log.i(TAG, String.format(Locale.US, "%d stations: NumberFormat %.2fms, PriceFormatter %.2fms",
+                STATIONS, before / 1e6, after / 1e6));
+    }
+
+    // What every bind used to do: a new NumberFormat per item, and a double per price.
+    private int bindWithNumberFormat() {
+        int length = 0;
+        for (int i = 0; i < mList.getSize(); i++) {
+            NumberFormat currency = NumberFormat.getCurrencyInstance(Locale.US);
+            for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+                int cents = mList.getPrice(grade, i);
+                String text = cents != FuelStationRecord.NO_PRICE
+                        ? currency.format(cents / 100.0) : mList.getNotApplicable();
+                length += text.length();
+            }
+        }
+        return length;
+    }
+
+    private int bindWithFormatter() {
+        int length = 0;
+        for (int i = 0; i < mList.getSize(); i++) {
+            for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+                length += mList.getPriceText(grade, i).length();
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,77 @@
+package au.com.wow.codetestapp;
+
+import android.test.AndroidTestCase;
+
+import com.kizio.reader.JSONStreamReader;
+import com.kizio.reader.StringReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.CharBuffer;
+
+public class StringReaderTest extends AndroidTestCase {
+
+    public void testLineEndingsAreKept() throws Exception {
+        String text = "{\"a\":1}\r\n{\"b\":2}\n\n";
+        StringReader reader = new StringReader(new java.io.StringReader(text), -1);
+        assertEquals(text, reader.readString());
+    }
+
+    public void testReadsPastTheLengthHint() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        CharBuffer chars = new StringReader(new java.io.StringReader(text.toString()), 10).readChars();
+        assertEquals(text.toString(), chars.toString());
+    }
+
+    public void testLengthHintSizesTheBuffer() throws Exception {
+        CharBuffer chars = new StringReader(new java.io.StringReader("[1,2,3]"), 7).readChars();
+        assertEquals(7, chars.remaining());
+        assertEquals(8, chars.array().length);
+    }
+
+    public void testStartIsReadBeforeTheRest() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        StringReader reader = new StringReader(new java.io.StringReader(text.toString()), -1);
+
+        CharBuffer start = reader.readChars(1000);
+        assertTrue(start.remaining() >= 1000);
+        assertTrue(start.remaining() < text.length());
+        assertEquals(text.substring(0, start.remaining()), start.toString());
+
+        assertEquals(text.toString(), reader.readChars(start).toString());
+    }
+
+    public void testShortInputIsReadWhole() throws Exception {
+        StringReader reader = new StringReader(new java.io.StringReader("[1,2,3]"), -1);
+        assertEquals("[1,2,3]", reader.readChars(1000).toString());
+    }
+
+    public void testCharsetComesFromContentType() {
+        assertEquals("UTF-8", StringReader.getCharset(null, "UTF-8"));
+        assertEquals("UTF-8", StringReader.getCharset("application/json", "UTF-8"));
+        assertEquals("ISO-8859-1",
+                StringReader.getCharset("application/json; charset=ISO-8859-1", "UTF-8"));
+        assertEquals("windows-1252",
+                StringReader.getCharset("text/plain;Charset=\"windows-1252\"", "UTF-8"));
+        assertEquals("UTF-8", StringReader.getCharset("text/plain; charset=no-such-thing", "UTF-8"));
+    }
+
+    public void testParsesInPlace() throws Exception {
+        byte[] json = "{\"item\":[{\"brand\":\"Caf\u00e9\",\"regular\":3.99}]}".getBytes("ISO-8859-1");
+        StringReader input = new StringReader(
+                new InputStreamReader(new ByteArrayInputStream(json), "ISO-8859-1"), json.length);
+        FuelStationList.Builder builder = new FuelStationList.Builder("N/A");
+
+        new FuelStationParser(builder).parse(new JSONStreamReader(input.readChars()));
+
+        FuelStationList list = builder.build();
+        assertEquals("Caf\u00e9", list.getBrand(0));
+        assertEquals(399, list.getPrice(FuelStationList.REGULAR, 0));
+    }
+}
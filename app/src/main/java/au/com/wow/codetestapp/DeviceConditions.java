@@ -0,0 +1,113 @@
+package au.com.wow.codetestapp;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+
+/**
+ * Checks whether the device is in a fit state for optional background work, such as prefetching
+ * feeds the user hasn't asked for yet.
+ *
+ * @author Graeme Sutherland
+ * @since 11/04/2015
+ */
+final class DeviceConditions {
+
+	/**
+	 * The battery level, as a percentage, below which the battery counts as low. This is where the
+	 * system warns the user.
+	 */
+	private static final int LOW_BATTERY_PERCENT = 15;
+
+	/**
+	 * Constructor. This class is never instantiated.
+	 */
+	private DeviceConditions () {
+		super ();
+	}
+
+	/**
+	 * Checks whether optional downloads can be made, which means being on an unmetered network and
+	 * external power.
+	 *
+	 * @param context The {@link Context} the app is running in
+	 * @return True if optional downloads can be made, false otherwise
+	 */
+	static boolean canPrefetch (final Context context) {
+		return isUnmetered (context) && isCharging (context);
+	}
+
+	/**
+	 * Checks whether a scheduled refresh can be made, which means being on an unmetered network
+	 * without the battery running low. Unlike a prefetch, the device doesn't have to be plugged in,
+	 * as a refresh that finds nothing new only costs a conditional request.
+	 *
+	 * @param context The {@link Context} the app is running in
+	 * @return True if a scheduled refresh can be made, false otherwise
+	 */
+	static boolean canRefresh (final Context context) {
+		return isUnmetered (context) && !isBatteryLow (context);
+	}
+
+	/**
+	 * Checks whether the device is connected to a network that isn't metered.
+	 *
+	 * @param context The {@link Context} the app is running in
+	 * @return True if there's an unmetered connection, false otherwise
+	 */
+	static boolean isUnmetered (final Context context) {
+		final ConnectivityManager manager = (ConnectivityManager) context.getSystemService (
+				Context.CONNECTIVITY_SERVICE);
+		final NetworkInfo network = manager.getActiveNetworkInfo ();
+
+		if (network == null || !network.isConnected ()) {
+			return false;
+		}
+
+		// Before Jelly Bean the only clue is the type of network, so I assume Wi-Fi is unmetered.
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			return !manager.isActiveNetworkMetered ();
+		}
+
+		return network.getType () == ConnectivityManager.TYPE_WIFI
+				|| network.getType () == ConnectivityManager.TYPE_ETHERNET;
+	}
+
+	/**
+	 * Checks whether the device is plugged in.
+	 *
+	 * @param context The {@link Context} the app is running in
+	 * @return True if the device is on external power, false otherwise
+	 */
+	static boolean isCharging (final Context context) {
+		// The battery broadcast is sticky, so this just reads the last one without registering.
+		final Intent battery = context.registerReceiver (null,
+				new IntentFilter (Intent.ACTION_BATTERY_CHANGED));
+
+		return battery != null && battery.getIntExtra (BatteryManager.EXTRA_PLUGGED, 0) != 0;
+	}
+
+	/**
+	 * Checks whether the battery is low and the device isn't plugged in to charge it.
+	 *
+	 * @param context The {@link Context} the app is running in
+	 * @return True if the battery is low, false otherwise
+	 */
+	static boolean isBatteryLow (final Context context) {
+		final Intent battery = context.registerReceiver (null,
+				new IntentFilter (Intent.ACTION_BATTERY_CHANGED));
+
+		if (battery == null || battery.getIntExtra (BatteryManager.EXTRA_PLUGGED, 0) != 0) {
+			return false;
+		}
+
+		final int level = battery.getIntExtra (BatteryManager.EXTRA_LEVEL, -1);
+		final int scale = battery.getIntExtra (BatteryManager.EXTRA_SCALE, -1);
+
+		return level >= 0 && scale > 0 && level * 100 < scale * LOW_BATTERY_PERCENT;
+	}
+}
@@ -0,0 +1,425 @@
+package au.com.wow.codetestapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Disk cache of the last copy of each fuel station feed that was downloaded.
+ * <p>
+ * Each feed is stored in its own file, named after a hash of its URL. The file holds the decoded
+ * {@link FuelStationList} rather than the raw JSON, along with the <code>ETag</code> and
+ * <code>Last-Modified</code> headers from the response, so that it can be shown straight away on a
+ * cold start and then revalidated with a conditional request.
+ * </p>
+ * <p>
+ * When a revalidation finds that the feed hasn't changed only its fetch time moves on, so that's
+ * kept in a small file of its own next to the feed. That way a <code>304 Not Modified</code>
+ * writes eight bytes rather than the whole list.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 31/03/2015
+ */
+public class FuelStationCache {
+
+	/**
+	 * The version of the cache file layout. Files written by other versions are ignored.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The name of the cache's directory, within the app's cache directory.
+	 */
+	private static final String DIRECTORY = "feeds";
+
+	/**
+	 * The suffix of the file holding a feed's latest fetch time.
+	 */
+	private static final String FETCHED_SUFFIX = ".fetched";
+
+	/**
+	 * A feed that has been stored in the cache.
+	 */
+	public static final class Entry {
+
+		/**
+		 * The decoded fuel stations.
+		 */
+		private final FuelStationList list;
+
+		/**
+		 * The <code>ETag</code> header sent with the feed, or null.
+		 */
+		private final String eTag;
+
+		/**
+		 * The <code>Last-Modified</code> header sent with the feed, or null.
+		 */
+		private final String lastModified;
+
+		/**
+		 * The time the feed was last fetched or revalidated, in milliseconds since the epoch.
+		 */
+		private final long fetched;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param fuelStationList The decoded fuel stations
+		 * @param eTagHeader The <code>ETag</code> header sent with the feed, or null
+		 * @param lastModifiedHeader The <code>Last-Modified</code> header sent with the feed, or
+		 *                           null
+		 * @param fetchedTime The time the feed was last fetched or revalidated
+		 */
+		public Entry (final FuelStationList fuelStationList, final String eTagHeader,
+				final String lastModifiedHeader, final long fetchedTime) {
+			super ();
+
+			this.list = fuelStationList;
+			this.eTag = eTagHeader;
+			this.lastModified = lastModifiedHeader;
+			this.fetched = fetchedTime;
+		}
+
+		/**
+		 * Gets the decoded fuel stations.
+		 *
+		 * @return The {@link FuelStationList}
+		 */
+		public FuelStationList getList () {
+			return this.list;
+		}
+
+		/**
+		 * Gets the <code>ETag</code> header sent with the feed.
+		 *
+		 * @return The <code>ETag</code>, or null if there wasn't one
+		 */
+		public String getETag () {
+			return this.eTag;
+		}
+
+		/**
+		 * Gets the <code>Last-Modified</code> header sent with the feed.
+		 *
+		 * @return The <code>Last-Modified</code> date, or null if there wasn't one
+		 */
+		public String getLastModified () {
+			return this.lastModified;
+		}
+
+		/**
+		 * Gets the time the feed was last fetched or revalidated.
+		 *
+		 * @return The time in milliseconds since the epoch
+		 */
+		public long getFetched () {
+			return this.fetched;
+		}
+
+		/**
+		 * Creates a copy of this entry with a new fetch time, for when the server reports that the
+		 * feed hasn't changed.
+		 *
+		 * @param time The time the feed was revalidated
+		 * @return The updated {@link Entry}
+		 */
+		public Entry revalidated (final long time) {
+			return new Entry (this.list, this.eTag, this.lastModified, time);
+		}
+	}
+
+	/**
+	 * The directory the feeds are stored in.
+	 */
+	private final File directory;
+
+	/**
+	 * The directory that lists read from the cache write oversized parcels to.
+	 */
+	private final File spillDirectory;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param context The {@link Context} the app is running in
+	 */
+	public FuelStationCache (final Context context) {
+		this (new File (context.getCacheDir (), DIRECTORY), context.getCacheDir ());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param cacheDirectory The directory to store the feeds in
+	 * @param parcelDirectory The directory that lists read from the cache write oversized parcels
+	 *                        to
+	 */
+	public FuelStationCache (final File cacheDirectory, final File parcelDirectory) {
+		super ();
+
+		this.directory = cacheDirectory;
+		this.spillDirectory = parcelDirectory;
+	}
+
+	/**
+	 * Gets the cached copy of a feed.
+	 *
+	 * @param url The URL of the feed
+	 * @return The cached {@link Entry}, or null if the feed isn't cached or can't be read
+	 */
+	public Entry get (final String url) {
+		final FuelStationMetrics metrics = FuelStationMetrics.getInstance ();
+		final long start = metrics.begin (FuelStationMetrics.CACHE_READ);
+
+		try {
+			return read (url);
+		} finally {
+			metrics.end (FuelStationMetrics.CACHE_READ, start);
+		}
+	}
+
+	/**
+	 * Reads a feed from its file.
+	 *
+	 * @param url The URL of the feed
+	 * @return The cached {@link Entry}, or null if the feed isn't cached or can't be read
+	 */
+	@SuppressWarnings ("all")
+	private Entry read (final String url) {
+		final File file = getFile (url);
+		Entry entry = null;
+
+		try {
+			final DataInputStream in = new DataInputStream (new BufferedInputStream
+					(new FileInputStream (file)));
+
+			try {
+				// The URL is stored as well, in case two URLs hash to the same name.
+				if (in.readInt () == VERSION && url.equals (in.readUTF ())) {
+					final String eTag = in.readBoolean () ? in.readUTF () : null;
+					final String lastModified = in.readBoolean () ? in.readUTF () : null;
+					final long fetched = Math.max (in.readLong (), readFetched (file));
+
+					entry = new Entry (FuelStationList.read (in, this.spillDirectory), eTag,
+							lastModified, fetched);
+				}
+			} finally {
+				in.close ();
+			}
+		} catch (final FileNotFoundException fnfe) {
+			// Nothing has been cached for this URL yet.
+		} catch (final IOException ioe) {
+			Log.e (FuelStationCache.class.getName (), "Failed to read cached feed", ioe);
+			file.delete ();
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Stores a feed in the cache, replacing any earlier copy.
+	 * <p>
+	 * The feed is written to a temporary file which is then renamed, so a reader will never see a
+	 * partially written entry.
+	 * </p>
+	 *
+	 * @param url The URL of the feed
+	 * @param entry The {@link Entry} to store
+	 */
+	public void put (final String url, final Entry entry) {
+		final FuelStationMetrics metrics = FuelStationMetrics.getInstance ();
+		final long start = metrics.begin (FuelStationMetrics.CACHE_WRITE);
+
+		try {
+			write (url, entry);
+		} finally {
+			metrics.end (FuelStationMetrics.CACHE_WRITE, start);
+		}
+	}
+
+	/**
+	 * Writes a feed to its file.
+	 *
+	 * @param url The URL of the feed
+	 * @param entry The {@link Entry} to store
+	 */
+	@SuppressWarnings ("all")
+	private void write (final String url, final Entry entry) {
+		final File file = getFile (url);
+		final File temp = new File (this.directory, file.getName () + ".tmp");
+
+		try {
+			if (!this.directory.isDirectory () && !this.directory.mkdirs ()) {
+				throw new IOException ("Can't create " + this.directory);
+			}
+
+			final DataOutputStream out = new DataOutputStream (new BufferedOutputStream
+					(new FileOutputStream (temp)));
+
+			try {
+				out.writeInt (VERSION);
+				out.writeUTF (url);
+				out.writeBoolean (entry.eTag != null);
+
+				if (entry.eTag != null) {
+					out.writeUTF (entry.eTag);
+				}
+
+				out.writeBoolean (entry.lastModified != null);
+
+				if (entry.lastModified != null) {
+					out.writeUTF (entry.lastModified);
+				}
+
+				out.writeLong (entry.fetched);
+				entry.list.write (out);
+			} finally {
+				out.close ();
+			}
+
+			if (!temp.renameTo (file)) {
+				throw new IOException ("Can't rename " + temp + " to " + file);
+			}
+
+			// The new copy has the latest fetch time in it, so the old one is out of date.
+			getFetchedFile (file).delete ();
+		} catch (final IOException ioe) {
+			Log.e (FuelStationCache.class.getName (), "Failed to cache feed", ioe);
+			temp.delete ();
+		}
+	}
+
+	/**
+	 * Records that a cached feed has been revalidated, without writing the feed again.
+	 *
+	 * @param url The URL of the feed
+	 * @param time The time the feed was revalidated, in milliseconds since the epoch
+	 * @return True if the time was recorded, false if the feed isn't cached, in which case it has
+	 *         to be {@link #put(String, Entry) put} instead
+	 */
+	@SuppressWarnings ("all")
+	public boolean touch (final String url, final long time) {
+		final File file = getFile (url);
+
+		if (!file.isFile ()) {
+			return false;
+		}
+
+		final FuelStationMetrics metrics = FuelStationMetrics.getInstance ();
+		final long start = metrics.begin (FuelStationMetrics.CACHE_WRITE);
+		final File fetched = getFetchedFile (file);
+		final File temp = new File (this.directory, fetched.getName () + ".tmp");
+
+		try {
+			final DataOutputStream out = new DataOutputStream (new FileOutputStream (temp));
+
+			try {
+				out.writeLong (time);
+			} finally {
+				out.close ();
+			}
+
+			if (!temp.renameTo (fetched)) {
+				throw new IOException ("Can't rename " + temp + " to " + fetched);
+			}
+		} catch (final IOException ioe) {
+			// The feed is still cached, it'll just be revalidated again a bit sooner.
+			Log.e (FuelStationCache.class.getName (), "Failed to record revalidation", ioe);
+			temp.delete ();
+		} finally {
+			metrics.end (FuelStationMetrics.CACHE_WRITE, start);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Reads the fetch time kept next to a feed's file by {@link #touch(String, long)}.
+	 *
+	 * @param file The {@link File} the feed is stored in
+	 * @return The fetch time, or 0 if the feed hasn't been revalidated since it was written
+	 */
+	@SuppressWarnings ("all")
+	private static long readFetched (final File file) {
+		long fetched = 0;
+
+		try {
+			final DataInputStream in = new DataInputStream (new FileInputStream (
+					getFetchedFile (file)));
+
+			try {
+				fetched = in.readLong ();
+			} finally {
+				in.close ();
+			}
+		} catch (final IOException ioe) {
+			// There isn't one, or it's unreadable, in which case the feed's own time is used.
+		}
+
+		return fetched;
+	}
+
+	/**
+	 * Removes a feed from the cache.
+	 *
+	 * @param url The URL of the feed
+	 */
+	@SuppressWarnings ("all")
+	public void remove (final String url) {
+		final File file = getFile (url);
+
+		file.delete ();
+		getFetchedFile (file).delete ();
+	}
+
+	/**
+	 * Gets the file that holds a feed's latest fetch time.
+	 *
+	 * @param file The {@link File} the feed is stored in
+	 * @return The {@link File} next to it
+	 */
+	private static File getFetchedFile (final File file) {
+		return new File (file.getParentFile (), file.getName () + FETCHED_SUFFIX);
+	}
+
+	/**
+	 * Gets the file that a feed is stored in.
+	 *
+	 * @param url The URL of the feed
+	 * @return The {@link File} named after a hash of the URL
+	 */
+	private File getFile (final String url) {
+		String name;
+
+		try {
+			final byte[] digest = MessageDigest.getInstance ("SHA-1").digest (url.getBytes ("UTF-8"));
+			final StringBuilder hex = new StringBuilder (digest.length * 2);
+
+			for (final byte b : digest) {
+				hex.append (Character.forDigit ((b >> 4) & 0xF, 16));
+				hex.append (Character.forDigit (b & 0xF, 16));
+			}
+
+			name = hex.toString ();
+		} catch (final NoSuchAlgorithmException nsae) {
+			name = Integer.toHexString (url.hashCode ());
+		} catch (final IOException ioe) {
+			name = Integer.toHexString (url.hashCode ());
+		}
+
+		return new File (this.directory, name);
+	}
+}
@@ -0,0 +1,181 @@
+package au.com.wow.codetestapp;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Passes decoded feeds from the {@link FuelStationService} to the UI, within the process.
+ * <p>
+ * This replaces a system-wide broadcast, which went through the system server and so had to
+ * parcel and unparcel the whole {@link FuelStationList} on every delivery. Here the list is
+ * handed over by reference, on the main thread.
+ * </p>
+ * <p>
+ * Only the latest list for each feed is kept. A subscriber is sent it as soon as it subscribes, so
+ * a screen that appears after a load has finished still gets the result. Subscribers should
+ * unsubscribe when they're paused: anything published in the meantime is simply overtaken by
+ * the next value, rather than being queued up or holding on to a dead screen.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 09/04/2015
+ */
+public class FuelStationChannel {
+
+	/**
+	 * Receives the feeds published to the channel.
+	 */
+	public interface Subscriber {
+
+		/**
+		 * Invoked on the main thread with the latest copy of a feed.
+		 *
+		 * @param url The URL of the feed
+		 * @param list The {@link FuelStationList} decoded from the feed
+		 */
+		void onFuelStations (String url, FuelStationList list);
+	}
+
+	/**
+	 * The channel shared by the whole app.
+	 */
+	private static final FuelStationChannel INSTANCE = new FuelStationChannel ();
+
+	/**
+	 * The {@link Handler} used to deliver the lists on the main thread.
+	 */
+	private final Handler handler = new Handler (Looper.getMainLooper ());
+
+	/**
+	 * The latest list published for each feed, keyed by URL.
+	 */
+	private final Map<String, FuelStationList> latest = new HashMap<String, FuelStationList> ();
+
+	/**
+	 * The subscribers to each feed, keyed by URL. Only touched on the main thread.
+	 */
+	private final Map<String, List<Subscriber>> subscribers =
+			new HashMap<String, List<Subscriber>> ();
+
+	/**
+	 * Constructor.
+	 */
+	FuelStationChannel () {
+		super ();
+	}
+
+	/**
+	 * Gets the channel shared by the whole app.
+	 *
+	 * @return The shared {@link FuelStationChannel}
+	 */
+	public static FuelStationChannel getInstance () {
+		return INSTANCE;
+	}
+
+	/**
+	 * Publishes a new copy of a feed. This may be called on any thread; the subscribers are told on
+	 * the main thread.
+	 *
+	 * @param url The URL of the feed
+	 * @param list The {@link FuelStationList} decoded from the feed
+	 */
+	public void publish (final String url, final FuelStationList list) {
+		final long published = System.nanoTime ();
+
+		synchronized (this) {
+			this.latest.put (url, list);
+		}
+
+		this.handler.post (new Runnable () {
+
+			/**
+			 * Sends the list to the current subscribers, unless it's been overtaken.
+			 */
+			@Override
+			public void run () {
+				if (getLatest (url) == list) {
+					FuelStationMetrics.getInstance ().record (FuelStationMetrics.DELIVERY,
+							System.nanoTime () - published);
+					deliver (url, list);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Gets the latest copy of a feed published to the channel.
+	 *
+	 * @param url The URL of the feed
+	 * @return The latest {@link FuelStationList}, or null if none has been published
+	 */
+	public synchronized FuelStationList getLatest (final String url) {
+		return this.latest.get (url);
+	}
+
+	/**
+	 * Subscribes to a feed. The latest copy, if there is one, is sent straight away. Must be called
+	 * on the main thread.
+	 *
+	 * @param url The URL of the feed
+	 * @param subscriber The {@link Subscriber} to send the feed to
+	 */
+	public void subscribe (final String url, final Subscriber subscriber) {
+		List<Subscriber> current = this.subscribers.get (url);
+
+		if (current == null) {
+			current = new ArrayList<Subscriber> ();
+			this.subscribers.put (url, current);
+		}
+
+		if (!current.contains (subscriber)) {
+			current.add (subscriber);
+		}
+
+		final FuelStationList list = getLatest (url);
+
+		if (list != null) {
+			subscriber.onFuelStations (url, list);
+		}
+	}
+
+	/**
+	 * Unsubscribes from a feed. Must be called on the main thread.
+	 *
+	 * @param url The URL of the feed
+	 * @param subscriber The {@link Subscriber} to stop sending the feed to
+	 */
+	public void unsubscribe (final String url, final Subscriber subscriber) {
+		final List<Subscriber> current = this.subscribers.get (url);
+
+		if (current != null) {
+			current.remove (subscriber);
+
+			if (current.isEmpty ()) {
+				this.subscribers.remove (url);
+			}
+		}
+	}
+
+	/**
+	 * Sends a list to the subscribers to a feed, on the main thread.
+	 *
+	 * @param url The URL of the feed
+	 * @param list The {@link FuelStationList} to send
+	 */
+	private void deliver (final String url, final FuelStationList list) {
+		final List<Subscriber> current = this.subscribers.get (url);
+
+		if (current != null) {
+			// A subscriber may unsubscribe while it's being told.
+			for (final Subscriber subscriber : new ArrayList<Subscriber> (current)) {
+				subscriber.onFuelStations (url, list);
+			}
+		}
+	}
+}
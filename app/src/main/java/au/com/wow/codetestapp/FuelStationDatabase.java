@@ -0,0 +1,400 @@
+package au.com.wow.codetestapp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the stations in a SQLite database, so that they can be queried through indexes.
+ * <p>
+ * The in-memory {@link FuelStationSorter} is what orders the list on screen. This is for the
+ * questions it would have to scan every station to answer, such as the cheapest diesel within five
+ * miles, which the list offers from its menu.
+ * </p>
+ * <p>
+ * Each index is on a sort key followed by the station's position in the feed, which is also the
+ * tie-break, so a sorted query walks an index in order rather than sorting. A station with no value
+ * for the key being sorted by can't be ranked, and is left out of the results.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 12/04/2015
+ */
+public class FuelStationDatabase extends SQLiteOpenHelper {
+
+	/**
+	 * Passed as the maximum distance to include stations however far away they are.
+	 */
+	public static final float ANY_DISTANCE = Float.POSITIVE_INFINITY;
+
+	/**
+	 * The row's ID. This is the station's position in the feed rather than its
+	 * {@link FuelStationList#getId(int) ID}, as two stations' IDs can collide, and neither of them
+	 * should be lost when they do.
+	 */
+	public static final String COLUMN_ID = "_id";
+
+	/**
+	 * The station's ID, from {@link FuelStationList#getId(int)}.
+	 */
+	public static final String COLUMN_STATION_ID = "station_id";
+
+	/**
+	 * The station's position in the feed.
+	 */
+	public static final String COLUMN_POSITION = "position";
+
+	/**
+	 * The station's brand.
+	 */
+	public static final String COLUMN_BRAND = "brand";
+
+	/**
+	 * The station's address.
+	 */
+	public static final String COLUMN_ADDRESS = "address";
+
+	/**
+	 * The distance to the station as text.
+	 */
+	public static final String COLUMN_DISTANCE = "distance";
+
+	/**
+	 * The URL of the station's logo.
+	 */
+	public static final String COLUMN_IMAGE_URL = "image_url";
+
+	/**
+	 * The distance to the station in miles, or null if it isn't known.
+	 */
+	public static final String COLUMN_DISTANCE_VALUE = "distance_value";
+
+	/**
+	 * The time the station's prices were updated, in seconds since the epoch.
+	 */
+	public static final String COLUMN_UPDATED = "updated";
+
+	/**
+	 * The station's latitude, or null if it isn't known.
+	 */
+	public static final String COLUMN_LATITUDE = "latitude";
+
+	/**
+	 * The station's longitude, or null if it isn't known.
+	 */
+	public static final String COLUMN_LONGITUDE = "longitude";
+
+	/**
+	 * The price columns in cents, indexed by grade. Null if the station doesn't sell the grade.
+	 */
+	public static final String[] COLUMN_PRICES = {"regular", "plus", "premium", "diesel"};
+
+	/**
+	 * The name of the database file.
+	 */
+	private static final String NAME = "stations.db";
+
+	/**
+	 * The version of the schema.
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * The table holding the stations.
+	 */
+	private static final String TABLE = "stations";
+
+	/**
+	 * Statement for adding a station, with the columns in the order they're bound.
+	 */
+	private static final String INSERT = "INSERT INTO " + TABLE + " (" + COLUMN_ID + ", "
+			+ COLUMN_STATION_ID + ", " + COLUMN_POSITION + ", " + COLUMN_BRAND + ", "
+			+ COLUMN_ADDRESS + ", " + COLUMN_DISTANCE + ", " + COLUMN_IMAGE_URL + ", "
+			+ COLUMN_DISTANCE_VALUE + ", " + COLUMN_UPDATED + ", " + COLUMN_LATITUDE + ", "
+			+ COLUMN_LONGITUDE + ", " + COLUMN_PRICES[0] + ", " + COLUMN_PRICES[1] + ", "
+			+ COLUMN_PRICES[2] + ", " + COLUMN_PRICES[3]
+			+ ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	/**
+	 * The database shared by the whole app.
+	 */
+	private static FuelStationDatabase instance;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param context The {@link Context} the app is running in
+	 * @param name The name of the database file, or null to keep it in memory
+	 */
+	public FuelStationDatabase (final Context context, final String name) {
+		super (context, name, null, VERSION);
+	}
+
+	/**
+	 * Gets the database shared by the whole app, creating it if necessary.
+	 *
+	 * @param context The {@link Context} the app is running in
+	 * @return The shared {@link FuelStationDatabase}
+	 */
+	public static synchronized FuelStationDatabase getInstance (final Context context) {
+		if (instance == null) {
+			instance = new FuelStationDatabase (context.getApplicationContext (), NAME);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Creates the table and its indexes.
+	 *
+	 * @param db The {@link SQLiteDatabase} to create them in
+	 */
+	@Override
+	public void onCreate (final SQLiteDatabase db) {
+		db.execSQL ("CREATE TABLE " + TABLE + " (" + COLUMN_ID + " INTEGER PRIMARY KEY, "
+				+ COLUMN_STATION_ID + " INTEGER NOT NULL, " + COLUMN_POSITION
+				+ " INTEGER NOT NULL, " + COLUMN_BRAND + " TEXT, "
+				+ COLUMN_ADDRESS + " TEXT, " + COLUMN_DISTANCE + " TEXT, " + COLUMN_IMAGE_URL
+				+ " TEXT, " + COLUMN_DISTANCE_VALUE + " REAL, " + COLUMN_UPDATED + " INTEGER, "
+				+ COLUMN_LATITUDE + " REAL, " + COLUMN_LONGITUDE + " REAL, " + COLUMN_PRICES[0]
+				+ " INTEGER, " + COLUMN_PRICES[1] + " INTEGER, " + COLUMN_PRICES[2] + " INTEGER, "
+				+ COLUMN_PRICES[3] + " INTEGER)");
+		db.execSQL ("CREATE INDEX " + TABLE + "_" + COLUMN_POSITION + " ON " + TABLE + " ("
+				+ COLUMN_POSITION + ")");
+		db.execSQL ("CREATE INDEX " + TABLE + "_" + COLUMN_BRAND + " ON " + TABLE + " ("
+				+ COLUMN_BRAND + " COLLATE NOCASE, " + COLUMN_POSITION + ")");
+		createIndex (db, COLUMN_DISTANCE_VALUE);
+
+		for (final String column : COLUMN_PRICES) {
+			createIndex (db, column);
+		}
+	}
+
+	/**
+	 * Upgrades the schema. The stations can always be downloaded again, so the table is simply
+	 * rebuilt. Version 2 stopped keying the rows on the station IDs, which can collide.
+	 *
+	 * @param db The {@link SQLiteDatabase} to upgrade
+	 * @param oldVersion The version of the schema it has
+	 * @param newVersion The version of the schema it needs
+	 */
+	@Override
+	public void onUpgrade (final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+		db.execSQL ("DROP TABLE IF EXISTS " + TABLE);
+		onCreate (db);
+	}
+
+	/**
+	 * Replaces the stored stations with those in a list. This is done in a single transaction with
+	 * one prepared statement, so readers never see half a feed and the rows aren't each committed
+	 * to disk. Call it on a background thread.
+	 *
+	 * @param list The {@link FuelStationList} to store
+	 */
+	public void replace (final FuelStationList list) {
+		final SQLiteDatabase db = getWritableDatabase ();
+
+		db.beginTransaction ();
+
+		try {
+			db.delete (TABLE, null, null);
+
+			final SQLiteStatement insert = db.compileStatement (INSERT);
+
+			try {
+				for (int i = 0; i < list.getSize (); i++) {
+					bind (insert, list, i);
+					insert.executeInsert ();
+				}
+			} finally {
+				insert.close ();
+			}
+
+			db.setTransactionSuccessful ();
+		} finally {
+			db.endTransaction ();
+		}
+	}
+
+	/**
+	 * Queries the stored stations. Call it on a background thread.
+	 *
+	 * @param query The {@link FuelStationSorter.Query} giving the order and filters
+	 * @param maxDistance The furthest away a station can be, in miles, or {@link #ANY_DISTANCE}
+	 * @return A {@link Cursor} over the matching stations, in order, with every column
+	 */
+	public Cursor query (final FuelStationSorter.Query query, final float maxDistance) {
+		final List<String> args = new ArrayList<String> ();
+		final String sql = buildQuery (query, maxDistance, args);
+
+		return getReadableDatabase ().rawQuery (sql, args.toArray (new String[args.size ()]));
+	}
+
+	/**
+	 * Describes how SQLite will run a query, for checking that it uses the indexes.
+	 *
+	 * @param query The {@link FuelStationSorter.Query} giving the order and filters
+	 * @param maxDistance The furthest away a station can be, in miles, or {@link #ANY_DISTANCE}
+	 * @return The details of each step of the query plan, one per line
+	 */
+	String explain (final FuelStationSorter.Query query, final float maxDistance) {
+		final List<String> args = new ArrayList<String> ();
+		final String sql = buildQuery (query, maxDistance, args);
+		final Cursor cursor = getReadableDatabase ().rawQuery ("EXPLAIN QUERY PLAN " + sql,
+				args.toArray (new String[args.size ()]));
+		final StringBuilder plan = new StringBuilder ();
+
+		try {
+			final int detail = cursor.getColumnIndexOrThrow ("detail");
+
+			while (cursor.moveToNext ()) {
+				plan.append (cursor.getString (detail)).append ('\n');
+			}
+		} finally {
+			cursor.close ();
+		}
+
+		return plan.toString ();
+	}
+
+	/**
+	 * Builds the SQL for a query.
+	 *
+	 * @param query The {@link FuelStationSorter.Query} giving the order and filters
+	 * @param maxDistance The furthest away a station can be, in miles, or {@link #ANY_DISTANCE}
+	 * @param args The list to add the arguments for the SQL to
+	 * @return The SQL
+	 */
+	private static String buildQuery (final FuelStationSorter.Query query, final float maxDistance,
+			final List<String> args) {
+		final StringBuilder where = new StringBuilder ();
+		final String orderBy;
+		final int order = query.getOrder ();
+
+		if (order == FuelStationSorter.BRAND) {
+			orderBy = COLUMN_BRAND + " COLLATE NOCASE, " + COLUMN_POSITION;
+			and (where, COLUMN_BRAND + " IS NOT NULL");
+		} else if (order == FuelStationSorter.DISTANCE) {
+			orderBy = COLUMN_DISTANCE_VALUE + ", " + COLUMN_POSITION;
+			and (where, COLUMN_DISTANCE_VALUE + " IS NOT NULL");
+		} else if (order >= FuelStationSorter.PRICE
+				&& order < FuelStationSorter.PRICE + FuelStationList.GRADES) {
+			final String price = COLUMN_PRICES[order - FuelStationSorter.PRICE];
+
+			orderBy = price + ", " + COLUMN_POSITION;
+			and (where, price + " IS NOT NULL");
+		} else {
+			orderBy = COLUMN_POSITION;
+		}
+
+		if (query.getGrade () != FuelStationSorter.ANY_GRADE) {
+			and (where, COLUMN_PRICES[query.getGrade ()] + " IS NOT NULL");
+		}
+
+		if (query.getBrand () != null) {
+			and (where, COLUMN_BRAND + " = ? COLLATE NOCASE");
+			args.add (query.getBrand ());
+		}
+
+		if (maxDistance < ANY_DISTANCE) {
+			and (where, COLUMN_DISTANCE_VALUE + " <= ?");
+			args.add (Float.toString (maxDistance));
+		}
+
+		return "SELECT * FROM " + TABLE + (where.length () > 0 ? " WHERE " + where : "")
+				+ " ORDER BY " + orderBy;
+	}
+
+	/**
+	 * Adds a condition to a WHERE clause.
+	 *
+	 * @param where The WHERE clause so far
+	 * @param condition The condition to add
+	 */
+	private static void and (final StringBuilder where, final String condition) {
+		if (where.length () > 0) {
+			where.append (" AND ");
+		}
+
+		where.append (condition);
+	}
+
+	/**
+	 * Creates an index on a sort key, followed by the position as the tie-break.
+	 *
+	 * @param db The {@link SQLiteDatabase} to create it in
+	 * @param column The column holding the sort key
+	 */
+	private static void createIndex (final SQLiteDatabase db, final String column) {
+		db.execSQL ("CREATE INDEX " + TABLE + "_" + column + " ON " + TABLE + " (" + column + ", "
+				+ COLUMN_POSITION + ")");
+	}
+
+	/**
+	 * Binds a station to the insert statement.
+	 *
+	 * @param insert The compiled {@link #INSERT} statement
+	 * @param list The {@link FuelStationList} holding the station
+	 * @param index The position of the station in the list
+	 */
+	private static void bind (final SQLiteStatement insert, final FuelStationList list,
+			final int index) {
+		insert.clearBindings ();
+		insert.bindLong (1, index);
+		insert.bindLong (2, list.getId (index));
+		insert.bindLong (3, index);
+		// The brand is filtered and sorted on, so a missing one is stored as null. The address and
+		// distance text are only ever displayed, so they're stored as they're shown.
+		bindString (insert, 4, list.getBrandValue (index));
+		bindString (insert, 5, list.getAddress (index));
+		bindString (insert, 6, list.getDistance (index));
+		bindString (insert, 7, list.getImageUrl (index));
+		bindFloat (insert, 8, list.getDistanceValue (index));
+		insert.bindLong (9, list.getUpdated (index));
+		bindFloat (insert, 10, list.getLatitude (index));
+		bindFloat (insert, 11, list.getLongitude (index));
+
+		for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+			final int cents = list.getPrice (grade, index);
+
+			if (cents != FuelStationRecord.NO_PRICE) {
+				insert.bindLong (12 + grade, cents);
+			}
+		}
+	}
+
+	/**
+	 * Binds a {@link String} that may be missing. The bindings have been cleared, so a missing
+	 * value is left as null.
+	 *
+	 * @param insert The {@link SQLiteStatement} to bind to
+	 * @param column The position of the parameter, starting from 1
+	 * @param value The value, or null
+	 */
+	private static void bindString (final SQLiteStatement insert, final int column,
+			final String value) {
+		if (value != null) {
+			insert.bindString (column, value);
+		}
+	}
+
+	/**
+	 * Binds a number that may be missing. The bindings have been cleared, so a missing value is
+	 * left as null.
+	 *
+	 * @param insert The {@link SQLiteStatement} to bind to
+	 * @param column The position of the parameter, starting from 1
+	 * @param value The value, or {@link Float#NaN}
+	 */
+	private static void bindFloat (final SQLiteStatement insert, final int column,
+			final float value) {
+		if (!Float.isNaN (value)) {
+			insert.bindDouble (column, value);
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package au.com.wow.codetestapp;
+
+import com.kizio.reader.JSONStreamReader;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The changes to a feed since a version the app already has, as sent by a server that supports
+ * delta encoding.
+ * <p>
+ * A delta looks like <code>{"count": 50, "item": [{...}], "removed": [{...}]}</code>. The
+ * <code>item</code> array holds every station that's new or has changed, in full and in the same
+ * form as the feed. The <code>removed</code> array holds the stations that have gone, with just
+ * their brand and address, as that's all a station's ID is made from. The <code>count</code> is the
+ * number of stations in the new version, which is used to check that the delta really did apply
+ * to the copy the app has.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 17/04/2015
+ */
+final class FuelStationDelta {
+
+	/**
+	 * The value of the <code>count</code> field when the server didn't send one.
+	 */
+	static final int UNKNOWN_COUNT = -1;
+
+	/**
+	 * The new and changed stations.
+	 */
+	private final FuelStationList changed;
+
+	/**
+	 * The stations that have been removed.
+	 */
+	private final FuelStationList removedStations;
+
+	/**
+	 * The IDs of the stations that have been removed.
+	 */
+	private final FuelStationIdTable removed;
+
+	/**
+	 * The number of stations that have been removed.
+	 */
+	private final int removedCount;
+
+	/**
+	 * The number of stations in the new version of the feed, or {@link #UNKNOWN_COUNT}.
+	 */
+	private final int count;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param changedList The new and changed stations
+	 * @param removedList The stations that have been removed
+	 * @param newCount The number of stations in the new version of the feed, or
+	 *                 {@link #UNKNOWN_COUNT}
+	 */
+	FuelStationDelta (final FuelStationList changedList, final FuelStationList removedList,
+			final int newCount) {
+		super ();
+
+		this.changed = changedList;
+		this.removedStations = removedList;
+		this.removed = new FuelStationIdTable (removedList.getSize ());
+		this.count = newCount;
+
+		int distinct = 0;
+
+		for (int i = 0; i < removedList.getSize (); i++) {
+			if (this.removed.put (removedList.getId (i), i)) {
+				distinct++;
+			}
+		}
+
+		this.removedCount = distinct;
+	}
+
+	/**
+	 * Reads a delta.
+	 *
+	 * @param reader The {@link JSONStreamReader} positioned at the start of the delta
+	 * @param notApplicable The text to display when there's no value set
+	 * @return The {@link FuelStationDelta}
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the delta isn't valid JSON
+	 */
+	static FuelStationDelta read (final JSONStreamReader reader, final String notApplicable)
+			throws IOException, JSONException {
+		final FuelStationList.Builder changedBuilder = new FuelStationList.Builder (notApplicable);
+		final FuelStationList.Builder removedBuilder = new FuelStationList.Builder (notApplicable);
+		int newCount = UNKNOWN_COUNT;
+
+		reader.beginObject ();
+
+		while (reader.hasNext ()) {
+			final String name = reader.nextName ();
+			final JSONStreamReader.Token token = reader.peek ();
+
+			if ("item".equals (name) && token == JSONStreamReader.Token.BEGIN_ARRAY) {
+				new FuelStationParser (changedBuilder).parseItems (reader);
+			} else if ("removed".equals (name) && token == JSONStreamReader.Token.BEGIN_ARRAY) {
+				new FuelStationParser (removedBuilder).parseItems (reader);
+			} else if ("count".equals (name) && token == JSONStreamReader.Token.NUMBER) {
+				newCount = (int) reader.nextDouble ();
+			} else {
+				reader.skipValue ();
+			}
+		}
+
+		reader.endObject ();
+
+		return new FuelStationDelta (changedBuilder.build (), removedBuilder.build (), newCount);
+	}
+
+	/**
+	 * Gets the number of stations that are new or have changed.
+	 *
+	 * @return The number of changed stations
+	 */
+	int getChangedCount () {
+		return this.changed.getSize ();
+	}
+
+	/**
+	 * Gets the number of stations that have been removed.
+	 *
+	 * @return The number of removed stations
+	 */
+	int getRemovedCount () {
+		return this.removedCount;
+	}
+
+	/**
+	 * Applies the delta to the app's copy of the feed.
+	 * <p>
+	 * A {@link FuelStationList} is shared between threads without locking, so it can't be changed
+	 * where it is. Instead the stations are copied into a new list in the same order: a changed
+	 * station takes the place of its old version, a removed one is left out, and new ones go on the
+	 * end. The copy is column by column, and doesn't look at any JSON. A station whose
+	 * <code>pupdate</code> time is older in the delta than in the copy is left as it was, so
+	 * applying the same delta twice does no harm. A station that's listed as both changed and
+	 * removed is removed, wherever it was, so it neither keeps its place nor goes on the end.
+	 * </p>
+	 * <p>
+	 * Stations are looked up by ID, but an ID is only a hash, so every match is confirmed by
+	 * comparing the brand and address. A station whose ID happens to match a different one is
+	 * new. If two stations in the copy share an ID there's no telling which one a change is for,
+	 * and the same goes for two in the delta, so then the delta isn't applied at all.
+	 * </p>
+	 *
+	 * @param base The copy of the feed the delta was made against
+	 * @param notApplicable The text to display when there's no value set
+	 * @param directory The directory to write oversized parcels to, or null
+	 * @return The new version of the feed, or null if the delta doesn't fit the copy, or the
+	 *         stations can't be told apart by their IDs, in which case the whole feed has to be
+	 *         downloaded again
+	 */
+	FuelStationList apply (final FuelStationList base, final String notApplicable,
+			final File directory) {
+		final int changedCount = this.changed.getSize ();
+		final FuelStationIdTable changedIds = new FuelStationIdTable (changedCount);
+		final boolean[] applied = new boolean[changedCount];
+		final FuelStationIdTable baseIds = new FuelStationIdTable (base.getSize ());
+		final FuelStationList.Builder builder = new FuelStationList.Builder (notApplicable,
+				directory);
+
+		for (int i = 0; i < base.getSize (); i++) {
+			if (!baseIds.put (base.getId (i), i)) {
+				return null;
+			}
+		}
+
+		// If a station is in the delta twice, only the first copy counts, and removing it wins.
+		for (int i = 0; i < changedCount; i++) {
+			final long id = this.changed.getId (i);
+
+			if (changedIds.put (id, i)) {
+				applied[i] = isRemoved (this.changed, i);
+			} else if (FuelStationList.isSameStation (this.changed, changedIds.get (id),
+					this.changed, i)) {
+				applied[i] = true;
+			} else {
+				return null;
+			}
+		}
+
+		for (int i = 0; i < base.getSize (); i++) {
+			int change = changedIds.get (base.getId (i));
+
+			if (isRemoved (base, i)) {
+				continue;
+			}
+
+			if (change >= 0 && !FuelStationList.isSameStation (this.changed, change, base, i)) {
+				// Another station with the same ID, so it goes on the end as a new one.
+				change = -1;
+			}
+
+			if (change >= 0 && this.changed.getUpdated (change) >= base.getUpdated (i)) {
+				builder.add (this.changed, change);
+			} else {
+				builder.add (base, i);
+			}
+
+			if (change >= 0) {
+				applied[change] = true;
+			}
+		}
+
+		for (int i = 0; i < changedCount; i++) {
+			if (!applied[i]) {
+				builder.add (this.changed, i);
+			}
+		}
+
+		final FuelStationList result = builder.build ();
+
+		// A count that doesn't match means the delta was made against some other version.
+		return this.count == UNKNOWN_COUNT || this.count == result.getSize () ? result : null;
+	}
+
+	/**
+	 * Checks whether a station is one of the ones the delta removes.
+	 *
+	 * @param list The {@link FuelStationList} the station is in
+	 * @param index The position of the station in the list
+	 * @return True if the station has been removed, false otherwise
+	 */
+	private boolean isRemoved (final FuelStationList list, final int index) {
+		final int removedIndex = this.removed.get (list.getId (index));
+
+		return removedIndex >= 0 && FuelStationList.isSameStation (this.removedStations,
+				removedIndex, list, index);
+	}
+}
@@ -0,0 +1,204 @@
+package au.com.wow.codetestapp;
+
+import java.util.Arrays;
+
+/**
+ * The differences between two displayed station lists, so that a refresh can update only the rows
+ * that have actually changed.
+ * <p>
+ * Stations are matched up by their stable ID, which is derived from the brand and address. A
+ * station that appears in both lists at the same display position, but with a different price,
+ * distance, logo or update time, is <em>changed</em> and only needs its row rebinding. Anything
+ * that moves rows around, such as a station being added, removed or reordered, makes the diff
+ * <em>structural</em>, in which case the whole list has to be rebound.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 05/04/2015
+ */
+public final class FuelStationDiff {
+
+	/**
+	 * The display positions of the rows whose contents have changed.
+	 */
+	private final int[] changed;
+
+	/**
+	 * The number of stations in the new list that weren't in the old one.
+	 */
+	private final int inserted;
+
+	/**
+	 * The number of stations in the old list that aren't in the new one.
+	 */
+	private final int removed;
+
+	/**
+	 * True if rows have been added, removed or moved.
+	 */
+	private final boolean structural;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param changedPositions The display positions of the rows whose contents have changed
+	 * @param insertedCount The number of stations added
+	 * @param removedCount The number of stations removed
+	 * @param isStructural True if rows have been added, removed or moved
+	 */
+	private FuelStationDiff (final int[] changedPositions, final int insertedCount,
+			final int removedCount, final boolean isStructural) {
+		super ();
+
+		this.changed = changedPositions;
+		this.inserted = insertedCount;
+		this.removed = removedCount;
+		this.structural = isStructural;
+	}
+
+	/**
+	 * Works out the differences between two displayed lists. This is linear in the size of the
+	 * lists, but it still isn't something to do on the main thread.
+	 *
+	 * @param oldList The {@link FuelStationList} currently displayed
+	 * @param oldOrder The display order of the old list, or null for feed order
+	 * @param newList The {@link FuelStationList} about to be displayed
+	 * @param newOrder The display order of the new list, or null for feed order
+	 * @return The {@link FuelStationDiff}
+	 */
+	public static FuelStationDiff compute (final FuelStationList oldList, final int[] oldOrder,
+			final FuelStationList newList, final int[] newOrder) {
+		final int oldCount = oldOrder != null ? oldOrder.length : oldList.getSize ();
+		final int newCount = newOrder != null ? newOrder.length : newList.getSize ();
+		final FuelStationIdTable table = new FuelStationIdTable (oldCount);
+		boolean isStructural = oldCount != newCount;
+
+		for (int position = 0; position < oldCount; position++) {
+			final int index = getIndex (oldOrder, position);
+
+			// Two stations sharing an ID can't be told apart, so just rebind everything.
+			if (!table.put (oldList.getId (index), index)) {
+				isStructural = true;
+			}
+		}
+
+		final int[] changedPositions = new int[newCount];
+		int changedCount = 0;
+		int matched = 0;
+
+		for (int position = 0; position < newCount; position++) {
+			final int index = getIndex (newOrder, position);
+			final long id = newList.getId (index);
+			final int oldIndex = table.get (id);
+
+			if (oldIndex < 0) {
+				isStructural = true;
+			} else {
+				matched++;
+
+				if (!isStructural && oldList.getId (getIndex (oldOrder, position)) != id) {
+					isStructural = true;
+				}
+
+				if (!isSameContent (oldList, oldIndex, newList, index)) {
+					changedPositions[changedCount++] = position;
+				}
+			}
+		}
+
+		return new FuelStationDiff (Arrays.copyOf (changedPositions, changedCount),
+				newCount - matched, oldCount - matched, isStructural);
+	}
+
+	/**
+	 * Gets the display positions of the rows whose contents have changed.
+	 *
+	 * @return The changed positions, in ascending order
+	 */
+	public int[] getChanged () {
+		return this.changed;
+	}
+
+	/**
+	 * Gets the number of stations in the new list that weren't in the old one.
+	 *
+	 * @return The number of stations added
+	 */
+	public int getInserted () {
+		return this.inserted;
+	}
+
+	/**
+	 * Gets the number of stations in the old list that aren't in the new one.
+	 *
+	 * @return The number of stations removed
+	 */
+	public int getRemoved () {
+		return this.removed;
+	}
+
+	/**
+	 * Checks whether rows have been added, removed or moved, in which case the whole list has to
+	 * be rebound rather than just the changed rows.
+	 *
+	 * @return True if the change is structural, false otherwise
+	 */
+	public boolean isStructural () {
+		return this.structural;
+	}
+
+	/**
+	 * Checks whether nothing visible has changed at all.
+	 *
+	 * @return True if no rows need rebinding, false otherwise
+	 */
+	public boolean isEmpty () {
+		return !this.structural && this.changed.length == 0;
+	}
+
+	/**
+	 * Converts a display position into a position in a list.
+	 *
+	 * @param order The display order, or null for feed order
+	 * @param position The display position
+	 * @return The position in the list
+	 */
+	private static int getIndex (final int[] order, final int position) {
+		return order != null ? order[position] : position;
+	}
+
+	/**
+	 * Checks whether two stations would be displayed identically.
+	 *
+	 * @param oldList The old {@link FuelStationList}
+	 * @param oldIndex The position of the station in the old list
+	 * @param newList The new {@link FuelStationList}
+	 * @param newIndex The position of the station in the new list
+	 * @return True if every field matches, false otherwise
+	 */
+	private static boolean isSameContent (final FuelStationList oldList, final int oldIndex,
+			final FuelStationList newList, final int newIndex) {
+		for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+			if (oldList.getPrice (grade, oldIndex) != newList.getPrice (grade, newIndex)) {
+				return false;
+			}
+		}
+
+		return oldList.getUpdated (oldIndex) == newList.getUpdated (newIndex)
+				&& isEqual (oldList.getBrandValue (oldIndex), newList.getBrandValue (newIndex))
+				&& isEqual (oldList.getAddress (oldIndex), newList.getAddress (newIndex))
+				&& isEqual (oldList.getDistance (oldIndex), newList.getDistance (newIndex))
+				&& isEqual (oldList.getImageUrl (oldIndex), newList.getImageUrl (newIndex));
+	}
+
+	/**
+	 * Compares two strings, either of which may be null.
+	 *
+	 * @param lhs The first {@link String}
+	 * @param rhs The second {@link String}
+	 * @return True if they're equal, false otherwise
+	 */
+	private static boolean isEqual (final String lhs, final String rhs) {
+		return lhs == null ? rhs == null : lhs.equals (rhs);
+	}
+}
@@ -0,0 +1,352 @@
+package au.com.wow.codetestapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.kizio.net.HttpClient;
+import com.kizio.reader.JSONStreamReader;
+import com.kizio.reader.StringReader;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.nio.CharBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Downloads a fuel station feed, revalidating any cached copy with a conditional request.
+ * <p>
+ * If the cached copy has an <code>ETag</code> or <code>Last-Modified</code> date then they're sent
+ * as <code>If-None-Match</code> and <code>If-Modified-Since</code>. When the server answers
+ * <code>304 Not Modified</code> the cached stations are reused, and the only cost is the header
+ * round trip.
+ * </p>
+ * <p>
+ * Usually only a few prices move between refreshes, so the request also offers to take a delta
+ * against the cached version, using the <code>A-IM</code> header from RFC 3229. A server that can
+ * answers <code>226 IM Used</code> with just the changed stations (see {@link FuelStationDelta}),
+ * which are applied to the cached list. A server that can't just ignores the header and sends the
+ * whole feed. If a delta doesn't fit the cached copy, because it was made against some other
+ * version or is garbled, the chain is broken, and the whole feed is downloaded again.
+ * </p>
+ * <p>
+ * The requests go through an {@link HttpClient}, so the feed comes compressed, over a pooled
+ * connection, with timeouts and retries.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 31/03/2015
+ */
+public class FuelStationFetcher {
+
+	/**
+	 * The name of the delta encoding, sent in the <code>A-IM</code> header.
+	 */
+	static final String DELTA_ENCODING = "station-delta";
+
+	/**
+	 * The status code of a delta response, <code>226 IM Used</code>.
+	 */
+	static final int HTTP_IM_USED = 226;
+
+	/**
+	 * The {@link FuelStationCache} that feeds are revalidated against and stored in.
+	 */
+	private final FuelStationCache cache;
+
+	/**
+	 * The {@link Context} the app is running in.
+	 */
+	private final Context context;
+
+	/**
+	 * The {@link HttpClient} used to make the requests.
+	 */
+	private final HttpClient client;
+
+	/**
+	 * The {@link FuelStationParallelParser} that decodes big feeds across several cores.
+	 */
+	private final FuelStationParallelParser parallelParser;
+
+	/**
+	 * Constructor, using an {@link HttpClient} with the default timeouts and retries.
+	 *
+	 * @param appContext The {@link Context} the app is running in
+	 * @param feedCache The {@link FuelStationCache} to revalidate against and store feeds in
+	 */
+	public FuelStationFetcher (final Context appContext, final FuelStationCache feedCache) {
+		this (appContext, feedCache, new HttpClient ());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param appContext The {@link Context} the app is running in
+	 * @param feedCache The {@link FuelStationCache} to revalidate against and store feeds in
+	 * @param httpClient The {@link HttpClient} used to make the requests
+	 */
+	public FuelStationFetcher (final Context appContext, final FuelStationCache feedCache,
+			final HttpClient httpClient) {
+		super ();
+
+		this.context = appContext;
+		this.cache = feedCache;
+		this.client = httpClient;
+		this.parallelParser = FuelStationParallelParser.getInstance ();
+	}
+
+	/**
+	 * Fetches the feed at the specified URL, revalidating the supplied cached copy if there is
+	 * one. The result is written back to the cache.
+	 *
+	 * @param urlString The URL of the feed
+	 * @param cached The cached copy of the feed, or null
+	 * @return The {@link FuelStationCache.Entry} for the feed. This is the cached entry with a new
+	 *         fetch time if the server reported that the feed hadn't changed
+	 * @throws IOException If there's an IO error, or the server returns an error
+	 * @throws JSONException If the feed isn't valid JSON
+	 */
+	public FuelStationCache.Entry fetch (final String urlString, final FuelStationCache.Entry cached)
+			throws IOException, JSONException {
+		return fetch (urlString, cached, null);
+	}
+
+	/**
+	 * Fetches the feed at the specified URL, as {@link #fetch(String, FuelStationCache.Entry)}
+	 * does, also passing each station to a pager as it's decoded. This lets the first stations be
+	 * shown while the rest of the feed is still arriving. The complete list is then built by the
+	 * pager, rather than alongside it, so the download doesn't hold the whole feed in memory.
+	 * <p>
+	 * Note that the <code>@SuppressWarnings</code> annotation is to prevent the warning that the
+	 * <code>try / catch</code> block can be simplified for Java 7. Unfortunately the version of
+	 * Android I'm targetting doesn't support that yet.
+	 * </p>
+	 *
+	 * @param urlString The URL of the feed
+	 * @param cached The cached copy of the feed, or null
+	 * @param pager The {@link FuelStationPager} to pass the stations to as they're decoded, or
+	 *              null. Nothing is passed to it if the feed hasn't changed
+	 * @return The {@link FuelStationCache.Entry} for the feed
+	 * @throws IOException If there's an IO error, or the server returns an error
+	 * @throws JSONException If the feed isn't valid JSON
+	 */
+	@SuppressWarnings ("all")
+	public FuelStationCache.Entry fetch (final String urlString, final FuelStationCache.Entry cached,
+			final FuelStationPager pager) throws IOException, JSONException {
+		final Map<String, String> headers = new HashMap<String, String> ();
+		final FuelStationCache.Entry result;
+
+		if (cached != null && cached.getETag () != null) {
+			headers.put ("If-None-Match", cached.getETag ());
+
+			// The ETag names the version a delta would be made against, so it's needed too.
+			headers.put ("A-IM", DELTA_ENCODING);
+		}
+
+		if (cached != null && cached.getLastModified () != null) {
+			headers.put ("If-Modified-Since", cached.getLastModified ());
+		}
+
+		final FuelStationMetrics metrics = FuelStationMetrics.getInstance ();
+		final long start = metrics.begin (FuelStationMetrics.CONNECT);
+		final HttpClient.Response response;
+
+		try {
+			response = this.client.get (urlString, headers);
+		} finally {
+			metrics.end (FuelStationMetrics.CONNECT, start);
+		}
+
+		try {
+			final int code = response.getCode ();
+			final long now = System.currentTimeMillis ();
+
+			if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+				result = cached.revalidated (now);
+			} else if (code == HTTP_IM_USED && cached != null) {
+				final FuelStationList list = handleDelta (urlString, response, cached);
+
+				result = list != null ? new FuelStationCache.Entry (list,
+						response.getHeader ("ETag"), response.getHeader ("Last-Modified"), now)
+						: null;
+			} else if (code == HttpURLConnection.HTTP_OK) {
+				result = new FuelStationCache.Entry (handleResponse (response, pager),
+						response.getHeader ("ETag"), response.getHeader ("Last-Modified"), now);
+			} else {
+				throw new IOException ("Unexpected response " + code + " from " + urlString);
+			}
+		} finally {
+			// Closing the response, rather than disconnecting, lets the connection be reused.
+			response.close ();
+		}
+
+		Log.d (FuelStationFetcher.class.getName (), urlString + ": " + response.getWireBytes ()
+				+ " bytes on the wire, " + response.getDecodedBytes () + " decoded");
+		metrics.count (FuelStationMetrics.WIRE_BYTES, response.getWireBytes ());
+		metrics.count (FuelStationMetrics.DECODED_BYTES, response.getDecodedBytes ());
+
+		if (result == null) {
+			// The delta didn't fit, so the whole feed is downloaded instead. Without a cached copy
+			// there's nothing to send a delta against, so the server has to send all of it.
+			return fetch (urlString, null, pager);
+		}
+
+		// If nothing but the fetch time has changed then that's all that's written.
+		if (cached == null || result.getList () != cached.getList ()
+				|| !this.cache.touch (urlString, result.getFetched ())) {
+			this.cache.put (urlString, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reads a delta, and applies it to the cached copy of the feed.
+	 *
+	 * @param urlString The URL of the feed
+	 * @param response The <code>226 IM Used</code> {@link HttpClient.Response} to read
+	 * @param cached The cached copy of the feed
+	 * @return The new version of the feed, or null if the delta doesn't fit the cached copy
+	 * @throws IOException If there's an IO error
+	 */
+	private FuelStationList handleDelta (final String urlString,
+			final HttpClient.Response response, final FuelStationCache.Entry cached)
+			throws IOException {
+		final String encoding = response.getHeader ("IM");
+		final String base = response.getHeader ("Delta-Base");
+
+		if (encoding == null || !DELTA_ENCODING.equals (encoding.trim ())
+				|| (base != null && !base.equals (cached.getETag ()))) {
+			Log.w (FuelStationFetcher.class.getName (), urlString + ": a " + encoding
+					+ " delta against " + base + " doesn't fit " + cached.getETag ());
+			return null;
+		}
+
+		final String charset = StringReader.getCharset (response.getContentType (),
+				StringReader.DEFAULT_CHARSET);
+		final String notApplicable = this.context.getString (R.string.not_applicable);
+		final FuelStationMetrics metrics = FuelStationMetrics.getInstance ();
+		final long start = metrics.begin (FuelStationMetrics.DECODE);
+		final FuelStationList list;
+		final FuelStationDelta delta;
+
+		try {
+			delta = FuelStationDelta.read (new JSONStreamReader (new StringReader (
+					new InputStreamReader (response.getBody (), charset),
+					response.getContentLength ())), notApplicable);
+			list = delta.apply (cached.getList (), notApplicable, this.context.getCacheDir ());
+		} catch (final JSONException je) {
+			Log.w (FuelStationFetcher.class.getName (), urlString + ": garbled delta", je);
+			return null;
+		} finally {
+			metrics.end (FuelStationMetrics.DECODE, start);
+		}
+
+		if (list == null) {
+			Log.w (FuelStationFetcher.class.getName (), urlString
+					+ ": the delta doesn't fit the cached copy");
+			return null;
+		}
+
+		Log.d (FuelStationFetcher.class.getName (), urlString + ": delta of "
+				+ delta.getChangedCount () + " changed and " + delta.getRemovedCount ()
+				+ " removed stations");
+		metrics.count (FuelStationMetrics.STATIONS, delta.getChangedCount ());
+
+		return list;
+	}
+
+	/**
+	 * Reads the response body, decoded with the charset the server names.
+	 * <p>
+	 * The stations are normally decoded straight from the connection as they arrive, so only one
+	 * station's worth of text is held at a time. With a pager they go to it alone, so it can show
+	 * the first ones long before the body has finished downloading, and it builds the complete
+	 * list from its spill file afterwards.
+	 * </p>
+	 * <p>
+	 * The exception is a big feed with no pager, on a phone with more than one core to decode
+	 * it with. Then the whole body is read into a buffer and split across the cores. Up to the
+	 * parallel parser's threshold is read first, and the rest only if there's more, so a small feed
+	 * is never held longer than it's needed. This goes by the number of characters actually read
+	 * rather than the <code>Content-Length</code>, since that's missing whenever the body is
+	 * gzipped, which most of the big feeds are.
+	 * </p>
+	 *
+	 * @param response The {@link HttpClient.Response} to read
+	 * @param pager The {@link FuelStationPager} to pass the stations to as they're decoded, or null
+	 * @return A {@link FuelStationList} containing the server's response
+	 * @throws IOException If there is an IO error
+	 * @throws JSONException If the response isn't valid JSON
+	 */
+	private FuelStationList handleResponse (final HttpClient.Response response,
+			final FuelStationPager pager) throws IOException, JSONException {
+		final String charset = StringReader.getCharset (response.getContentType (),
+				StringReader.DEFAULT_CHARSET);
+		final int length = response.getContentLength ();
+		final StringReader input = new StringReader (new InputStreamReader (response.getBody (),
+				charset), length);
+		final FuelStationMetrics metrics = FuelStationMetrics.getInstance ();
+
+		if (pager == null && this.parallelParser.isParallel ()) {
+			final int threshold = this.parallelParser.getThreshold ();
+			final long start = metrics.begin (FuelStationMetrics.DOWNLOAD);
+			CharBuffer document;
+
+			try {
+				document = input.readChars (threshold);
+
+				if (document.remaining () >= threshold) {
+					document = input.readChars (document);
+				}
+			} finally {
+				metrics.end (FuelStationMetrics.DOWNLOAD, start);
+			}
+
+			// The chunks are built as they're decoded, so this counts as decoding throughout.
+			final long decodeStart = metrics.begin (FuelStationMetrics.DECODE);
+			final FuelStationList list;
+
+			try {
+				list = this.parallelParser.parse (document, this.context.getString (
+						R.string.not_applicable), this.context.getCacheDir ());
+			} finally {
+				metrics.end (FuelStationMetrics.DECODE, decodeStart);
+			}
+
+			metrics.count (FuelStationMetrics.STATIONS, list.getSize ());
+
+			return list;
+		}
+
+		// Here the download and the decode overlap, so it's all counted as decoding.
+		final JSONStreamReader reader = new JSONStreamReader (input);
+		final FuelStationList.Builder builder = pager == null
+				? new FuelStationList.Builder (this.context) : null;
+
+		final long decodeStart = metrics.begin (FuelStationMetrics.DECODE);
+
+		try {
+			new FuelStationParser (pager != null ? pager : builder).parse (reader);
+		} finally {
+			metrics.end (FuelStationMetrics.DECODE, decodeStart);
+		}
+
+		final long buildStart = metrics.begin (FuelStationMetrics.BUILD);
+		final FuelStationList list;
+
+		try {
+			list = pager != null ? pager.buildList () : builder.build ();
+		} finally {
+			metrics.end (FuelStationMetrics.BUILD, buildStart);
+		}
+
+		metrics.count (FuelStationMetrics.STATIONS, list.getSize ());
+
+		return list;
+	}
+}
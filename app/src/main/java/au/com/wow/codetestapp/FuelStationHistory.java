@@ -0,0 +1,975 @@
+package au.com.wow.codetestapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records how each station's prices change from one refresh to the next.
+ * <p>
+ * The history is an append-only log. Each refresh that changes anything adds one block, holding
+ * only the stations whose prices moved, and only the grades that moved for each of those. Every
+ * number is a variable-length integer: the time since the last block, the gap to the next changed
+ * station's index, and each price as a zig-zag coded difference in cents from the last one. A
+ * station's ID is only written once, in the block it first appears in. A typical change takes
+ * three to six bytes, and a refresh where nothing changed takes none, however long the run.
+ * </p>
+ * <p>
+ * As the log is read, each station's changes are also copied into a series of its own, so finding
+ * a station's trend only means decoding its own changes, not the whole log.
+ * </p>
+ * <p>
+ * Once the oldest block is more than a month past the retention period, the log is compacted.
+ * Everything older than the retention period is folded into a single block holding the prices in
+ * force at that time. A station that sold nothing then and hasn't changed since is dropped.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 13/04/2015
+ */
+public class FuelStationHistory {
+
+	/**
+	 * The default time that history is kept for, in seconds.
+	 */
+	public static final long DEFAULT_RETENTION = 366L * 24 * 60 * 60;
+
+	/**
+	 * How far past the retention period the oldest block can get before the log is compacted, in
+	 * seconds. This stops a compaction happening on every refresh.
+	 */
+	private static final long COMPACTION_SLACK = 30L * 24 * 60 * 60;
+
+	/**
+	 * The version of the log file layout. Files written by other versions are discarded.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The name of the log file, within the app's files directory.
+	 */
+	private static final String FILE_NAME = "price_history";
+
+	/**
+	 * The number of stations to allocate space for initially.
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The history shared by the whole app.
+	 */
+	private static FuelStationHistory instance;
+
+	/**
+	 * The changes in the price of one grade at one station.
+	 */
+	public static final class Trend {
+
+		/**
+		 * The time of each change, in seconds since the epoch.
+		 */
+		private final long[] times;
+
+		/**
+		 * The price after each change in cents, or {@link FuelStationRecord#NO_PRICE}.
+		 */
+		private final int[] prices;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param changeTimes The time of each change
+		 * @param changePrices The price after each change
+		 */
+		Trend (final long[] changeTimes, final int[] changePrices) {
+			super ();
+
+			this.times = changeTimes;
+			this.prices = changePrices;
+		}
+
+		/**
+		 * Gets the number of changes.
+		 *
+		 * @return The number of changes, oldest first
+		 */
+		public int getCount () {
+			return this.times.length;
+		}
+
+		/**
+		 * Gets the time of a change.
+		 *
+		 * @param index The position of the change, oldest first
+		 * @return The time of the change, in seconds since the epoch
+		 */
+		public long getTime (final int index) {
+			return this.times[index];
+		}
+
+		/**
+		 * Gets the price after a change.
+		 *
+		 * @param index The position of the change, oldest first
+		 * @return The price in cents, or {@link FuelStationRecord#NO_PRICE} if it stopped being sold
+		 */
+		public int getPrice (final int index) {
+			return this.prices[index];
+		}
+	}
+
+	/**
+	 * A growable array of bytes, with the variable-length integer coding used by the log.
+	 */
+	private static final class Bytes {
+
+		/**
+		 * The bytes.
+		 */
+		byte[] data;
+
+		/**
+		 * The number of bytes written, or the position of the next byte to read.
+		 */
+		int length;
+
+		/**
+		 * Constructor for writing.
+		 *
+		 * @param capacity The number of bytes to allocate space for initially
+		 */
+		Bytes (final int capacity) {
+			this (new byte[capacity], 0);
+		}
+
+		/**
+		 * Constructor.
+		 *
+		 * @param bytes The bytes
+		 * @param position The number of bytes written, or the position of the next byte to read
+		 */
+		Bytes (final byte[] bytes, final int position) {
+			super ();
+
+			this.data = bytes;
+			this.length = position;
+		}
+
+		/**
+		 * Writes a byte.
+		 *
+		 * @param value The byte to write
+		 */
+		void write (final int value) {
+			if (this.length == this.data.length) {
+				this.data = Arrays.copyOf (this.data, this.data.length * 2);
+			}
+
+			this.data[this.length++] = (byte) value;
+		}
+
+		/**
+		 * Copies some bytes in.
+		 *
+		 * @param bytes The array holding the bytes
+		 * @param offset The position of the first byte to copy
+		 * @param count The number of bytes to copy
+		 */
+		void write (final byte[] bytes, final int offset, final int count) {
+			if (this.length + count > this.data.length) {
+				this.data = Arrays.copyOf (this.data, Math.max (this.data.length * 2,
+						this.length + count));
+			}
+
+			System.arraycopy (bytes, offset, this.data, this.length, count);
+			this.length += count;
+		}
+
+		/**
+		 * Writes a non-negative number, seven bits per byte with the top bit set on all but the
+		 * last.
+		 *
+		 * @param value The number to write
+		 */
+		void writeVarint (final long value) {
+			long remaining = value;
+
+			while ((remaining & ~0x7FL) != 0) {
+				write ((int) (remaining & 0x7F) | 0x80);
+				remaining >>>= 7;
+			}
+
+			write ((int) remaining);
+		}
+
+		/**
+		 * Writes a number that may be negative, zig-zag coded so that small negative numbers are
+		 * short too.
+		 *
+		 * @param value The number to write
+		 */
+		void writeSigned (final int value) {
+			writeVarint (((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+		}
+
+		/**
+		 * Writes a station ID.
+		 *
+		 * @param value The station ID
+		 */
+		void writeLong (final long value) {
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				write ((int) (value >>> shift));
+			}
+		}
+
+		/**
+		 * Reads a byte.
+		 *
+		 * @return The byte, from 0 to 255
+		 */
+		int read () {
+			return this.data[this.length++] & 0xFF;
+		}
+
+		/**
+		 * Reads a number written by {@link #writeVarint(long)}.
+		 *
+		 * @return The number
+		 */
+		long readVarint () {
+			long value = 0;
+			int shift = 0;
+			int next;
+
+			do {
+				next = read ();
+				value |= (long) (next & 0x7F) << shift;
+				shift += 7;
+			} while ((next & 0x80) != 0);
+
+			return value;
+		}
+
+		/**
+		 * Reads a number written by {@link #writeSigned(int)}.
+		 *
+		 * @return The number
+		 */
+		int readSigned () {
+			final int zigzag = (int) readVarint ();
+
+			return (zigzag >>> 1) ^ -(zigzag & 1);
+		}
+
+		/**
+		 * Reads a station ID.
+		 *
+		 * @return The station ID
+		 */
+		long readLong () {
+			long value = 0;
+
+			for (int i = 0; i < 8; i++) {
+				value = (value << 8) | read ();
+			}
+
+			return value;
+		}
+
+		/**
+		 * Skips over the price changes following a grade mask.
+		 *
+		 * @param mask The mask of the grades that changed
+		 */
+		void skipPrices (final int mask) {
+			for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+				if ((mask & (1 << grade)) != 0) {
+					readVarint ();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The log file.
+	 */
+	private final File file;
+
+	/**
+	 * The time that history is kept for, in seconds.
+	 */
+	private final long retention;
+
+	/**
+	 * Whether the log has been read yet.
+	 */
+	private boolean isLoaded;
+
+	/**
+	 * The length of the log file, in bytes.
+	 */
+	private long fileLength;
+
+	/**
+	 * The time of the first block, or 0 if there isn't one.
+	 */
+	private long firstTime;
+
+	/**
+	 * The time of the last block, or 0 if there isn't one.
+	 */
+	private long lastTime;
+
+	/**
+	 * The number of stations seen.
+	 */
+	private int stations;
+
+	/**
+	 * The index of each station, keyed by ID.
+	 */
+	private final Map<Long, Integer> indexes = new HashMap<Long, Integer> ();
+
+	/**
+	 * The ID of each station.
+	 */
+	private long[] ids = new long[INITIAL_CAPACITY];
+
+	/**
+	 * The current price of each grade at each station, in cents plus one, so that 0 means it isn't
+	 * sold. Indexed by grade and then station.
+	 */
+	private final int[][] current = new int[FuelStationList.GRADES][INITIAL_CAPACITY];
+
+	/**
+	 * The time of each station's last change.
+	 */
+	private long[] changed = new long[INITIAL_CAPACITY];
+
+	/**
+	 * Each station's changes: the time since its last change, then the grade mask and prices as
+	 * they are in the log.
+	 */
+	private Bytes[] series = new Bytes[INITIAL_CAPACITY];
+
+	/**
+	 * Constructor.
+	 *
+	 * @param logFile The log file
+	 * @param retentionSeconds The time that history is kept for, in seconds
+	 */
+	public FuelStationHistory (final File logFile, final long retentionSeconds) {
+		super ();
+
+		this.file = logFile;
+		this.retention = retentionSeconds;
+	}
+
+	/**
+	 * Gets the history shared by the whole app, creating it if necessary.
+	 *
+	 * @param context The {@link Context} the app is running in
+	 * @return The shared {@link FuelStationHistory}
+	 */
+	public static synchronized FuelStationHistory getInstance (final Context context) {
+		if (instance == null) {
+			instance = new FuelStationHistory (new File (context.getFilesDir (), FILE_NAME),
+					DEFAULT_RETENTION);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Records the prices in a refresh. Only the changes are written, and nothing at all if there
+	 * aren't any. Call it on a background thread.
+	 * <p>
+	 * Stations are told apart by their IDs, which are only hashes. The log doesn't hold brands or
+	 * addresses, so when two stations in the list share an ID there's no telling which series is
+	 * whose, and neither of them is recorded rather than mixing their prices together.
+	 * </p>
+	 *
+	 * @param list The {@link FuelStationList} from the refresh
+	 * @param time The time of the refresh, in seconds since the epoch
+	 * @return True if anything changed, false otherwise
+	 * @throws IOException If the log couldn't be written
+	 */
+	public synchronized boolean record (final FuelStationList list, final long time)
+			throws IOException {
+		load ();
+
+		// The prices as they will be after this refresh, starting from the current ones.
+		final int count = list.getSize ();
+		final long[] newIds = new long[count];
+		final int[][] next = new int[FuelStationList.GRADES][];
+		int newStations = 0;
+
+		for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+			next[grade] = Arrays.copyOf (this.current[grade], this.stations + count);
+		}
+
+		final boolean[] ambiguous = findSharedIds (list);
+
+		for (int i = 0; i < count; i++) {
+			if (ambiguous[i]) {
+				continue;
+			}
+
+			final long id = list.getId (i);
+			Integer index = this.indexes.get (id);
+
+			if (index == null) {
+				// Numbered as they will be when the block is applied.
+				index = this.stations + newStations;
+				newIds[newStations++] = id;
+				this.indexes.put (id, index);
+			}
+
+			for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+				next[grade][index] = list.getPrice (grade, i) + 1;
+			}
+		}
+
+		// Taken out again, so that replaying the block is what adds them.
+		for (int i = 0; i < newStations; i++) {
+			this.indexes.remove (newIds[i]);
+		}
+
+		final Bytes block = new Bytes (256);
+		final Bytes changes = new Bytes (256);
+		int changeCount = 0;
+		int previous = 0;
+
+		for (int index = 0; index < this.stations + newStations; index++) {
+			int mask = 0;
+
+			for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+				if (next[grade][index] != price (grade, index)) {
+					mask |= 1 << grade;
+				}
+			}
+
+			if (mask != 0) {
+				changes.writeVarint (index - previous);
+				changes.write (mask);
+
+				for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+					if ((mask & (1 << grade)) != 0) {
+						changes.writeSigned (next[grade][index] - price (grade, index));
+					}
+				}
+
+				changeCount++;
+				previous = index;
+			}
+		}
+
+		if (changeCount == 0) {
+			return false;
+		}
+
+		// The clock can go backwards, but the log can't.
+		block.writeVarint (Math.max (time - this.lastTime, 0));
+		block.writeVarint (newStations);
+
+		for (int i = 0; i < newStations; i++) {
+			block.writeLong (newIds[i]);
+		}
+
+		block.writeVarint (changeCount);
+		block.write (changes.data, 0, changes.length);
+
+		append (block);
+		apply (block.data, block.length);
+
+		if (this.lastTime - this.firstTime > this.retention + COMPACTION_SLACK) {
+			compact (this.lastTime - this.retention);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Finds the stations in a list whose IDs are shared with another station.
+	 *
+	 * @param list The {@link FuelStationList} to check
+	 * @return An array with an entry for each station, true where its ID isn't unique
+	 */
+	private static boolean[] findSharedIds (final FuelStationList list) {
+		final int count = list.getSize ();
+		final FuelStationIdTable ids = new FuelStationIdTable (count);
+		final boolean[] shared = new boolean[count];
+
+		for (int i = 0; i < count; i++) {
+			final long id = list.getId (i);
+
+			if (!ids.put (id, i)) {
+				final int first = ids.get (id);
+
+				// The same station twice is harmless, it only gets the one series.
+				if (!FuelStationList.isSameStation (list, first, list, i)) {
+					Log.w (FuelStationHistory.class.getName (), "Not recording "
+							+ list.getAddress (i) + ", its ID is the same as "
+							+ list.getAddress (first) + "'s");
+					shared[first] = true;
+					shared[i] = true;
+				}
+			}
+		}
+
+		return shared;
+	}
+
+	/**
+	 * Gets the changes in the price of one grade at a station.
+	 *
+	 * @param id The station's ID, from {@link FuelStationList#getId(int)}
+	 * @param grade The grade of fuel, such as {@link FuelStationList#DIESEL}
+	 * @return The {@link Trend}, which is empty if the station has never been seen
+	 * @throws IOException If the log couldn't be read
+	 */
+	public synchronized Trend getTrend (final long id, final int grade) throws IOException {
+		load ();
+
+		final Integer index = this.indexes.get (id);
+
+		if (index == null) {
+			return new Trend (new long[0], new int[0]);
+		}
+
+		final Bytes changes = this.series[index];
+		final Bytes in = new Bytes (changes.data, 0);
+		long[] times = new long[16];
+		int[] prices = new int[16];
+		int count = 0;
+		long time = 0;
+		int price = 0;
+
+		while (in.length < changes.length) {
+			time += in.readVarint ();
+
+			final int mask = in.read ();
+
+			for (int g = 0; g < FuelStationList.GRADES; g++) {
+				if ((mask & (1 << g)) != 0) {
+					final int delta = in.readSigned ();
+
+					if (g == grade) {
+						price += delta;
+
+						if (count == times.length) {
+							times = Arrays.copyOf (times, count * 2);
+							prices = Arrays.copyOf (prices, count * 2);
+						}
+
+						times[count] = time;
+						prices[count++] = price - 1;
+					}
+				}
+			}
+		}
+
+		return new Trend (Arrays.copyOf (times, count), Arrays.copyOf (prices, count));
+	}
+
+	/**
+	 * Gets the size of the log.
+	 *
+	 * @return The size of the log file, in bytes
+	 * @throws IOException If the log couldn't be read
+	 */
+	public synchronized long getSize () throws IOException {
+		load ();
+
+		return this.fileLength;
+	}
+
+	/**
+	 * Gets a station's current price for a grade.
+	 *
+	 * @param grade The grade of fuel
+	 * @param index The index of the station, which may not have been added yet
+	 * @return The price in cents plus one, or 0 if it isn't sold
+	 */
+	private int price (final int grade, final int index) {
+		return index < this.stations ? this.current[grade][index] : 0;
+	}
+
+	/**
+	 * Reads the log into memory, if it hasn't been already. A block that was only partly written,
+	 * because the app died while writing it, is cut off.
+	 *
+	 * @throws IOException If the log couldn't be read
+	 */
+	@SuppressWarnings ("all")
+	private void load () throws IOException {
+		if (this.isLoaded) {
+			return;
+		}
+
+		this.isLoaded = true;
+
+		final DataInputStream in;
+
+		try {
+			in = new DataInputStream (new BufferedInputStream (new FileInputStream (this.file)));
+		} catch (final FileNotFoundException fnfe) {
+			return;
+		}
+
+		long good = 0;
+
+		try {
+			if (in.readInt () != VERSION) {
+				Log.e (FuelStationHistory.class.getName (), "Discarding an old price history");
+				good = -1;
+			} else {
+				good = 4;
+
+				while (true) {
+					final byte[] block = new byte[in.readInt ()];
+
+					in.readFully (block);
+					apply (block, block.length);
+					good += 4 + block.length;
+				}
+			}
+		} catch (final EOFException eofe) {
+			// The end of the log, or of the last complete block in it.
+		} finally {
+			in.close ();
+		}
+
+		final RandomAccessFile out = new RandomAccessFile (this.file, "rw");
+
+		try {
+			out.setLength (Math.max (good, 0));
+		} finally {
+			out.close ();
+		}
+
+		this.fileLength = Math.max (good, 0);
+	}
+
+	/**
+	 * Appends a block to the log file.
+	 *
+	 * @param block The block to append
+	 * @throws IOException If the log couldn't be written
+	 */
+	@SuppressWarnings ("all")
+	private void append (final Bytes block) throws IOException {
+		final OutputStream out = new FileOutputStream (this.file, true);
+
+		try {
+			final Bytes framed = new Bytes (block.length + 8);
+
+			if (this.fileLength == 0) {
+				writeInt (framed, VERSION);
+			}
+
+			writeInt (framed, block.length);
+			framed.write (block.data, 0, block.length);
+			out.write (framed.data, 0, framed.length);
+			this.fileLength += framed.length;
+		} finally {
+			out.close ();
+		}
+	}
+
+	/**
+	 * Writes an <code>int</code> in the same way as {@link java.io.DataOutput#writeInt(int)}.
+	 *
+	 * @param out The {@link Bytes} to write to
+	 * @param value The value to write
+	 */
+	private static void writeInt (final Bytes out, final int value) {
+		for (int shift = 24; shift >= 0; shift -= 8) {
+			out.write (value >>> shift);
+		}
+	}
+
+	/**
+	 * Applies a block from the log to the prices and series held in memory.
+	 *
+	 * @param data The array holding the block
+	 * @param length The length of the block
+	 */
+	private void apply (final byte[] data, final int length) {
+		final Bytes in = new Bytes (data, 0);
+		final long time = this.lastTime + in.readVarint ();
+		final int newStations = (int) in.readVarint ();
+
+		for (int i = 0; i < newStations; i++) {
+			add (in.readLong ());
+		}
+
+		final int changeCount = (int) in.readVarint ();
+		int index = 0;
+
+		for (int i = 0; i < changeCount; i++) {
+			index += (int) in.readVarint ();
+
+			// The mask and prices are copied into the station's series just as they are.
+			final int start = in.length;
+			final int mask = in.read ();
+
+			for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+				if ((mask & (1 << grade)) != 0) {
+					this.current[grade][index] += in.readSigned ();
+				}
+			}
+
+			final Bytes changes = this.series[index];
+
+			changes.writeVarint (time - this.changed[index]);
+			changes.write (data, start, in.length - start);
+			this.changed[index] = time;
+		}
+
+		if (this.firstTime == 0) {
+			this.firstTime = time;
+		}
+
+		this.lastTime = time;
+	}
+
+	/**
+	 * Adds a station.
+	 *
+	 * @param id The station's ID
+	 */
+	private void add (final long id) {
+		if (this.stations == this.ids.length) {
+			final int capacity = this.ids.length * 2;
+
+			this.ids = Arrays.copyOf (this.ids, capacity);
+			this.changed = Arrays.copyOf (this.changed, capacity);
+			this.series = Arrays.copyOf (this.series, capacity);
+
+			for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+				this.current[grade] = Arrays.copyOf (this.current[grade], capacity);
+			}
+		}
+
+		final int index = this.stations++;
+
+		this.ids[index] = id;
+		this.series[index] = new Bytes (16);
+		this.indexes.put (id, index);
+	}
+
+	/**
+	 * Rewrites the log, folding everything before a time into a single block of the prices in
+	 * force at that time. The changes after it are copied across as they are, since each one is
+	 * relative to the price before it, and that's what the new first block holds.
+	 *
+	 * @param cutoff The time to fold the history up to, in seconds since the epoch
+	 * @throws IOException If the log couldn't be written
+	 */
+	private void compact (final long cutoff) throws IOException {
+		final int count = this.stations;
+		final int[][] base = new int[FuelStationList.GRADES][count];
+		final int[] renumbered = new int[count];
+		final Bytes first = new Bytes (1024);
+		final Bytes firstChanges = new Bytes (1024);
+
+		// Each later change: its time, the station's new index, and where its bytes are.
+		long[] times = new long[256];
+		int[] owners = new int[256];
+		int[] starts = new int[256];
+		int[] ends = new int[256];
+		int changes = 0;
+		int kept = 0;
+
+		for (int index = 0; index < count; index++) {
+			final Bytes station = this.series[index];
+			final Bytes in = new Bytes (station.data, 0);
+			final int firstChange = changes;
+			long time = 0;
+
+			while (in.length < station.length) {
+				time += in.readVarint ();
+
+				final int start = in.length;
+				final int mask = in.read ();
+
+				if (time <= cutoff) {
+					for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+						if ((mask & (1 << grade)) != 0) {
+							base[grade][index] += in.readSigned ();
+						}
+					}
+				} else {
+					in.skipPrices (mask);
+
+					if (changes == times.length) {
+						times = Arrays.copyOf (times, changes * 2);
+						owners = Arrays.copyOf (owners, changes * 2);
+						starts = Arrays.copyOf (starts, changes * 2);
+						ends = Arrays.copyOf (ends, changes * 2);
+					}
+
+					times[changes] = time;
+					owners[changes] = index;
+					starts[changes] = start;
+					ends[changes++] = in.length;
+				}
+			}
+
+			boolean isSold = false;
+
+			for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+				isSold |= base[grade][index] != 0;
+			}
+
+			renumbered[index] = isSold || changes > firstChange ? kept++ : -1;
+		}
+
+		// The first block adds every station that's kept, and sets the prices in force.
+		first.writeVarint (cutoff);
+		first.writeVarint (kept);
+
+		int baseChanges = 0;
+		int previous = 0;
+
+		for (int index = 0; index < count; index++) {
+			if (renumbered[index] >= 0) {
+				first.writeLong (this.ids[index]);
+
+				int mask = 0;
+
+				for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+					if (base[grade][index] != 0) {
+						mask |= 1 << grade;
+					}
+				}
+
+				if (mask != 0) {
+					firstChanges.writeVarint (renumbered[index] - previous);
+					firstChanges.write (mask);
+
+					for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+						if ((mask & (1 << grade)) != 0) {
+							firstChanges.writeSigned (base[grade][index]);
+						}
+					}
+
+					baseChanges++;
+					previous = renumbered[index];
+				}
+			}
+		}
+
+		first.writeVarint (baseChanges);
+		first.write (firstChanges.data, 0, firstChanges.length);
+
+		// Then the later changes, grouped back into blocks by time, and by station within each.
+		final long[] order = new long[changes];
+
+		for (int i = 0; i < changes; i++) {
+			order[i] = ((times[i] - cutoff) << 32) | i;
+		}
+
+		Arrays.sort (order);
+
+		final File temporary = new File (this.file.getPath () + ".tmp");
+		final Bytes out = new Bytes (4096);
+
+		writeInt (out, VERSION);
+		writeInt (out, first.length);
+		out.write (first.data, 0, first.length);
+
+		int i = 0;
+		long previousTime = cutoff;
+
+		while (i < changes) {
+			final long time = times[(int) order[i]];
+			int end = i;
+
+			while (end < changes && times[(int) order[end]] == time) {
+				end++;
+			}
+
+			final Bytes block = new Bytes (256);
+
+			block.writeVarint (time - previousTime);
+			block.writeVarint (0);
+			block.writeVarint (end - i);
+			previous = 0;
+
+			for (; i < end; i++) {
+				final int change = (int) order[i];
+				final int index = renumbered[owners[change]];
+
+				block.writeVarint (index - previous);
+				block.write (this.series[owners[change]].data, starts[change],
+						ends[change] - starts[change]);
+				previous = index;
+			}
+
+			writeInt (out, block.length);
+			out.write (block.data, 0, block.length);
+			previousTime = time;
+		}
+
+		writeFile (temporary, out);
+
+		if (!temporary.renameTo (this.file)) {
+			throw new IOException ("Failed to replace " + this.file);
+		}
+
+		reset ();
+		load ();
+	}
+
+	/**
+	 * Writes a file in one go.
+	 *
+	 * @param target The file to write
+	 * @param bytes The contents of the file
+	 * @throws IOException If the file couldn't be written
+	 */
+	@SuppressWarnings ("all")
+	private static void writeFile (final File target, final Bytes bytes) throws IOException {
+		final OutputStream out = new FileOutputStream (target);
+
+		try {
+			out.write (bytes.data, 0, bytes.length);
+		} finally {
+			out.close ();
+		}
+	}
+
+	/**
+	 * Forgets everything held in memory, so that the log is read again.
+	 */
+	private void reset () {
+		this.isLoaded = false;
+		this.fileLength = 0;
+		this.firstTime = 0;
+		this.lastTime = 0;
+		this.stations = 0;
+		this.indexes.clear ();
+
+		for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+			Arrays.fill (this.current[grade], 0);
+		}
+
+		Arrays.fill (this.changed, 0);
+	}
+}
@@ -0,0 +1,97 @@
+package au.com.wow.codetestapp;
+
+/**
+ * A hash table from station IDs to positions, using open addressing so that nothing is boxed.
+ *
+ * @author Graeme Sutherland
+ * @since 11/04/2015
+ */
+final class FuelStationIdTable {
+
+	/**
+	 * The IDs.
+	 */
+	private final long[] ids;
+
+	/**
+	 * The positions, plus one so that zero can mark an empty slot.
+	 */
+	private final int[] positions;
+
+	/**
+	 * Masks a hash down to a slot.
+	 */
+	private final int mask;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param count The number of IDs that will be added
+	 */
+	FuelStationIdTable (final int count) {
+		super ();
+
+		// Keep the table no more than half full, so the probe sequences stay short.
+		final int capacity = Integer.highestOneBit (Math.max (count, 1) * 2 - 1) << 1;
+
+		this.ids = new long[capacity];
+		this.positions = new int[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Adds an ID.
+	 *
+	 * @param id The station ID
+	 * @param position The station's position
+	 * @return True if it was added, false if the ID was already there
+	 */
+	boolean put (final long id, final int position) {
+		int slot = hash (id);
+
+		while (this.positions[slot] != 0) {
+			if (this.ids[slot] == id) {
+				return false;
+			}
+
+			slot = (slot + 1) & this.mask;
+		}
+
+		this.ids[slot] = id;
+		this.positions[slot] = position + 1;
+
+		return true;
+	}
+
+	/**
+	 * Looks up an ID.
+	 *
+	 * @param id The station ID
+	 * @return The station's position, or -1 if the ID isn't there
+	 */
+	int get (final long id) {
+		int slot = hash (id);
+
+		while (this.positions[slot] != 0) {
+			if (this.ids[slot] == id) {
+				return this.positions[slot] - 1;
+			}
+
+			slot = (slot + 1) & this.mask;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Works out the first slot to try for an ID.
+	 *
+	 * @param id The station ID
+	 * @return The slot
+	 */
+	private int hash (final long id) {
+		final int mixed = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+
+		return (mixed ^ (mixed >>> 16)) & this.mask;
+	}
+}
@@ -0,0 +1,482 @@
+package au.com.wow.codetestapp;
+
+import java.util.Arrays;
+
+/**
+ * A spatial index over the stations in a {@link FuelStationList}, for finding the stations nearest
+ * to the device and working out how far away they are without downloading the feed again.
+ * <p>
+ * The stations are projected onto a flat plane measured in miles, which is accurate to well
+ * under one percent over the few tens of miles a feed covers, and bucketed into a uniform grid
+ * sized to hold a couple of stations per cell. The cells are stored as one array of station
+ * positions sorted by cell, with an offset table, so the whole index is three arrays and a query
+ * allocates nothing but its result. A nearest query searches outwards ring by ring and stops as
+ * soon as no unvisited cell could hold anything closer; a radius query only visits the cells the
+ * circle overlaps.
+ * </p>
+ * <p>
+ * Stations without coordinates aren't indexed, and are never returned by a query.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 10/04/2015
+ */
+public final class FuelStationIndex {
+
+	/**
+	 * The mean radius of the Earth, in miles. The feed's distances are in miles too.
+	 */
+	private static final double EARTH_RADIUS_MILES = 3958.8;
+
+	/**
+	 * The length of one degree of latitude, in miles.
+	 */
+	private static final double MILES_PER_DEGREE = Math.PI * EARTH_RADIUS_MILES / 180;
+
+	/**
+	 * The average number of stations aimed for in each cell.
+	 */
+	private static final int STATIONS_PER_CELL = 2;
+
+	/**
+	 * The most cells along either side of the grid, so a stray coordinate can't blow it up.
+	 */
+	private static final int MAX_CELLS_PER_SIDE = 512;
+
+	/**
+	 * Masks the position of a station out of a packed distance key.
+	 */
+	private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+	/**
+	 * The list that was indexed.
+	 */
+	private final FuelStationList list;
+
+	/**
+	 * The cosine of the latitude that the plane is centred on, which scales the longitudes.
+	 */
+	private final double scale;
+
+	/**
+	 * The projected position of each station, in miles east, or NaN if it isn't indexed.
+	 */
+	private final double[] xs;
+
+	/**
+	 * The projected position of each station, in miles north, or NaN if it isn't indexed.
+	 */
+	private final double[] ys;
+
+	/**
+	 * The positions of the indexed stations in the list, sorted by cell.
+	 */
+	private final int[] cells;
+
+	/**
+	 * Where each cell starts in {@link #cells}, with one extra entry marking the end of the last.
+	 */
+	private final int[] cellStarts;
+
+	/**
+	 * The west edge of the grid, in miles.
+	 */
+	private final double minX;
+
+	/**
+	 * The south edge of the grid, in miles.
+	 */
+	private final double minY;
+
+	/**
+	 * The length of each side of a cell, in miles.
+	 */
+	private final double cellSize;
+
+	/**
+	 * The number of columns of cells.
+	 */
+	private final int columns;
+
+	/**
+	 * The number of rows of cells.
+	 */
+	private final int rows;
+
+	/**
+	 * Constructor. This builds the index, which is linear in the size of the list.
+	 *
+	 * @param fuelStationList The {@link FuelStationList} to index
+	 */
+	public FuelStationIndex (final FuelStationList fuelStationList) {
+		super ();
+
+		final int size = fuelStationList.getSize ();
+		double latitudeSum = 0;
+		int count = 0;
+
+		this.list = fuelStationList;
+		this.xs = new double[size];
+		this.ys = new double[size];
+
+		for (int i = 0; i < size; i++) {
+			if (isLocated (fuelStationList, i)) {
+				latitudeSum += fuelStationList.getLatitude (i);
+				count++;
+			}
+		}
+
+		this.scale = Math.cos (Math.toRadians (count > 0 ? latitudeSum / count : 0));
+
+		double minimumX = Double.MAX_VALUE;
+		double minimumY = Double.MAX_VALUE;
+		double maximumX = -Double.MAX_VALUE;
+		double maximumY = -Double.MAX_VALUE;
+
+		for (int i = 0; i < size; i++) {
+			if (isLocated (fuelStationList, i)) {
+				this.xs[i] = projectX (fuelStationList.getLongitude (i));
+				this.ys[i] = projectY (fuelStationList.getLatitude (i));
+				minimumX = Math.min (minimumX, this.xs[i]);
+				minimumY = Math.min (minimumY, this.ys[i]);
+				maximumX = Math.max (maximumX, this.xs[i]);
+				maximumY = Math.max (maximumY, this.ys[i]);
+			} else {
+				this.xs[i] = Double.NaN;
+				this.ys[i] = Double.NaN;
+			}
+		}
+
+		if (count == 0) {
+			minimumX = 0;
+			minimumY = 0;
+			maximumX = 0;
+			maximumY = 0;
+		}
+
+		final double width = maximumX - minimumX;
+		final double height = maximumY - minimumY;
+		final double area = Math.max (width * height, 1e-6);
+		final double side = Math.sqrt (area * STATIONS_PER_CELL / Math.max (count, 1));
+		final double longest = Math.max (width, height);
+
+		// Stations strung out along a road make for a thin grid; don't let its cells get too small.
+		this.cellSize = Math.max (Math.max (side, longest / MAX_CELLS_PER_SIDE), 1e-3);
+		this.minX = minimumX;
+		this.minY = minimumY;
+		this.columns = Math.min ((int) (width / this.cellSize) + 1, MAX_CELLS_PER_SIDE);
+		this.rows = Math.min ((int) (height / this.cellSize) + 1, MAX_CELLS_PER_SIDE);
+		this.cellStarts = new int[this.columns * this.rows + 1];
+		this.cells = new int[count];
+
+		// A counting sort by cell: count, then turn the counts into offsets, then place.
+		for (int i = 0; i < size; i++) {
+			if (!Double.isNaN (this.xs[i])) {
+				this.cellStarts[getCell (this.xs[i], this.ys[i]) + 1]++;
+			}
+		}
+
+		for (int cell = 0; cell < this.columns * this.rows; cell++) {
+			this.cellStarts[cell + 1] += this.cellStarts[cell];
+		}
+
+		final int[] next = Arrays.copyOf (this.cellStarts, this.cellStarts.length - 1);
+
+		for (int i = 0; i < size; i++) {
+			if (!Double.isNaN (this.xs[i])) {
+				this.cells[next[getCell (this.xs[i], this.ys[i])]++] = i;
+			}
+		}
+	}
+
+	/**
+	 * Gets the list that was indexed.
+	 *
+	 * @return The indexed {@link FuelStationList}
+	 */
+	public FuelStationList getList () {
+		return this.list;
+	}
+
+	/**
+	 * Gets the number of stations in the index.
+	 *
+	 * @return The number of stations that have coordinates
+	 */
+	public int getCount () {
+		return this.cells.length;
+	}
+
+	/**
+	 * Finds the stations nearest to a point.
+	 *
+	 * @param latitude The latitude of the point, in degrees
+	 * @param longitude The longitude of the point, in degrees
+	 * @param k The most stations to return
+	 * @return The positions in the list of up to <code>k</code> stations, nearest first
+	 */
+	public int[] nearest (final double latitude, final double longitude, final int k) {
+		final int wanted = Math.min (k, this.cells.length);
+		final double x = projectX (longitude);
+		final double y = projectY (latitude);
+		final int column = clamp ((int) Math.floor ((x - this.minX) / this.cellSize), this.columns);
+		final int row = clamp ((int) Math.floor ((y - this.minY) / this.cellSize), this.rows);
+		final int maxRing = Math.max (this.columns, this.rows);
+		final double[] best = new double[wanted];
+		final int[] result = new int[wanted];
+		int found = 0;
+
+		if (wanted == 0) {
+			return result;
+		}
+
+		for (int ring = 0; ring <= maxRing; ring++) {
+			for (int r = row - ring; r <= row + ring; r++) {
+				if (r < 0 || r >= this.rows) {
+					continue;
+				}
+
+				// Only the edge of the ring is new; the inside was covered by the smaller rings.
+				final int step = r == row - ring || r == row + ring ? 1 : Math.max (ring * 2, 1);
+
+				for (int c = column - ring; c <= column + ring; c += step) {
+					if (c < 0 || c >= this.columns) {
+						continue;
+					}
+
+					final int cell = r * this.columns + c;
+
+					for (int j = this.cellStarts[cell]; j < this.cellStarts[cell + 1]; j++) {
+						final int index = this.cells[j];
+						final double distance = planeDistance (index, x, y);
+
+						if (found < wanted) {
+							found = insert (best, result, found, distance, index);
+						} else if (distance < best[wanted - 1]) {
+							insert (best, result, wanted - 1, distance, index);
+						}
+					}
+				}
+			}
+
+			// Anything in a cell outside this ring is at least this far away.
+			if (found == wanted && best[wanted - 1] <= ring * this.cellSize) {
+				break;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Finds the stations within a distance of a point.
+	 *
+	 * @param latitude The latitude of the point, in degrees
+	 * @param longitude The longitude of the point, in degrees
+	 * @param radius The distance, in miles
+	 * @return The positions in the list of the stations within the distance, nearest first
+	 */
+	public int[] within (final double latitude, final double longitude, final double radius) {
+		final double x = projectX (longitude);
+		final double y = projectY (latitude);
+		final int firstColumn = clamp ((int) Math.floor ((x - radius - this.minX) / this.cellSize),
+				this.columns);
+		final int lastColumn = clamp ((int) Math.floor ((x + radius - this.minX) / this.cellSize),
+				this.columns);
+		final int firstRow = clamp ((int) Math.floor ((y - radius - this.minY) / this.cellSize),
+				this.rows);
+		final int lastRow = clamp ((int) Math.floor ((y + radius - this.minY) / this.cellSize),
+				this.rows);
+		long[] packed = new long[16];
+		int count = 0;
+
+		for (int r = firstRow; r <= lastRow; r++) {
+			for (int c = firstColumn; c <= lastColumn; c++) {
+				final int cell = r * this.columns + c;
+
+				for (int j = this.cellStarts[cell]; j < this.cellStarts[cell + 1]; j++) {
+					final int index = this.cells[j];
+					final double distance = planeDistance (index, x, y);
+
+					if (distance <= radius) {
+						if (count == packed.length) {
+							packed = Arrays.copyOf (packed, count * 2);
+						}
+
+						// Non-negative floats sort the same way as their bits, so one long sort will do.
+						packed[count++] = ((long) Float.floatToIntBits ((float) distance) << 32) | index;
+					}
+				}
+			}
+		}
+
+		Arrays.sort (packed, 0, count);
+
+		final int[] result = new int[count];
+
+		for (int i = 0; i < count; i++) {
+			result[i] = (int) (packed[i] & INDEX_MASK);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Works out the distance from a point to every station in the list.
+	 *
+	 * @param latitude The latitude of the point, in degrees
+	 * @param longitude The longitude of the point, in degrees
+	 * @return The distance to each station in miles, or {@link Float#NaN} for a station without
+	 *         coordinates, indexed by position in the list
+	 */
+	public float[] getDistances (final double latitude, final double longitude) {
+		final double x = projectX (longitude);
+		final double y = projectY (latitude);
+		final float[] distances = new float[this.xs.length];
+
+		for (int i = 0; i < distances.length; i++) {
+			distances[i] = Double.isNaN (this.xs[i]) ? Float.NaN : (float) planeDistance (i, x, y);
+		}
+
+		return distances;
+	}
+
+	/**
+	 * Creates a copy of the indexed list with the distances measured from a point, such as the
+	 * device's location. Stations without coordinates keep the distance from the feed.
+	 *
+	 * @param latitude The latitude of the point, in degrees
+	 * @param longitude The longitude of the point, in degrees
+	 * @return The relocated {@link FuelStationList}
+	 */
+	public FuelStationList relocate (final double latitude, final double longitude) {
+		final float[] distances = getDistances (latitude, longitude);
+		final String[] texts = new String[distances.length];
+
+		for (int i = 0; i < distances.length; i++) {
+			if (Float.isNaN (distances[i])) {
+				distances[i] = this.list.getDistanceValue (i);
+				texts[i] = Float.isNaN (distances[i]) ? null : this.list.getDistance (i);
+			} else {
+				texts[i] = formatDistance (distances[i]);
+			}
+		}
+
+		return this.list.withDistances (texts, distances);
+	}
+
+	/**
+	 * Formats a distance to two decimal places, so small movements don't change every row.
+	 *
+	 * @param miles The distance in miles
+	 * @return The formatted distance
+	 */
+	static String formatDistance (final float miles) {
+		final long hundredths = Math.round (miles * 100.0);
+		final long fraction = hundredths % 100;
+
+		return (hundredths / 100) + (fraction < 10 ? ".0" : ".") + fraction;
+	}
+
+	/**
+	 * Checks whether a station has coordinates.
+	 *
+	 * @param fuelStationList The {@link FuelStationList} holding the station
+	 * @param index The position of the station in the list
+	 * @return True if the station can be indexed, false otherwise
+	 */
+	private static boolean isLocated (final FuelStationList fuelStationList, final int index) {
+		return !Float.isNaN (fuelStationList.getLatitude (index))
+				&& !Float.isNaN (fuelStationList.getLongitude (index));
+	}
+
+	/**
+	 * Projects a longitude onto the plane.
+	 *
+	 * @param longitude The longitude, in degrees
+	 * @return The position, in miles east
+	 */
+	private double projectX (final double longitude) {
+		return longitude * MILES_PER_DEGREE * this.scale;
+	}
+
+	/**
+	 * Projects a latitude onto the plane.
+	 *
+	 * @param latitude The latitude, in degrees
+	 * @return The position, in miles north
+	 */
+	private static double projectY (final double latitude) {
+		return latitude * MILES_PER_DEGREE;
+	}
+
+	/**
+	 * Gets the cell a projected position falls into.
+	 *
+	 * @param x The position, in miles east
+	 * @param y The position, in miles north
+	 * @return The cell
+	 */
+	private int getCell (final double x, final double y) {
+		final int column = clamp ((int) ((x - this.minX) / this.cellSize), this.columns);
+		final int row = clamp ((int) ((y - this.minY) / this.cellSize), this.rows);
+
+		return row * this.columns + column;
+	}
+
+	/**
+	 * Works out the distance on the plane from a station to a projected point.
+	 *
+	 * @param index The position of the station in the list
+	 * @param x The point, in miles east
+	 * @param y The point, in miles north
+	 * @return The distance, in miles
+	 */
+	private double planeDistance (final int index, final double x, final double y) {
+		final double dx = this.xs[index] - x;
+		final double dy = this.ys[index] - y;
+
+		return Math.sqrt (dx * dx + dy * dy);
+	}
+
+	/**
+	 * Keeps a cell coordinate within the grid.
+	 *
+	 * @param value The coordinate
+	 * @param limit The number of cells along that side
+	 * @return The coordinate, between 0 and <code>limit - 1</code>
+	 */
+	private static int clamp (final int value, final int limit) {
+		return value < 0 ? 0 : value >= limit ? limit - 1 : value;
+	}
+
+	/**
+	 * Inserts a station into the sorted list of the best found so far, dropping the last if the
+	 * list is full.
+	 *
+	 * @param best The distances of the best stations, in ascending order
+	 * @param result The positions of the best stations
+	 * @param count The number of entries in use, not counting the one being inserted
+	 * @param distance The station's distance
+	 * @param index The station's position in the list
+	 * @return The number of entries in use afterwards
+	 */
+	private static int insert (final double[] best, final int[] result, final int count,
+			final double distance, final int index) {
+		int i = count;
+
+		while (i > 0 && best[i - 1] > distance) {
+			if (i < best.length) {
+				best[i] = best[i - 1];
+				result[i] = result[i - 1];
+			}
+
+			i--;
+		}
+
+		best[i] = distance;
+		result[i] = index;
+
+		return Math.min (count + 1, best.length);
+	}
+}
@@ -1,13 +1,11 @@
 package au.com.wow.codetestapp;
 
-import org.json.JSONObject;
-
-import java.text.NumberFormat;
-import java.util.Locale;
-
 /**
- * Wrapper for a {@link JSONObject} so that its contents can be queried and formatted to be
- * displayed correctly in the fuel guide list view.
+ * A view of a single station in a {@link FuelStationList}, with its values formatted to be
+ * displayed in the fuel guide.
+ * <p>
+ * This doesn't hold any data of its own; every getter reads straight from the list's columns.
+ * </p>
  *
  * @author Graeme Sutherland
  * @since 27/03/2015.
@@ -15,31 +13,26 @@ import java.util.Locale;
 public class FuelStationItem {
 
 	/**
-	 * The {@link JSONObject} whose data is to be displayed.
+	 * The {@link FuelStationList} holding the station's data.
 	 */
-	private final JSONObject fuelStation;
+	private final FuelStationList list;
 
 	/**
-	 * {@link NumberFormat} to convert the price value into a Dollar {@link String}.
+	 * The position of the station in the list.
 	 */
-	private final NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(Locale.US);
-
-	/**
-	 * The {@link String} to use if no value is available.
-	 */
-	private final String notApplicable;
+	private final int index;
 
 	/**
 	 * Constructor.
 	 *
-	 * @param object The {@link JSONObject} representing the fuel station
-	 * @param notApplicableString The text to display when there's no value set
+	 * @param fuelStationList The {@link FuelStationList} holding the station's data
+	 * @param position The position of the station in the list
 	 */
-	public FuelStationItem (final JSONObject object, final String notApplicableString) {
+	public FuelStationItem (final FuelStationList fuelStationList, final int position) {
 		super ();
 
-		this.fuelStation = object;
-		this.notApplicable = notApplicableString;
+		this.list = fuelStationList;
+		this.index = position;
 	}
 
 	/**
@@ -48,7 +41,7 @@ public class FuelStationItem {
 	 * @return The fuel station's brand
 	 */
 	public String getBrand () {
-		return getField("brand");
+		return this.list.getBrand (this.index);
 	}
 
 	/**
@@ -57,7 +50,7 @@ public class FuelStationItem {
 	 * @return The fuel station's address
 	 */
 	public String getAddress () {
-		return getField ("address");
+		return this.list.getAddress (this.index);
 	}
 
 	/**
@@ -66,7 +59,7 @@ public class FuelStationItem {
 	 * @return The distance to the fuel station
 	 */
 	public String getDistance () {
-		return getField ("distance");
+		return this.list.getDistance (this.index);
 	}
 
 	/**
@@ -75,7 +68,7 @@ public class FuelStationItem {
 	 * @return The URL of the image to be displayed
 	 */
 	public String getImageUrl () {
-		return this.fuelStation != null ? fuelStation.optString ("img") : null;
+		return this.list.getImageUrl (this.index);
 	}
 
 	/**
@@ -85,7 +78,7 @@ public class FuelStationItem {
 	 * @return The price of regular fuel
 	 */
 	public String getRegularPrice () {
-		return getPrice("regular");
+		return getPrice (FuelStationList.REGULAR);
 	}
 
 	/**
@@ -94,7 +87,7 @@ public class FuelStationItem {
 	 * @return The price of plus fuel
 	 */
 	public String getPlusPrice () {
-		return getPrice("plus");
+		return getPrice (FuelStationList.PLUS);
 	}
 
 	/**
@@ -104,7 +97,7 @@ public class FuelStationItem {
 	 * @return The price of premium fuel
 	 */
 	public String getPremiumPrice () {
-		return getPrice("regular");
+		return getPrice (FuelStationList.PREMIUM);
 	}
 
 	/**
@@ -113,49 +106,16 @@ public class FuelStationItem {
 	 * @return The price of diesel
 	 */
 	public String getDieselPrice () {
-		return getPrice("diesel");
-	}
-
-	/**
-	 * Helper method to get a {@link String} containing the contents of a field, or "N/A" if it's
-	 * not mapped, or the JSON object is null.
-	 *
-	 * @param field The JSON field to extract
-	 * @return The contents of the field as a {@link String}
-	 */
-	private String getField (final String field) {
-		final Object value;
-
-		if (this.fuelStation != null) {
-			value = this.fuelStation.opt(field);
-		} else {
-			value = null;
-		}
-
-		// As it stands, this may return NULL for some empty values.
-		return value != null ? value.toString() : this.notApplicable;
+		return getPrice (FuelStationList.DIESEL);
 	}
 
 	/**
-	 * Helper method to extract the price of the specified fuel from the JSON, and format it into a
-	 * Dollar string.
-	 * <p>
-	 * The JSON source appears to use <code>false</code> to indicate that a fuel is missing, so any
-	 * value that can't be coerced into a <code>double</code> is replaced by "N/A".
-	 * </p>
+	 * Helper method to get the formatted price of the specified fuel.
 	 *
-	 * @param field The JSON field that should be holding a number
-	 * @return The corresponding price (in USD), or N/A if it can't be translated
+	 * @param grade The grade of fuel, such as {@link FuelStationList#REGULAR}
+	 * @return The corresponding price (in USD), or N/A if the fuel isn't sold
 	 */
-	private String getPrice (final String field) {
-		final String price;
-
-		if (this.fuelStation != null && this.fuelStation.optDouble(field) != Double.NaN) {
-			price = this.currencyFormatter.format(this.fuelStation.optDouble(field, 0));
-		} else {
-			price = this.notApplicable;
-		}
-
-		return price;
+	private String getPrice (final int grade) {
+		return this.list.getPriceText (grade, this.index);
 	}
 }
@@ -5,23 +5,45 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Wrapper around a {@link JSONArray} to provide helper methods for accessing the fuel station data.
+ * Holds the fuel station data decoded from the feed.
  * <p>
- * I've gone for a wrapper rather than reading and converting the data because it's less effort. It
- * won't be as efficient as decoding everything once, and then storing the values in a simple class,
- * but that would have taken longer to do. Were this a commercial piece of software then I'd put in
- * the time.
+ * The stations are decoded once, when the feed is read, and stored column by column in parallel
+ * arrays. This means that the list view can fetch a value without any JSON lookups, and without
+ * allocating an object for every row it displays. Prices are held as whole cents, with
+ * {@link FuelStationRecord#NO_PRICE} marking a fuel that isn't sold.
  * </p>
  * <p>
- * The sensible thing would have been to use a library such as
- * <a href="https://code.google.com/p/google-gson/">GSON</a>. However that would have necessitated
- * writing POJOs for the fuel station items, which would probably have been more work than the
- * wrapper. And since I'm not being paid for this...
+ * A feed only has a handful of brands, each with its own logo, so brands and image URLs are kept
+ * once in a symbol table and each station just holds their indices. The table is built as the
+ * stations are decoded, so the copy of the brand that every station arrives with is garbage
+ * straight away, and it's written out as is when the list is parcelled.
+ * </p>
+ * <p>
+ * {@link #get(int)} is still available for code that wants a single object per station, but it
+ * allocates a new {@link FuelStationItem} on every call, so shouldn't be used on the scroll path.
+ * </p>
+ * <p>
+ * The list is parcelled in a compact, versioned binary form (see {@link #write(DataOutput)}) rather
+ * than as JSON. Lists too big to go through the Binder safely are written to a file in the cache
+ * directory instead, and only the file's path is parcelled.
  * </p>
  *
  * @author Graeme Sutherland
@@ -29,6 +51,78 @@ import org.json.JSONObject;
  */
 public final class FuelStationList implements Parcelable {
 
+	/**
+	 * Index of the price column for <em>Regular</em> fuel.
+	 */
+	public static final int REGULAR = 0;
+
+	/**
+	 * Index of the price column for <em>Plus</em> fuel.
+	 */
+	public static final int PLUS = 1;
+
+	/**
+	 * Index of the price column for <em>Premium</em> fuel.
+	 */
+	public static final int PREMIUM = 2;
+
+	/**
+	 * Index of the price column for <em>Diesel</em>.
+	 */
+	public static final int DIESEL = 3;
+
+	/**
+	 * The number of fuel grades that have a price column.
+	 */
+	public static final int GRADES = 4;
+
+	/**
+	 * The version of the binary layout written by {@link #write(DataOutput)}.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Flag set in the binary layout when the prices are packed two to an <code>int</code>.
+	 */
+	private static final int FLAG_PACKED_PRICES = 1;
+
+	/**
+	 * Flag set in the binary layout when each station is followed by its coordinates. Lists
+	 * written before coordinates were decoded simply don't have it set.
+	 */
+	private static final int FLAG_COORDINATES = 2;
+
+	/**
+	 * The value used for a missing price when the prices are packed.
+	 */
+	private static final int PACKED_NO_PRICE = 0xFFFF;
+
+	/**
+	 * Parcel mode where the encoded list follows inline.
+	 */
+	private static final int PARCEL_INLINE = 0;
+
+	/**
+	 * Parcel mode where the encoded list has been written to a file.
+	 */
+	private static final int PARCEL_FILE = 1;
+
+	/**
+	 * The largest encoded list that will be sent inline. The Binder transaction buffer is 1MB, and
+	 * is shared by everything in flight in the process, so this leaves plenty of headroom.
+	 */
+	private static final int MAX_INLINE_BYTES = 256 * 1024;
+
+	/**
+	 * The prefix of the files that oversized lists are written to.
+	 */
+	private static final String SPILL_PREFIX = "stations";
+
+	/**
+	 * How long a spilled list is kept for before it's cleaned up, in milliseconds.
+	 */
+	private static final long SPILL_LIFETIME = 60 * 1000;
+
 	/**
 	 * Creates a new {@link FuelStationList} from a {@link Parcelable}.
 	 */
@@ -41,19 +135,22 @@ public final class FuelStationList implements Parcelable {
 		 * @return The recreated {@link FuelStationList}
 		 */
 		public FuelStationList createFromParcel (final Parcel in) {
-			final String json = in.readString ();
 			final String notApplicable = in.readString ();
-			JSONArray array = null;
+			final int mode = in.readInt ();
+			FuelStationList list = null;
 
-			if (!json.isEmpty ()) {
-				try {
-					array = new JSONArray (json);
-				} catch (final JSONException jse) {
-					Log.e (FuelStationList.class.getName (), "Failed to recreate JSONArray", jse);
+			try {
+				if (mode == PARCEL_FILE) {
+					list = readFile (new File (in.readString ()));
+				} else {
+					list = read (new DataInputStream (new ByteArrayInputStream
+							(in.createByteArray ())));
 				}
+			} catch (final IOException ioe) {
+				Log.e (FuelStationList.class.getName (), "Failed to recreate FuelStationList", ioe);
 			}
 
-			return new FuelStationList (array, notApplicable);
+			return list != null ? list : new Builder (notApplicable).build ();
 		}
 
 		/**
@@ -68,51 +165,454 @@ public final class FuelStationList implements Parcelable {
 		}
 	};
 
+	/**
+	 * The directory that oversized lists are written to when they're parcelled, or null if they
+	 * must always be sent inline.
+	 */
+	private final File spillDirectory;
+
 	/**
 	 * The {@link String} to use if no value is available.
 	 */
 	private final String notApplicable;
 
 	/**
-	 * The {@link JSONArray} that contains the fuel station data.
+	 * The number of stations in the list.
 	 */
-	private final JSONArray array;
+	private final int size;
 
 	/**
-	 * Constructor.
-	 *
-	 * @param context The {@link Context} the app is running in
-	 * @param object The {@link JSONObject} to display
+	 * The distinct brands and image URLs. Index 0 is null, for a value the feed didn't supply.
 	 */
-	public FuelStationList (final Context context, final JSONObject object) {
-		this (object != null ? object.optJSONArray ("item") : null,
-				context.getString (R.string.not_applicable));
-	}
+	private final String[] symbols;
+
+	/**
+	 * The index of each station's brand in the symbol table.
+	 */
+	private final int[] brandIds;
+
+	/**
+	 * The address of each station.
+	 */
+	private final String[] addresses;
+
+	/**
+	 * The distance to each station, exactly as supplied by the feed.
+	 */
+	private final String[] distances;
 
 	/**
-	 * Constructor. Creates the object from the supplied {@link JSONArray}. Used for recreating the
-	 * object from a {@link Parcel}.
+	 * The index of the URL of each station's brand image in the symbol table.
+	 */
+	private final int[] imageIds;
+
+	/**
+	 * The distance to each station as a number, or {@link Float#NaN} if it's not known.
+	 */
+	private final float[] distanceValues;
+
+	/**
+	 * The prices of each grade of fuel in cents, indexed by grade and then station.
+	 */
+	private final int[][] prices;
+
+	/**
+	 * The time each station's prices were updated, in seconds since the epoch.
+	 */
+	private final long[] updated;
+
+	/**
+	 * The latitude of each station in degrees, or {@link Float#NaN} if it's not known.
+	 */
+	private final float[] latitudes;
+
+	/**
+	 * The longitude of each station in degrees, or {@link Float#NaN} if it's not known.
+	 */
+	private final float[] longitudes;
+
+	/**
+	 * The stable ID of each station, derived from its brand and address.
+	 */
+	private final long[] ids;
+
+	/**
+	 * Constructor. Takes ownership of the supplied arrays, which must all hold at least
+	 * <code>count</code> entries.
 	 *
-	 * @param anArray The {@link JSONArray} to display
+	 * @param count The number of stations in the list
+	 * @param symbolTable The distinct brands and image URLs, starting with null
+	 * @param brandIdArray The index of each station's brand in the symbol table
+	 * @param addressArray The address of each station
+	 * @param distanceArray The distance to each station as text
+	 * @param imageIdArray The index of each station's image URL in the symbol table
+	 * @param distanceValueArray The distance to each station as a number
+	 * @param priceArrays The prices in cents, indexed by grade and then station
+	 * @param updatedArray The time each station's prices were updated
+	 * @param latitudeArray The latitude of each station
+	 * @param longitudeArray The longitude of each station
 	 * @param notApplicableString The text to display when there's no value set
+	 * @param directory The directory to write oversized parcels to, or null
 	 */
-	private FuelStationList (final JSONArray anArray, final String notApplicableString) {
+	private FuelStationList (final int count, final String[] symbolTable,
+			final int[] brandIdArray, final String[] addressArray, final String[] distanceArray,
+			final int[] imageIdArray, final float[] distanceValueArray, final int[][] priceArrays,
+			final long[] updatedArray, final float[] latitudeArray, final float[] longitudeArray,
+			final String notApplicableString, final File directory) {
 		super ();
 
-		this.array = anArray;
+		this.spillDirectory = directory;
+		this.size = count;
+		this.symbols = symbolTable;
+		this.brandIds = brandIdArray;
+		this.addresses = addressArray;
+		this.distances = distanceArray;
+		this.imageIds = imageIdArray;
+		this.distanceValues = distanceValueArray;
+		this.prices = priceArrays;
+		this.updated = updatedArray;
+		this.latitudes = latitudeArray;
+		this.longitudes = longitudeArray;
 		this.notApplicable = notApplicableString;
+		this.ids = new long[count];
+
+		for (int i = 0; i < count; i++) {
+			this.ids[i] = getStationId (symbolTable[brandIdArray[i]], addressArray[i]);
+		}
+	}
+
+	/**
+	 * Joins lists end to end, such as the pieces of a feed that were decoded in parallel. The
+	 * lists' symbol tables are merged, so each brand is still only held once.
+	 *
+	 * @param parts The {@link FuelStationList}s to join, in order
+	 * @param notApplicableString The text to display when there's no value set
+	 * @param directory The directory to write oversized parcels to, or null
+	 * @return The joined {@link FuelStationList}
+	 */
+	static FuelStationList concat (final List<FuelStationList> parts,
+			final String notApplicableString, final File directory) {
+		int count = 0;
+
+		for (final FuelStationList part : parts) {
+			count += part.size;
+		}
+
+		final SymbolTable table = new SymbolTable ();
+		final int[] brandIdArray = new int[count];
+		final String[] addressArray = new String[count];
+		final String[] distanceArray = new String[count];
+		final int[] imageIdArray = new int[count];
+		final float[] distanceValueArray = new float[count];
+		final int[][] priceArrays = new int[GRADES][count];
+		final long[] updatedArray = new long[count];
+		final float[] latitudeArray = new float[count];
+		final float[] longitudeArray = new float[count];
+		int offset = 0;
+
+		for (final FuelStationList part : parts) {
+			final int[] mapping = new int[part.symbols.length];
+
+			for (int id = 1; id < mapping.length; id++) {
+				mapping[id] = table.intern (part.symbols[id]);
+			}
+
+			for (int i = 0; i < part.size; i++) {
+				brandIdArray[offset + i] = mapping[part.brandIds[i]];
+				imageIdArray[offset + i] = mapping[part.imageIds[i]];
+			}
+
+			System.arraycopy (part.addresses, 0, addressArray, offset, part.size);
+			System.arraycopy (part.distances, 0, distanceArray, offset, part.size);
+			System.arraycopy (part.distanceValues, 0, distanceValueArray, offset, part.size);
+			System.arraycopy (part.updated, 0, updatedArray, offset, part.size);
+			System.arraycopy (part.latitudes, 0, latitudeArray, offset, part.size);
+			System.arraycopy (part.longitudes, 0, longitudeArray, offset, part.size);
+
+			for (int grade = 0; grade < GRADES; grade++) {
+				System.arraycopy (part.prices[grade], 0, priceArrays[grade], offset, part.size);
+			}
+
+			offset += part.size;
+		}
+
+		return new FuelStationList (count, table.toArray (), brandIdArray, addressArray,
+				distanceArray, imageIdArray, distanceValueArray, priceArrays, updatedArray,
+				latitudeArray, longitudeArray, notApplicableString, directory);
+	}
+
+	/**
+	 * Works out the stable ID of a station. A station's position in the feed can change from one
+	 * download to the next, but its brand and address don't, so the ID is a 64 bit hash of those.
+	 *
+	 * @param brand The station's brand, or null
+	 * @param address The station's address, or null
+	 * @return The station's ID
+	 */
+	public static long getStationId (final String brand, final String address) {
+		final long high = brand != null ? brand.hashCode () : 0;
+		final long low = address != null ? address.hashCode () : 0;
+
+		return (high << 32) | (low & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Checks whether two entries are the same station. Two stations can have the same
+	 * {@link #getStationId(String, String) ID}, as it's only a hash, so anything matched on IDs
+	 * has to be confirmed with this before it's treated as the same station.
+	 *
+	 * @param lhs The first {@link FuelStationList}
+	 * @param lhsIndex The position of the station in the first list
+	 * @param rhs The second {@link FuelStationList}
+	 * @param rhsIndex The position of the station in the second list
+	 * @return True if the brands and addresses match, false otherwise
+	 */
+	public static boolean isSameStation (final FuelStationList lhs, final int lhsIndex,
+			final FuelStationList rhs, final int rhsIndex) {
+		final String lhsBrand = lhs.getBrandValue (lhsIndex);
+		final String lhsAddress = lhs.addresses[lhsIndex];
+		final String rhsAddress = rhs.addresses[rhsIndex];
+
+		return (lhsBrand == null ? rhs.getBrandValue (rhsIndex) == null
+				: lhsBrand.equals (rhs.getBrandValue (rhsIndex)))
+				&& (lhsAddress == null ? rhsAddress == null : lhsAddress.equals (rhsAddress));
+	}
+
+	/**
+	 * Builds a {@link FuelStationList} from the stations emitted by a {@link FuelStationParser}.
+	 */
+	public static final class Builder implements FuelStationParser.Handler {
+
+		/**
+		 * The number of stations to allocate space for initially.
+		 */
+		private static final int INITIAL_CAPACITY = 64;
+
+		/**
+		 * The {@link String} to use if no value is available.
+		 */
+		private final String notApplicable;
+
+		/**
+		 * The directory to write oversized parcels to, or null.
+		 */
+		private final File spillDirectory;
+
+		/**
+		 * The number of stations added so far.
+		 */
+		private int size;
+
+		/**
+		 * The distinct brands and image URLs seen so far.
+		 */
+		private final SymbolTable symbols = new SymbolTable ();
+
+		/**
+		 * The index of each station's brand in the symbol table.
+		 */
+		private int[] brandIds = new int[INITIAL_CAPACITY];
+
+		/**
+		 * The address of each station.
+		 */
+		private String[] addresses = new String[INITIAL_CAPACITY];
+
+		/**
+		 * The distance to each station as text.
+		 */
+		private String[] distances = new String[INITIAL_CAPACITY];
+
+		/**
+		 * The index of each station's image URL in the symbol table.
+		 */
+		private int[] imageIds = new int[INITIAL_CAPACITY];
+
+		/**
+		 * The distance to each station as a number.
+		 */
+		private float[] distanceValues = new float[INITIAL_CAPACITY];
+
+		/**
+		 * The prices in cents, indexed by grade and then station.
+		 */
+		private final int[][] prices = new int[GRADES][INITIAL_CAPACITY];
+
+		/**
+		 * The time each station's prices were updated.
+		 */
+		private long[] updated = new long[INITIAL_CAPACITY];
+
+		/**
+		 * The latitude of each station.
+		 */
+		private float[] latitudes = new float[INITIAL_CAPACITY];
+
+		/**
+		 * The longitude of each station.
+		 */
+		private float[] longitudes = new float[INITIAL_CAPACITY];
+
+		/**
+		 * Constructor.
+		 *
+		 * @param context The {@link Context} the app is running in
+		 */
+		public Builder (final Context context) {
+			this (context.getString (R.string.not_applicable), context.getCacheDir ());
+		}
+
+		/**
+		 * Constructor. Lists built this way are always parcelled inline.
+		 *
+		 * @param notApplicableString The text to display when there's no value set
+		 */
+		public Builder (final String notApplicableString) {
+			this (notApplicableString, null);
+		}
+
+		/**
+		 * Constructor.
+		 *
+		 * @param notApplicableString The text to display when there's no value set
+		 * @param directory The directory to write oversized parcels to, or null
+		 */
+		public Builder (final String notApplicableString, final File directory) {
+			super ();
+
+			this.notApplicable = notApplicableString;
+			this.spillDirectory = directory;
+		}
+
+		/**
+		 * Adds a decoded station to the list.
+		 *
+		 * @param record The {@link FuelStationRecord} to copy
+		 */
+		@Override
+		public void onFuelStation (final FuelStationRecord record) {
+			if (this.size == this.brandIds.length) {
+				grow ();
+			}
+
+			final int index = this.size++;
+
+			this.brandIds[index] = this.symbols.intern (record.brand);
+			this.addresses[index] = record.address;
+			this.distances[index] = record.distance;
+			this.imageIds[index] = this.symbols.intern (record.imageUrl);
+			this.distanceValues[index] = parseDistance (record.distance);
+			this.prices[REGULAR][index] = record.regular;
+			this.prices[PLUS][index] = record.plus;
+			this.prices[PREMIUM][index] = record.premium;
+			this.prices[DIESEL][index] = record.diesel;
+			this.updated[index] = record.updated;
+			this.latitudes[index] = (float) record.latitude;
+			this.longitudes[index] = (float) record.longitude;
+		}
+
+		/**
+		 * Copies a station from another list, such as when several feeds are merged.
+		 *
+		 * @param list The {@link FuelStationList} to copy from
+		 * @param position The position of the station in that list
+		 */
+		public void add (final FuelStationList list, final int position) {
+			if (this.size == this.brandIds.length) {
+				grow ();
+			}
+
+			final int index = this.size++;
+
+			this.brandIds[index] = this.symbols.intern (list.symbols[list.brandIds[position]]);
+			this.addresses[index] = list.addresses[position];
+			this.distances[index] = list.distances[position];
+			this.imageIds[index] = this.symbols.intern (list.symbols[list.imageIds[position]]);
+			this.distanceValues[index] = list.distanceValues[position];
+			this.updated[index] = list.updated[position];
+			this.latitudes[index] = list.latitudes[position];
+			this.longitudes[index] = list.longitudes[position];
+
+			for (int grade = 0; grade < GRADES; grade++) {
+				this.prices[grade][index] = list.prices[grade][position];
+			}
+		}
+
+		/**
+		 * Creates the {@link FuelStationList} holding all of the stations added so far.
+		 *
+		 * @return The new {@link FuelStationList}
+		 */
+		public FuelStationList build () {
+			final int count = this.size;
+			final int[][] priceArrays = new int[GRADES][];
+
+			for (int grade = 0; grade < GRADES; grade++) {
+				priceArrays[grade] = Arrays.copyOf (this.prices[grade], count);
+			}
+
+			return new FuelStationList (count, this.symbols.toArray (),
+					Arrays.copyOf (this.brandIds, count), Arrays.copyOf (this.addresses, count),
+					Arrays.copyOf (this.distances, count), Arrays.copyOf (this.imageIds, count),
+					Arrays.copyOf (this.distanceValues, count),
+					priceArrays, Arrays.copyOf (this.updated, count),
+					Arrays.copyOf (this.latitudes, count), Arrays.copyOf (this.longitudes, count),
+					this.notApplicable, this.spillDirectory);
+		}
+
+		/**
+		 * Doubles the capacity of all of the columns.
+		 */
+		private void grow () {
+			final int capacity = this.brandIds.length * 2;
+
+			this.brandIds = Arrays.copyOf (this.brandIds, capacity);
+			this.addresses = Arrays.copyOf (this.addresses, capacity);
+			this.distances = Arrays.copyOf (this.distances, capacity);
+			this.imageIds = Arrays.copyOf (this.imageIds, capacity);
+			this.distanceValues = Arrays.copyOf (this.distanceValues, capacity);
+			this.updated = Arrays.copyOf (this.updated, capacity);
+			this.latitudes = Arrays.copyOf (this.latitudes, capacity);
+			this.longitudes = Arrays.copyOf (this.longitudes, capacity);
+
+			for (int grade = 0; grade < GRADES; grade++) {
+				this.prices[grade] = Arrays.copyOf (this.prices[grade], capacity);
+			}
+		}
+
+		/**
+		 * Converts the distance supplied by the feed into a number.
+		 *
+		 * @param distance The distance as text
+		 * @return The distance, or {@link Float#NaN} if it can't be read
+		 */
+		private static float parseDistance (final String distance) {
+			float value = Float.NaN;
+
+			if (distance != null) {
+				try {
+					value = Float.parseFloat (distance);
+				} catch (final NumberFormatException nfe) {
+					// Leave the distance as unknown.
+				}
+			}
+
+			return value;
+		}
 	}
 
 	/**
 	 * Gets the {@link FuelStationItem} at the specified index.
+	 * <p>
+	 * This allocates a new object on every call. Use the column getters, such as
+	 * {@link #getBrand(int)}, when displaying the list.
+	 * </p>
 	 *
-	 * @param index The position of the item to get in the array
+	 * @param index The position of the item to get in the list
 	 * @return The value at that position, wrapped in a {@link FuelStationItem} object
 	 */
 	public FuelStationItem get (final int index) {
-		final JSONObject item = this.array != null ? this.array.optJSONObject(index) : null;
-
-		return new FuelStationItem (item, this.notApplicable);
+		return new FuelStationItem (this, index);
 	}
 
 	/**
@@ -121,7 +621,204 @@ public final class FuelStationList implements Parcelable {
 	 * @return The size of the list
 	 */
 	public int getSize () {
-		return this.array != null ? this.array.length() : 0;
+		return this.size;
+	}
+
+	/**
+	 * Gets the text to display when a value isn't available.
+	 *
+	 * @return The "N/A" text
+	 */
+	public String getNotApplicable () {
+		return this.notApplicable;
+	}
+
+	/**
+	 * Gets the brand of the station at the specified index.
+	 *
+	 * @param index The position of the station in the list
+	 * @return The station's brand, or "N/A" if it's not known
+	 */
+	public String getBrand (final int index) {
+		return orNotApplicable (this.symbols[this.brandIds[index]]);
+	}
+
+	/**
+	 * Gets the brand of the station at the specified index, as supplied by the feed.
+	 *
+	 * @param index The position of the station in the list
+	 * @return The station's brand, or null if it's not known
+	 */
+	public String getBrandValue (final int index) {
+		return this.symbols[this.brandIds[index]];
+	}
+
+	/**
+	 * Gets the brand of the station at the specified index as an index into the list's symbol
+	 * table. Stations with the same brand have the same ID, so they can be grouped and compared
+	 * without looking at the strings.
+	 *
+	 * @param index The position of the station in the list
+	 * @return The brand's index in the symbol table, or 0 if the brand isn't known
+	 * @see #getSymbol(int)
+	 */
+	public int getBrandId (final int index) {
+		return this.brandIds[index];
+	}
+
+	/**
+	 * Gets a string from the list's symbol table.
+	 *
+	 * @param id The string's index, such as one returned by {@link #getBrandId(int)}
+	 * @return The string, or null for index 0
+	 */
+	public String getSymbol (final int id) {
+		return this.symbols[id];
+	}
+
+	/**
+	 * Gets the size of the list's symbol table. The IDs run from 0, for a missing value, up to
+	 * one less than this.
+	 *
+	 * @return The number of symbols, including the one for a missing value
+	 */
+	public int getSymbolCount () {
+		return this.symbols.length;
+	}
+
+	/**
+	 * Gets the address of the station at the specified index.
+	 *
+	 * @param index The position of the station in the list
+	 * @return The station's address, or "N/A" if it's not known
+	 */
+	public String getAddress (final int index) {
+		return orNotApplicable (this.addresses[index]);
+	}
+
+	/**
+	 * Gets the distance to the station at the specified index, as supplied by the feed.
+	 *
+	 * @param index The position of the station in the list
+	 * @return The distance to the station, or "N/A" if it's not known
+	 */
+	public String getDistance (final int index) {
+		return orNotApplicable (this.distances[index]);
+	}
+
+	/**
+	 * Gets the distance to the station at the specified index as a number.
+	 *
+	 * @param index The position of the station in the list
+	 * @return The distance to the station, or {@link Float#NaN} if it's not known
+	 */
+	public float getDistanceValue (final int index) {
+		return this.distanceValues[index];
+	}
+
+	/**
+	 * Gets the URL of the image for the station at the specified index.
+	 *
+	 * @param index The position of the station in the list
+	 * @return The URL of the image, or null if there isn't one
+	 */
+	public String getImageUrl (final int index) {
+		return this.symbols[this.imageIds[index]];
+	}
+
+	/**
+	 * Gets the price of a grade of fuel at the station at the specified index.
+	 *
+	 * @param grade The grade of fuel, such as {@link #REGULAR}
+	 * @param index The position of the station in the list
+	 * @return The price in cents, or {@link FuelStationRecord#NO_PRICE} if it's not sold
+	 */
+	public int getPrice (final int grade, final int index) {
+		return this.prices[grade][index];
+	}
+
+	/**
+	 * Gets the price of a grade of fuel at the station at the specified index, formatted as a
+	 * Dollar string by the {@link PriceFormatter}.
+	 *
+	 * @param grade The grade of fuel, such as {@link #REGULAR}
+	 * @param index The position of the station in the list
+	 * @return The formatted price, or "N/A" if the fuel isn't sold
+	 */
+	public String getPriceText (final int grade, final int index) {
+		final int cents = this.prices[grade][index];
+
+		return cents != FuelStationRecord.NO_PRICE ? PriceFormatter.format (cents)
+				: this.notApplicable;
+	}
+
+	/**
+	 * Gets the stable ID of the station at the specified index.
+	 *
+	 * @param index The position of the station in the list
+	 * @return The station's ID, as worked out by {@link #getStationId(String, String)}
+	 */
+	public long getId (final int index) {
+		return this.ids[index];
+	}
+
+	/**
+	 * Gets the time at which the prices for the station at the specified index were updated.
+	 *
+	 * @param index The position of the station in the list
+	 * @return The time of the update, in seconds since the epoch
+	 */
+	public long getUpdated (final int index) {
+		return this.updated[index];
+	}
+
+	/**
+	 * Gets the latitude of the station at the specified index.
+	 *
+	 * @param index The position of the station in the list
+	 * @return The latitude in degrees, or {@link Float#NaN} if it's not known
+	 */
+	public float getLatitude (final int index) {
+		return this.latitudes[index];
+	}
+
+	/**
+	 * Gets the longitude of the station at the specified index.
+	 *
+	 * @param index The position of the station in the list
+	 * @return The longitude in degrees, or {@link Float#NaN} if it's not known
+	 */
+	public float getLongitude (final int index) {
+		return this.longitudes[index];
+	}
+
+	/**
+	 * Checks whether any station in the list has coordinates.
+	 *
+	 * @return True if at least one station can be located, false otherwise
+	 */
+	public boolean hasCoordinates () {
+		for (int i = 0; i < this.size; i++) {
+			if (!Float.isNaN (this.latitudes[i]) && !Float.isNaN (this.longitudes[i])) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Creates a copy of the list with different distances, such as ones worked out from the
+	 * device's location. Every other column is shared with this list rather than copied.
+	 *
+	 * @param distanceArray The distance to each station as text
+	 * @param distanceValueArray The distance to each station as a number
+	 * @return The new {@link FuelStationList}
+	 */
+	FuelStationList withDistances (final String[] distanceArray, final float[] distanceValueArray) {
+		return new FuelStationList (this.size, this.symbols, this.brandIds, this.addresses,
+				distanceArray, this.imageIds, distanceValueArray, this.prices, this.updated,
+				this.latitudes, this.longitudes, this.notApplicable, this.spillDirectory);
 	}
 
 	/**
@@ -136,13 +833,430 @@ public final class FuelStationList implements Parcelable {
 
 	/**
 	 * Writes the result to a {@link Parcel}.
+	 * <p>
+	 * The list is encoded with {@link #write(DataOutput)}. If the encoding is too big to be sent
+	 * through the Binder it's written to a file, and the file's path is parcelled instead.
+	 * </p>
 	 *
 	 * @param destination The {@link Parcel} to write to
 	 * @param flags The flags to apply to the parcel
 	 */
 	@Override
 	public void writeToParcel (final Parcel destination, final int flags) {
-		destination.writeString (this.array != null ? this.array.toString () : "");
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream (64 + this.size * 64);
+		File file = null;
+
 		destination.writeString (this.notApplicable);
+
+		try {
+			write (new DataOutputStream (bytes));
+
+			if (bytes.size () > MAX_INLINE_BYTES && this.spillDirectory != null) {
+				file = writeFile (bytes);
+			}
+		} catch (final IOException ioe) {
+			Log.e (FuelStationList.class.getName (), "Failed to write FuelStationList", ioe);
+		}
+
+		if (file != null) {
+			destination.writeInt (PARCEL_FILE);
+			destination.writeString (file.getAbsolutePath ());
+		} else {
+			destination.writeInt (PARCEL_INLINE);
+			destination.writeByteArray (bytes.toByteArray ());
+		}
+	}
+
+	/**
+	 * Writes the list in its compact binary form.
+	 * <p>
+	 * The layout is: the version, a flags byte, the "N/A" text and the station count; the symbol
+	 * table of distinct brands and image URLs, which are referred to by index from then on; and
+	 * then the stations, one after the other, with their coordinates at the end if any station has
+	 * them. Indices are written as variable length integers, strings are length prefixed, and
+	 * prices are packed two to an <code>int</code> whenever every price fits in 16 bits.
+	 * </p>
+	 *
+	 * @param out The {@link DataOutput} to write to
+	 * @throws IOException If there's an IO error
+	 */
+	public void write (final DataOutput out) throws IOException {
+		final boolean packed = canPackPrices ();
+		final boolean located = hasCoordinates ();
+
+		out.writeInt (VERSION);
+		out.writeByte ((packed ? FLAG_PACKED_PRICES : 0) | (located ? FLAG_COORDINATES : 0));
+		writeNullableString (out, this.notApplicable);
+		out.writeInt (this.size);
+		writeVarInt (out, this.symbols.length - 1);
+
+		// The null at index 0 is implied.
+		for (int id = 1; id < this.symbols.length; id++) {
+			out.writeUTF (this.symbols[id]);
+		}
+
+		for (int i = 0; i < this.size; i++) {
+			writeVarInt (out, this.brandIds[i]);
+			writeVarInt (out, this.imageIds[i]);
+			writeNullableString (out, this.addresses[i]);
+			writeNullableString (out, this.distances[i]);
+			out.writeFloat (this.distanceValues[i]);
+			out.writeLong (this.updated[i]);
+
+			if (packed) {
+				out.writeInt (pack (REGULAR, PLUS, i));
+				out.writeInt (pack (PREMIUM, DIESEL, i));
+			} else {
+				for (int grade = 0; grade < GRADES; grade++) {
+					out.writeInt (this.prices[grade][i]);
+				}
+			}
+
+			if (located) {
+				out.writeFloat (this.latitudes[i]);
+				out.writeFloat (this.longitudes[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads a list written by {@link #write(DataOutput)}.
+	 *
+	 * @param in The {@link DataInput} to read from
+	 * @return The decoded {@link FuelStationList}, which will always be parcelled inline
+	 * @throws IOException If there's an IO error, or the data was written by a different version
+	 */
+	public static FuelStationList read (final DataInput in) throws IOException {
+		return read (in, null);
+	}
+
+	/**
+	 * Reads a list written by {@link #write(DataOutput)}.
+	 *
+	 * @param in The {@link DataInput} to read from
+	 * @param directory The directory to write the list to if it's too big to parcel, or null
+	 * @return The decoded {@link FuelStationList}
+	 * @throws IOException If there's an IO error, or the data was written by a different version
+	 */
+	public static FuelStationList read (final DataInput in, final File directory)
+			throws IOException {
+		final int version = in.readInt ();
+
+		if (version != VERSION) {
+			throw new IOException ("Unsupported FuelStationList version " + version);
+		}
+
+		final int flags = in.readByte ();
+		final boolean packed = (flags & FLAG_PACKED_PRICES) != 0;
+		final boolean located = (flags & FLAG_COORDINATES) != 0;
+		final String notApplicable = readNullableString (in);
+		final int count = in.readInt ();
+		final String[] table = new String[readVarInt (in) + 1];
+
+		for (int id = 1; id < table.length; id++) {
+			table[id] = in.readUTF ();
+		}
+
+		final int[] brandIdArray = new int[count];
+		final int[] imageIdArray = new int[count];
+		final String[] addressArray = new String[count];
+		final String[] distanceArray = new String[count];
+		final float[] distanceValueArray = new float[count];
+		final long[] updatedArray = new long[count];
+		final int[][] priceArrays = new int[GRADES][count];
+		final float[] latitudeArray = new float[count];
+		final float[] longitudeArray = new float[count];
+
+		for (int i = 0; i < count; i++) {
+			brandIdArray[i] = checkSymbol (table, readVarInt (in));
+			imageIdArray[i] = checkSymbol (table, readVarInt (in));
+			addressArray[i] = readNullableString (in);
+			distanceArray[i] = readNullableString (in);
+			distanceValueArray[i] = in.readFloat ();
+			updatedArray[i] = in.readLong ();
+
+			if (packed) {
+				unpack (in.readInt (), priceArrays[REGULAR], priceArrays[PLUS], i);
+				unpack (in.readInt (), priceArrays[PREMIUM], priceArrays[DIESEL], i);
+			} else {
+				for (int grade = 0; grade < GRADES; grade++) {
+					priceArrays[grade][i] = in.readInt ();
+				}
+			}
+
+			latitudeArray[i] = located ? in.readFloat () : Float.NaN;
+			longitudeArray[i] = located ? in.readFloat () : Float.NaN;
+		}
+
+		return new FuelStationList (count, table, brandIdArray, addressArray, distanceArray,
+				imageIdArray, distanceValueArray, priceArrays, updatedArray, latitudeArray,
+				longitudeArray, notApplicable, directory);
+	}
+
+	/**
+	 * Writes an encoded list to a new file in the spill directory, clearing out any old ones.
+	 *
+	 * @param bytes The encoded list
+	 * @return The file that was written
+	 * @throws IOException If there's an IO error
+	 */
+	@SuppressWarnings ("all")
+	private File writeFile (final ByteArrayOutputStream bytes) throws IOException {
+		final long now = System.currentTimeMillis ();
+		final File[] old = this.spillDirectory.listFiles ();
+
+		if (old != null) {
+			for (final File file : old) {
+				if (file.getName ().startsWith (SPILL_PREFIX)
+						&& now - file.lastModified () > SPILL_LIFETIME) {
+					file.delete ();
+				}
+			}
+		}
+
+		final File file = File.createTempFile (SPILL_PREFIX, ".bin", this.spillDirectory);
+		final BufferedOutputStream out = new BufferedOutputStream (new FileOutputStream (file));
+
+		try {
+			bytes.writeTo (out);
+		} finally {
+			out.close ();
+		}
+
+		return file;
+	}
+
+	/**
+	 * Reads an encoded list from a file written by {@link #writeFile(ByteArrayOutputStream)}.
+	 *
+	 * @param file The file to read
+	 * @return The decoded {@link FuelStationList}
+	 * @throws IOException If there's an IO error
+	 */
+	@SuppressWarnings ("all")
+	private static FuelStationList readFile (final File file) throws IOException {
+		final DataInputStream in = new DataInputStream (new BufferedInputStream
+				(new FileInputStream (file)));
+
+		try {
+			return read (in);
+		} finally {
+			in.close ();
+		}
+	}
+
+	/**
+	 * Checks whether every price fits in 16 bits, so that they can be packed in pairs.
+	 *
+	 * @return True if the prices can be packed, false otherwise
+	 */
+	private boolean canPackPrices () {
+		for (int grade = 0; grade < GRADES; grade++) {
+			for (int i = 0; i < this.size; i++) {
+				final int price = this.prices[grade][i];
+
+				if (price != FuelStationRecord.NO_PRICE && (price < 0 || price >= PACKED_NO_PRICE)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Packs the prices of two grades at a station into a single <code>int</code>.
+	 *
+	 * @param high The grade to put in the upper 16 bits
+	 * @param low The grade to put in the lower 16 bits
+	 * @param index The position of the station in the list
+	 * @return The packed prices
+	 */
+	private int pack (final int high, final int low, final int index) {
+		return (packPrice (this.prices[high][index]) << 16) | packPrice (this.prices[low][index]);
+	}
+
+	/**
+	 * Converts a price into its 16 bit packed form.
+	 *
+	 * @param price The price in cents, or {@link FuelStationRecord#NO_PRICE}
+	 * @return The packed price
+	 */
+	private static int packPrice (final int price) {
+		return price == FuelStationRecord.NO_PRICE ? PACKED_NO_PRICE : price;
+	}
+
+	/**
+	 * Unpacks a pair of prices written by {@link #pack(int, int, int)}.
+	 *
+	 * @param packed The packed prices
+	 * @param high The column to put the upper price in
+	 * @param low The column to put the lower price in
+	 * @param index The position of the station in the list
+	 */
+	private static void unpack (final int packed, final int[] high, final int[] low,
+			final int index) {
+		final int highPrice = packed >>> 16;
+		final int lowPrice = packed & 0xFFFF;
+
+		high[index] = highPrice == PACKED_NO_PRICE ? FuelStationRecord.NO_PRICE : highPrice;
+		low[index] = lowPrice == PACKED_NO_PRICE ? FuelStationRecord.NO_PRICE : lowPrice;
+	}
+
+	/**
+	 * Checks that a symbol read from an encoded list is in the table.
+	 *
+	 * @param table The symbol table
+	 * @param id The symbol's index
+	 * @return The index
+	 * @throws IOException If the index is out of range
+	 */
+	private static int checkSymbol (final String[] table, final int id) throws IOException {
+		if (id < 0 || id >= table.length) {
+			throw new IOException ("Invalid symbol " + id);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Writes a string that may be null.
+	 *
+	 * @param out The {@link DataOutput} to write to
+	 * @param value The string to write
+	 * @throws IOException If there's an IO error
+	 */
+	private static void writeNullableString (final DataOutput out, final String value)
+			throws IOException {
+		out.writeBoolean (value != null);
+
+		if (value != null) {
+			out.writeUTF (value);
+		}
+	}
+
+	/**
+	 * Reads a string written by {@link #writeNullableString(DataOutput, String)}.
+	 *
+	 * @param in The {@link DataInput} to read from
+	 * @return The string, or null
+	 * @throws IOException If there's an IO error
+	 */
+	private static String readNullableString (final DataInput in) throws IOException {
+		return in.readBoolean () ? in.readUTF () : null;
+	}
+
+	/**
+	 * Writes a non-negative <code>int</code> using as few bytes as possible, seven bits at a time.
+	 *
+	 * @param out The {@link DataOutput} to write to
+	 * @param value The value to write
+	 * @throws IOException If there's an IO error
+	 */
+	private static void writeVarInt (final DataOutput out, final int value) throws IOException {
+		int remaining = value;
+
+		while ((remaining & ~0x7F) != 0) {
+			out.writeByte ((remaining & 0x7F) | 0x80);
+			remaining >>>= 7;
+		}
+
+		out.writeByte (remaining);
+	}
+
+	/**
+	 * Reads a value written by {@link #writeVarInt(DataOutput, int)}.
+	 *
+	 * @param in The {@link DataInput} to read from
+	 * @return The value
+	 * @throws IOException If there's an IO error
+	 */
+	private static int readVarInt (final DataInput in) throws IOException {
+		int value = 0;
+
+		for (int shift = 0; shift < 32; shift += 7) {
+			final int b = in.readByte ();
+
+			value |= (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException ("Malformed variable length integer");
+	}
+
+	/**
+	 * Substitutes the "N/A" text for a missing value.
+	 *
+	 * @param value The value to check
+	 * @return The value, or "N/A" if it's null
+	 */
+	private String orNotApplicable (final String value) {
+		return value != null ? value : this.notApplicable;
+	}
+
+	/**
+	 * Collects the distinct strings in a column, handing out an index for each one.
+	 */
+	private static final class SymbolTable {
+
+		/**
+		 * Maps each string to its index.
+		 */
+		private final Map<String, Integer> ids = new HashMap<String, Integer> ();
+
+		/**
+		 * The strings in index order, starting with null.
+		 */
+		private String[] strings = new String[16];
+
+		/**
+		 * The number of strings in the table, including the null.
+		 */
+		private int count = 1;
+
+		/**
+		 * Constructor.
+		 */
+		SymbolTable () {
+			super ();
+		}
+
+		/**
+		 * Gets the index of a string, adding it to the table if it's not already there.
+		 *
+		 * @param value The string to look up, or null
+		 * @return The string's index, or 0 if it's null
+		 */
+		int intern (final String value) {
+			if (value == null) {
+				return 0;
+			}
+
+			Integer id = this.ids.get (value);
+
+			if (id == null) {
+				if (this.count == this.strings.length) {
+					this.strings = Arrays.copyOf (this.strings, this.count * 2);
+				}
+
+				id = this.count++;
+				this.ids.put (value, id);
+				this.strings[id] = value;
+			}
+
+			return id;
+		}
+
+		/**
+		 * Copies the strings out of the table.
+		 *
+		 * @return The strings in index order, starting with null
+		 */
+		String[] toArray () {
+			return Arrays.copyOf (this.strings, this.count);
+		}
 	}
 }
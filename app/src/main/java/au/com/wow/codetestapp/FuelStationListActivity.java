@@ -2,8 +2,6 @@ package au.com.wow.codetestapp;
 
 import android.app.Activity;
 import android.os.Bundle;
-import android.view.Menu;
-import android.view.MenuItem;
 
 public class FuelStationListActivity extends Activity {
 
@@ -17,15 +15,4 @@ public class FuelStationListActivity extends Activity {
                     .commit();
         }
     }
-
-    @Override
-    public boolean onCreateOptionsMenu(Menu menu) {
-        getMenuInflater().inflate(R.menu.main_menu, menu);
-        return true;
-    }
-
-    @Override
-    public boolean onOptionsItemSelected(MenuItem item) {
-	    return item.getItemId () == R.id.action_sortbybrand || super.onOptionsItemSelected (item);
-    }
 }
@@ -4,9 +4,13 @@ import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.BaseAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.kizio.image.ImageLoader;
+
 /**
  * Adapter for displaying data in the fuel station list.
  *
@@ -18,24 +22,117 @@ public class FuelStationListAdapter extends BaseAdapter {
 	/**
 	 * The {@link FuelStationList} containing the data to display.
 	 */
-	private final FuelStationList list;
+	private FuelStationList list;
 
 	/**
 	 * The {@link LayoutInflater} used to inflate new views.
 	 */
 	private final LayoutInflater inflater;
 
+	/**
+	 * The {@link ImageLoader} used to load the brand logos, or null if they aren't shown.
+	 */
+	private ImageLoader imageLoader;
+
+	/**
+	 * The positions in the list of the stations to display, in display order, or null to display
+	 * every station in feed order.
+	 */
+	private int[] order;
+
 	/**
 	 * Constructor.
 	 *
 	 * @param context The {@link Context} in which the list is being displayed
 	 * @param fuelStationList The {@link FuelStationList} to display
+	 * @param loader The {@link ImageLoader} used to load the brand logos, or null to not show them
 	 */
-	public FuelStationListAdapter (final Context context, final  FuelStationList fuelStationList) {
+	public FuelStationListAdapter (final Context context, final  FuelStationList fuelStationList,
+			final ImageLoader loader) {
 		super ();
 
 		this.list = fuelStationList;
 		this.inflater = LayoutInflater.from (context);
+		this.imageLoader = loader;
+	}
+
+	/**
+	 * Sets the order the stations are displayed in, such as one worked out by the
+	 * {@link FuelStationSorter}. Stations left out of the order aren't displayed.
+	 *
+	 * @param displayOrder The positions in the list of the stations to display, or null to display
+	 *                     every station in feed order
+	 */
+	public void setOrder (final int[] displayOrder) {
+		this.order = displayOrder;
+
+		notifyDataSetChanged ();
+	}
+
+	/**
+	 * Starts showing the brand logos. The first screen is drawn without them, and the loader is
+	 * set once it has been drawn.
+	 *
+	 * @param loader The {@link ImageLoader} used to load the brand logos, or null to not show them
+	 */
+	public void setImageLoader (final ImageLoader loader) {
+		this.imageLoader = loader;
+
+		notifyDataSetChanged ();
+	}
+
+	/**
+	 * Replaces the displayed list with a refreshed one, rebinding as little as possible.
+	 * <p>
+	 * If stations have been added, removed or moved then every visible row has to be rebound, but
+	 * as the IDs are stable the list view keeps its scroll position. Otherwise only the visible
+	 * rows whose contents have changed are rebound, in place, and the rest are left alone.
+	 * </p>
+	 *
+	 * @param fuelStationList The new {@link FuelStationList}
+	 * @param displayOrder The positions in the list of the stations to display, or null to display
+	 *                     every station in feed order
+	 * @param diff The {@link FuelStationDiff} from the list currently displayed
+	 * @param listView The {@link AbsListView} displaying the list
+	 */
+	public void update (final FuelStationList fuelStationList, final int[] displayOrder,
+			final FuelStationDiff diff, final AbsListView listView) {
+		this.list = fuelStationList;
+		this.order = displayOrder;
+
+		if (diff.isStructural ()) {
+			notifyDataSetChanged ();
+		} else {
+			final int first = listView.getFirstVisiblePosition ();
+			final int childCount = listView.getChildCount ();
+
+			for (final int position : diff.getChanged ()) {
+				final int child = position - first;
+
+				if (child >= 0 && child < childCount) {
+					getView (position, listView.getChildAt (child), listView);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the display order.
+	 *
+	 * @return The positions in the list of the stations displayed, or null if every station is
+	 * displayed in feed order
+	 */
+	public int[] getOrder () {
+		return this.order;
+	}
+
+	/**
+	 * Gets the {@link FuelStationList} being displayed.
+	 *
+	 * @return The {@link FuelStationList}
+	 */
+	public FuelStationList getList () {
+		return this.list;
 	}
 
 	/**
@@ -45,7 +142,7 @@ public class FuelStationListAdapter extends BaseAdapter {
 	 */
 	@Override
 	public int getCount () {
-		return this.list.getSize ();
+		return this.order != null ? this.order.length : this.list.getSize ();
 	}
 
 	/**
@@ -57,24 +154,37 @@ public class FuelStationListAdapter extends BaseAdapter {
 	 */
 	@Override
 	public FuelStationItem getItem (final int position) {
-		return this.list.get (position);
+		return this.list.get (getIndex (position));
 	}
 
 	/**
-	 * Gets the unique ID for an item in the list. This is defined as its position.
+	 * Gets the unique ID for an item in the list. This is derived from the station's brand and
+	 * address, so it stays the same when the list is refreshed.
 	 *
 	 * @param position The position of the item in the list
 	 * @return The unique ID
 	 */
 	@Override
 	public long getItemId (final int position) {
-		return position;
+		return this.list.getId (getIndex (position));
+	}
+
+	/**
+	 * Indicates that the item IDs stay the same when the data changes.
+	 *
+	 * @return Always returns true
+	 */
+	@Override
+	public boolean hasStableIds () {
+		return true;
 	}
 
 	/**
 	 * Gets the {@link View} at the specified position.
 	 * <p>
-	 * TODO Use a view holder class instead of looking up the child views each time.
+	 * Binding a recycled view does no view lookups, allocates nothing and formats nothing: the
+	 * child views come from the {@link ViewHolder} attached to the view, and the display strings
+	 * were all worked out when the list was decoded.
 	 * </p>
 	 *
 	 * @param position The position of the item in the list
@@ -84,20 +194,105 @@ public class FuelStationListAdapter extends BaseAdapter {
 	 */
 	@Override
 	public View getView (final int position, final View convertView, final ViewGroup parent) {
-		final FuelStationItem item = getItem (position);
 		final View view;
+		final ViewHolder holder;
 
 		// Resetting parameters is bad programming practice, so a new variable is used instead.
 		if (convertView == null) {
-			view = this.inflater.inflate (R.layout.fuel_station_list_item, null);
+			view = this.inflater.inflate (R.layout.fuel_station_list_item, parent, false);
+			holder = new ViewHolder (view);
+			view.setTag (holder);
 		} else {
 			view = convertView;
+			holder = (ViewHolder) view.getTag ();
 		}
 
-		((TextView) view.findViewById (R.id.brand)).setText (item.getBrand ());
-		((TextView) view.findViewById (R.id.address)).setText (item.getAddress ());
-		((TextView) view.findViewById (R.id.distance)).setText (item.getDistance ());
+		holder.bind (this.list, getIndex (position), this.imageLoader);
 
 		return view;
 	}
+
+	/**
+	 * Converts a position in the displayed list into a position in the {@link FuelStationList}.
+	 *
+	 * @param position The position of the item in the displayed list
+	 * @return The position of the station in the {@link FuelStationList}
+	 */
+	private int getIndex (final int position) {
+		return this.order != null ? this.order[position] : position;
+	}
+
+	/**
+	 * Holds the child views of a row, so they only have to be looked up when it's inflated. This is
+	 * shared with the {@link FuelStationPagedAdapter}, so both adapters' rows look the same.
+	 */
+	static final class ViewHolder {
+
+		/**
+		 * Displays the brand logo.
+		 */
+		private final ImageView icon;
+
+		/**
+		 * Displays the brand.
+		 */
+		private final TextView brand;
+
+		/**
+		 * Displays the address.
+		 */
+		private final TextView address;
+
+		/**
+		 * Displays the distance.
+		 */
+		private final TextView distance;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param row The row's {@link View}
+		 */
+		ViewHolder (final View row) {
+			super ();
+
+			this.icon = (ImageView) row.findViewById (R.id.icon);
+			this.brand = (TextView) row.findViewById (R.id.brand);
+			this.address = (TextView) row.findViewById (R.id.address);
+			this.distance = (TextView) row.findViewById (R.id.distance);
+		}
+
+		/**
+		 * Shows a station in the row. This reads straight from the list's columns, rather than
+		 * allocating an item for every row.
+		 *
+		 * @param list The {@link FuelStationList} holding the station
+		 * @param index The position of the station in the list
+		 * @param imageLoader The {@link ImageLoader} for the brand logo, or null if it isn't shown
+		 */
+		void bind (final FuelStationList list, final int index, final ImageLoader imageLoader) {
+			this.brand.setText (list.getBrand (index));
+			this.address.setText (list.getAddress (index));
+			this.distance.setText (list.getDistance (index));
+
+			if (imageLoader != null) {
+				imageLoader.bind (this.icon, list.getImageUrl (index));
+			}
+		}
+
+		/**
+		 * Blanks the row, for a station that hasn't been decoded yet.
+		 *
+		 * @param imageLoader The {@link ImageLoader} for the brand logo, or null if it isn't shown
+		 */
+		void clear (final ImageLoader imageLoader) {
+			this.brand.setText (null);
+			this.address.setText (null);
+			this.distance.setText (null);
+
+			if (imageLoader != null) {
+				imageLoader.bind (this.icon, null);
+			}
+		}
+	}
 }
@@ -1,52 +1,263 @@
 package au.com.wow.codetestapp;
 
 import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.AlertDialog;
 import android.app.ListFragment;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.graphics.Typeface;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.ListAdapter;
 import android.widget.ListView;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import com.kizio.image.ImageLoader;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * display whole station list. each item contains icon, address and distance
  */
-public class FuelStationListFragment extends ListFragment {
+public class FuelStationListFragment extends ListFragment implements FuelStationSorter.Callback,
+		FuelStationPager.Listener, FuelStationChannel.Subscriber {
 
 	/**
 	 * NewYork Petrol stations info.
 	 */
-    private final static String URL = "http://www.mshd.net/api/gasprices/10025";
+    final static String URL = "http://www.mshd.net/api/gasprices/10025";
 
 	/**
-	 * The broadcast receiver handling updates from the server.
+	 * The ZIP areas around {@link #URL}, which are prefetched when it's cheap to do so.
 	 */
-	private FuelStationBroadcastReceiver receiver = new FuelStationBroadcastReceiver ();
+	private static final String[] NEIGHBOUR_URLS = {
+			"http://www.mshd.net/api/gasprices/10024",
+			"http://www.mshd.net/api/gasprices/10026",
+			"http://www.mshd.net/api/gasprices/10027"
+	};
 
-    @Override
-    public void onViewCreated(View view, Bundle savedInstanceState) {
-        super.onViewCreated(view, savedInstanceState);
+	/**
+	 * The fraction of the app's memory class that the logo cache may use.
+	 */
+	private static final int IMAGE_MEMORY_FRACTION = 16;
 
-        setHasOptionsMenu(true);
-    }
+	/**
+	 * The maximum size of the logos cached on disk, in bytes.
+	 */
+	private static final long IMAGE_DISK_BYTES = 4 * 1024 * 1024;
+
+	/**
+	 * The least time between location updates, in milliseconds.
+	 */
+	private static final long LOCATION_INTERVAL = 30 * 1000;
+
+	/**
+	 * The least distance moved between location updates, in metres.
+	 */
+	private static final float LOCATION_DISTANCE = 100;
+
+	/**
+	 * The ID of the menu item that shows the metrics, in debug builds.
+	 */
+	private static final int MENU_METRICS = Menu.FIRST + 1;
+
+	/**
+	 * The ID of the menu item that shows the cheapest fuel nearby.
+	 */
+	private static final int MENU_CHEAPEST = Menu.FIRST + 2;
+
+	/**
+	 * How far away a station can be to count as nearby, in miles.
+	 */
+	private static final float NEARBY_MILES = 5;
+
+	/**
+	 * The names of the grades, indexed by grade.
+	 */
+	private static final int[] GRADE_NAMES = {R.string.grade_regular, R.string.grade_plus,
+			R.string.grade_premium, R.string.grade_diesel};
 
 	/**
-	 * Invoked when the fragment resumes.
+	 * Key for saving the sort order.
+	 */
+	private static final String SORT_ORDER = "sort_order";
+
+	/**
+	 * The {@link ImageLoader} for the brand logos.
+	 */
+	private ImageLoader imageLoader;
+
+	/**
+	 * The {@link FuelStationSorter} used to put the stations into the selected order.
+	 */
+	private final FuelStationSorter sorter = new FuelStationSorter ();
+
+	/**
+	 * The single thread the {@link FuelStationDatabase} is queried on.
+	 */
+	private final ExecutorService queryExecutor = Executors.newSingleThreadExecutor ();
+
+	/**
+	 * The {@link Handler} used to return query results to the main thread.
+	 */
+	private final Handler handler = new Handler (Looper.getMainLooper ());
+
+	/**
+	 * The selected sort order, such as {@link FuelStationSorter#BRAND}.
+	 */
+	private int sortOrder = FuelStationSorter.FEED_ORDER;
+
+	/**
+	 * The most recent {@link FuelStationList} received from the feed.
+	 */
+	private FuelStationList feed;
+
+	/**
+	 * When the last new list arrived from the channel, from {@link System#nanoTime()}, or 0 if
+	 * it's been displayed.
+	 */
+	private long receivedAt;
+
+	/**
+	 * The list to display: the feed, with the distances measured from the device if its location
+	 * is known.
+	 */
+	private FuelStationList list;
+
+	/**
+	 * The {@link FuelStationIndex} over the feed, or null if its stations have no coordinates.
+	 */
+	private FuelStationIndex index;
+
+	/**
+	 * The device's last known location, or null.
+	 */
+	private Location location;
+
+	/**
+	 * Receives the device's location while the fragment is resumed.
+	 */
+	private final LocationListener locationListener = new StationLocationListener ();
+
+	/**
+	 * The {@link FuelStationPager} displaying the first download while it's parsed, or null once
+	 * the complete list is displayed.
+	 */
+	private FuelStationPager pager;
+
+	/**
+	 * Restores the sort order.
+	 *
+	 * @param savedInstanceState The saved state of the fragment, if any
 	 */
 	@Override
-	public void onResume () {
-		super.onResume ();
+	public void onCreate (final Bundle savedInstanceState) {
+		super.onCreate (savedInstanceState);
+
+		if (savedInstanceState != null) {
+			this.sortOrder = savedInstanceState.getInt (SORT_ORDER, FuelStationSorter.FEED_ORDER);
+		}
+	}
+
+	/**
+	 * Saves the sort order.
+	 *
+	 * @param outState The {@link Bundle} to save the state in
+	 */
+	@Override
+	public void onSaveInstanceState (final Bundle outState) {
+		super.onSaveInstanceState (outState);
+
+		outState.putInt (SORT_ORDER, this.sortOrder);
+	}
+
+	/**
+	 * Stops any logo loads, sorts and queries that are still running.
+	 */
+	@Override
+	public void onDestroy () {
+		super.onDestroy ();
 
-		final IntentFilter filter = new IntentFilter (FuelStationService.UPDATE_FUEL_STATIONS);
+		if (this.imageLoader != null) {
+			this.imageLoader.shutdown ();
+		}
 
-		getActivity ().registerReceiver (this.receiver, filter);
+		this.sorter.shutdown ();
+		this.queryExecutor.shutdownNow ();
+		closePager ();
+	}
 
+	/**
+	 * Shows the last cached list straight away, so the first frame already has rows in it. The
+	 * logos and the options menu aren't needed for that, so they wait until it has been drawn.
+	 *
+	 * @param view The fragment's {@link View}
+	 * @param savedInstanceState The saved state of the fragment, if any
+	 */
+	@Override
+	public void onViewCreated (final View view, final Bundle savedInstanceState) {
+		super.onViewCreated (view, savedInstanceState);
+
+		showSnapshot ();
+
+		view.getViewTreeObserver ().addOnPreDrawListener (new ViewTreeObserver.OnPreDrawListener () {
+
+			/**
+			 * Schedules the deferred work for after the first frame has been drawn.
+			 *
+			 * @return Always returns true, so the frame is drawn
+			 */
+			@Override
+			public boolean onPreDraw () {
+				view.getViewTreeObserver ().removeOnPreDrawListener (this);
+
+				// The frame is drawn as soon as this returns, so anything posted now runs after it.
+				view.post (new Runnable () {
+
+					/**
+					 * Does the work that was deferred.
+					 */
+					@Override
+					public void run () {
+						onFirstDraw ();
+					}
+				});
+
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Invoked when the fragment resumes. This also makes sure the feed is refreshed in the
+	 * background, so it's recent the next time the app is opened.
+	 */
+	@Override
+	public void onResume () {
+		super.onResume ();
+
+		FuelStationChannel.getInstance ().subscribe (FuelStationRegions.MERGED, this);
+		startLocationUpdates ();
 		downloadData (false);
+		FuelStationRefreshScheduler.getInstance (getActivity ()).start (URL);
 	}
 
 	/**
@@ -56,7 +267,9 @@ public class FuelStationListFragment extends ListFragment {
 	public void onPause () {
 		super.onPause ();
 
-		getActivity ().unregisterReceiver (this.receiver);
+		// Anything published while paused is overtaken by the latest copy, sent on resume.
+		FuelStationChannel.getInstance ().unsubscribe (FuelStationRegions.MERGED, this);
+		getLocationManager ().removeUpdates (this.locationListener);
 	}
 
 	@Override
@@ -64,27 +277,538 @@ public class FuelStationListFragment extends ListFragment {
         super.onListItemClick(listView, view, position, id);
     }
 
-    @Override
-    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
-        super.onCreateOptionsMenu(menu, inflater);
-        menu.add(Menu.NONE, Menu.FIRST, 0, "Refresh").setIcon(R.drawable.ic_refresh).setShowAsAction(MenuItem.SHOW_AS_ACTION_IF_ROOM);
-    }
+	@Override
+	public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+		super.onCreateOptionsMenu(menu, inflater);
+		inflater.inflate(R.menu.main_menu, menu);
+		menu.add(Menu.NONE, Menu.FIRST, 0, "Refresh").setIcon(R.drawable.ic_refresh).setShowAsAction(MenuItem.SHOW_AS_ACTION_IF_ROOM);
+		menu.add (Menu.NONE, MENU_CHEAPEST, 0, R.string.action_cheapest);
 
-    @Override
-    public boolean onOptionsItemSelected(MenuItem item) {
-        if (item.getItemId() == Menu.FIRST) {
-            refresh();
-        }
-        return super.onOptionsItemSelected(item);
-    }
+		if (BuildConfig.DEBUG) {
+			menu.add (Menu.NONE, MENU_METRICS, 0, R.string.action_metrics);
+		}
+	}
+
+	/**
+	 * Ticks the menu item for the selected sort order.
+	 *
+	 * @param menu The options {@link Menu}
+	 */
+	@Override
+	public void onPrepareOptionsMenu (final Menu menu) {
+		super.onPrepareOptionsMenu (menu);
+
+		final MenuItem item = menu.findItem (getMenuId (this.sortOrder));
+
+		if (item != null) {
+			item.setChecked (true);
+		}
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		if (item.getItemId() == Menu.FIRST) {
+			refresh();
+		}
+
+		if (item.getItemId () == MENU_METRICS) {
+			showMetrics ();
+			return true;
+		}
+
+		if (item.getItemId () == MENU_CHEAPEST) {
+			showCheapest ();
+			return true;
+		}
+
+		final int order = getSortOrder (item.getItemId ());
+
+		if (order != FuelStationSorter.FEED_ORDER) {
+			item.setChecked (true);
+			this.sortOrder = order;
+
+			if (this.list != null) {
+				sort ();
+			}
+
+			return true;
+		}
+
+		return super.onOptionsItemSelected(item);
+	}
+
+	/**
+	 * Displays a sorted list. The first list gets a new adapter; after that, the existing adapter
+	 * is updated with the differences, so a refresh only rebinds the rows that changed and the
+	 * scroll position is kept.
+	 *
+	 * @param fuelStationList The {@link FuelStationList} that was sorted
+	 * @param query The {@link FuelStationSorter.Query} it was sorted with
+	 * @param order The positions of the stations to display, in display order
+	 * @param diff The {@link FuelStationDiff} from the displayed list, or null if nothing was
+	 *             displayed
+	 */
+	@Override
+	public void onSorted (final FuelStationList fuelStationList,
+			final FuelStationSorter.Query query, final int[] order, final FuelStationDiff diff) {
+		final FuelStationListAdapter current = getStationAdapter ();
+
+		// The fragment may have been detached while the sort was running.
+		if (getActivity () == null) {
+			return;
+		}
+
+		if (this.receivedAt != 0) {
+			FuelStationMetrics.getInstance ().record (FuelStationMetrics.DISPLAY,
+					System.nanoTime () - this.receivedAt);
+			this.receivedAt = 0;
+		}
+
+		if (current != null && diff != null) {
+			current.update (fuelStationList, order, diff, getListView ());
+		} else {
+			final FuelStationListAdapter adapter = new FuelStationListAdapter (getActivity (),
+					fuelStationList, this.imageLoader);
+
+			adapter.setOrder (order);
+			setListAdapter (adapter);
+
+			// The complete list has replaced the pages, so they're no longer needed.
+			closePager ();
+		}
+	}
+
+	/**
+	 * Shows the stations that have been paged in so far.
+	 *
+	 * @param fuelStationPager The {@link FuelStationPager} that has changed
+	 */
+	@Override
+	public void onPagesChanged (final FuelStationPager fuelStationPager) {
+		final ListAdapter adapter = getListAdapter ();
+
+		if (adapter instanceof FuelStationPagedAdapter) {
+			((FuelStationPagedAdapter) adapter).notifyDataSetChanged ();
+		}
+	}
+
+	/**
+	 * Receives a list from the service, through the {@link FuelStationChannel}. This is every
+	 * region that's been loaded, merged together.
+	 *
+	 * @param url The key the list was published under, {@link FuelStationRegions#MERGED}
+	 * @param fuelStationList The {@link FuelStationList} decoded from the feed
+	 */
+	@Override
+	public void onFuelStations (final String url, final FuelStationList fuelStationList) {
+		// The latest copy is sent again on every resume, and it's often the one already shown.
+		if (fuelStationList != this.feed) {
+			this.receivedAt = System.nanoTime ();
+			setFuelStationList (fuelStationList);
+		}
+	}
+
+	/**
+	 * Sets the {@link FuelStationList} that is displayed. It's shown once it has been put into the
+	 * selected order and diffed against the list already displayed.
+	 *
+	 * @param fuelStationList The {@link FuelStationList} that is to be displayed
+	 */
+	private void setFuelStationList (final FuelStationList fuelStationList) {
+		setFeed (fuelStationList);
+		sort ();
+	}
 
 	/**
-	 * Sets the {@link FuelStationList} that is displayed.
+	 * Takes a new copy of the feed, indexing its stations if they have coordinates. The index is
+	 * built once per feed, so moving around only costs a pass over the stations to measure them.
 	 *
-	 * @param list The {@link FuelStationList} that is to be displayed
+	 * @param fuelStationList The {@link FuelStationList} decoded from the feed
 	 */
-	private void setFuelStationList (final FuelStationList list) {
-		setListAdapter (new FuelStationListAdapter (getActivity (), list));
+	private void setFeed (final FuelStationList fuelStationList) {
+		this.feed = fuelStationList;
+		this.index = fuelStationList.hasCoordinates () ? new FuelStationIndex (fuelStationList)
+				: null;
+		this.list = locate ();
+	}
+
+	/**
+	 * Measures the distances to the stations in the feed from the device's location.
+	 *
+	 * @return The feed with the distances from the device, or the feed as it is if either the
+	 *         location or the stations' coordinates aren't known
+	 */
+	private FuelStationList locate () {
+		if (this.index != null && this.location != null) {
+			return this.index.relocate (this.location.getLatitude (), this.location.getLongitude ());
+		}
+
+		return this.feed;
+	}
+
+	/**
+	 * Starts listening for the device's location, using the network provider as it's quick and
+	 * cheap, and plenty accurate enough to tell stations a street apart.
+	 */
+	private void startLocationUpdates () {
+		final LocationManager manager = getLocationManager ();
+
+		try {
+			if (manager.isProviderEnabled (LocationManager.NETWORK_PROVIDER)) {
+				if (this.location == null) {
+					this.location = manager.getLastKnownLocation (LocationManager.NETWORK_PROVIDER);
+				}
+
+				manager.requestLocationUpdates (LocationManager.NETWORK_PROVIDER, LOCATION_INTERVAL,
+						LOCATION_DISTANCE, this.locationListener);
+			}
+		} catch (final IllegalArgumentException iae) {
+			// The device has no network location provider, so the feed's distances are used.
+		} catch (final SecurityException se) {
+			// The location permission has been withheld, so the feed's distances are used.
+		}
+	}
+
+	/**
+	 * Gets the system's {@link LocationManager}.
+	 *
+	 * @return The {@link LocationManager}
+	 */
+	private LocationManager getLocationManager () {
+		return (LocationManager) getActivity ().getSystemService (Context.LOCATION_SERVICE);
+	}
+
+	/**
+	 * Sorts the most recent list into the selected order, diffing it against what's displayed.
+	 */
+	private void sort () {
+		final FuelStationListAdapter current = getStationAdapter ();
+
+		if (current != null) {
+			this.sorter.sort (this.list, new FuelStationSorter.Query (this.sortOrder),
+					current.getList (), current.getOrder (), this);
+		} else {
+			this.sorter.sort (this.list, new FuelStationSorter.Query (this.sortOrder), this);
+		}
+	}
+
+	/**
+	 * Displays the last good copy of the feed, read from the disk cache on this thread if need be.
+	 * It's put into the selected order here as well, as nothing else can be drawn until it has
+	 * been. The service then revalidates it in the background as usual.
+	 */
+	private void showSnapshot () {
+		if (getListAdapter () != null) {
+			return;
+		}
+
+		final Activity activity = getActivity ();
+		final FuelStationList snapshot = FuelStationLoader.getInstance (activity).getSnapshot (URL);
+
+		if (snapshot != null) {
+			final FuelStationListAdapter adapter = new FuelStationListAdapter (activity, snapshot,
+					this.imageLoader);
+
+			if (this.sortOrder != FuelStationSorter.FEED_ORDER) {
+				adapter.setOrder (FuelStationSorter.sort (snapshot, new FuelStationSorter.Query
+						(this.sortOrder)));
+			}
+
+			setFeed (snapshot);
+			setListAdapter (adapter);
+		}
+	}
+
+	/**
+	 * Does the work that isn't needed to draw the first frame: creating the logo loader, sized to
+	 * the rows' icons, and adding the options menu.
+	 */
+	private void onFirstDraw () {
+		final Activity activity = getActivity ();
+
+		// The fragment may have been detached before the frame was drawn.
+		if (activity == null) {
+			return;
+		}
+
+		if (this.imageLoader == null) {
+			final ActivityManager manager = (ActivityManager) activity.getSystemService
+					(Context.ACTIVITY_SERVICE);
+			final int size = getResources ().getDimensionPixelSize (R.dimen.station_icon_size);
+			final int memory = manager.getMemoryClass () * 1024 * 1024 / IMAGE_MEMORY_FRACTION;
+
+			this.imageLoader = new ImageLoader (size, size, memory,
+					new File (activity.getCacheDir (), "logos"), IMAGE_DISK_BYTES);
+		}
+
+		final ListAdapter adapter = getListAdapter ();
+
+		if (adapter instanceof FuelStationListAdapter) {
+			((FuelStationListAdapter) adapter).setImageLoader (this.imageLoader);
+		} else if (adapter instanceof FuelStationPagedAdapter) {
+			((FuelStationPagedAdapter) adapter).setImageLoader (this.imageLoader);
+		}
+
+		setHasOptionsMenu (true);
+	}
+
+	/**
+	 * Gets the adapter displaying the complete list.
+	 *
+	 * @return The {@link FuelStationListAdapter}, or null if nothing, or only pages, are displayed
+	 */
+	private FuelStationListAdapter getStationAdapter () {
+		final ListAdapter adapter = getListAdapter ();
+
+		return adapter instanceof FuelStationListAdapter ? (FuelStationListAdapter) adapter : null;
+	}
+
+	/**
+	 * Starts displaying the feed page by page as it's downloaded. This is only worth doing when
+	 * there's nothing at all to show yet; once there is a list, it's kept on screen until the
+	 * refreshed one is ready.
+	 *
+	 * @param activity The {@link Activity} the fragment is attached to
+	 * @param maxAge The maximum age of a copy of the feed that doesn't need revalidating
+	 */
+	private void startPaging (final Activity activity, final long maxAge) {
+		final FuelStationLoader loader = FuelStationLoader.getInstance (activity);
+
+		if (this.pager != null || getListAdapter () != null || loader.peek (URL) != null) {
+			return;
+		}
+
+		this.pager = new FuelStationPager (getString (R.string.not_applicable),
+				activity.getCacheDir (), FuelStationPager.DEFAULT_PAGE_SIZE,
+				FuelStationPager.DEFAULT_MAX_PAGES, this);
+		setListAdapter (new FuelStationPagedAdapter (activity, this.pager, this.imageLoader));
+
+		// The service's own load joins this download, and delivers the complete list as usual.
+		loader.load (URL, maxAge, new PagingCallback (), this.pager);
+	}
+
+	/**
+	 * Stops paging, if the feed is being paged.
+	 */
+	private void closePager () {
+		if (this.pager != null) {
+			this.pager.close ();
+			this.pager = null;
+		}
+	}
+
+	/**
+	 * Maps a menu item onto a sort order.
+	 *
+	 * @param menuId The ID of the menu item
+	 * @return The sort order, or {@link FuelStationSorter#FEED_ORDER} if it isn't a sort item
+	 */
+	private static int getSortOrder (final int menuId) {
+		switch (menuId) {
+			case R.id.action_sortbybrand:
+				return FuelStationSorter.BRAND;
+			case R.id.action_sortbydistance:
+				return FuelStationSorter.DISTANCE;
+			case R.id.action_sortbyregular:
+				return FuelStationSorter.PRICE + FuelStationList.REGULAR;
+			case R.id.action_sortbyplus:
+				return FuelStationSorter.PRICE + FuelStationList.PLUS;
+			case R.id.action_sortbypremium:
+				return FuelStationSorter.PRICE + FuelStationList.PREMIUM;
+			case R.id.action_sortbydiesel:
+				return FuelStationSorter.PRICE + FuelStationList.DIESEL;
+			default:
+				return FuelStationSorter.FEED_ORDER;
+		}
+	}
+
+	/**
+	 * Maps a sort order onto its menu item.
+	 *
+	 * @param order The sort order, such as {@link FuelStationSorter#BRAND}
+	 * @return The ID of the menu item, or 0 if there isn't one
+	 */
+	private static int getMenuId (final int order) {
+		switch (order) {
+			case FuelStationSorter.BRAND:
+				return R.id.action_sortbybrand;
+			case FuelStationSorter.DISTANCE:
+				return R.id.action_sortbydistance;
+			case FuelStationSorter.PRICE + FuelStationList.REGULAR:
+				return R.id.action_sortbyregular;
+			case FuelStationSorter.PRICE + FuelStationList.PLUS:
+				return R.id.action_sortbyplus;
+			case FuelStationSorter.PRICE + FuelStationList.PREMIUM:
+				return R.id.action_sortbypremium;
+			case FuelStationSorter.PRICE + FuelStationList.DIESEL:
+				return R.id.action_sortbydiesel;
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Shows what's been collected by the {@link FuelStationMetrics}. This is only offered in debug
+	 * builds.
+	 */
+	private void showMetrics () {
+		final Activity activity = getActivity ();
+		final StringWriter text = new StringWriter ();
+		final PrintWriter writer = new PrintWriter (text);
+		final TextView view = new TextView (activity);
+		final ScrollView scroller = new ScrollView (activity);
+
+		FuelStationMetrics.getInstance ().dump (writer);
+		writer.flush ();
+
+		// The dump is laid out in columns, and its lines are long, so they're left unwrapped.
+		view.setText (text.toString ());
+		view.setTypeface (Typeface.MONOSPACE);
+		view.setTextSize (10);
+		view.setHorizontallyScrolling (true);
+		scroller.addView (view);
+
+		new AlertDialog.Builder (activity).setTitle (R.string.action_metrics).setView (scroller)
+				.setPositiveButton (android.R.string.ok, null).show ();
+	}
+
+	/**
+	 * Shows the cheapest station nearby for each grade. They're looked up in the
+	 * {@link FuelStationDatabase} on a background thread, each one by walking a price index, so
+	 * the list isn't sorted four times over to find them.
+	 * <p>
+	 * What counts as nearby is decided by the distances the list shows. The database only has the
+	 * feed's distances, which are measured from the area that was searched, whereas the list
+	 * measures them from the device once its location is known. Filtering on those would let the
+	 * two disagree about which stations are within range.
+	 * </p>
+	 */
+	private void showCheapest () {
+		final FuelStationList shown = this.list;
+
+		if (shown == null) {
+			return;
+		}
+
+		final FuelStationDatabase database = FuelStationDatabase.getInstance (getActivity ());
+		final String[] grades = new String[GRADE_NAMES.length];
+		final String none = getString (R.string.cheapest_none);
+		final String notApplicable = getString (R.string.not_applicable);
+
+		for (int grade = 0; grade < grades.length; grade++) {
+			grades[grade] = getString (GRADE_NAMES[grade]);
+		}
+
+		this.queryExecutor.execute (new Runnable () {
+
+			/**
+			 * Runs the queries, and shows the results on the main thread.
+			 */
+			@Override
+			public void run () {
+				final String text;
+
+				try {
+					text = findCheapest (database, shown, grades, none, notApplicable);
+				} catch (final SQLException sqle) {
+					Log.e (FuelStationListFragment.class.getName (), "Failed to query stations",
+							sqle);
+					return;
+				}
+
+				FuelStationListFragment.this.handler.post (new Runnable () {
+
+					/**
+					 * Shows the results, if the fragment is still there to show them.
+					 */
+					@Override
+					public void run () {
+						final Activity activity = getActivity ();
+
+						if (activity != null) {
+							new AlertDialog.Builder (activity).setTitle (R.string.action_cheapest)
+									.setMessage (text).setPositiveButton (android.R.string.ok, null)
+									.show ();
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Describes the cheapest station nearby for each grade.
+	 *
+	 * @param database The {@link FuelStationDatabase} to query
+	 * @param shown The {@link FuelStationList} on screen, whose distances decide what's nearby
+	 * @param grades The names of the grades, indexed by grade
+	 * @param none The text for a grade nobody nearby sells
+	 * @param notApplicable The text for a missing brand
+	 * @return One line per grade, giving the price, brand and address
+	 */
+	private static String findCheapest (final FuelStationDatabase database,
+			final FuelStationList shown, final String[] grades, final String none,
+			final String notApplicable) {
+		final StringBuilder text = new StringBuilder ();
+
+		for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+			final Cursor cursor = database.query (new FuelStationSorter.Query (
+					FuelStationSorter.PRICE + grade), FuelStationDatabase.ANY_DISTANCE);
+
+			try {
+				final int position = cursor.getColumnIndexOrThrow (
+						FuelStationDatabase.COLUMN_POSITION);
+				final int stationId = cursor.getColumnIndexOrThrow (
+						FuelStationDatabase.COLUMN_STATION_ID);
+				boolean isFound = false;
+
+				// Cheapest first, so the first one that's close enough is the answer.
+				while (!isFound && cursor.moveToNext ()) {
+					isFound = isNearby (shown, cursor.getInt (position),
+							cursor.getLong (stationId));
+				}
+
+				if (text.length () > 0) {
+					text.append ('\n');
+				}
+
+				text.append (grades[grade]).append (": ");
+
+				if (isFound) {
+					final int price = cursor.getColumnIndexOrThrow (
+							FuelStationDatabase.COLUMN_PRICES[grade]);
+					final int brand = cursor.getColumnIndexOrThrow (
+							FuelStationDatabase.COLUMN_BRAND);
+					final int address = cursor.getColumnIndexOrThrow (
+							FuelStationDatabase.COLUMN_ADDRESS);
+
+					text.append (PriceFormatter.format (cursor.getInt (price))).append (", ");
+					text.append (cursor.isNull (brand) ? notApplicable : cursor.getString (brand));
+					text.append (", ").append (cursor.getString (address));
+				} else {
+					text.append (none);
+				}
+			} finally {
+				cursor.close ();
+			}
+		}
+
+		return text.toString ();
+	}
+
+	/**
+	 * Checks whether a station in the database is nearby, going by the list on screen.
+	 *
+	 * @param shown The {@link FuelStationList} on screen
+	 * @param position The station's position in the feed
+	 * @param id The station's ID, to check the database holds the same version of the feed
+	 * @return True if the station is within {@link #NEARBY_MILES} of where the list measures from
+	 */
+	private static boolean isNearby (final FuelStationList shown, final int position,
+			final long id) {
+		// A distance that isn't known is NaN, which is never close enough.
+		return position < shown.getSize () && shown.getId (position) == id
+				&& shown.getDistanceValue (position) <= NEARBY_MILES;
 	}
 
 	/**
@@ -103,29 +827,95 @@ public class FuelStationListFragment extends ListFragment {
 		final Activity activity = getActivity ();
 		final Intent intent = new Intent (activity, FuelStationService.class);
 
+		startPaging (activity, isRefresh ? 0 : FuelStationLoader.DEFAULT_MAX_AGE);
+
 		intent.putExtra (FuelStationService.URL, URL);
+		intent.putExtra (FuelStationService.PREFETCH_URLS, NEIGHBOUR_URLS);
 		intent.putExtra (FuelStationService.IS_REFRESH, isRefresh);
 
 		activity.startService (intent);
 	}
 
 	/**
-	 * Handles results from the intent service.
+	 * Re-measures the distances to the stations as the device moves, rather than downloading the
+	 * feed again.
 	 */
-	private class FuelStationBroadcastReceiver extends BroadcastReceiver {
+	private class StationLocationListener implements LocationListener {
 
 		/**
-		 * Handles receiving the results from the download service.
+		 * Re-measures the stations, and re-sorts them if need be.
 		 *
-		 * @param context The {@link Context} the result is coming from
-		 * @param intent An {@link Intent} containing additional information
+		 * @param newLocation The device's new {@link Location}
 		 */
 		@Override
-		public void onReceive (final Context context, final Intent intent) {
-			if (intent != null && intent.hasExtra (FuelStationService.FUEL_STATIONS)) {
-				setFuelStationList ((FuelStationList) intent.getParcelableExtra
-						(FuelStationService.FUEL_STATIONS));
+		public void onLocationChanged (final Location newLocation) {
+			FuelStationListFragment.this.location = newLocation;
+
+			if (FuelStationListFragment.this.index != null) {
+				FuelStationListFragment.this.list = locate ();
+				sort ();
 			}
 		}
+
+		/**
+		 * Ignores changes in the provider's status.
+		 *
+		 * @param provider The name of the provider
+		 * @param status The provider's new status
+		 * @param extras Additional details of the status
+		 */
+		@Override
+		public void onStatusChanged (final String provider, final int status, final Bundle extras) {
+			// The last location is kept until a new one arrives.
+		}
+
+		/**
+		 * Ignores the provider being enabled, as updates will simply start arriving.
+		 *
+		 * @param provider The name of the provider
+		 */
+		@Override
+		public void onProviderEnabled (final String provider) {
+			// Nothing to do.
+		}
+
+		/**
+		 * Ignores the provider being disabled, as the last location is still the best there is.
+		 *
+		 * @param provider The name of the provider
+		 */
+		@Override
+		public void onProviderDisabled (final String provider) {
+			// Nothing to do.
+		}
+	}
+
+	/**
+	 * Receives the results of the paged download. The stations themselves arrive through the
+	 * service, which joins the same download, so there's nothing to do here.
+	 */
+	private static class PagingCallback implements FuelStationLoader.Callback {
+
+		/**
+		 * Ignores the list, which the service also publishes.
+		 *
+		 * @param url The URL of the feed
+		 * @param fuelStationList The {@link FuelStationList} decoded from the feed
+		 */
+		@Override
+		public void onFuelStations (final String url, final FuelStationList fuelStationList) {
+			// The service publishes it.
+		}
+
+		/**
+		 * Ignores the completion, which the loader has already logged if it failed.
+		 *
+		 * @param url The URL of the feed
+		 * @param error The reason the feed couldn't be fetched, or null if it succeeded
+		 */
+		@Override
+		public void onComplete (final String url, final Exception error) {
+			// Nothing to do.
+		}
 	}
 }
@@ -0,0 +1,404 @@
+package au.com.wow.codetestapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads fuel station feeds using a stale-while-revalidate strategy.
+ * <p>
+ * The last good copy of a feed is handed back straight away, and then the feed is revalidated in
+ * the background if the copy is older than the maximum age the caller will accept. Requests for a
+ * feed that's already being fetched join the fetch in flight rather than starting another, so a
+ * burst of resumes and refreshes costs a single download.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 01/04/2015
+ */
+public class FuelStationLoader {
+
+	/**
+	 * The default maximum age of a feed before it's revalidated, in milliseconds.
+	 */
+	public static final long DEFAULT_MAX_AGE = 5 * 60 * 1000;
+
+	/**
+	 * The number of feeds that can be fetched at once.
+	 */
+	private static final int THREADS = 2;
+
+	/**
+	 * Receives the results of a load.
+	 */
+	public interface Callback {
+
+		/**
+		 * Invoked with the last good copy of the feed, and again with the fresh copy if it has
+		 * changed. May be invoked on any thread.
+		 *
+		 * @param url The URL of the feed
+		 * @param list The {@link FuelStationList} decoded from the feed
+		 */
+		void onFuelStations (String url, FuelStationList list);
+
+		/**
+		 * Invoked once the load has finished, successfully or not. May be invoked on any thread.
+		 *
+		 * @param url The URL of the feed
+		 * @param error The reason the feed couldn't be fetched, or null if it succeeded
+		 */
+		void onComplete (String url, Exception error);
+	}
+
+	/**
+	 * The loader shared by the whole app.
+	 */
+	private static FuelStationLoader instance;
+
+	/**
+	 * The {@link FuelStationCache} holding the feeds on disk.
+	 */
+	private final FuelStationCache cache;
+
+	/**
+	 * The {@link FuelStationFetcher} used to download the feeds.
+	 */
+	private final FuelStationFetcher fetcher;
+
+	/**
+	 * The {@link Executor} that the disk and network work is done on.
+	 */
+	private final Executor executor;
+
+	/**
+	 * The last good copy of each feed, keyed by URL.
+	 */
+	private final Map<String, FuelStationCache.Entry> entries =
+			new HashMap<String, FuelStationCache.Entry> ();
+
+	/**
+	 * The callbacks waiting on each fetch in flight, keyed by URL.
+	 */
+	private final Map<String, List<Callback>> inFlight = new HashMap<String, List<Callback>> ();
+
+	/**
+	 * The smallest maximum age asked for by the callbacks waiting on each fetch, keyed by URL.
+	 */
+	private final Map<String, Long> maxAges = new HashMap<String, Long> ();
+
+	/**
+	 * The pagers that the stations are passed to as each fetch in flight decodes them, keyed by
+	 * URL.
+	 */
+	private final Map<String, FuelStationPager> pagers = new HashMap<String, FuelStationPager> ();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param feedCache The {@link FuelStationCache} holding the feeds on disk
+	 * @param feedFetcher The {@link FuelStationFetcher} used to download the feeds
+	 * @param workExecutor The {@link Executor} to do the disk and network work on
+	 */
+	public FuelStationLoader (final FuelStationCache feedCache,
+			final FuelStationFetcher feedFetcher, final Executor workExecutor) {
+		super ();
+
+		this.cache = feedCache;
+		this.fetcher = feedFetcher;
+		this.executor = workExecutor;
+	}
+
+	/**
+	 * Gets the loader shared by the whole app, creating it if necessary.
+	 *
+	 * @param context The {@link Context} the app is running in
+	 * @return The shared {@link FuelStationLoader}
+	 */
+	public static synchronized FuelStationLoader getInstance (final Context context) {
+		if (instance == null) {
+			final Context appContext = context.getApplicationContext ();
+			final FuelStationCache feedCache = new FuelStationCache (appContext);
+
+			instance = new FuelStationLoader (feedCache, new FuelStationFetcher (appContext,
+					feedCache), Executors.newFixedThreadPool (THREADS));
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Loads a feed. The callback is sent the last good copy straight away if there is one in
+	 * memory, and then the feed is revalidated if it's older than the maximum age.
+	 *
+	 * @param url The URL of the feed
+	 * @param maxAge The maximum age of a copy that doesn't need revalidating, in milliseconds. Pass
+	 *               0 to force a revalidation
+	 * @param callback The {@link Callback} to send the results to
+	 */
+	public void load (final String url, final long maxAge, final Callback callback) {
+		load (url, maxAge, callback, null);
+	}
+
+	/**
+	 * Loads a feed, as {@link #load(String, long, Callback)} does, also passing the stations to a
+	 * {@link FuelStationPager} as they're decoded from the network.
+	 * <p>
+	 * The pager is only fed if this call starts a download. If the feed is fresh, or a download is
+	 * already in flight, the pager is finished straight away and the stations arrive through the
+	 * callback as usual. Either way the pager is always finished.
+	 * </p>
+	 *
+	 * @param url The URL of the feed
+	 * @param maxAge The maximum age of a copy that doesn't need revalidating, in milliseconds. Pass
+	 *               0 to force a revalidation
+	 * @param callback The {@link Callback} to send the results to
+	 * @param pager The {@link FuelStationPager} to pass the stations to, or null
+	 */
+	public void load (final String url, final long maxAge, final Callback callback,
+			final FuelStationPager pager) {
+		final FuelStationCache.Entry known;
+		final boolean fresh;
+		final boolean isJoining;
+		boolean isPaging = false;
+
+		synchronized (this) {
+			known = this.entries.get (url);
+
+			// This is decided once, as the copy could go stale while the callbacks are called.
+			fresh = known != null && isFresh (known, maxAge);
+
+			if (fresh) {
+				isJoining = false;
+			} else {
+				List<Callback> waiting = this.inFlight.get (url);
+				isJoining = waiting != null;
+
+				if (waiting == null) {
+					waiting = new ArrayList<Callback> ();
+					this.inFlight.put (url, waiting);
+					this.maxAges.put (url, maxAge);
+
+					if (pager != null) {
+						this.pagers.put (url, pager);
+						isPaging = true;
+					}
+				} else if (maxAge < this.maxAges.get (url)) {
+					// A refresh that joins a fetch in flight must still reach the network.
+					this.maxAges.put (url, maxAge);
+				}
+
+				waiting.add (callback);
+			}
+		}
+
+		if (pager != null && !isPaging) {
+			pager.finish ();
+		}
+
+		if (known != null) {
+			callback.onFuelStations (url, known.getList ());
+		}
+
+		if (fresh) {
+			callback.onComplete (url, null);
+		} else if (!isJoining) {
+			this.executor.execute (new Runnable () {
+
+				/**
+				 * Revalidates the feed.
+				 */
+				@Override
+				public void run () {
+					revalidate (url);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Gets the last good copy of a feed held in memory, without any disk or network access.
+	 *
+	 * @param url The URL of the feed
+	 * @return The last good {@link FuelStationList}, or null if the feed hasn't been loaded
+	 */
+	public synchronized FuelStationList peek (final String url) {
+		final FuelStationCache.Entry entry = this.entries.get (url);
+
+		return entry != null ? entry.getList () : null;
+	}
+
+	/**
+	 * Gets the last good copy of a feed on the calling thread, reading it from the disk cache if it
+	 * isn't held in memory. This is for drawing the first screen on a cold start, where reading a
+	 * small local file beats waiting for the service. The copy that's read is kept in memory, so
+	 * the revalidation that follows doesn't read it again.
+	 *
+	 * @param url The URL of the feed
+	 * @return The last good {@link FuelStationList}, or null if the feed has never been downloaded
+	 */
+	public FuelStationList getSnapshot (final String url) {
+		final FuelStationList known = peek (url);
+
+		if (known != null) {
+			return known;
+		}
+
+		final FuelStationCache.Entry entry = this.cache.get (url);
+
+		if (entry == null) {
+			return null;
+		}
+
+		synchronized (this) {
+			final FuelStationCache.Entry current = this.entries.get (url);
+
+			// A download may have finished while the file was being read.
+			if (current != null) {
+				return current.getList ();
+			}
+
+			this.entries.put (url, entry);
+		}
+
+		return entry.getList ();
+	}
+
+	/**
+	 * Revalidates a feed, on the executor's thread. If nothing is held in memory then the disk
+	 * cache is checked first, and its copy is sent to the waiting callbacks before the network is
+	 * touched.
+	 * <p>
+	 * A refresh can join while this is deciding whether the copy is fresh enough, lowering the
+	 * maximum age after it was read. So if the network wasn't touched, the maximum age is checked
+	 * again as the waiting callbacks are taken, and the feed is revalidated after all if the copy
+	 * is too old for it now.
+	 * </p>
+	 *
+	 * @param url The URL of the feed
+	 */
+	private void revalidate (final String url) {
+		final FuelStationMetrics metrics = FuelStationMetrics.getInstance ();
+		FuelStationCache.Entry known;
+		long maxAge;
+		String outcome = "fresh";
+
+		metrics.beginRefresh (url);
+
+		synchronized (this) {
+			known = this.entries.get (url);
+		}
+
+		if (known == null) {
+			known = this.cache.get (url);
+
+			if (known != null) {
+				synchronized (this) {
+					this.entries.put (url, known);
+				}
+
+				deliver (url, known.getList ());
+			}
+		}
+
+		Exception error = null;
+		final FuelStationPager pager;
+		List<Callback> waiting = null;
+		boolean isFetched = false;
+
+		synchronized (this) {
+			maxAge = this.maxAges.get (url);
+			pager = this.pagers.remove (url);
+		}
+
+		while (true) {
+			if (!isFetched && (known == null || !isFresh (known, maxAge))) {
+				isFetched = true;
+
+				try {
+					final FuelStationCache.Entry result = this.fetcher.fetch (url, known, pager);
+
+					synchronized (this) {
+						this.entries.put (url, result);
+					}
+
+					if (known == null || result.getList () != known.getList ()) {
+						outcome = "changed";
+						deliver (url, result.getList ());
+					} else {
+						outcome = "not modified";
+					}
+				} catch (final Exception e) {
+					Log.e (FuelStationLoader.class.getName (), "Failed to download " + url, e);
+					outcome = e.toString ();
+					error = e;
+				}
+			}
+
+			synchronized (this) {
+				final long latest = this.maxAges.get (url);
+
+				if (isFetched || latest >= maxAge || isFresh (known, latest)) {
+					waiting = this.inFlight.remove (url);
+					this.maxAges.remove (url);
+					break;
+				}
+
+				maxAge = latest;
+			}
+		}
+
+		metrics.endRefresh (outcome);
+
+		if (pager != null) {
+			pager.finish ();
+		}
+
+		if (waiting != null) {
+			for (final Callback callback : waiting) {
+				callback.onComplete (url, error);
+			}
+		}
+	}
+
+	/**
+	 * Sends a list to every callback waiting on a feed.
+	 *
+	 * @param url The URL of the feed
+	 * @param list The {@link FuelStationList} to send
+	 */
+	private void deliver (final String url, final FuelStationList list) {
+		final List<Callback> waiting;
+
+		synchronized (this) {
+			final List<Callback> current = this.inFlight.get (url);
+
+			waiting = current != null ? new ArrayList<Callback> (current) : null;
+		}
+
+		if (waiting != null) {
+			for (final Callback callback : waiting) {
+				callback.onFuelStations (url, list);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a copy of a feed is recent enough not to need revalidating.
+	 *
+	 * @param entry The {@link FuelStationCache.Entry} to check
+	 * @param maxAge The maximum acceptable age, in milliseconds
+	 * @return True if the entry is fresh, false otherwise
+	 */
+	private static boolean isFresh (final FuelStationCache.Entry entry, final long maxAge) {
+		final long age = System.currentTimeMillis () - entry.getFetched ();
+
+		return age >= 0 && age < maxAge;
+	}
+}
@@ -0,0 +1,502 @@
+package au.com.wow.codetestapp;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Times each stage of getting a feed from the network onto the screen, so that a slowdown can be
+ * pinned on one of them.
+ * <p>
+ * It's always on, so it has to be cheap. Each stage's times go into a histogram with a bucket for
+ * each power of two microseconds, which is a handful of atomic adds and no allocation. Each stage
+ * is also marked as a {@link Trace} section, so it shows up in systrace, on the versions of
+ * Android that have it.
+ * </p>
+ * <p>
+ * The stages of a refresh, which all run on one loader thread, are also collected per refresh, and
+ * the last few refreshes are kept. Everything can be written out with {@link #dump(PrintWriter)},
+ * which is reached through <code>dumpsys</code> while the {@link FuelStationService} is running,
+ * or a menu item in debug builds.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 14/04/2015
+ */
+public final class FuelStationMetrics {
+
+	/**
+	 * Reading the last good copy of a feed from the disk cache.
+	 */
+	public static final int CACHE_READ = 0;
+
+	/**
+	 * Sending a request and waiting for the response headers.
+	 */
+	public static final int CONNECT = 1;
+
+	/**
+	 * Reading a response body whose length is known into memory.
+	 */
+	public static final int DOWNLOAD = 2;
+
+	/**
+	 * Decoding the stations. When the length of the body isn't known, this includes reading it.
+	 */
+	public static final int DECODE = 3;
+
+	/**
+	 * Building the {@link FuelStationList} from the decoded stations.
+	 */
+	public static final int BUILD = 4;
+
+	/**
+	 * Writing a feed to the disk cache.
+	 */
+	public static final int CACHE_WRITE = 5;
+
+	/**
+	 * From a list being published on the {@link FuelStationChannel} to it reaching the main thread.
+	 */
+	public static final int DELIVERY = 6;
+
+	/**
+	 * Sorting and diffing a list.
+	 */
+	public static final int SORT = 7;
+
+	/**
+	 * From a list reaching the screen to its rows being handed to the adapter, including the sort.
+	 */
+	public static final int DISPLAY = 8;
+
+	/**
+	 * The number of stages.
+	 */
+	public static final int STAGES = 9;
+
+	/**
+	 * The bytes of response bodies received, as sent.
+	 */
+	public static final int WIRE_BYTES = 0;
+
+	/**
+	 * The bytes of response bodies received, once decompressed.
+	 */
+	public static final int DECODED_BYTES = 1;
+
+	/**
+	 * The stations decoded.
+	 */
+	public static final int STATIONS = 2;
+
+	/**
+	 * The number of counters.
+	 */
+	public static final int COUNTERS = 3;
+
+	/**
+	 * The names of the stages, as they appear in traces and dumps.
+	 */
+	private static final String[] STAGE_NAMES = {"cache-read", "connect", "download", "decode",
+			"build", "cache-write", "delivery", "sort", "display"};
+
+	/**
+	 * The names of the counters, as they appear in dumps.
+	 */
+	private static final String[] COUNTER_NAMES = {"wire-bytes", "decoded-bytes", "stations"};
+
+	/**
+	 * The number of refreshes kept.
+	 */
+	private static final int RECENT_REFRESHES = 20;
+
+	/**
+	 * Whether {@link Trace} is available, which it is from Jelly Bean MR2.
+	 */
+	private static final boolean IS_TRACING = Build.VERSION.SDK_INT
+			>= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+	/**
+	 * The metrics shared by the whole app.
+	 */
+	private static final FuelStationMetrics INSTANCE = new FuelStationMetrics ();
+
+	/**
+	 * The times taken by a stage.
+	 */
+	static final class Histogram {
+
+		/**
+		 * The number of buckets. The last one holds everything over about 35 minutes.
+		 */
+		private static final int BUCKETS = 32;
+
+		/**
+		 * The number of times in each bucket. Bucket n holds times under 2<sup>n</sup>
+		 * microseconds, and at least half that.
+		 */
+		private final AtomicLongArray buckets = new AtomicLongArray (BUCKETS);
+
+		/**
+		 * The number of times recorded.
+		 */
+		private final AtomicLong count = new AtomicLong ();
+
+		/**
+		 * The total of the times recorded, in nanoseconds.
+		 */
+		private final AtomicLong total = new AtomicLong ();
+
+		/**
+		 * The longest time recorded, in nanoseconds.
+		 */
+		private final AtomicLong max = new AtomicLong ();
+
+		/**
+		 * Constructor.
+		 */
+		Histogram () {
+			super ();
+		}
+
+		/**
+		 * Records a time.
+		 *
+		 * @param nanos The time taken, in nanoseconds
+		 */
+		void record (final long nanos) {
+			final long micros = Math.max (nanos / 1000, 0);
+			final int bucket = Math.min (64 - Long.numberOfLeadingZeros (micros), BUCKETS - 1);
+			long longest = this.max.get ();
+
+			this.buckets.incrementAndGet (bucket);
+			this.count.incrementAndGet ();
+			this.total.addAndGet (nanos);
+
+			while (nanos > longest && !this.max.compareAndSet (longest, nanos)) {
+				longest = this.max.get ();
+			}
+		}
+
+		/**
+		 * Gets the number of times recorded.
+		 *
+		 * @return The number of times
+		 */
+		long getCount () {
+			return this.count.get ();
+		}
+
+		/**
+		 * Estimates a percentile, as the upper bound of the bucket it falls in.
+		 *
+		 * @param percent The percentile, such as 90
+		 * @return The time in microseconds that at least that percentage of the times are under, or
+		 *         0 if nothing has been recorded
+		 */
+		long getPercentile (final int percent) {
+			final long wanted = (this.count.get () * percent + 99) / 100;
+			long seen = 0;
+
+			for (int bucket = 0; bucket < BUCKETS && wanted > 0; bucket++) {
+				seen += this.buckets.get (bucket);
+
+				if (seen >= wanted) {
+					return 1L << bucket;
+				}
+			}
+
+			return 0;
+		}
+
+		/**
+		 * Writes a summary of the times.
+		 *
+		 * @param writer The {@link PrintWriter} to write to
+		 * @param name The name of the stage
+		 */
+		void dump (final PrintWriter writer, final String name) {
+			final long times = this.count.get ();
+
+			writer.println (String.format (Locale.US,
+					"  %-12s n=%-6d mean=%.1fms p50<%.1fms p90<%.1fms p99<%.1fms max=%.1fms", name,
+					times, times > 0 ? this.total.get () / 1e6 / times : 0.0,
+					getPercentile (50) / 1e3, getPercentile (90) / 1e3, getPercentile (99) / 1e3,
+					this.max.get () / 1e6));
+		}
+	}
+
+	/**
+	 * What happened during one refresh of a feed.
+	 */
+	private static final class Refresh {
+
+		/**
+		 * The URL of the feed.
+		 */
+		final String url;
+
+		/**
+		 * When the refresh started, in milliseconds since the epoch.
+		 */
+		final long startedAt;
+
+		/**
+		 * When the refresh started, from {@link System#nanoTime()}.
+		 */
+		final long start = System.nanoTime ();
+
+		/**
+		 * The time spent in each stage, in nanoseconds.
+		 */
+		final long[] stages = new long[STAGES];
+
+		/**
+		 * The value of each counter.
+		 */
+		final long[] counters = new long[COUNTERS];
+
+		/**
+		 * The time the whole refresh took, in nanoseconds.
+		 */
+		long elapsed;
+
+		/**
+		 * How the refresh ended.
+		 */
+		String outcome;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param feedUrl The URL of the feed
+		 */
+		Refresh (final String feedUrl) {
+			super ();
+
+			this.url = feedUrl;
+			this.startedAt = System.currentTimeMillis ();
+		}
+	}
+
+	/**
+	 * The times taken by each stage.
+	 */
+	private final Histogram[] histograms = new Histogram[STAGES];
+
+	/**
+	 * The totals of the counters.
+	 */
+	private final AtomicLongArray counters = new AtomicLongArray (COUNTERS);
+
+	/**
+	 * The refresh running on each thread.
+	 */
+	private final ThreadLocal<Refresh> current = new ThreadLocal<Refresh> ();
+
+	/**
+	 * The last few refreshes, used as a ring.
+	 */
+	private final Refresh[] recent = new Refresh[RECENT_REFRESHES];
+
+	/**
+	 * The total number of refreshes that have finished.
+	 */
+	private int refreshes;
+
+	/**
+	 * Constructor.
+	 */
+	FuelStationMetrics () {
+		super ();
+
+		for (int stage = 0; stage < STAGES; stage++) {
+			this.histograms[stage] = new Histogram ();
+		}
+	}
+
+	/**
+	 * Gets the metrics shared by the whole app.
+	 *
+	 * @return The shared {@link FuelStationMetrics}
+	 */
+	public static FuelStationMetrics getInstance () {
+		return INSTANCE;
+	}
+
+	/**
+	 * Marks the start of a stage. It must be ended on the same thread, with
+	 * {@link #end(int, long)}, even if it fails.
+	 *
+	 * @param stage The stage, such as {@link #DECODE}
+	 * @return The time the stage started, to pass to {@link #end(int, long)}
+	 */
+	public long begin (final int stage) {
+		if (IS_TRACING) {
+			Trace.beginSection (STAGE_NAMES[stage]);
+		}
+
+		return System.nanoTime ();
+	}
+
+	/**
+	 * Marks the end of a stage started with {@link #begin(int)}.
+	 *
+	 * @param stage The stage, such as {@link #DECODE}
+	 * @param start The time returned by {@link #begin(int)}
+	 */
+	public void end (final int stage, final long start) {
+		record (stage, System.nanoTime () - start);
+
+		if (IS_TRACING) {
+			Trace.endSection ();
+		}
+	}
+
+	/**
+	 * Records the time taken by a stage that wasn't marked with {@link #begin(int)}, such as one
+	 * that started on another thread.
+	 *
+	 * @param stage The stage, such as {@link #DELIVERY}
+	 * @param nanos The time taken, in nanoseconds
+	 */
+	public void record (final int stage, final long nanos) {
+		final Refresh refresh = this.current.get ();
+
+		this.histograms[stage].record (nanos);
+
+		if (refresh != null) {
+			refresh.stages[stage] += nanos;
+		}
+	}
+
+	/**
+	 * Adds to a counter.
+	 *
+	 * @param counter The counter, such as {@link #STATIONS}
+	 * @param amount The amount to add
+	 */
+	public void count (final int counter, final long amount) {
+		final Refresh refresh = this.current.get ();
+
+		this.counters.addAndGet (counter, amount);
+
+		if (refresh != null) {
+			refresh.counters[counter] += amount;
+		}
+	}
+
+	/**
+	 * Starts collecting the stages run on this thread into a refresh.
+	 *
+	 * @param url The URL of the feed being refreshed
+	 */
+	public void beginRefresh (final String url) {
+		this.current.set (new Refresh (url));
+	}
+
+	/**
+	 * Stops collecting stages into the refresh running on this thread, and keeps it.
+	 *
+	 * @param outcome How the refresh ended, such as the error that stopped it
+	 */
+	public void endRefresh (final String outcome) {
+		final Refresh refresh = this.current.get ();
+
+		if (refresh == null) {
+			return;
+		}
+
+		this.current.remove ();
+		refresh.elapsed = System.nanoTime () - refresh.start;
+		refresh.outcome = outcome;
+
+		synchronized (this) {
+			this.recent[this.refreshes++ % RECENT_REFRESHES] = refresh;
+		}
+	}
+
+	/**
+	 * Gets the times taken by a stage.
+	 *
+	 * @param stage The stage, such as {@link #DECODE}
+	 * @return The {@link Histogram} of its times
+	 */
+	Histogram getHistogram (final int stage) {
+		return this.histograms[stage];
+	}
+
+	/**
+	 * Gets the total of a counter.
+	 *
+	 * @param counter The counter, such as {@link #STATIONS}
+	 * @return Its total
+	 */
+	long getCount (final int counter) {
+		return this.counters.get (counter);
+	}
+
+	/**
+	 * Writes out everything collected: a summary of each stage, the counters, and the last few
+	 * refreshes, newest first.
+	 *
+	 * @param writer The {@link PrintWriter} to write to
+	 */
+	public void dump (final PrintWriter writer) {
+		final SimpleDateFormat format = new SimpleDateFormat ("HH:mm:ss", Locale.US);
+
+		writer.println ("Stages:");
+
+		for (int stage = 0; stage < STAGES; stage++) {
+			this.histograms[stage].dump (writer, STAGE_NAMES[stage]);
+		}
+
+		writer.println ("Counters:");
+
+		for (int counter = 0; counter < COUNTERS; counter++) {
+			writer.println ("  " + COUNTER_NAMES[counter] + "=" + this.counters.get (counter));
+		}
+
+		final Refresh[] refreshes;
+		final int total;
+
+		synchronized (this) {
+			refreshes = this.recent.clone ();
+			total = this.refreshes;
+		}
+
+		writer.println ("Recent refreshes (" + total + " in all):");
+
+		for (int i = 1; i <= Math.min (total, RECENT_REFRESHES); i++) {
+			final Refresh refresh = refreshes[(total - i) % RECENT_REFRESHES];
+			final StringBuilder line = new StringBuilder ();
+
+			line.append ("  ").append (format.format (new Date (refresh.startedAt))).append (' ')
+					.append (refresh.url).append (String.format (Locale.US, " %.1fms",
+					refresh.elapsed / 1e6));
+
+			for (int stage = 0; stage < STAGES; stage++) {
+				if (refresh.stages[stage] > 0) {
+					line.append (String.format (Locale.US, " %s=%.1fms", STAGE_NAMES[stage],
+							refresh.stages[stage] / 1e6));
+				}
+			}
+
+			for (int counter = 0; counter < COUNTERS; counter++) {
+				if (refresh.counters[counter] > 0) {
+					line.append (' ').append (COUNTER_NAMES[counter]).append ('=')
+							.append (refresh.counters[counter]);
+				}
+			}
+
+			writer.println (line.append (' ').append (refresh.outcome));
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package au.com.wow.codetestapp;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+
+import com.kizio.image.ImageLoader;
+
+/**
+ * Adapter for displaying a feed while it's still being parsed, a page at a time.
+ * <p>
+ * The rows come from a {@link FuelStationPager}, in feed order. A row whose page has been evicted
+ * is shown blank while the page is decoded again, and is filled in when the pager reports that
+ * it's back.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 08/04/2015
+ */
+public class FuelStationPagedAdapter extends BaseAdapter {
+
+	/**
+	 * The {@link FuelStationPager} holding the pages to display.
+	 */
+	private final FuelStationPager pager;
+
+	/**
+	 * The {@link LayoutInflater} used to inflate new views.
+	 */
+	private final LayoutInflater inflater;
+
+	/**
+	 * The {@link ImageLoader} used to load the brand logos, or null if they aren't shown.
+	 */
+	private ImageLoader imageLoader;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param context The {@link Context} in which the list is being displayed
+	 * @param fuelStationPager The {@link FuelStationPager} to display
+	 * @param loader The {@link ImageLoader} used to load the brand logos, or null to not show them
+	 */
+	public FuelStationPagedAdapter (final Context context, final FuelStationPager fuelStationPager,
+			final ImageLoader loader) {
+		super ();
+
+		this.pager = fuelStationPager;
+		this.inflater = LayoutInflater.from (context);
+		this.imageLoader = loader;
+	}
+
+	/**
+	 * Starts showing the brand logos, once the first screen has been drawn without them.
+	 *
+	 * @param loader The {@link ImageLoader} used to load the brand logos, or null to not show them
+	 */
+	public void setImageLoader (final ImageLoader loader) {
+		this.imageLoader = loader;
+
+		notifyDataSetChanged ();
+	}
+
+	/**
+	 * Gets the {@link FuelStationPager} being displayed.
+	 *
+	 * @return The {@link FuelStationPager}
+	 */
+	public FuelStationPager getPager () {
+		return this.pager;
+	}
+
+	/**
+	 * Gets the number of items to display.
+	 *
+	 * @return The number of stations the pager last told the list about. Stations published since
+	 *         then aren't counted until the list is told about them, as the list would fail if
+	 *         the count changed without notice
+	 */
+	@Override
+	public int getCount () {
+		return this.pager.getShownCount ();
+	}
+
+	/**
+	 * Gets the item at the specified position.
+	 *
+	 * @param position The position of the item in the list
+	 * @return The {@link FuelStationItem} at the specified position, or null if its page isn't in
+	 *         memory or the list hasn't been told about it yet
+	 */
+	@Override
+	public FuelStationItem getItem (final int position) {
+		if (position >= getCount ()) {
+			return null;
+		}
+
+		final FuelStationList page = this.pager.getPage (position);
+
+		return page != null ? page.get (position % this.pager.getPageSize ()) : null;
+	}
+
+	/**
+	 * Gets the ID for an item in the list. Stations are only ever appended while paging, so the
+	 * position will do.
+	 *
+	 * @param position The position of the item in the list
+	 * @return The ID
+	 */
+	@Override
+	public long getItemId (final int position) {
+		return position;
+	}
+
+	/**
+	 * Gets the {@link View} at the specified position.
+	 *
+	 * @param position The position of the item in the list
+	 * @param convertView The {@link View} to recycle if possible
+	 * @param parent The parent {@link ViewGroup} that it's being added to
+	 * @return The {@link View} to display
+	 */
+	@Override
+	public View getView (final int position, final View convertView, final ViewGroup parent) {
+		final View view;
+		final FuelStationListAdapter.ViewHolder holder;
+
+		if (convertView == null) {
+			view = this.inflater.inflate (R.layout.fuel_station_list_item, parent, false);
+			holder = new FuelStationListAdapter.ViewHolder (view);
+			view.setTag (holder);
+		} else {
+			view = convertView;
+			holder = (FuelStationListAdapter.ViewHolder) view.getTag ();
+		}
+
+		final FuelStationList page = this.pager.getPage (position);
+
+		if (page != null) {
+			holder.bind (page, position % this.pager.getPageSize (), this.imageLoader);
+		} else {
+			holder.clear (this.imageLoader);
+		}
+
+		return view;
+	}
+}
@@ -0,0 +1,590 @@
+package au.com.wow.codetestapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Splits a feed into pages as it's parsed, so the first rows can be shown long before the last
+ * station has arrived.
+ * <p>
+ * The parser feeds stations in on a background thread. Every time a page fills up it's published:
+ * the count visible to the UI grows, and the listener is told on the main thread. Only a window of
+ * the most recently used pages is kept in memory. Every page is also appended to a spill file in
+ * its binary encoding, so a page that has been evicted can be decoded again when the list is
+ * scrolled back to it.
+ * </p>
+ * <p>
+ * Sorting, diffing and storing the feed all need the complete {@link FuelStationList}, so once the
+ * parse has finished it's built by {@link #buildList()}, which decodes the pages back out of the
+ * spill file one at a time. Nothing else holds the whole feed while it downloads, so until then
+ * only the window and the page being filled are on the heap. If the spill file can't be written
+ * then the pages that missed it are kept in memory instead, and the window no longer bounds them.
+ * </p>
+ * <p>
+ * A spill file is deleted once its pager has been both closed and finished, so a pager closed
+ * while the download is still running can still build the list. The first pager in each process
+ * also sweeps up any spill files left behind by a process that died before it could close its
+ * pagers.
+ * </p>
+ * <p>
+ * The producer methods, {@link #onFuelStation(FuelStationRecord)}, {@link #buildList()} and
+ * {@link #finish()}, must be called from a single background thread. Everything else must be
+ * called on the main thread.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 08/04/2015
+ */
+public class FuelStationPager implements FuelStationParser.Handler {
+
+	/**
+	 * The default number of stations in a page.
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 50;
+
+	/**
+	 * The default number of pages kept in memory.
+	 */
+	public static final int DEFAULT_MAX_PAGES = 8;
+
+	/**
+	 * The prefix for the names of spill files.
+	 */
+	private static final String SPILL_PREFIX = "pages";
+
+	/**
+	 * The suffix for the names of spill files.
+	 */
+	private static final String SPILL_SUFFIX = ".bin";
+
+	/**
+	 * True once this process has swept up the spill files left by earlier ones.
+	 */
+	private static boolean isSwept;
+
+	/**
+	 * Receives notice of changes to the pages, on the main thread.
+	 */
+	public interface Listener {
+
+		/**
+		 * Invoked when pages have been published, or an evicted page has been decoded again.
+		 *
+		 * @param pager The {@link FuelStationPager} that has changed
+		 */
+		void onPagesChanged (FuelStationPager pager);
+	}
+
+	/**
+	 * The number of stations in a page.
+	 */
+	private final int pageSize;
+
+	/**
+	 * The placeholder for missing values.
+	 */
+	private final String notApplicable;
+
+	/**
+	 * The directory for the spill file, and for the lists' own spill files.
+	 */
+	private final File directory;
+
+	/**
+	 * The {@link Listener} to notify of changes.
+	 */
+	private final Listener listener;
+
+	/**
+	 * The pages in memory, keyed by page number.
+	 */
+	private final LruCache<Integer, FuelStationList> pages;
+
+	/**
+	 * The pages that couldn't be written to the spill file, keyed by page number. They can't be
+	 * decoded again, so they're kept rather than evicted.
+	 */
+	private final Map<Integer, FuelStationList> unspilled =
+			new HashMap<Integer, FuelStationList> ();
+
+	/**
+	 * The pages being decoded from the spill file.
+	 */
+	private final Set<Integer> loading = new HashSet<Integer> ();
+
+	/**
+	 * The single thread that evicted pages are decoded on.
+	 */
+	private final ExecutorService executor = Executors.newSingleThreadExecutor ();
+
+	/**
+	 * The {@link Handler} used to notify the listener on the main thread.
+	 */
+	private final Handler handler = new Handler (Looper.getMainLooper ());
+
+	/**
+	 * Set while a notification is waiting to be delivered, so a burst of pages only causes one.
+	 */
+	private final AtomicBoolean isNotifying = new AtomicBoolean ();
+
+	/**
+	 * The builder for the page being filled. Only touched by the producer.
+	 */
+	private FuelStationList.Builder builder;
+
+	/**
+	 * The number of stations in the page being filled. Only touched by the producer.
+	 */
+	private int pending;
+
+	/**
+	 * The spill file holding every published page.
+	 */
+	private File spillFile;
+
+	/**
+	 * The open spill file, or null if it couldn't be created.
+	 */
+	private RandomAccessFile spill;
+
+	/**
+	 * The offset of each page in the spill file.
+	 */
+	private long[] offsets = new long[16];
+
+	/**
+	 * The encoded length of each page in the spill file.
+	 */
+	private int[] lengths = new int[16];
+
+	/**
+	 * The number of pages published.
+	 */
+	private int pageCount;
+
+	/**
+	 * The number of stations published.
+	 */
+	private int count;
+
+	/**
+	 * The number of stations the listener was last told about. Only touched on the main thread, so
+	 * that it can't change between a list asking for the count and drawing the rows.
+	 */
+	private int shownCount;
+
+	/**
+	 * True once the last page has been published.
+	 */
+	private boolean complete;
+
+	/**
+	 * True once the pager has been closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param notApplicableString The placeholder for missing values
+	 * @param spillDirectory The directory to keep the spill file in
+	 * @param stationsPerPage The number of stations in a page
+	 * @param maxPages The number of pages to keep in memory
+	 * @param pagesListener The {@link Listener} to notify of changes
+	 */
+	public FuelStationPager (final String notApplicableString, final File spillDirectory,
+			final int stationsPerPage, final int maxPages, final Listener pagesListener) {
+		super ();
+
+		this.notApplicable = notApplicableString;
+		this.directory = spillDirectory;
+		this.pageSize = stationsPerPage;
+		this.listener = pagesListener;
+		this.pages = new LruCache<Integer, FuelStationList> (maxPages);
+		this.builder = new FuelStationList.Builder (notApplicableString, spillDirectory);
+
+		sweep (spillDirectory);
+	}
+
+	/**
+	 * Deletes the spill files left behind by earlier processes, the first time it's called. Any
+	 * pager of this process is created after the sweep, so none of their files can be caught by it.
+	 *
+	 * @param spillDirectory The directory the spill files are kept in
+	 */
+	@SuppressWarnings ("all")
+	private static synchronized void sweep (final File spillDirectory) {
+		if (isSwept) {
+			return;
+		}
+
+		isSwept = true;
+
+		final File[] files = spillDirectory.listFiles ();
+
+		if (files != null) {
+			for (final File file : files) {
+				final String name = file.getName ();
+
+				if (name.startsWith (SPILL_PREFIX) && name.endsWith (SPILL_SUFFIX)) {
+					file.delete ();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a station to the page being filled, publishing the page if it's full.
+	 *
+	 * @param record The {@link FuelStationRecord} holding the station's details
+	 */
+	@Override
+	public void onFuelStation (final FuelStationRecord record) {
+		this.builder.onFuelStation (record);
+
+		if (++this.pending == this.pageSize) {
+			publish ();
+		}
+	}
+
+	/**
+	 * Publishes the last, partly filled, page. Call this once the parse has finished, whether it
+	 * succeeded or not.
+	 */
+	public void finish () {
+		if (this.pending > 0) {
+			publish ();
+		}
+
+		synchronized (this) {
+			this.complete = true;
+
+			if (this.closed) {
+				release ();
+			}
+		}
+
+		notifyListener ();
+	}
+
+	/**
+	 * Builds the complete {@link FuelStationList} from every page published, once the parse has
+	 * finished. The last, partly filled, page is published first. The pages are decoded from the
+	 * spill file one at a time, so apart from the list being built only a single page is added to
+	 * the heap. This still works if the pager has been closed, as long as it hasn't been finished.
+	 *
+	 * @return The {@link FuelStationList} holding every station, in feed order
+	 * @throws IOException If a page can't be read back from the spill file
+	 */
+	public FuelStationList buildList () throws IOException {
+		if (this.pending > 0) {
+			publish ();
+		}
+
+		final FuelStationList.Builder list = new FuelStationList.Builder (this.notApplicable,
+				this.directory);
+		final int published;
+
+		synchronized (this) {
+			published = this.pageCount;
+		}
+
+		for (int page = 0; page < published; page++) {
+			final FuelStationList stations = readPage (page);
+
+			for (int i = 0; i < stations.getSize (); i++) {
+				list.add (stations, i);
+			}
+		}
+
+		return list.build ();
+	}
+
+	/**
+	 * Gets the number of stations published so far. This can grow at any time, so a list should
+	 * use {@link #getShownCount()} instead.
+	 *
+	 * @return The number of stations
+	 */
+	public synchronized int getCount () {
+		return this.count;
+	}
+
+	/**
+	 * Gets the number of stations the listener was last told about. This only changes on the main
+	 * thread, just before the listener is called, so it's the count a list should show. Must be
+	 * called on the main thread.
+	 *
+	 * @return The number of stations
+	 */
+	public int getShownCount () {
+		return this.shownCount;
+	}
+
+	/**
+	 * Checks whether the last page has been published.
+	 *
+	 * @return True if every station has been published, false otherwise
+	 */
+	public synchronized boolean isComplete () {
+		return this.complete;
+	}
+
+	/**
+	 * Gets the number of stations in a page.
+	 *
+	 * @return The page size
+	 */
+	public int getPageSize () {
+		return this.pageSize;
+	}
+
+	/**
+	 * Gets the page holding the station at a position. If the page has been evicted then it's
+	 * decoded again in the background, and the listener is told once it's ready.
+	 *
+	 * @param position The position of the station
+	 * @return The {@link FuelStationList} for the page, or null if it isn't in memory. The station
+	 *         is at <code>position % getPageSize ()</code> within it
+	 */
+	public FuelStationList getPage (final int position) {
+		final int page = position / this.pageSize;
+		FuelStationList list = this.pages.get (page);
+
+		if (list == null) {
+			synchronized (this) {
+				list = this.unspilled.get (page);
+			}
+		}
+
+		if (list == null) {
+			reload (page);
+		}
+
+		return list;
+	}
+
+	/**
+	 * Stops decoding pages, and drops the window. The spill file is deleted now if the pager has
+	 * been finished, or otherwise once it is.
+	 */
+	public void close () {
+		this.executor.shutdownNow ();
+
+		synchronized (this) {
+			this.closed = true;
+			this.pages.evictAll ();
+
+			if (this.complete) {
+				release ();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the spill file, and drops the pages that missed it. Must be called while holding the
+	 * lock.
+	 */
+	@SuppressWarnings ("all")
+	private void release () {
+		this.unspilled.clear ();
+
+		if (this.spill != null) {
+			try {
+				this.spill.close ();
+			} catch (final IOException ioe) {
+				// It's being deleted anyway.
+			}
+
+			this.spill = null;
+			this.spillFile.delete ();
+		}
+	}
+
+	/**
+	 * Publishes the page being filled, and starts a new one.
+	 */
+	private void publish () {
+		final FuelStationList page = this.builder.build ();
+
+		this.builder = new FuelStationList.Builder (this.notApplicable, this.directory);
+		this.pending = 0;
+
+		// The encoding is done outside the lock, so the UI never waits on it.
+		byte[] encoded = null;
+
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+
+			page.write (new DataOutputStream (bytes));
+			encoded = bytes.toByteArray ();
+		} catch (final IOException ioe) {
+			Log.e (FuelStationPager.class.getName (), "Failed to encode a page", ioe);
+		}
+
+		synchronized (this) {
+			if (this.pageCount == this.offsets.length) {
+				this.offsets = Arrays.copyOf (this.offsets, this.pageCount * 2);
+				this.lengths = Arrays.copyOf (this.lengths, this.pageCount * 2);
+			}
+
+			this.offsets[this.pageCount] = -1;
+
+			if (encoded != null) {
+				spill (this.pageCount, encoded);
+			}
+
+			// Once closed nothing is shown, but the page is still needed for the complete list.
+			if (this.offsets[this.pageCount] < 0) {
+				this.unspilled.put (this.pageCount, page);
+			} else if (!this.closed) {
+				this.pages.put (this.pageCount, page);
+			}
+
+			this.pageCount++;
+			this.count += page.getSize ();
+		}
+
+		notifyListener ();
+	}
+
+	/**
+	 * Appends an encoded page to the spill file. Must be called while holding the lock.
+	 *
+	 * @param page The page number
+	 * @param encoded The page's binary encoding
+	 */
+	private void spill (final int page, final byte[] encoded) {
+		try {
+			if (this.spill == null) {
+				this.spillFile = File.createTempFile (SPILL_PREFIX, SPILL_SUFFIX,
+						this.directory);
+				this.spill = new RandomAccessFile (this.spillFile, "rw");
+			}
+
+			final long offset = this.spill.length ();
+
+			this.spill.seek (offset);
+			this.spill.write (encoded);
+			this.offsets[page] = offset;
+			this.lengths[page] = encoded.length;
+		} catch (final IOException ioe) {
+			// The page is kept in memory instead, as it couldn't be decoded again.
+			Log.e (FuelStationPager.class.getName (), "Failed to spill page " + page, ioe);
+		}
+	}
+
+	/**
+	 * Decodes an evicted page from the spill file in the background.
+	 *
+	 * @param page The page number
+	 */
+	private void reload (final int page) {
+		synchronized (this) {
+			if (this.closed || page >= this.pageCount || this.offsets[page] < 0
+					|| !this.loading.add (page)) {
+				return;
+			}
+		}
+
+		this.executor.execute (new Runnable () {
+
+			/**
+			 * Reads the page back in, and tells the listener.
+			 */
+			@Override
+			public void run () {
+				try {
+					final FuelStationList list = readPage (page);
+
+					synchronized (FuelStationPager.this) {
+						if (FuelStationPager.this.closed) {
+							return;
+						}
+					}
+
+					FuelStationPager.this.pages.put (page, list);
+					notifyListener ();
+				} catch (final IOException ioe) {
+					Log.e (FuelStationPager.class.getName (), "Failed to reload page " + page, ioe);
+				} finally {
+					synchronized (FuelStationPager.this) {
+						FuelStationPager.this.loading.remove (page);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Decodes a page from the spill file, or takes it from memory if it missed the spill file.
+	 *
+	 * @param page The page number
+	 * @return The {@link FuelStationList} for the page
+	 * @throws IOException If the page can't be read, or the spill file has been deleted
+	 */
+	private FuelStationList readPage (final int page) throws IOException {
+		final byte[] encoded;
+
+		synchronized (this) {
+			final FuelStationList kept = this.unspilled.get (page);
+
+			if (kept != null) {
+				return kept;
+			}
+
+			if (this.spill == null) {
+				throw new IOException ("The spill file has been deleted");
+			}
+
+			encoded = new byte[this.lengths[page]];
+			this.spill.seek (this.offsets[page]);
+			this.spill.readFully (encoded);
+		}
+
+		return FuelStationList.read (new DataInputStream (new ByteArrayInputStream (encoded)),
+				this.directory);
+	}
+
+	/**
+	 * Tells the listener about a change on the main thread, unless a notification is already
+	 * waiting.
+	 */
+	private void notifyListener () {
+		if (this.listener != null && this.isNotifying.compareAndSet (false, true)) {
+			this.handler.post (new Runnable () {
+
+				/**
+				 * Shows the stations published so far, and delivers the notification.
+				 */
+				@Override
+				public void run () {
+					FuelStationPager.this.isNotifying.set (false);
+
+					if (!FuelStationPager.this.closed) {
+						FuelStationPager.this.shownCount = getCount ();
+						FuelStationPager.this.listener.onPagesChanged (FuelStationPager.this);
+					}
+				}
+			});
+		}
+	}
+}
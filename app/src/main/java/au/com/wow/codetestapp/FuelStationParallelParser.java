@@ -0,0 +1,512 @@
+package au.com.wow.codetestapp;
+
+import com.kizio.reader.JSONStreamReader;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes a whole feed that's already in memory, splitting the station array across several cores.
+ * <p>
+ * A quick scan finds the feed's <code>item</code> array and the boundaries of the stations in it,
+ * only keeping track of nesting and strings, which is far cheaper than decoding. The array is then
+ * cut into chunks at station boundaries, each chunk is decoded into its own
+ * {@link FuelStationList} by the usual {@link FuelStationParser}, and the pieces are joined back
+ * together in feed order. The chunks are decoded where they are in the feed's buffer, so the feed
+ * is only held once.
+ * </p>
+ * <p>
+ * Handing work to other threads isn't free, so feeds smaller than the threshold are decoded on the
+ * calling thread as before. The same happens with anything the scan doesn't expect, so that the
+ * serial parser can report the error properly.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 15/04/2015
+ */
+public class FuelStationParallelParser {
+
+	/**
+	 * The smallest feed that's worth splitting up, in characters. A station takes up around 400
+	 * characters, so this is a little over 600 of them.
+	 */
+	public static final int DEFAULT_THRESHOLD = 256 * 1024;
+
+	/**
+	 * The most threads the shared parser will decode with. Past this the phone's little cores and
+	 * memory bandwidth stop paying for the extra threads.
+	 */
+	private static final int MAX_THREADS = 4;
+
+	/**
+	 * The number of chunks handed to each thread. Having more than one smooths out the difference
+	 * between fast and slow cores.
+	 */
+	private static final int CHUNKS_PER_THREAD = 2;
+
+	/**
+	 * The key of the station array.
+	 */
+	private static final String ITEM = "item";
+
+	/**
+	 * The parser shared by the app.
+	 */
+	private static FuelStationParallelParser instance;
+
+	/**
+	 * The {@link ExecutorService} the chunks other than the first are decoded on, or null if the
+	 * parser only decodes on the calling thread.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * The number of threads decoding a feed, counting the calling thread.
+	 */
+	private final int parallelism;
+
+	/**
+	 * The smallest feed that's split up, in characters.
+	 */
+	private final int threshold;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param workExecutor The {@link ExecutorService} to decode chunks on, which should have at
+	 *                     least <code>threads - 1</code> threads, or null to always decode on the
+	 *                     calling thread
+	 * @param threads The number of threads decoding a feed, counting the calling thread
+	 * @param minimumLength The smallest feed to split up, in characters
+	 */
+	public FuelStationParallelParser (final ExecutorService workExecutor, final int threads,
+			final int minimumLength) {
+		super ();
+
+		this.executor = workExecutor;
+		this.parallelism = workExecutor != null ? Math.max (1, threads) : 1;
+		this.threshold = minimumLength;
+	}
+
+	/**
+	 * Gets the parser shared by the whole app, creating it if necessary. It decodes with up to one
+	 * thread per core.
+	 *
+	 * @return The shared {@link FuelStationParallelParser}
+	 */
+	public static synchronized FuelStationParallelParser getInstance () {
+		if (instance == null) {
+			final int threads = Math.min (Runtime.getRuntime ().availableProcessors (),
+					MAX_THREADS);
+
+			// The calling thread decodes too, so the pool needs one thread fewer.
+			instance = new FuelStationParallelParser (threads > 1
+					? Executors.newFixedThreadPool (threads - 1) : null, threads,
+					DEFAULT_THRESHOLD);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Checks whether feeds can be split across several threads at all.
+	 *
+	 * @return True if there's more than one thread to decode with, false otherwise
+	 */
+	public boolean isParallel () {
+		return this.parallelism > 1;
+	}
+
+	/**
+	 * Gets the length of the smallest feed that's split up.
+	 *
+	 * @return The length, in characters
+	 */
+	public int getThreshold () {
+		return this.threshold;
+	}
+
+	/**
+	 * Decodes a feed.
+	 *
+	 * @param document A {@link CharBuffer} backed by an array, holding the whole feed
+	 * @param notApplicableString The text to display when there's no value set
+	 * @param directory The directory to write oversized parcels to, or null
+	 * @return The decoded {@link FuelStationList}
+	 * @throws IOException If there's an IO error, or the thread is interrupted
+	 * @throws JSONException If the feed isn't valid JSON
+	 */
+	public FuelStationList parse (final CharBuffer document, final String notApplicableString,
+			final File directory) throws IOException, JSONException {
+		final int[] bounds = this.parallelism > 1 && document.remaining () >= this.threshold
+				? split (document.array (), document.arrayOffset () + document.position (),
+				document.arrayOffset () + document.limit (), this.parallelism * CHUNKS_PER_THREAD)
+				: null;
+
+		if (bounds == null || bounds.length < 4) {
+			final FuelStationList.Builder builder = new FuelStationList.Builder (
+					notApplicableString, directory);
+
+			new FuelStationParser (builder).parse (new JSONStreamReader (document));
+
+			return builder.build ();
+		}
+
+		final char[] chars = document.array ();
+		final int chunks = bounds.length / 2;
+		final List<Future<FuelStationList>> futures = new ArrayList<Future<FuelStationList>> (
+				chunks - 1);
+		final List<FuelStationList> parts = new ArrayList<FuelStationList> (chunks);
+
+		try {
+			for (int i = 1; i < chunks; i++) {
+				futures.add (this.executor.submit (new Chunk (chars, bounds[i * 2],
+						bounds[i * 2 + 1], notApplicableString, directory)));
+			}
+
+			// I decode the first chunk here rather than leaving this thread idle.
+			parts.add (new Chunk (chars, bounds[0], bounds[1], notApplicableString, directory)
+					.call ());
+
+			for (final Future<FuelStationList> future : futures) {
+				parts.add (future.get ());
+			}
+		} catch (final InterruptedException ie) {
+			Thread.currentThread ().interrupt ();
+			throw new IOException ("Interrupted while decoding the feed");
+		} catch (final ExecutionException ee) {
+			final Throwable cause = ee.getCause ();
+
+			if (cause instanceof JSONException) {
+				throw (JSONException) cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else {
+				throw new IOException ("Failed to decode the feed: " + cause);
+			}
+		} finally {
+			// If a chunk failed, there's no point finishing the others.
+			for (final Future<FuelStationList> future : futures) {
+				future.cancel (true);
+			}
+		}
+
+		return FuelStationList.concat (parts, notApplicableString, directory);
+	}
+
+	/**
+	 * Finds the stations in a feed, and groups them into chunks of roughly equal length.
+	 * <p>
+	 * Only the nesting of the top level object and the stations is looked at, along with where the
+	 * strings start and end so that brackets inside them are ignored. If the feed has more than one
+	 * <code>item</code> array, or the scan finds anything it doesn't expect, it gives up and the
+	 * feed is decoded serially.
+	 * </p>
+	 *
+	 * @param chars The characters of the feed
+	 * @param start The index of the first character of the feed
+	 * @param end The index after the last character of the feed
+	 * @param chunks The number of chunks to aim for
+	 * @return The start and end of each chunk in turn, or null if the feed can't be split
+	 */
+	static int[] split (final char[] chars, final int start, final int end, final int chunks) {
+		int i = skipWhitespace (chars, start, end);
+		int arrayStart = -1;
+		int arrayEnd = -1;
+
+		if (i >= end || chars[i] != '{') {
+			return null;
+		}
+
+		i = skipWhitespace (chars, i + 1, end);
+
+		if (i < end && chars[i] == '}') {
+			return null;
+		}
+
+		// Walks the top level object's keys, looking for the station array.
+		while (true) {
+			if (i >= end || chars[i] != '"') {
+				return null;
+			}
+
+			final int keyEnd = skipString (chars, i, end);
+
+			if (keyEnd < 0) {
+				return null;
+			}
+
+			final boolean item = keyEnd - i - 2 == ITEM.length ()
+					&& ITEM.contentEquals (CharBuffer.wrap (chars, i + 1, ITEM.length ()));
+
+			i = skipWhitespace (chars, keyEnd, end);
+
+			if (i >= end || chars[i] != ':') {
+				return null;
+			}
+
+			i = skipWhitespace (chars, i + 1, end);
+
+			if (item && i < end && chars[i] == '[') {
+				if (arrayStart >= 0) {
+					return null;
+				}
+
+				arrayStart = i;
+			}
+
+			i = skipValue (chars, i, end);
+
+			if (i < 0) {
+				return null;
+			}
+
+			if (arrayStart >= 0 && arrayEnd < 0) {
+				arrayEnd = i;
+			}
+
+			i = skipWhitespace (chars, i, end);
+
+			if (i < end && chars[i] == ',') {
+				i = skipWhitespace (chars, i + 1, end);
+			} else if (i < end && chars[i] == '}') {
+				break;
+			} else {
+				return null;
+			}
+		}
+
+		if (arrayStart < 0 || skipWhitespace (chars, i + 1, end) != end) {
+			return null;
+		}
+
+		// Now the chunks, cutting the array after whichever station passes each target length.
+		final int target = Math.max ((arrayEnd - arrayStart) / chunks, 1);
+		final List<Integer> bounds = new ArrayList<Integer> (chunks * 2);
+		int chunkStart = -1;
+		int valueEnd = -1;
+
+		i = skipWhitespace (chars, arrayStart + 1, arrayEnd - 1);
+
+		while (i < arrayEnd - 1) {
+			valueEnd = skipValue (chars, i, arrayEnd - 1);
+
+			if (valueEnd < 0) {
+				return null;
+			}
+
+			if (chunkStart < 0) {
+				chunkStart = i;
+			}
+
+			if (valueEnd - chunkStart >= target) {
+				bounds.add (chunkStart);
+				bounds.add (valueEnd);
+				chunkStart = -1;
+			}
+
+			i = skipWhitespace (chars, valueEnd, arrayEnd - 1);
+
+			if (i < arrayEnd - 1) {
+				if (chars[i] != ',') {
+					return null;
+				}
+
+				i = skipWhitespace (chars, i + 1, arrayEnd - 1);
+			}
+		}
+
+		if (chunkStart >= 0) {
+			bounds.add (chunkStart);
+			bounds.add (valueEnd);
+		}
+
+		final int[] result = new int[bounds.size ()];
+
+		for (int j = 0; j < result.length; j++) {
+			result[j] = bounds.get (j);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Skips any whitespace.
+	 *
+	 * @param chars The characters being scanned
+	 * @param start The index to start from
+	 * @param end The index to stop at
+	 * @return The index of the first character that isn't whitespace, or <code>end</code>
+	 */
+	private static int skipWhitespace (final char[] chars, final int start, final int end) {
+		int i = start;
+
+		while (i < end && (chars[i] == ' ' || chars[i] == '\n' || chars[i] == '\r'
+				|| chars[i] == '\t')) {
+			i++;
+		}
+
+		return i;
+	}
+
+	/**
+	 * Skips a string, including its quotes.
+	 *
+	 * @param chars The characters being scanned
+	 * @param start The index of the opening quote
+	 * @param end The index to stop at
+	 * @return The index after the closing quote, or -1 if the string isn't closed
+	 */
+	private static int skipString (final char[] chars, final int start, final int end) {
+		for (int i = start + 1; i < end; i++) {
+			if (chars[i] == '\\') {
+				i++;
+			} else if (chars[i] == '"') {
+				return i + 1;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Skips a single value: an object or array with everything in it, a string, or a literal.
+	 *
+	 * @param chars The characters being scanned
+	 * @param start The index of the first character of the value
+	 * @param end The index to stop at
+	 * @return The index after the value, or -1 if it doesn't end before <code>end</code>
+	 */
+	private static int skipValue (final char[] chars, final int start, final int end) {
+		if (start >= end) {
+			return -1;
+		}
+
+		final char first = chars[start];
+
+		if (first == '"') {
+			return skipString (chars, start, end);
+		}
+
+		if (first != '{' && first != '[') {
+			int i = start;
+
+			while (i < end && chars[i] != ',' && chars[i] != '}' && chars[i] != ']'
+					&& chars[i] != ' ' && chars[i] != '\n' && chars[i] != '\r'
+					&& chars[i] != '\t') {
+				i++;
+			}
+
+			return i > start ? i : -1;
+		}
+
+		int depth = 0;
+
+		for (int i = start; i < end; i++) {
+			final char c = chars[i];
+
+			if (c == '"') {
+				i = skipString (chars, i, end);
+
+				if (i < 0) {
+					return -1;
+				}
+
+				// The loop moves past the closing quote.
+				i--;
+			} else if (c == '{' || c == '[') {
+				depth++;
+			} else if (c == '}' || c == ']') {
+				depth--;
+
+				if (depth == 0) {
+					return i + 1;
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Decodes one chunk of the station array.
+	 */
+	private static final class Chunk implements Callable<FuelStationList> {
+
+		/**
+		 * The characters of the whole feed.
+		 */
+		private final char[] chars;
+
+		/**
+		 * The index of the chunk's first station.
+		 */
+		private final int start;
+
+		/**
+		 * The index after the chunk's last station.
+		 */
+		private final int end;
+
+		/**
+		 * The text to display when there's no value set.
+		 */
+		private final String notApplicable;
+
+		/**
+		 * The directory to write oversized parcels to, or null.
+		 */
+		private final File directory;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param feed The characters of the whole feed
+		 * @param chunkStart The index of the chunk's first station
+		 * @param chunkEnd The index after the chunk's last station
+		 * @param notApplicableString The text to display when there's no value set
+		 * @param spillDirectory The directory to write oversized parcels to, or null
+		 */
+		Chunk (final char[] feed, final int chunkStart, final int chunkEnd,
+				final String notApplicableString, final File spillDirectory) {
+			super ();
+
+			this.chars = feed;
+			this.start = chunkStart;
+			this.end = chunkEnd;
+			this.notApplicable = notApplicableString;
+			this.directory = spillDirectory;
+		}
+
+		/**
+		 * Decodes the chunk, in place in the feed's buffer. The chunk has no brackets around it,
+		 * so it's read as a run of stations rather than as an array.
+		 *
+		 * @return The {@link FuelStationList} holding the chunk's stations
+		 * @throws IOException If there's an IO error
+		 * @throws JSONException If a station isn't valid JSON
+		 */
+		@Override
+		public FuelStationList call () throws IOException, JSONException {
+			final FuelStationList.Builder builder = new FuelStationList.Builder (
+					this.notApplicable, this.directory);
+
+			new FuelStationParser (builder).parseStations (new JSONStreamReader (
+					CharBuffer.wrap (this.chars, this.start, this.end - this.start)));
+
+			return builder.build ();
+		}
+	}
+}
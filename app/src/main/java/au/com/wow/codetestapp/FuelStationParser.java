@@ -0,0 +1,292 @@
+package au.com.wow.codetestapp;
+
+import com.kizio.reader.JSONStreamReader;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+
+/**
+ * Decodes the gas price feed one station at a time, handing each to a {@link Handler} as soon as
+ * it's been read.
+ * <p>
+ * The feed looks like <code>{"zip": "10024", "item": [{...}, {...}]}</code>. Only the
+ * <code>item</code> array is of interest; everything else is skipped without being decoded.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 30/03/2015
+ */
+public final class FuelStationParser {
+
+	/**
+	 * Receives the stations as they are decoded.
+	 */
+	public interface Handler {
+
+		/**
+		 * Invoked for every station in the feed, in the order they appear.
+		 *
+		 * @param record The decoded {@link FuelStationRecord}. This is reused for the next station,
+		 *               so its values must be copied if they're to be kept
+		 */
+		void onFuelStation (FuelStationRecord record);
+	}
+
+	/**
+	 * The {@link Handler} to pass the stations to.
+	 */
+	private final Handler handler;
+
+	/**
+	 * The record reused for every station.
+	 */
+	private final FuelStationRecord record = new FuelStationRecord ();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param aHandler The {@link Handler} to pass the stations to
+	 */
+	public FuelStationParser (final Handler aHandler) {
+		super ();
+
+		this.handler = aHandler;
+	}
+
+	/**
+	 * Parses a feed, passing every station to the {@link Handler}.
+	 *
+	 * @param reader The {@link JSONStreamReader} positioned at the start of the feed
+	 * @return The number of stations read
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the feed isn't valid JSON
+	 */
+	public int parse (final JSONStreamReader reader) throws IOException, JSONException {
+		int count = 0;
+
+		reader.beginObject ();
+
+		while (reader.hasNext ()) {
+			if ("item".equals (reader.nextName ())
+					&& reader.peek () == JSONStreamReader.Token.BEGIN_ARRAY) {
+				count += parseItems (reader);
+			} else {
+				reader.skipValue ();
+			}
+		}
+
+		reader.endObject ();
+
+		return count;
+	}
+
+	/**
+	 * Parses an array of stations, such as the feed's <code>item</code> array or a piece of it,
+	 * passing every station to the {@link Handler}. Anything in the array that isn't an object is
+	 * skipped.
+	 *
+	 * @param reader The {@link JSONStreamReader} positioned at the start of the array
+	 * @return The number of stations read
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the array isn't valid JSON
+	 */
+	public int parseItems (final JSONStreamReader reader) throws IOException, JSONException {
+		reader.beginArray ();
+
+		return parseElements (reader);
+	}
+
+	/**
+	 * Parses a run of stations separated by commas, without the brackets around them, such as a
+	 * piece cut out of the feed's <code>item</code> array. This lets the piece be parsed where it
+	 * is rather than copied out between a pair of brackets.
+	 *
+	 * @param reader The {@link JSONStreamReader} positioned at the start of its input
+	 * @return The number of stations read
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the stations aren't valid JSON
+	 * @see JSONStreamReader#beginElements()
+	 */
+	public int parseStations (final JSONStreamReader reader) throws IOException, JSONException {
+		reader.beginElements ();
+
+		return parseElements (reader);
+	}
+
+	/**
+	 * Parses the elements of an array whose start has been consumed, up to and including its end.
+	 *
+	 * @param reader The {@link JSONStreamReader} positioned at the first element
+	 * @return The number of stations read
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the array isn't valid JSON
+	 */
+	private int parseElements (final JSONStreamReader reader) throws IOException, JSONException {
+		int count = 0;
+
+		while (reader.hasNext ()) {
+			if (reader.peek () == JSONStreamReader.Token.BEGIN_OBJECT) {
+				readStation (reader);
+				this.handler.onFuelStation (this.record);
+				count++;
+			} else {
+				reader.skipValue ();
+			}
+		}
+
+		reader.endArray ();
+
+		return count;
+	}
+
+	/**
+	 * Reads a single station into the reusable record.
+	 *
+	 * @param reader The {@link JSONStreamReader} positioned at the start of the station
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the station isn't valid JSON
+	 */
+	private void readStation (final JSONStreamReader reader) throws IOException, JSONException {
+		final FuelStationRecord station = this.record;
+
+		station.clear ();
+		reader.beginObject ();
+
+		while (reader.hasNext ()) {
+			final String name = reader.nextName ();
+
+			if ("brand".equals (name)) {
+				station.brand = readText (reader);
+			} else if ("address".equals (name)) {
+				station.address = readText (reader);
+			} else if ("distance".equals (name)) {
+				station.distance = readText (reader);
+			} else if ("img".equals (name)) {
+				station.imageUrl = readText (reader);
+			} else if ("regular".equals (name)) {
+				station.regular = readPrice (reader);
+			} else if ("plus".equals (name)) {
+				station.plus = readPrice (reader);
+			} else if ("premium".equals (name)) {
+				station.premium = readPrice (reader);
+			} else if ("diesel".equals (name)) {
+				station.diesel = readPrice (reader);
+			} else if ("pupdate".equals (name)) {
+				station.updated = readLong (reader);
+			} else if ("lat".equals (name) || "latitude".equals (name)) {
+				station.latitude = readDouble (reader);
+			} else if ("lng".equals (name) || "lon".equals (name) || "longitude".equals (name)) {
+				station.longitude = readDouble (reader);
+			} else {
+				reader.skipValue ();
+			}
+		}
+
+		reader.endObject ();
+	}
+
+	/**
+	 * Reads a value as text. Numbers are kept exactly as they appear in the feed, and anything
+	 * else is treated as missing.
+	 *
+	 * @param reader The {@link JSONStreamReader} positioned at the value
+	 * @return The value as a {@link String}, or null if it isn't a string or a number
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the value isn't valid JSON
+	 */
+	private static String readText (final JSONStreamReader reader)
+			throws IOException, JSONException {
+		final JSONStreamReader.Token token = reader.peek ();
+		final String result;
+
+		if (token == JSONStreamReader.Token.STRING || token == JSONStreamReader.Token.NUMBER) {
+			result = reader.nextString ();
+		} else {
+			reader.skipValue ();
+			result = null;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reads a price, converting it to cents.
+	 * <p>
+	 * The feed uses <code>false</code> to indicate that a fuel isn't sold, and occasionally quotes
+	 * the price as a string. Anything that can't be read as a number is treated as missing.
+	 * </p>
+	 *
+	 * @param reader The {@link JSONStreamReader} positioned at the price
+	 * @return The price in cents, or {@link FuelStationRecord#NO_PRICE}
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the value isn't valid JSON
+	 */
+	private static int readPrice (final JSONStreamReader reader)
+			throws IOException, JSONException {
+		final String text = readText (reader);
+		int price = FuelStationRecord.NO_PRICE;
+
+		if (text != null) {
+			try {
+				final double value = Double.parseDouble (text);
+
+				if (value >= 0 && value < Integer.MAX_VALUE / 100) {
+					price = (int) Math.round (value * 100);
+				}
+			} catch (final NumberFormatException nfe) {
+				// Not a number, so leave the price as missing.
+			}
+		}
+
+		return price;
+	}
+
+	/**
+	 * Reads a number that may have a fraction, such as a coordinate.
+	 *
+	 * @param reader The {@link JSONStreamReader} positioned at the value
+	 * @return The value, or {@link Double#NaN} if it isn't a number
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the value isn't valid JSON
+	 */
+	private static double readDouble (final JSONStreamReader reader)
+			throws IOException, JSONException {
+		final String text = readText (reader);
+		double value = Double.NaN;
+
+		if (text != null) {
+			try {
+				value = Double.parseDouble (text);
+			} catch (final NumberFormatException nfe) {
+				// Not a number, so leave it unknown.
+			}
+		}
+
+		return value;
+	}
+
+	/**
+	 * Reads a whole number, such as a timestamp.
+	 *
+	 * @param reader The {@link JSONStreamReader} positioned at the value
+	 * @return The value, or 0 if it isn't a number
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the value isn't valid JSON
+	 */
+	private static long readLong (final JSONStreamReader reader)
+			throws IOException, JSONException {
+		final String text = readText (reader);
+		long value = 0;
+
+		if (text != null) {
+			try {
+				value = (long) Double.parseDouble (text);
+			} catch (final NumberFormatException nfe) {
+				// Not a number, so leave it unset.
+			}
+		}
+
+		return value;
+	}
+}
@@ -0,0 +1,100 @@
+package au.com.wow.codetestapp;
+
+/**
+ * The fields of a single fuel station, as decoded by the {@link FuelStationParser}.
+ * <p>
+ * A single instance is reused for every station in a feed, so anything that wants to keep the
+ * values must copy them out before the parser moves on to the next station.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 30/03/2015
+ */
+public final class FuelStationRecord {
+
+	/**
+	 * The value used for a price that isn't available.
+	 */
+	public static final int NO_PRICE = -1;
+
+	/**
+	 * The brand of the fuel station.
+	 */
+	public String brand;
+
+	/**
+	 * The address of the fuel station.
+	 */
+	public String address;
+
+	/**
+	 * The distance to the fuel station, as supplied by the feed.
+	 */
+	public String distance;
+
+	/**
+	 * The URL of the brand's image.
+	 */
+	public String imageUrl;
+
+	/**
+	 * The price of regular fuel in cents, or {@link #NO_PRICE}.
+	 */
+	public int regular;
+
+	/**
+	 * The price of plus fuel in cents, or {@link #NO_PRICE}.
+	 */
+	public int plus;
+
+	/**
+	 * The price of premium fuel in cents, or {@link #NO_PRICE}.
+	 */
+	public int premium;
+
+	/**
+	 * The price of diesel in cents, or {@link #NO_PRICE}.
+	 */
+	public int diesel;
+
+	/**
+	 * The time the prices were last updated, in seconds since the epoch.
+	 */
+	public long updated;
+
+	/**
+	 * The latitude of the station in degrees, or {@link Double#NaN} if the feed doesn't give one.
+	 */
+	public double latitude;
+
+	/**
+	 * The longitude of the station in degrees, or {@link Double#NaN} if the feed doesn't give one.
+	 */
+	public double longitude;
+
+	/**
+	 * Constructor.
+	 */
+	public FuelStationRecord () {
+		super ();
+
+		clear ();
+	}
+
+	/**
+	 * Resets all of the fields, ready for the next station to be read.
+	 */
+	public void clear () {
+		this.brand = null;
+		this.address = null;
+		this.distance = null;
+		this.imageUrl = null;
+		this.regular = NO_PRICE;
+		this.plus = NO_PRICE;
+		this.premium = NO_PRICE;
+		this.diesel = NO_PRICE;
+		this.updated = 0;
+		this.latitude = Double.NaN;
+		this.longitude = Double.NaN;
+	}
+}
@@ -0,0 +1,33 @@
+package au.com.wow.codetestapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Receives the {@link FuelStationRefreshScheduler}'s alarm, and sets it again when the device
+ * restarts, since alarms don't survive a reboot.
+ *
+ * @author Graeme Sutherland
+ * @since 16/04/2015
+ */
+public class FuelStationRefreshReceiver extends BroadcastReceiver {
+
+	/**
+	 * Handles the alarm or the restart.
+	 *
+	 * @param context The {@link Context} the receiver is running in
+	 * @param intent The {@link Intent} that was broadcast
+	 */
+	@Override
+	public void onReceive (final Context context, final Intent intent) {
+		final FuelStationRefreshScheduler scheduler = FuelStationRefreshScheduler.getInstance (
+				context);
+
+		if (FuelStationRefreshScheduler.ACTION_REFRESH.equals (intent.getAction ())) {
+			scheduler.onAlarm ();
+		} else if (Intent.ACTION_BOOT_COMPLETED.equals (intent.getAction ())) {
+			scheduler.schedule ();
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package au.com.wow.codetestapp;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Refreshes the feeds in the background every so often, so that the app opens on a recent copy
+ * rather than one from whenever it was last used.
+ * <p>
+ * The refreshes are driven by an {@link AlarmManager} alarm that doesn't wake the device. It goes
+ * off the next time something else wakes the device, so the refresh is batched with whatever
+ * network work woke it up, and on KitKat and later the system batches the alarms themselves too.
+ * When the alarm goes off the feeds are refreshed by the {@link FuelStationService}, as long as the
+ * device is on an unmetered network and the battery isn't low. Otherwise that refresh is skipped.
+ * The refreshed feeds go into the feed cache and the {@link FuelStationDatabase} as usual, which is
+ * what the UI opens on.
+ * </p>
+ * <p>
+ * Each failed refresh doubles the wait before the next one, up to a day, and a successful one puts
+ * it back to the normal interval. The interval, the feeds and the failure count are kept in
+ * {@link SharedPreferences}, so they survive the process being killed, and the alarm is set again
+ * when the device restarts.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 16/04/2015
+ */
+public final class FuelStationRefreshScheduler {
+
+	/**
+	 * The action of the alarm's {@link Intent}.
+	 */
+	public static final String ACTION_REFRESH = "au.com.wow.codetestapp.action.REFRESH";
+
+	/**
+	 * The default time between refreshes, in milliseconds.
+	 */
+	public static final long DEFAULT_INTERVAL = AlarmManager.INTERVAL_HOUR;
+
+	/**
+	 * The longest time to wait between refreshes after failures, in milliseconds.
+	 */
+	static final long MAX_BACKOFF = AlarmManager.INTERVAL_DAY;
+
+	/**
+	 * The name of the {@link SharedPreferences} file.
+	 */
+	private static final String PREFERENCES = "refresh";
+
+	/**
+	 * The preference holding the interval between refreshes.
+	 */
+	private static final String KEY_INTERVAL = "interval";
+
+	/**
+	 * The preference holding the number of refreshes that have failed in a row.
+	 */
+	private static final String KEY_FAILURES = "failures";
+
+	/**
+	 * The preference holding the URLs of the feeds to refresh.
+	 */
+	private static final String KEY_URLS = "urls";
+
+	/**
+	 * The scheduler shared by the app.
+	 */
+	private static FuelStationRefreshScheduler instance;
+
+	/**
+	 * The {@link Context} the app is running in.
+	 */
+	private final Context context;
+
+	/**
+	 * The {@link SharedPreferences} the schedule is kept in.
+	 */
+	private final SharedPreferences preferences;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param appContext The {@link Context} the app is running in
+	 * @param schedulePreferences The {@link SharedPreferences} to keep the schedule in
+	 */
+	FuelStationRefreshScheduler (final Context appContext,
+			final SharedPreferences schedulePreferences) {
+		super ();
+
+		this.context = appContext;
+		this.preferences = schedulePreferences;
+	}
+
+	/**
+	 * Gets the scheduler shared by the whole app, creating it if necessary.
+	 *
+	 * @param context The {@link Context} the app is running in
+	 * @return The shared {@link FuelStationRefreshScheduler}
+	 */
+	public static synchronized FuelStationRefreshScheduler getInstance (final Context context) {
+		if (instance == null) {
+			final Context appContext = context.getApplicationContext ();
+
+			instance = new FuelStationRefreshScheduler (appContext,
+					appContext.getSharedPreferences (PREFERENCES, Context.MODE_PRIVATE));
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Works out how long to wait before the next refresh.
+	 *
+	 * @param interval The time between refreshes when they're succeeding, in milliseconds
+	 * @param failures The number of refreshes that have failed in a row
+	 * @return The time to wait, in milliseconds
+	 */
+	static long getDelay (final long interval, final int failures) {
+		if (failures == 0 || interval >= MAX_BACKOFF) {
+			return interval;
+		}
+
+		long delay = interval;
+
+		for (int i = 0; i < failures && delay < MAX_BACKOFF; i++) {
+			delay *= 2;
+		}
+
+		return Math.min (delay, MAX_BACKOFF);
+	}
+
+	/**
+	 * Starts refreshing feeds in the background, if they aren't being already. This is cheap, so
+	 * it can be called every time the UI starts.
+	 *
+	 * @param urls The URLs of the feeds to refresh
+	 */
+	public synchronized void start (final String... urls) {
+		final Set<String> urlSet = new HashSet<String> (Arrays.asList (urls));
+
+		if (!urlSet.equals (this.preferences.getStringSet (KEY_URLS, null))) {
+			this.preferences.edit ().putStringSet (KEY_URLS, urlSet).apply ();
+		}
+
+		// The alarm is only set if there isn't one already, otherwise using the app every hour
+		// would keep putting it off.
+		if (getAlarm (PendingIntent.FLAG_NO_CREATE) == null) {
+			schedule ();
+		}
+	}
+
+	/**
+	 * Gets the time between refreshes.
+	 *
+	 * @return The interval in milliseconds, or 0 if background refreshes are turned off
+	 */
+	public long getInterval () {
+		return this.preferences.getLong (KEY_INTERVAL, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Sets the time between refreshes, and reschedules the next one to match.
+	 *
+	 * @param interval The interval in milliseconds, or 0 to turn background refreshes off
+	 */
+	public synchronized void setInterval (final long interval) {
+		this.preferences.edit ().putLong (KEY_INTERVAL, Math.max (interval, 0)).apply ();
+		schedule ();
+	}
+
+	/**
+	 * Gets the number of background refreshes that have failed in a row.
+	 *
+	 * @return The number of failures
+	 */
+	public int getFailures () {
+		return this.preferences.getInt (KEY_FAILURES, 0);
+	}
+
+	/**
+	 * Sets the alarm for the next refresh, replacing any that's already set. If the refreshes are
+	 * turned off, or there's nothing to refresh, any alarm is cancelled instead.
+	 */
+	synchronized void schedule () {
+		final AlarmManager alarmManager = (AlarmManager) this.context.getSystemService (
+				Context.ALARM_SERVICE);
+		final long interval = getInterval ();
+		final Set<String> urls = this.preferences.getStringSet (KEY_URLS, null);
+
+		if (interval <= 0 || urls == null || urls.isEmpty ()) {
+			final PendingIntent alarm = getAlarm (PendingIntent.FLAG_NO_CREATE);
+
+			if (alarm != null) {
+				alarmManager.cancel (alarm);
+				alarm.cancel ();
+			}
+		} else {
+			final long delay = getDelay (interval, getFailures ());
+
+			alarmManager.set (AlarmManager.ELAPSED_REALTIME, SystemClock.elapsedRealtime () + delay,
+					getAlarm (PendingIntent.FLAG_UPDATE_CURRENT));
+		}
+	}
+
+	/**
+	 * Handles the alarm going off. The feeds are refreshed if the device is in a fit state, and
+	 * the next alarm is set straight away, in case the process is killed before the refresh
+	 * finishes.
+	 */
+	synchronized void onAlarm () {
+		final Set<String> urls = this.preferences.getStringSet (KEY_URLS, null);
+
+		schedule ();
+
+		if (urls == null || urls.isEmpty () || getInterval () <= 0) {
+			return;
+		}
+
+		if (!DeviceConditions.canRefresh (this.context)) {
+			Log.d (FuelStationRefreshScheduler.class.getName (),
+					"Skipping the refresh, the network is metered or the battery is low");
+			return;
+		}
+
+		final Intent intent = new Intent (this.context, FuelStationService.class);
+
+		intent.putExtra (FuelStationService.URLS, urls.toArray (new String[urls.size ()]));
+		intent.putExtra (FuelStationService.IS_BACKGROUND, true);
+
+		this.context.startService (intent);
+	}
+
+	/**
+	 * Records the result of a background refresh, and sets the alarm for the next one.
+	 *
+	 * @param succeeded True if every feed was refreshed, false if any of them failed
+	 */
+	synchronized void onRefreshed (final boolean succeeded) {
+		final int failures = succeeded ? 0 : getFailures () + 1;
+
+		this.preferences.edit ().putInt (KEY_FAILURES, failures).apply ();
+		schedule ();
+
+		if (!succeeded) {
+			Log.d (FuelStationRefreshScheduler.class.getName (), failures
+					+ " refreshes have failed, waiting " + getDelay (getInterval (), failures)
+					+ "ms for the next");
+		}
+	}
+
+	/**
+	 * Gets the {@link PendingIntent} the alarm sends.
+	 *
+	 * @param flags The flags to get it with, such as {@link PendingIntent#FLAG_NO_CREATE}
+	 * @return The {@link PendingIntent}, or null if there isn't one and it wasn't to be created
+	 */
+	private PendingIntent getAlarm (final int flags) {
+		final Intent intent = new Intent (this.context, FuelStationRefreshReceiver.class);
+
+		intent.setAction (ACTION_REFRESH);
+
+		return PendingIntent.getBroadcast (this.context, 0, intent, flags);
+	}
+}
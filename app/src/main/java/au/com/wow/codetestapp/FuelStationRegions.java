@@ -0,0 +1,222 @@
+package au.com.wow.codetestapp;
+
+import android.content.Context;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges the feeds for several regions into one list of stations.
+ * <p>
+ * The feeds are per ZIP code, and the areas they cover overlap, so a station near a boundary turns
+ * up in more than one of them. Each station appears once in the merged list, in the position it
+ * first appeared in, taken from whichever feed has the most recent prices for it. The feeds are
+ * merged in the order the regions were asked for, so the user's own region comes first.
+ * </p>
+ * <p>
+ * Only the regions on show are merged. The feed has no coordinates, so each station's distance is
+ * measured from the centre of its own region, and a list sorted by distance only makes sense for
+ * the regions the user asked for. Neighbouring regions that are only prefetched are kept warm by
+ * the {@link FuelStationLoader} and the {@link FuelStationCache} instead, and never put in here.
+ * When the regions on show change, the ones that are no longer wanted are dropped.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 11/04/2015
+ */
+public class FuelStationRegions {
+
+	/**
+	 * The key that the merged list is published under on the {@link FuelStationChannel}.
+	 */
+	public static final String MERGED = "regions:merged";
+
+	/**
+	 * The store shared by the whole app.
+	 */
+	private static FuelStationRegions instance;
+
+	/**
+	 * The text to display when there's no value set.
+	 */
+	private final String notApplicable;
+
+	/**
+	 * The directory to write oversized parcels to, or null.
+	 */
+	private final File directory;
+
+	/**
+	 * The URLs of the regions on show, in the order they were asked for.
+	 */
+	private final Set<String> shown = new LinkedHashSet<String> ();
+
+	/**
+	 * The latest list for each region on show, keyed by URL.
+	 */
+	private final Map<String, FuelStationList> regions = new HashMap<String, FuelStationList> ();
+
+	/**
+	 * The merged list, or null if nothing has been put in yet.
+	 */
+	private FuelStationList merged;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param notApplicableString The text to display when there's no value set
+	 * @param spillDirectory The directory to write oversized parcels to, or null
+	 */
+	public FuelStationRegions (final String notApplicableString, final File spillDirectory) {
+		super ();
+
+		this.notApplicable = notApplicableString;
+		this.directory = spillDirectory;
+	}
+
+	/**
+	 * Gets the store shared by the whole app, creating it if necessary.
+	 *
+	 * @param context The {@link Context} the app is running in
+	 * @return The shared {@link FuelStationRegions}
+	 */
+	public static synchronized FuelStationRegions getInstance (final Context context) {
+		if (instance == null) {
+			instance = new FuelStationRegions (context.getString (R.string.not_applicable),
+					context.getApplicationContext ().getCacheDir ());
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Sets the regions on show, replacing the ones set before. Any region that's no longer on show
+	 * is dropped, and leaves the merged list straight away. This may be called on any thread.
+	 *
+	 * @param urls The URLs of the regions' feeds, in order of preference
+	 */
+	public synchronized void show (final Collection<String> urls) {
+		final Set<String> wanted = new LinkedHashSet<String> (urls);
+
+		// The order matters as well as the regions, as it decides which copy of a station wins.
+		if (new ArrayList<String> (wanted).equals (new ArrayList<String> (this.shown))) {
+			return;
+		}
+
+		this.shown.clear ();
+		this.shown.addAll (wanted);
+		this.regions.keySet ().retainAll (wanted);
+		this.merged = merge ();
+	}
+
+	/**
+	 * Stores a new copy of a region's feed, and merges it with the others, if the region is on
+	 * show. This may be called on any thread.
+	 *
+	 * @param url The URL of the region's feed
+	 * @param list The {@link FuelStationList} decoded from the feed
+	 * @return The merged {@link FuelStationList}, or null if the region isn't on show
+	 */
+	public synchronized FuelStationList put (final String url, final FuelStationList list) {
+		if (!this.shown.contains (url)) {
+			return null;
+		}
+
+		this.regions.put (url, list);
+		this.merged = merge ();
+
+		return this.merged;
+	}
+
+	/**
+	 * Gets the merged list.
+	 *
+	 * @return The merged {@link FuelStationList}, or null if nothing has been put in yet
+	 */
+	public synchronized FuelStationList getMerged () {
+		return this.merged;
+	}
+
+	/**
+	 * Merges the lists of the regions on show that have arrived, in the order they were asked for.
+	 * Must be called while holding the lock.
+	 *
+	 * @return The merged {@link FuelStationList}, or null if none of them have arrived yet
+	 */
+	private FuelStationList merge () {
+		final List<FuelStationList> lists = new ArrayList<FuelStationList> (this.regions.size ());
+
+		for (final String url : this.shown) {
+			final FuelStationList list = this.regions.get (url);
+
+			if (list != null) {
+				lists.add (list);
+			}
+		}
+
+		return lists.isEmpty () ? null : merge (lists);
+	}
+
+	/**
+	 * Merges several lists, so that each station only appears once.
+	 * <p>
+	 * A single list is returned as it is, so that the usual case of one region doesn't copy
+	 * anything, and the UI can tell that it's the list it already has.
+	 * </p>
+	 *
+	 * @param lists The {@link FuelStationList}s to merge, in order of preference
+	 * @return The merged {@link FuelStationList}
+	 */
+	FuelStationList merge (final List<FuelStationList> lists) {
+		if (lists.size () == 1) {
+			return lists.get (0);
+		}
+
+		int total = 0;
+
+		for (final FuelStationList list : lists) {
+			total += list.getSize ();
+		}
+
+		// Which list, and where in it, each of the merged stations is to be copied from.
+		final FuelStationIdTable table = new FuelStationIdTable (total);
+		final int[] sources = new int[total];
+		final int[] positions = new int[total];
+		int count = 0;
+
+		for (int source = 0; source < lists.size (); source++) {
+			final FuelStationList list = lists.get (source);
+
+			for (int index = 0; index < list.getSize (); index++) {
+				final int existing = table.get (list.getId (index));
+
+				if (existing < 0) {
+					table.put (list.getId (index), count);
+					sources[count] = source;
+					positions[count] = index;
+					count++;
+				} else if (list.getUpdated (index)
+						> lists.get (sources[existing]).getUpdated (positions[existing])) {
+					// I keep the station where it was, but take the fresher prices.
+					sources[existing] = source;
+					positions[existing] = index;
+				}
+			}
+		}
+
+		final FuelStationList.Builder builder = new FuelStationList.Builder (this.notApplicable,
+				this.directory);
+
+		for (int i = 0; i < count; i++) {
+			builder.add (lists.get (sources[i]), positions[i]);
+		}
+
+		return builder.build ();
+	}
+}
@@ -1,147 +1,473 @@
 package au.com.wow.codetestapp;
 
-import android.app.IntentService;
+import android.app.Service;
 import android.content.Intent;
+import android.os.IBinder;
 import android.util.Log;
 
-import com.kizio.reader.JSONReader;
-
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.FileDescriptor;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Background process for loading the fuel station data.
+ * <p>
+ * The work itself is done by the shared {@link FuelStationLoader}, which returns the last good copy
+ * of a feed straight away and coalesces concurrent requests for the same feed into one download.
+ * The service just keeps the process alive while a load is running, and publishes the results to
+ * the {@link FuelStationChannel} for the UI.
+ * </p>
+ * <p>
+ * Several regions can be loaded at once. They're fetched in parallel on the loader's bounded pool,
+ * and as each one arrives it's merged into the {@link FuelStationRegions}, which is published
+ * under {@link FuelStationRegions#MERGED}. Neighbouring regions can be prefetched as well, so that
+ * moving into one doesn't mean waiting for a download, but only on an unmetered network and
+ * external power. A prefetched region is only kept warm in the loader and the feed cache; it's
+ * never merged into the list on show until it's asked for.
+ * </p>
+ * <p>
+ * The merged list is also written to the {@link FuelStationDatabase}, and any price changes in it
+ * to the {@link FuelStationHistory}, on a thread of their own. Only
+ * the latest list matters, so one that arrives while another is being written replaces anything
+ * still waiting rather than queueing up behind it.
+ * </p>
+ * <p>
+ * The {@link FuelStationRefreshScheduler} starts the service every so often to refresh the feeds
+ * in the background, and is told whether they all loaded.
+ * </p>
  *
  * @author Graeme Sutherland
  * @since 29/03/2015.
  */
-public class FuelStationService extends IntentService {
+public class FuelStationService extends Service implements FuelStationLoader.Callback {
 
 	/**
 	 * Parameter for passing the fuel station list URL.
 	 */
 	public static final String URL = "url";
 
+	/**
+	 * Parameter for passing the URLs of further regions to load, as a {@link String} array.
+	 */
+	public static final String URLS = "urls";
+
+	/**
+	 * Parameter for passing the URLs of regions to prefetch, as a {@link String} array. These are
+	 * only loaded when the device is on an unmetered network and external power.
+	 */
+	public static final String PREFETCH_URLS = "prefetch_urls";
+
 	/**
 	 * Parameter for passing in a refresh request.
 	 */
 	public static final String IS_REFRESH = "is_refresh";
 
 	/**
-	 * Parameter for passing a list of fuel stations back to the UI.
+	 * Parameter for marking a refresh started by the {@link FuelStationRefreshScheduler}. Whether
+	 * it succeeded is reported back, so that the scheduler can back off.
 	 */
-	public static final String FUEL_STATIONS = "fuel_stations";
+	public static final String IS_BACKGROUND = "is_background";
 
 	/**
-	 * Action for handling an update fuel stations call.
+	 * Parameter for passing the maximum age of a feed that doesn't need revalidating, in
+	 * milliseconds. Defaults to {@link FuelStationLoader#DEFAULT_MAX_AGE}.
 	 */
-	public static final String UPDATE_FUEL_STATIONS = "update_fuel_stations";
+	public static final String MAX_AGE = "max_age";
 
 	/**
-	 * Flag to track whether a download has been triggered.
+	 * The {@link FuelStationLoader} that does the work.
 	 */
-	private boolean isDownloadTriggered;
+	private FuelStationLoader loader;
+
+	/**
+	 * The {@link FuelStationRegions} that the regions are merged into.
+	 */
+	private FuelStationRegions regions;
+
+	/**
+	 * The {@link FuelStationDatabase} the merged list is stored in.
+	 */
+	private FuelStationDatabase database;
+
+	/**
+	 * The {@link FuelStationHistory} the price changes are recorded in.
+	 */
+	private FuelStationHistory history;
+
+	/**
+	 * The single thread the database is written on.
+	 */
+	private final ExecutorService storeExecutor = Executors.newSingleThreadExecutor ();
+
+	/**
+	 * The merged list waiting to be stored, or null if there isn't one.
+	 */
+	private final AtomicReference<FuelStationList> unstored =
+			new AtomicReference<FuelStationList> ();
+
+	/**
+	 * The merged list stored last. Only touched on the store thread.
+	 */
+	private FuelStationList stored;
+
+	/**
+	 * The number of loads that haven't completed yet.
+	 */
+	private int pending;
+
+	/**
+	 * The ID of the most recent start request.
+	 */
+	private int lastStartId;
+
+	/**
+	 * Gets the shared loader once the service has a {@link android.content.Context}.
+	 */
+	@Override
+	public void onCreate () {
+		super.onCreate ();
+
+		this.loader = FuelStationLoader.getInstance (this);
+		this.regions = FuelStationRegions.getInstance (this);
+		this.database = FuelStationDatabase.getInstance (this);
+		this.history = FuelStationHistory.getInstance (this);
+	}
 
 	/**
-	 * Constructor.
+	 * Lets any write to the database that's been started finish, but takes no more.
 	 */
-	public FuelStationService () {
-		super (FuelStationService.class.getName ());
+	@Override
+	public void onDestroy () {
+		super.onDestroy ();
 
-		isDownloadTriggered = false;
+		this.storeExecutor.shutdown ();
 	}
 
 	/**
 	 * Handles an incoming {@link Intent}.
+	 * <p>
+	 * A refresh forces the feeds to be revalidated; otherwise they're only revalidated if the last
+	 * good copy is older than the maximum age. Prefetches are never forced, since nobody is
+	 * waiting for them.
+	 * </p>
 	 *
- 	 * @param intent The {@link Intent} used to start the service
+	 * @param intent The {@link Intent} used to start the service
+	 * @param flags Additional data about the start request
+	 * @param startId A unique ID for this start request
+	 * @return {@link #START_NOT_STICKY}, as there's no point reloading after the process is killed
 	 */
 	@Override
-	protected void onHandleIntent (final Intent intent) {
+	public int onStartCommand (final Intent intent, final int flags, final int startId) {
+		// A load that's answered from memory completes straight away, so I count this request as
+		// pending too, to stop the service being stopped before the rest have been started.
+		synchronized (this) {
+			this.lastStartId = startId;
+			this.pending++;
+		}
+
 		if (intent != null) {
+			final boolean isRefresh = intent.getBooleanExtra (IS_REFRESH, false);
+			final long maxAge = isRefresh ? 0 : intent.getLongExtra (MAX_AGE,
+					FuelStationLoader.DEFAULT_MAX_AGE);
 			final String url = intent.getStringExtra (URL);
-			this.isDownloadTriggered |= intent.getBooleanExtra (IS_REFRESH, false);
+			final String[] urls = intent.getStringArrayExtra (URLS);
 
-			// Block downloads if no URL is supplied, or no download has been started.
-			if (this.isDownloadTriggered && url != null && !url.isEmpty ()) {
-				try {
-					this.isDownloadTriggered = true;
-					final FuelStationList result = new FuelStationList (this, downloadData (url));
-					final Intent resultIntent = new Intent (UPDATE_FUEL_STATIONS);
-
-					resultIntent.putExtra (FUEL_STATIONS, result);
-
-					// This could be done with the LocalBroadcastManager, but it's easier to do it
-					// this way than add the support library to this project!
-					sendBroadcast (resultIntent);
-				} catch (final Exception e) {
-					// If I was doing this properly then I'd handle the error, and figure some way
-					// of closing the app down gracefully. However, I'm not being paid to do this so
-					// you'll have to make do with an error message to the logger.
-					Log.e ("FuelStationTask", "Failed to download!", e);
-
-					this.isDownloadTriggered = false;
+			show (url, urls);
+			load (url, maxAge, this);
+
+			if (urls != null && intent.getBooleanExtra (IS_BACKGROUND, false)) {
+				final BackgroundRefresh refresh = new BackgroundRefresh (urls.length);
+
+				for (final String regionUrl : urls) {
+					load (regionUrl, maxAge, refresh);
+				}
+			} else if (urls != null) {
+				for (final String regionUrl : urls) {
+					load (regionUrl, maxAge, this);
+				}
+			}
+
+			final String[] prefetchUrls = intent.getStringArrayExtra (PREFETCH_URLS);
+
+			if (prefetchUrls != null && DeviceConditions.canPrefetch (this)) {
+				final Prefetch prefetch = new Prefetch ();
+
+				for (final String prefetchUrl : prefetchUrls) {
+					load (prefetchUrl, FuelStationLoader.DEFAULT_MAX_AGE, prefetch);
 				}
 			}
 		}
+
+		synchronized (this) {
+			this.pending--;
+		}
+
+		stopIfIdle ();
+
+		return START_NOT_STICKY;
 	}
 
 	/**
-	 * Downloads the JSON data from the specified URL.
+	 * Sets the regions on show to the ones asked for in a start request. A request that doesn't ask
+	 * for any, such as a prefetch on its own, leaves them as they were.
 	 *
-	 * @param urlString The URL of the web service from which data is to be downloaded
-	 * @return A {@link JSONObject} containing the downloaded data
-	 * @throws IOException If there's an IO error
-	 * @throws JSONException If there's a JSON processing error
-	 */
-	private JSONObject downloadData (final String urlString) throws IOException, JSONException {
-		HttpURLConnection connection = null;
-		JSONObject result = null;
-
-		try {
-			final URL url = new URL (urlString);
-			connection = (HttpURLConnection) url.openConnection ();
-
-			result = handleResponse(connection.getInputStream());
-		} finally {
-			if (connection != null) {
-				connection.disconnect();
-			}
+	 * @param url The URL of the main region, or null
+	 * @param urls The URLs of further regions, or null
+	 */
+	private void show (final String url, final String[] urls) {
+		final List<String> shown = new ArrayList<String> ();
+
+		if (url != null && !url.isEmpty ()) {
+			shown.add (url);
+		}
+
+		if (urls != null) {
+			shown.addAll (Arrays.asList (urls));
 		}
 
-		return result;
+		if (!shown.isEmpty ()) {
+			this.regions.show (shown);
+		}
 	}
 
 	/**
-	 * Reads the response from the HTTP connection, and parses it into a{@link JSONObject}.
-	 * <p>
-	 * Note that the <code>@SuppressWarnings</code> annotation is to prevent the warning that the
-	 * <code>try / catch</code> block can be simplified for Java 7. Unfortunately the version of
-	 * Android I'm targetting doesn't support that yet.
-	 * </p>
+	 * Starts loading a feed, if there's a URL for it. Nothing can be done without one.
 	 *
-	 * @param stream The {@link InputStream} from the HTTP connection
-	 * @return A {@link String} containing the server's response
-	 * @throws IOException If there is an IO error
+	 * @param url The URL of the feed, or null
+	 * @param maxAge The maximum age of a copy that doesn't need revalidating, in milliseconds
+	 * @param callback The {@link FuelStationLoader.Callback} to send the results to, which must
+	 *                 pass them on to the service
 	 */
-	@SuppressWarnings ("all")
-	private JSONObject handleResponse (final InputStream stream) throws IOException, JSONException
-	{
-		final JSONReader reader = new JSONReader (new InputStreamReader (stream));
-		JSONObject result = null;
+	private void load (final String url, final long maxAge,
+			final FuelStationLoader.Callback callback) {
+		if (url == null || url.isEmpty ()) {
+			return;
+		}
 
-		try {
-			result = reader.readJSON();
-		} finally {
-			reader.close ();
+		synchronized (this) {
+			this.pending++;
 		}
 
-		return result;
+		this.loader.load (url, maxAge, callback);
+	}
+
+	/**
+	 * The service can't be bound to.
+	 *
+	 * @param intent The {@link Intent} used to bind to the service
+	 * @return Always returns null
+	 */
+	@Override
+	public IBinder onBind (final Intent intent) {
+		return null;
+	}
+
+	/**
+	 * Writes out the {@link FuelStationMetrics}, for <code>adb shell dumpsys activity service
+	 * au.com.wow.codetestapp/.FuelStationService</code>.
+	 *
+	 * @param fd The {@link FileDescriptor} being written to
+	 * @param writer The {@link PrintWriter} to write to
+	 * @param args Any arguments to the dump command
+	 */
+	@Override
+	protected void dump (final FileDescriptor fd, final PrintWriter writer, final String[] args) {
+		FuelStationMetrics.getInstance ().dump (writer);
+	}
+
+	/**
+	 * Sends a list of fuel stations back to the UI, both on its own and merged with the other
+	 * regions. They're passed by reference through the {@link FuelStationChannel}, so they're never
+	 * parcelled.
+	 *
+	 * @param url The URL of the feed
+	 * @param list The {@link FuelStationList} to send
+	 */
+	@Override
+	public void onFuelStations (final String url, final FuelStationList list) {
+		final FuelStationChannel channel = FuelStationChannel.getInstance ();
+		final FuelStationList merged = this.regions.put (url, list);
+
+		channel.publish (url, list);
+
+		// A region that's no longer on show, from a load that started before it was dropped.
+		if (merged != null) {
+			channel.publish (FuelStationRegions.MERGED, merged);
+			store (merged);
+		}
+	}
+
+	/**
+	 * Stops the service once every load has completed. Failures have already been logged by the
+	 * loader, and the UI keeps showing the last good copy.
+	 *
+	 * @param url The URL of the feed
+	 * @param error The reason the feed couldn't be fetched, or null if it succeeded
+	 */
+	@Override
+	public void onComplete (final String url, final Exception error) {
+		synchronized (this) {
+			this.pending--;
+		}
+
+		stopIfIdle ();
+	}
+
+	/**
+	 * Writes a merged list to the database, and records its price changes, in the background. If a
+	 * write is already waiting, the list just takes its place.
+	 *
+	 * @param merged The merged {@link FuelStationList}
+	 */
+	private void store (final FuelStationList merged) {
+		if (this.unstored.getAndSet (merged) != null) {
+			return;
+		}
+
+		this.storeExecutor.execute (new Runnable () {
+
+			/**
+			 * Writes the latest list.
+			 */
+			@Override
+			public void run () {
+				final FuelStationList latest = unstored.getAndSet (null);
+
+				// The copy held in memory is sent again on every resume.
+				if (latest == stored) {
+					return;
+				}
+
+				stored = latest;
+
+				try {
+					database.replace (latest);
+				} catch (final RuntimeException e) {
+					// The feed cache still has the stations, so this only costs the queries.
+					Log.e (FuelStationService.class.getName (), "Failed to store the stations", e);
+				}
+
+				try {
+					history.record (latest, System.currentTimeMillis () / 1000);
+				} catch (final IOException ioe) {
+					Log.e (FuelStationService.class.getName (), "Failed to record the prices", ioe);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops the service if there are no loads still running.
+	 */
+	private void stopIfIdle () {
+		final int startId;
+
+		synchronized (this) {
+			if (this.pending > 0) {
+				return;
+			}
+
+			startId = this.lastStartId;
+		}
+
+		// If another start request has come in since, this does nothing.
+		stopSelfResult (startId);
+	}
+
+	/**
+	 * Keeps a prefetched region warm without showing it. The loader holds the list in memory and
+	 * the feed cache holds it on disk, so there's nothing to do with it here.
+	 */
+	private final class Prefetch implements FuelStationLoader.Callback {
+
+		/**
+		 * Ignores the stations, as the region isn't on show.
+		 *
+		 * @param url The URL of the feed
+		 * @param list The {@link FuelStationList} decoded from the feed
+		 */
+		@Override
+		public void onFuelStations (final String url, final FuelStationList list) {
+			// Nothing to do.
+		}
+
+		/**
+		 * Passes the completion on to the service.
+		 *
+		 * @param url The URL of the feed
+		 * @param error The reason the feed couldn't be fetched, or null if it succeeded
+		 */
+		@Override
+		public void onComplete (final String url, final Exception error) {
+			FuelStationService.this.onComplete (url, error);
+		}
+	}
+
+	/**
+	 * Passes the results of a background refresh on to the service, and tells the
+	 * {@link FuelStationRefreshScheduler} how it went once every feed has completed.
+	 */
+	private final class BackgroundRefresh implements FuelStationLoader.Callback {
+
+		/**
+		 * The number of feeds that haven't completed yet.
+		 */
+		private int remaining;
+
+		/**
+		 * Whether any of the feeds failed.
+		 */
+		private boolean failed;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param count The number of feeds being refreshed
+		 */
+		BackgroundRefresh (final int count) {
+			super ();
+
+			this.remaining = count;
+		}
+
+		/**
+		 * Passes the stations on to the service.
+		 *
+		 * @param url The URL of the feed
+		 * @param list The {@link FuelStationList} decoded from the feed
+		 */
+		@Override
+		public void onFuelStations (final String url, final FuelStationList list) {
+			FuelStationService.this.onFuelStations (url, list);
+		}
+
+		/**
+		 * Counts the feed off, reporting the result once they're all done.
+		 *
+		 * @param url The URL of the feed
+		 * @param error The reason the feed couldn't be fetched, or null if it succeeded
+		 */
+		@Override
+		public void onComplete (final String url, final Exception error) {
+			final boolean done;
+
+			synchronized (this) {
+				this.failed |= error != null;
+				done = --this.remaining == 0;
+			}
+
+			if (done) {
+				FuelStationRefreshScheduler.getInstance (FuelStationService.this).onRefreshed (
+						!this.failed);
+			}
+
+			FuelStationService.this.onComplete (url, error);
+		}
 	}
 }
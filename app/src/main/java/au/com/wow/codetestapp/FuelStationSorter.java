@@ -0,0 +1,472 @@
+package au.com.wow.codetestapp;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sorts and filters a {@link FuelStationList} in the background.
+ * <p>
+ * The list itself is never copied or rearranged. Instead, the result is a permutation: an array of
+ * the positions of the stations that passed the filter, in display order. Each station's sort key
+ * is reduced to an <code>int</code> up front, and packed together with its position into a
+ * <code>long</code>, so the sort itself is a single {@link Arrays#sort(long[])} with no string
+ * comparisons and no boxing. Packing the position into the low bits also makes the sort stable,
+ * as stations with equal keys are left in feed order.
+ * </p>
+ * <p>
+ * The keys that have to be worked out, the brand ranks and the distances, are kept for the last
+ * list sorted, so re-sorting the same list a different way only costs the sort.
+ * </p>
+ * <p>
+ * When the caller passes in what's currently displayed, the sorted result is also diffed against
+ * it on the same thread, so a refresh can update just the rows that changed.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 04/04/2015
+ */
+public class FuelStationSorter {
+
+	/**
+	 * Leaves the stations in the order they came in the feed.
+	 */
+	public static final int FEED_ORDER = -1;
+
+	/**
+	 * Sorts the stations alphabetically by brand.
+	 */
+	public static final int BRAND = 0;
+
+	/**
+	 * Sorts the stations nearest first.
+	 */
+	public static final int DISTANCE = 1;
+
+	/**
+	 * Sorts the stations cheapest first by the price of a grade of fuel. Add the grade, such as
+	 * {@link FuelStationList#PREMIUM}, to get the order for that grade.
+	 */
+	public static final int PRICE = 2;
+
+	/**
+	 * Accepts stations regardless of which fuels they sell.
+	 */
+	public static final int ANY_GRADE = -1;
+
+	/**
+	 * The key given to a missing value, so that it sorts last.
+	 */
+	private static final int MISSING = Integer.MAX_VALUE;
+
+	/**
+	 * Masks the position of a station out of a packed key.
+	 */
+	private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+	/**
+	 * Receives the results of a sort.
+	 */
+	public interface Callback {
+
+		/**
+		 * Invoked on the main thread when a sort has finished. Sorts that are overtaken by a
+		 * later request are dropped, rather than being delivered out of order.
+		 *
+		 * @param list The {@link FuelStationList} that was sorted
+		 * @param query The {@link Query} it was sorted with
+		 * @param order The positions of the matching stations, in display order
+		 * @param diff The {@link FuelStationDiff} from the displayed list, or null if nothing was
+		 *             displayed
+		 */
+		void onSorted (FuelStationList list, Query query, int[] order, FuelStationDiff diff);
+	}
+
+	/**
+	 * Describes how to sort and filter a list.
+	 */
+	public static final class Query {
+
+		/**
+		 * The order, such as {@link #BRAND}.
+		 */
+		private final int order;
+
+		/**
+		 * The grade of fuel stations must sell to be included, or {@link #ANY_GRADE}.
+		 */
+		private final int grade;
+
+		/**
+		 * The brand stations must have to be included, or null for any brand.
+		 */
+		private final String brand;
+
+		/**
+		 * Constructor for a query that includes every station.
+		 *
+		 * @param sortOrder The order, such as {@link #BRAND}
+		 */
+		public Query (final int sortOrder) {
+			this (sortOrder, ANY_GRADE, null);
+		}
+
+		/**
+		 * Constructor.
+		 *
+		 * @param sortOrder The order, such as {@link #BRAND}
+		 * @param requiredGrade The grade of fuel stations must sell, or {@link #ANY_GRADE}
+		 * @param requiredBrand The brand stations must have, or null for any brand. This is
+		 *                      matched ignoring case
+		 */
+		public Query (final int sortOrder, final int requiredGrade, final String requiredBrand) {
+			super ();
+
+			this.order = sortOrder;
+			this.grade = requiredGrade;
+			this.brand = requiredBrand;
+		}
+
+		/**
+		 * Gets the order.
+		 *
+		 * @return The order, such as {@link #BRAND}
+		 */
+		public int getOrder () {
+			return this.order;
+		}
+
+		/**
+		 * Gets the grade of fuel stations must sell to be included.
+		 *
+		 * @return The grade, or {@link #ANY_GRADE}
+		 */
+		public int getGrade () {
+			return this.grade;
+		}
+
+		/**
+		 * Gets the brand stations must have to be included.
+		 *
+		 * @return The brand, or null for any brand
+		 */
+		public String getBrand () {
+			return this.brand;
+		}
+	}
+
+	/**
+	 * The single thread the sorts are run on. Only it touches the cached keys.
+	 */
+	private final ExecutorService executor = Executors.newSingleThreadExecutor ();
+
+	/**
+	 * The {@link Handler} used to return the results to the main thread.
+	 */
+	private final Handler handler = new Handler (Looper.getMainLooper ());
+
+	/**
+	 * Counts the requests, so results that have been overtaken can be dropped.
+	 */
+	private int generation;
+
+	/**
+	 * The list that the cached keys were worked out for.
+	 */
+	private FuelStationList keyedList;
+
+	/**
+	 * The cached keys for the keyed list.
+	 */
+	private Keys keys;
+
+	/**
+	 * Constructor.
+	 */
+	public FuelStationSorter () {
+		super ();
+	}
+
+	/**
+	 * Sorts a list in the background. Must be called on the main thread.
+	 *
+	 * @param list The {@link FuelStationList} to sort
+	 * @param query The {@link Query} to sort it with
+	 * @param callback The {@link Callback} to send the result to
+	 */
+	public void sort (final FuelStationList list, final Query query, final Callback callback) {
+		sort (list, query, null, null, callback);
+	}
+
+	/**
+	 * Sorts a list in the background, and diffs the result against the list currently displayed.
+	 * Must be called on the main thread.
+	 *
+	 * @param list The {@link FuelStationList} to sort
+	 * @param query The {@link Query} to sort it with
+	 * @param displayedList The {@link FuelStationList} currently displayed, or null if there isn't
+	 *                      one
+	 * @param displayedOrder The display order of the displayed list, or null for feed order
+	 * @param callback The {@link Callback} to send the result to
+	 */
+	public void sort (final FuelStationList list, final Query query,
+			final FuelStationList displayedList, final int[] displayedOrder,
+			final Callback callback) {
+		final int request = ++this.generation;
+
+		this.executor.execute (new Runnable () {
+
+			/**
+			 * Sorts and diffs the list, and posts the result back if it's still wanted.
+			 */
+			@Override
+			public void run () {
+				final FuelStationMetrics metrics = FuelStationMetrics.getInstance ();
+				final long start = metrics.begin (FuelStationMetrics.SORT);
+				final int[] order;
+				final FuelStationDiff diff;
+
+				try {
+					if (list != FuelStationSorter.this.keyedList) {
+						FuelStationSorter.this.keys = new Keys (list);
+						FuelStationSorter.this.keyedList = list;
+					}
+
+					order = FuelStationSorter.this.keys.sort (query);
+					diff = displayedList != null ? FuelStationDiff.compute (displayedList,
+							displayedOrder, list, order) : null;
+				} finally {
+					metrics.end (FuelStationMetrics.SORT, start);
+				}
+
+				FuelStationSorter.this.handler.post (new Runnable () {
+
+					/**
+					 * Delivers the result, unless another sort has been requested since.
+					 */
+					@Override
+					public void run () {
+						if (request == FuelStationSorter.this.generation) {
+							callback.onSorted (list, query, order, diff);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Stops the sorter. Sorts that are still running won't be delivered.
+	 */
+	public void shutdown () {
+		this.generation++;
+		this.executor.shutdownNow ();
+	}
+
+	/**
+	 * Sorts a list on the calling thread.
+	 *
+	 * @param list The {@link FuelStationList} to sort
+	 * @param query The {@link Query} to sort it with
+	 * @return The positions of the matching stations, in display order
+	 */
+	public static int[] sort (final FuelStationList list, final Query query) {
+		return new Keys (list).sort (query);
+	}
+
+	/**
+	 * The sort keys that can't be read straight from the list's columns.
+	 */
+	private static final class Keys {
+
+		/**
+		 * The list that the keys were worked out for.
+		 */
+		private final FuelStationList list;
+
+		/**
+		 * The alphabetical rank of each station's brand. Stations with the same brand share a
+		 * rank, ignoring case.
+		 */
+		private final int[] brandRanks;
+
+		/**
+		 * The distance to each station, as an int that sorts in the same order as the float.
+		 */
+		private final int[] distances;
+
+		/**
+		 * The alphabetical rank of each entry in the list's symbol table, or {@link #MISSING} for
+		 * the null entry.
+		 */
+		private final int[] symbolRanks;
+
+		/**
+		 * Constructor. This works out the keys, which is the only part of sorting that looks at
+		 * the brand strings.
+		 *
+		 * @param fuelStationList The {@link FuelStationList} to work the keys out for
+		 */
+		Keys (final FuelStationList fuelStationList) {
+			super ();
+
+			final int size = fuelStationList.getSize ();
+
+			this.list = fuelStationList;
+			this.symbolRanks = rankSymbols (fuelStationList);
+			this.brandRanks = new int[size];
+			this.distances = new int[size];
+
+			for (int i = 0; i < size; i++) {
+				this.brandRanks[i] = this.symbolRanks[fuelStationList.getBrandId (i)];
+				this.distances[i] = toKey (fuelStationList.getDistanceValue (i));
+			}
+		}
+
+		/**
+		 * Ranks the strings in a list's symbol table alphabetically, ignoring case. The table
+		 * only holds each brand once, so the strings are compared a handful of times rather than
+		 * once per station.
+		 *
+		 * @param fuelStationList The {@link FuelStationList} whose symbols are to be ranked
+		 * @return The rank of each symbol. Symbols that only differ by case share a rank
+		 */
+		private static int[] rankSymbols (final FuelStationList fuelStationList) {
+			final int count = fuelStationList.getSymbolCount ();
+			final Map<String, Integer> ranks = new HashMap<String, Integer> ();
+			final String[] keys = new String[count];
+			final int[] symbolRanks = new int[count];
+
+			for (int id = 1; id < count; id++) {
+				keys[id] = fuelStationList.getSymbol (id).toLowerCase (Locale.US);
+				ranks.put (keys[id], 0);
+			}
+
+			final String[] sorted = ranks.keySet ().toArray (new String[ranks.size ()]);
+
+			Arrays.sort (sorted);
+
+			for (int i = 0; i < sorted.length; i++) {
+				ranks.put (sorted[i], i);
+			}
+
+			symbolRanks[0] = MISSING;
+
+			for (int id = 1; id < count; id++) {
+				symbolRanks[id] = ranks.get (keys[id]);
+			}
+
+			return symbolRanks;
+		}
+
+		/**
+		 * Sorts and filters the list.
+		 *
+		 * @param query The {@link Query} to sort it with
+		 * @return The positions of the matching stations, in display order
+		 */
+		int[] sort (final Query query) {
+			final int size = this.list.getSize ();
+			final int requiredBrand = getBrandRank (query.getBrand ());
+			final long[] packed = new long[size];
+			int count = 0;
+
+			for (int i = 0; i < size; i++) {
+				if (matches (query, requiredBrand, i)) {
+					packed[count++] = ((long) getKey (query.getOrder (), i) << 32) | i;
+				}
+			}
+
+			Arrays.sort (packed, 0, count);
+
+			final int[] order = new int[count];
+
+			for (int i = 0; i < count; i++) {
+				order[i] = (int) (packed[i] & INDEX_MASK);
+			}
+
+			return order;
+		}
+
+		/**
+		 * Checks whether a station passes the query's filter.
+		 *
+		 * @param query The {@link Query} being run
+		 * @param requiredBrand The rank of the brand the query asks for
+		 * @param index The position of the station in the list
+		 * @return True if the station is to be included, false otherwise
+		 */
+		private boolean matches (final Query query, final int requiredBrand, final int index) {
+			if (query.getBrand () != null && this.brandRanks[index] != requiredBrand) {
+				return false;
+			}
+
+			return query.getGrade () == ANY_GRADE || this.list.getPrice (query.getGrade (), index)
+					!= FuelStationRecord.NO_PRICE;
+		}
+
+		/**
+		 * Gets the sort key for a station. Stations are sorted into ascending order of key.
+		 *
+		 * @param order The order, such as {@link #BRAND}
+		 * @param index The position of the station in the list
+		 * @return The key
+		 */
+		private int getKey (final int order, final int index) {
+			if (order == BRAND) {
+				return this.brandRanks[index];
+			} else if (order == DISTANCE) {
+				return this.distances[index];
+			} else if (order >= PRICE && order < PRICE + FuelStationList.GRADES) {
+				final int cents = this.list.getPrice (order - PRICE, index);
+
+				return cents != FuelStationRecord.NO_PRICE ? cents : MISSING;
+			}
+
+			// Anything else leaves the stations in feed order.
+			return 0;
+		}
+
+		/**
+		 * Gets the rank of a brand.
+		 *
+		 * @param brand The brand
+		 * @return The rank, or -1 if no station has that brand
+		 */
+		private int getBrandRank (final String brand) {
+			if (brand != null) {
+				for (int id = 1; id < this.symbolRanks.length; id++) {
+					if (this.list.getSymbol (id).equalsIgnoreCase (brand)) {
+						return this.symbolRanks[id];
+					}
+				}
+			}
+
+			return -1;
+		}
+
+		/**
+		 * Converts a distance into an int that sorts in the same order. Unknown distances sort
+		 * last.
+		 *
+		 * @param distance The distance, or NaN if it isn't known
+		 * @return The key
+		 */
+		private static int toKey (final float distance) {
+			if (Float.isNaN (distance)) {
+				return MISSING;
+			}
+
+			final int bits = Float.floatToIntBits (distance);
+
+			// Positive floats already compare correctly as ints; negative ones compare backwards.
+			return bits >= 0 ? bits : bits ^ Integer.MAX_VALUE;
+		}
+	}
+}
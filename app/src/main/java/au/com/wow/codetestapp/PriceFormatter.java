@@ -0,0 +1,101 @@
+package au.com.wow.codetestapp;
+
+/**
+ * Formats prices held in cents as US Dollar strings, such as <code>$4.07</code>.
+ * <p>
+ * This gives the same result as <code>NumberFormat.getCurrencyInstance(Locale.US)</code>, but
+ * works on the whole number of cents directly rather than going through a <code>double</code>,
+ * and remembers what it's formatted. Fuel prices fall in a narrow range, so after the first few
+ * rows nearly every call is an array lookup.
+ * </p>
+ * <p>
+ * It's safe to use from any thread. Two threads formatting the same uncached price at once may
+ * both build the string, but they build identical strings, so it doesn't matter which one wins.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 03/04/2015
+ */
+public final class PriceFormatter {
+
+	/**
+	 * Prices from zero up to (but not including) this many cents are cached.
+	 */
+	private static final int CACHE_SIZE = 10000;
+
+	/**
+	 * The formatted prices, indexed by cents. Entries are filled in as they're first needed.
+	 */
+	private static final String[] CACHE = new String[CACHE_SIZE];
+
+	/**
+	 * The maximum number of characters a formatted price can take up.
+	 */
+	private static final int MAX_LENGTH = 32;
+
+	/**
+	 * Constructor. This class only has static methods, so it can't be created.
+	 */
+	private PriceFormatter () {
+		super ();
+	}
+
+	/**
+	 * Formats a price.
+	 *
+	 * @param cents The price in cents
+	 * @return The price as a Dollar string
+	 */
+	public static String format (final int cents) {
+		if (cents >= 0 && cents < CACHE_SIZE) {
+			String price = CACHE[cents];
+
+			if (price == null) {
+				price = build (cents);
+				CACHE[cents] = price;
+			}
+
+			return price;
+		}
+
+		return build (cents);
+	}
+
+	/**
+	 * Builds the string for a price, working back from the last digit.
+	 *
+	 * @param cents The price in cents
+	 * @return The price as a Dollar string
+	 */
+	private static String build (final int cents) {
+		final char[] text = new char[MAX_LENGTH];
+		long remaining = Math.abs ((long) cents);
+		int position = MAX_LENGTH;
+
+		text[--position] = (char) ('0' + remaining % 10);
+		remaining /= 10;
+		text[--position] = (char) ('0' + remaining % 10);
+		remaining /= 10;
+		text[--position] = '.';
+
+		int digits = 0;
+
+		do {
+			if (digits > 0 && digits % 3 == 0) {
+				text[--position] = ',';
+			}
+
+			text[--position] = (char) ('0' + remaining % 10);
+			remaining /= 10;
+			digits++;
+		} while (remaining > 0);
+
+		text[--position] = '$';
+
+		if (cents < 0) {
+			text[--position] = '-';
+		}
+
+		return new String (text, position, MAX_LENGTH - position);
+	}
+}
@@ -0,0 +1,198 @@
+package com.kizio.image;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A size bounded cache of files on disk. When the total size goes over the limit, the least
+ * recently used files are deleted until it fits again.
+ * <p>
+ * Use is tracked through the files' modification times, so the cache survives the process being
+ * killed without needing a journal.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 02/04/2015
+ */
+public class DiskLruCache {
+
+	/**
+	 * The suffix for files that are still being written.
+	 */
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * Orders files from least to most recently used.
+	 */
+	private static final Comparator<File> LEAST_RECENTLY_USED = new Comparator<File> () {
+
+		/**
+		 * Compares two files by modification time.
+		 *
+		 * @param lhs The first {@link File}
+		 * @param rhs The second {@link File}
+		 * @return A negative number if the first file was used less recently than the second
+		 */
+		@Override
+		public int compare (final File lhs, final File rhs) {
+			final long left = lhs.lastModified ();
+			final long right = rhs.lastModified ();
+
+			return left < right ? -1 : (left == right ? 0 : 1);
+		}
+	};
+
+	/**
+	 * The directory the files are stored in.
+	 */
+	private final File directory;
+
+	/**
+	 * The maximum total size of the files, in bytes.
+	 */
+	private final long maxBytes;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param cacheDirectory The directory to store the files in
+	 * @param maxSize The maximum total size of the files, in bytes
+	 */
+	public DiskLruCache (final File cacheDirectory, final long maxSize) {
+		super ();
+
+		this.directory = cacheDirectory;
+		this.maxBytes = maxSize;
+	}
+
+	/**
+	 * Gets the file stored against a key, marking it as recently used.
+	 *
+	 * @param key The key, such as a URL
+	 * @return The {@link File}, or null if nothing is stored against the key
+	 */
+	@SuppressWarnings ("all")
+	public File get (final String key) {
+		final File file = getFile (key);
+
+		if (file.isFile ()) {
+			file.setLastModified (System.currentTimeMillis ());
+			return file;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Stores the contents of a stream against a key, and then trims the cache back to size. The
+	 * stream is not closed.
+	 *
+	 * @param key The key, such as a URL
+	 * @param in The {@link InputStream} to copy
+	 * @return The {@link File} the contents were stored in
+	 * @throws IOException If there's an IO error
+	 */
+	@SuppressWarnings ("all")
+	public File put (final String key, final InputStream in) throws IOException {
+		final File file = getFile (key);
+		final File temp = new File (this.directory, file.getName () + TEMP_SUFFIX);
+
+		if (!this.directory.isDirectory () && !this.directory.mkdirs ()) {
+			throw new IOException ("Can't create " + this.directory);
+		}
+
+		final OutputStream out = new FileOutputStream (temp);
+		final byte[] buffer = new byte[8192];
+		int count;
+
+		try {
+			while ((count = in.read (buffer)) != -1) {
+				if (Thread.interrupted ()) {
+					throw new IOException ("Interrupted");
+				}
+
+				out.write (buffer, 0, count);
+			}
+		} catch (final IOException ioe) {
+			out.close ();
+			temp.delete ();
+			throw ioe;
+		}
+
+		out.close ();
+
+		if (!temp.renameTo (file)) {
+			temp.delete ();
+			throw new IOException ("Can't rename " + temp + " to " + file);
+		}
+
+		trim ();
+
+		return file;
+	}
+
+	/**
+	 * Deletes the least recently used files until the cache is within its size limit.
+	 */
+	@SuppressWarnings ("all")
+	public synchronized void trim () {
+		final File[] files = this.directory.listFiles ();
+
+		if (files == null) {
+			return;
+		}
+
+		long total = 0;
+
+		for (final File file : files) {
+			total += file.length ();
+		}
+
+		if (total > this.maxBytes) {
+			Arrays.sort (files, LEAST_RECENTLY_USED);
+
+			for (int i = 0; i < files.length && total > this.maxBytes; i++) {
+				// Leave files that are still being written alone.
+				if (!files[i].getName ().endsWith (TEMP_SUFFIX)) {
+					total -= files[i].length ();
+					files[i].delete ();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the file that a key is stored in.
+	 *
+	 * @param key The key
+	 * @return The {@link File} named after a hash of the key
+	 */
+	private File getFile (final String key) {
+		String name;
+
+		try {
+			final byte[] digest = MessageDigest.getInstance ("SHA-1").digest (key.getBytes ("UTF-8"));
+			final StringBuilder hex = new StringBuilder (digest.length * 2);
+
+			for (final byte b : digest) {
+				hex.append (Character.forDigit ((b >> 4) & 0xF, 16));
+				hex.append (Character.forDigit (b & 0xF, 16));
+			}
+
+			name = hex.toString ();
+		} catch (final NoSuchAlgorithmException nsae) {
+			name = Integer.toHexString (key.hashCode ());
+		} catch (final IOException ioe) {
+			name = Integer.toHexString (key.hashCode ());
+		}
+
+		return new File (this.directory, name);
+	}
+}
@@ -0,0 +1,472 @@
+package com.kizio.image;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads images from URLs into {@link ImageView}s in the background, for use in list rows.
+ * <p>
+ * Each loader produces bitmaps of a single target size, so its caches are keyed by URL alone.
+ * Decoded bitmaps are held in a memory LRU cache, and the downloaded files in a disk LRU cache.
+ * Images are downsampled to the target size as they're decoded, and bitmaps evicted from the memory
+ * cache are reused for later decodes where the platform allows.
+ * </p>
+ * <p>
+ * Requests for the same URL share a single download and decode, however many views are waiting on
+ * it. When a recycled view is bound to a different URL its old request is detached, and cancelled
+ * if nothing else is waiting on it.
+ * </p>
+ * <p>
+ * All of the public methods must be called on the main thread.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 02/04/2015
+ */
+public class ImageLoader {
+
+	/**
+	 * The number of images that can be loaded at once.
+	 */
+	private static final int THREADS = 3;
+
+	/**
+	 * The timeout for connecting to the server and for reading from it, in milliseconds.
+	 */
+	private static final int TIMEOUT = 15 * 1000;
+
+	/**
+	 * The maximum number of evicted bitmaps kept for reuse.
+	 */
+	private static final int MAX_REUSABLE = 4;
+
+	/**
+	 * The width to downsample the images to.
+	 */
+	private final int targetWidth;
+
+	/**
+	 * The height to downsample the images to.
+	 */
+	private final int targetHeight;
+
+	/**
+	 * The decoded bitmaps, keyed by URL.
+	 */
+	private final LruCache<String, Bitmap> memoryCache;
+
+	/**
+	 * The downloaded image files, keyed by URL.
+	 */
+	private final DiskLruCache diskCache;
+
+	/**
+	 * The bitmaps that have been evicted from the memory cache, and aren't displayed by any view.
+	 */
+	private final List<Bitmap> reusable = new ArrayList<Bitmap> ();
+
+	/**
+	 * The URL each view is currently bound to.
+	 */
+	private final Map<ImageView, String> bound = new WeakHashMap<ImageView, String> ();
+
+	/**
+	 * The requests that are still running, keyed by URL.
+	 */
+	private final Map<String, Request> inFlight = new HashMap<String, Request> ();
+
+	/**
+	 * The {@link ExecutorService} that the images are downloaded and decoded on.
+	 */
+	private final ExecutorService executor = Executors.newFixedThreadPool (THREADS);
+
+	/**
+	 * The {@link Handler} used to return the decoded images to the main thread.
+	 */
+	private final Handler handler = new Handler (Looper.getMainLooper ());
+
+	/**
+	 * Constructor.
+	 *
+	 * @param width The width to downsample the images to, in pixels
+	 * @param height The height to downsample the images to, in pixels
+	 * @param maxMemoryBytes The maximum size of the decoded bitmaps held in memory
+	 * @param diskDirectory The directory to store the downloaded files in
+	 * @param maxDiskBytes The maximum size of the downloaded files
+	 */
+	public ImageLoader (final int width, final int height, final int maxMemoryBytes,
+			final File diskDirectory, final long maxDiskBytes) {
+		super ();
+
+		this.targetWidth = width;
+		this.targetHeight = height;
+		this.diskCache = new DiskLruCache (diskDirectory, maxDiskBytes);
+		this.memoryCache = new LruCache<String, Bitmap> (maxMemoryBytes) {
+
+			/**
+			 * Measures a bitmap by the memory it uses.
+			 *
+			 * @param key The URL of the image
+			 * @param value The decoded {@link Bitmap}
+			 * @return The size of the bitmap in bytes
+			 */
+			@Override
+			protected int sizeOf (final String key, final Bitmap value) {
+				return value.getRowBytes () * value.getHeight ();
+			}
+
+			/**
+			 * Offers evicted bitmaps for reuse.
+			 *
+			 * @param evicted True if the entry was removed to make space
+			 * @param key The URL of the image
+			 * @param oldValue The {@link Bitmap} that was removed
+			 * @param newValue The replacement {@link Bitmap}, or null
+			 */
+			@Override
+			protected void entryRemoved (final boolean evicted, final String key,
+					final Bitmap oldValue, final Bitmap newValue) {
+				if (evicted) {
+					recycle (key, oldValue);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Binds an image to a view. The image is shown straight away if it's in memory; otherwise the
+	 * view is cleared, and the image is loaded in the background. Binding a view to the URL it's
+	 * already bound to does nothing.
+	 *
+	 * @param view The {@link ImageView} to display the image in
+	 * @param url The URL of the image, or null to clear the view
+	 */
+	public void bind (final ImageView view, final String url) {
+		final String previous = this.bound.get (view);
+
+		if (url != null && url.equals (previous)) {
+			return;
+		}
+
+		detach (view, previous);
+
+		if (url == null) {
+			this.bound.remove (view);
+			view.setImageDrawable (null);
+			return;
+		}
+
+		this.bound.put (view, url);
+
+		final Bitmap bitmap = this.memoryCache.get (url);
+
+		if (bitmap != null) {
+			view.setImageBitmap (bitmap);
+			return;
+		}
+
+		view.setImageDrawable (null);
+
+		Request request = this.inFlight.get (url);
+
+		if (request == null) {
+			request = new Request (url);
+			this.inFlight.put (url, request);
+			request.future = this.executor.submit (request);
+		}
+
+		request.views.add (view);
+	}
+
+	/**
+	 * Cancels all outstanding requests and stops the background threads. The loader can't be used
+	 * afterwards.
+	 */
+	public void shutdown () {
+		for (final Request request : this.inFlight.values ()) {
+			request.future.cancel (true);
+		}
+
+		this.inFlight.clear ();
+		this.bound.clear ();
+		this.executor.shutdownNow ();
+		this.memoryCache.evictAll ();
+		this.reusable.clear ();
+	}
+
+	/**
+	 * Detaches a view from the request it's waiting on, cancelling the request if no other views
+	 * are waiting on it.
+	 *
+	 * @param view The {@link ImageView} being rebound
+	 * @param url The URL it was bound to, or null
+	 */
+	private void detach (final ImageView view, final String url) {
+		final Request request = url != null ? this.inFlight.get (url) : null;
+
+		if (request != null) {
+			request.views.remove (view);
+
+			if (request.views.isEmpty ()) {
+				request.future.cancel (true);
+				this.inFlight.remove (url);
+			}
+		}
+	}
+
+	/**
+	 * Keeps a bitmap evicted from the memory cache for reuse, as long as no view is still
+	 * displaying it.
+	 *
+	 * @param url The URL of the image
+	 * @param bitmap The evicted {@link Bitmap}
+	 */
+	private void recycle (final String url, final Bitmap bitmap) {
+		if (bitmap.isMutable () && !this.bound.containsValue (url)) {
+			synchronized (this.reusable) {
+				if (this.reusable.size () < MAX_REUSABLE) {
+					this.reusable.add (bitmap);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds an evicted bitmap that a decode can be written into.
+	 * <p>
+	 * Before KitKat the bitmap has to be exactly the size of the decoded image, and the image can't
+	 * be downsampled. From KitKat onwards any bitmap with enough memory will do.
+	 * </p>
+	 *
+	 * @param options The {@link BitmapFactory.Options} for the decode, with the source size set
+	 * @return A {@link Bitmap} to reuse, or null if there isn't a suitable one
+	 */
+	@TargetApi (Build.VERSION_CODES.KITKAT)
+	private Bitmap takeReusable (final BitmapFactory.Options options) {
+		final int width = options.outWidth / options.inSampleSize;
+		final int height = options.outHeight / options.inSampleSize;
+
+		synchronized (this.reusable) {
+			final Iterator<Bitmap> iterator = this.reusable.iterator ();
+
+			while (iterator.hasNext ()) {
+				final Bitmap candidate = iterator.next ();
+				final boolean fits;
+
+				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+					fits = candidate.getAllocationByteCount () >= width * height * 4;
+				} else {
+					fits = options.inSampleSize == 1 && candidate.getWidth () == width
+							&& candidate.getHeight () == height;
+				}
+
+				if (fits) {
+					iterator.remove ();
+					return candidate;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Works out the largest power of two the image can be downsampled by while still being at least
+	 * as big as the target size.
+	 *
+	 * @param width The width of the source image
+	 * @param height The height of the source image
+	 * @return The sample size
+	 */
+	private int getSampleSize (final int width, final int height) {
+		int sampleSize = 1;
+
+		while (width / (sampleSize * 2) >= this.targetWidth
+				&& height / (sampleSize * 2) >= this.targetHeight) {
+			sampleSize *= 2;
+		}
+
+		return sampleSize;
+	}
+
+	/**
+	 * Decodes an image file, downsampled to the target size.
+	 *
+	 * @param file The downloaded image
+	 * @return The decoded {@link Bitmap}, or null if the file isn't an image
+	 */
+	@TargetApi (Build.VERSION_CODES.HONEYCOMB)
+	private Bitmap decode (final File file) {
+		final BitmapFactory.Options options = new BitmapFactory.Options ();
+
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile (file.getPath (), options);
+
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			return null;
+		}
+
+		options.inJustDecodeBounds = false;
+		options.inSampleSize = getSampleSize (options.outWidth, options.outHeight);
+		options.inMutable = true;
+		options.inBitmap = takeReusable (options);
+
+		Bitmap bitmap;
+
+		try {
+			bitmap = BitmapFactory.decodeFile (file.getPath (), options);
+		} catch (final IllegalArgumentException iae) {
+			// The bitmap couldn't be reused after all, so decode into a new one.
+			options.inBitmap = null;
+			bitmap = BitmapFactory.decodeFile (file.getPath (), options);
+		}
+
+		return bitmap;
+	}
+
+	/**
+	 * Downloads an image into the disk cache.
+	 *
+	 * @param url The URL of the image
+	 * @return The downloaded {@link File}
+	 * @throws IOException If there's an IO error
+	 */
+	@SuppressWarnings ("all")
+	private File download (final String url) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) new URL (url).openConnection ();
+
+		connection.setConnectTimeout (TIMEOUT);
+		connection.setReadTimeout (TIMEOUT);
+
+		try {
+			final int code = connection.getResponseCode ();
+
+			if (code != HttpURLConnection.HTTP_OK) {
+				throw new IOException ("Unexpected response " + code + " from " + url);
+			}
+
+			final InputStream in = connection.getInputStream ();
+
+			try {
+				return this.diskCache.put (url, in);
+			} finally {
+				in.close ();
+			}
+		} finally {
+			connection.disconnect ();
+		}
+	}
+
+	/**
+	 * Loads a single image, for every view waiting on it.
+	 */
+	private final class Request implements Runnable {
+
+		/**
+		 * The URL of the image.
+		 */
+		private final String url;
+
+		/**
+		 * The views waiting on the image. Only touched on the main thread.
+		 */
+		private final List<ImageView> views = new ArrayList<ImageView> (1);
+
+		/**
+		 * The {@link Future} for the background work, used to cancel it.
+		 */
+		private Future<?> future;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param imageUrl The URL of the image
+		 */
+		Request (final String imageUrl) {
+			super ();
+
+			this.url = imageUrl;
+		}
+
+		/**
+		 * Downloads the image if it isn't on disk, decodes it, and hands it to the main thread.
+		 */
+		@Override
+		public void run () {
+			Bitmap bitmap = null;
+
+			try {
+				File file = ImageLoader.this.diskCache.get (this.url);
+
+				if (file == null) {
+					file = download (this.url);
+				}
+
+				if (!Thread.currentThread ().isInterrupted ()) {
+					bitmap = decode (file);
+				}
+			} catch (final IOException ioe) {
+				Log.w (ImageLoader.class.getName (), "Failed to load " + this.url, ioe);
+			}
+
+			final Bitmap result = bitmap;
+
+			ImageLoader.this.handler.post (new Runnable () {
+
+				/**
+				 * Displays the image in every view still bound to it.
+				 */
+				@Override
+				public void run () {
+					deliver (result);
+				}
+			});
+		}
+
+		/**
+		 * Displays the image in the waiting views, on the main thread.
+		 *
+		 * @param bitmap The decoded {@link Bitmap}, or null if it couldn't be loaded
+		 */
+		private void deliver (final Bitmap bitmap) {
+			// A cancelled request may have been replaced by a new one for the same URL.
+			if (ImageLoader.this.inFlight.get (this.url) == this) {
+				ImageLoader.this.inFlight.remove (this.url);
+			}
+
+			if (bitmap == null || this.future.isCancelled ()) {
+				return;
+			}
+
+			ImageLoader.this.memoryCache.put (this.url, bitmap);
+
+			for (final ImageView view : this.views) {
+				if (this.url.equals (ImageLoader.this.bound.get (view))) {
+					view.setImageBitmap (bitmap);
+				}
+			}
+		}
+	}
+}
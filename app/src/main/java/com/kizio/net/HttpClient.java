@@ -0,0 +1,491 @@
+package com.kizio.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Makes HTTP GET requests, with compression, connection reuse, timeouts and retries.
+ * <p>
+ * Responses are requested compressed, and decompressed here rather than by the platform, so the
+ * number of bytes that actually came over the network can be counted alongside the number that
+ * were decoded. Connections are never disconnected: a response's body is read to the end and
+ * closed, which hands the connection back to the platform's pool for the next request to the same
+ * server, saving a TCP (and possibly TLS) handshake per refresh.
+ * </p>
+ * <p>
+ * Requests that fail to connect, time out, or get a <code>5xx</code> response are retried a
+ * limited number of times, waiting twice as long before each attempt. Only GET requests are made,
+ * so a retry can't do anything twice.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 07/04/2015
+ */
+public class HttpClient {
+
+	/**
+	 * The default timeout for connecting to a server, in milliseconds.
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 15 * 1000;
+
+	/**
+	 * The default timeout for reading from a server, in milliseconds.
+	 */
+	public static final int DEFAULT_READ_TIMEOUT = 20 * 1000;
+
+	/**
+	 * The default number of attempts made at a request.
+	 */
+	public static final int DEFAULT_ATTEMPTS = 3;
+
+	/**
+	 * The default wait before the first retry, in milliseconds.
+	 */
+	public static final long DEFAULT_BACKOFF = 500;
+
+	/**
+	 * The most that's read from the remains of a body to free up its connection, in bytes. A
+	 * connection with more left than this is cheaper to throw away.
+	 */
+	private static final int MAX_DRAIN = 64 * 1024;
+
+	/**
+	 * The timeout for connecting to a server, in milliseconds.
+	 */
+	private final int connectTimeout;
+
+	/**
+	 * The timeout for reading from a server, in milliseconds.
+	 */
+	private final int readTimeout;
+
+	/**
+	 * The number of attempts made at a request.
+	 */
+	private final int attempts;
+
+	/**
+	 * The wait before the first retry, in milliseconds.
+	 */
+	private final long backoff;
+
+	/**
+	 * The total number of body bytes received over the network.
+	 */
+	private final AtomicLong wireBytes = new AtomicLong ();
+
+	/**
+	 * The total number of body bytes after decompression.
+	 */
+	private final AtomicLong decodedBytes = new AtomicLong ();
+
+	/**
+	 * Constructor, using the default timeouts and retries.
+	 */
+	public HttpClient () {
+		this (DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DEFAULT_ATTEMPTS, DEFAULT_BACKOFF);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param connectTimeoutMillis The timeout for connecting to a server, in milliseconds
+	 * @param readTimeoutMillis The timeout for reading from a server, in milliseconds
+	 * @param maxAttempts The number of attempts to make at a request, including the first
+	 * @param backoffMillis The wait before the first retry, in milliseconds
+	 */
+	public HttpClient (final int connectTimeoutMillis, final int readTimeoutMillis,
+			final int maxAttempts, final long backoffMillis) {
+		super ();
+
+		this.connectTimeout = connectTimeoutMillis;
+		this.readTimeout = readTimeoutMillis;
+		this.attempts = Math.max (maxAttempts, 1);
+		this.backoff = backoffMillis;
+	}
+
+	/**
+	 * Makes a GET request, retrying it if necessary. The caller must close the {@link Response}.
+	 *
+	 * @param url The URL to request
+	 * @param headers Additional request headers, or null
+	 * @return The {@link Response}. This may be a <code>4xx</code> or <code>5xx</code> response if
+	 *         the retries ran out
+	 * @throws IOException If the last attempt couldn't connect
+	 */
+	public Response get (final String url, final Map<String, String> headers) throws IOException {
+		long wait = this.backoff;
+
+		for (int attempt = 1; ; attempt++) {
+			final boolean isLast = attempt >= this.attempts;
+
+			try {
+				final Response response = execute (url, headers);
+
+				if (response.getCode () < HttpURLConnection.HTTP_INTERNAL_ERROR || isLast) {
+					return response;
+				}
+
+				response.close ();
+			} catch (final IOException ioe) {
+				if (isLast || Thread.currentThread ().isInterrupted ()) {
+					throw ioe;
+				}
+			}
+
+			try {
+				Thread.sleep (wait);
+			} catch (final InterruptedException ie) {
+				Thread.currentThread ().interrupt ();
+				throw new InterruptedIOException ("Interrupted while retrying " + url);
+			}
+
+			wait *= 2;
+		}
+	}
+
+	/**
+	 * Gets the total number of body bytes received over the network, across every request.
+	 *
+	 * @return The number of bytes received
+	 */
+	public long getWireBytes () {
+		return this.wireBytes.get ();
+	}
+
+	/**
+	 * Gets the total number of body bytes after decompression, across every request.
+	 *
+	 * @return The number of bytes decoded
+	 */
+	public long getDecodedBytes () {
+		return this.decodedBytes.get ();
+	}
+
+	/**
+	 * Makes a single attempt at a request.
+	 *
+	 * @param url The URL to request
+	 * @param headers Additional request headers, or null
+	 * @return The {@link Response}
+	 * @throws IOException If the request fails
+	 */
+	private Response execute (final String url, final Map<String, String> headers)
+			throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) new URL (url).openConnection ();
+
+		connection.setConnectTimeout (this.connectTimeout);
+		connection.setReadTimeout (this.readTimeout);
+
+		// Asking for an encoding turns off the platform's own transparent gzip, which hides the
+		// size on the wire.
+		connection.setRequestProperty ("Accept-Encoding", "gzip, deflate");
+
+		if (headers != null) {
+			for (final Map.Entry<String, String> header : headers.entrySet ()) {
+				connection.setRequestProperty (header.getKey (), header.getValue ());
+			}
+		}
+
+		try {
+			return new Response (connection, connection.getResponseCode ());
+		} catch (final IOException ioe) {
+			// The connection is in an unknown state, so it mustn't go back into the pool.
+			connection.disconnect ();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * A response from the server. Closing it makes the connection available for reuse.
+	 */
+	public final class Response implements Closeable {
+
+		/**
+		 * The connection the response came over.
+		 */
+		private final HttpURLConnection connection;
+
+		/**
+		 * The status code.
+		 */
+		private final int code;
+
+		/**
+		 * Counts the body bytes as they come off the network.
+		 */
+		private CountingInputStream wire;
+
+		/**
+		 * Counts the body bytes after decompression.
+		 */
+		private CountingInputStream body;
+
+		/**
+		 * True once the response has been closed.
+		 */
+		private boolean closed;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param httpConnection The connection the response came over
+		 * @param statusCode The status code
+		 */
+		Response (final HttpURLConnection httpConnection, final int statusCode) {
+			super ();
+
+			this.connection = httpConnection;
+			this.code = statusCode;
+		}
+
+		/**
+		 * Gets the status code, such as <code>200</code>.
+		 *
+		 * @return The status code
+		 */
+		public int getCode () {
+			return this.code;
+		}
+
+		/**
+		 * Gets the value of a response header.
+		 *
+		 * @param name The name of the header
+		 * @return The value, or null if it wasn't sent
+		 */
+		public String getHeader (final String name) {
+			return this.connection.getHeaderField (name);
+		}
+
+		/**
+		 * Gets the <code>Content-Type</code> of the body.
+		 *
+		 * @return The content type, or null if it wasn't sent
+		 */
+		public String getContentType () {
+			return this.connection.getContentType ();
+		}
+
+		/**
+		 * Gets the length of the decoded body.
+		 *
+		 * @return The length in bytes, or -1 if it isn't known, such as when the body is compressed
+		 */
+		public int getContentLength () {
+			return getContentEncoding () == null ? this.connection.getContentLength () : -1;
+		}
+
+		/**
+		 * Gets the decoded body. It's decompressed if the server compressed it.
+		 *
+		 * @return An {@link InputStream} for the body
+		 * @throws IOException If the body can't be read
+		 */
+		public InputStream getBody () throws IOException {
+			if (this.body == null) {
+				final String encoding = getContentEncoding ();
+				final InputStream raw = getWire ();
+				InputStream decoded;
+
+				if ("gzip".equals (encoding)) {
+					decoded = new GZIPInputStream (raw);
+				} else if ("deflate".equals (encoding)) {
+					decoded = new InflaterInputStream (raw);
+				} else {
+					decoded = raw;
+				}
+
+				this.body = new CountingInputStream (decoded);
+			}
+
+			return this.body;
+		}
+
+		/**
+		 * Gets the body as it came over the network, before it's decompressed.
+		 *
+		 * @return The {@link CountingInputStream} for the raw body
+		 * @throws IOException If the body can't be read
+		 */
+		private CountingInputStream getWire () throws IOException {
+			if (this.wire == null) {
+				final InputStream raw = this.code < HttpURLConnection.HTTP_BAD_REQUEST
+						? this.connection.getInputStream () : this.connection.getErrorStream ();
+
+				// There's no error stream if the server didn't send a body with the error.
+				this.wire = new CountingInputStream (raw != null ? raw : new ByteArrayInputStream
+						(new byte[0]));
+			}
+
+			return this.wire;
+		}
+
+		/**
+		 * Gets the number of body bytes received over the network so far.
+		 *
+		 * @return The number of bytes received
+		 */
+		public long getWireBytes () {
+			return this.wire != null ? this.wire.count : 0;
+		}
+
+		/**
+		 * Gets the number of body bytes decoded so far.
+		 *
+		 * @return The number of bytes decoded
+		 */
+		public long getDecodedBytes () {
+			return this.body != null ? this.body.count : 0;
+		}
+
+		/**
+		 * Finishes with the response. Whatever is left of the body is read, so the connection can
+		 * be reused, and the byte counts are added to the client's totals.
+		 * <p>
+		 * If the body was never asked for, as with a <code>304 Not Modified</code>, the raw stream
+		 * is drained without being decompressed. A response with no body can still name a
+		 * <code>Content-Encoding</code>, and a {@link GZIPInputStream} fails on an empty stream.
+		 * </p>
+		 *
+		 * @throws IOException If the body can't be closed
+		 */
+		@Override
+		public void close () throws IOException {
+			if (this.closed) {
+				return;
+			}
+
+			this.closed = true;
+			drain (getWire ());
+
+			if (this.body != null) {
+				this.body.close ();
+				HttpClient.this.decodedBytes.addAndGet (this.body.count);
+			} else {
+				this.wire.close ();
+			}
+
+			HttpClient.this.wireBytes.addAndGet (this.wire.count);
+		}
+
+		/**
+		 * Gets the encoding the body was compressed with.
+		 *
+		 * @return The encoding, in lower case, or null if the body isn't compressed
+		 */
+		private String getContentEncoding () {
+			final String encoding = this.connection.getContentEncoding ();
+
+			if (encoding == null || "identity".equalsIgnoreCase (encoding.trim ())) {
+				return null;
+			}
+
+			return encoding.trim ().toLowerCase (Locale.US);
+		}
+
+		/**
+		 * Reads and discards what's left of the body, up to a limit.
+		 *
+		 * @param in The {@link InputStream} for the raw body
+		 */
+		private void drain (final InputStream in) {
+			final byte[] buffer = new byte[4096];
+			int total = 0;
+			int count;
+
+			try {
+				while (total < MAX_DRAIN && (count = in.read (buffer)) != -1) {
+					total += count;
+				}
+			} catch (final IOException ioe) {
+				// The connection won't be reused, but the response has been handled.
+			}
+		}
+	}
+
+	/**
+	 * An {@link InputStream} that counts the bytes read through it.
+	 */
+	private static final class CountingInputStream extends FilterInputStream {
+
+		/**
+		 * The number of bytes read so far.
+		 */
+		private long count;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param in The {@link InputStream} to count
+		 */
+		CountingInputStream (final InputStream in) {
+			super (in);
+		}
+
+		/**
+		 * Reads a byte.
+		 *
+		 * @return The byte, or -1 at the end of the stream
+		 * @throws IOException If there's an IO error
+		 */
+		@Override
+		public int read () throws IOException {
+			final int b = super.read ();
+
+			if (b >= 0) {
+				this.count++;
+			}
+
+			return b;
+		}
+
+		/**
+		 * Reads bytes into an array.
+		 *
+		 * @param buffer The array to read into
+		 * @param offset The position in the array to start at
+		 * @param length The most bytes to read
+		 * @return The number of bytes read, or -1 at the end of the stream
+		 * @throws IOException If there's an IO error
+		 */
+		@Override
+		public int read (final byte[] buffer, final int offset, final int length)
+				throws IOException {
+			final int read = super.read (buffer, offset, length);
+
+			if (read > 0) {
+				this.count += read;
+			}
+
+			return read;
+		}
+
+		/**
+		 * Skips bytes, counting them as read.
+		 *
+		 * @param n The number of bytes to skip
+		 * @return The number of bytes skipped
+		 * @throws IOException If there's an IO error
+		 */
+		@Override
+		public long skip (final long n) throws IOException {
+			final long skipped = super.skip (n);
+
+			this.count += skipped;
+
+			return skipped;
+		}
+	}
+}
@@ -0,0 +1,814 @@
+package com.kizio.reader;
+
+import org.json.JSONException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Pull-style JSON reader that walks a document one token at a time.
+ * <p>
+ * Unlike {@link JSONReader}, this never holds more of the document than its internal buffer, so
+ * large documents can be decoded as they arrive rather than after the last byte has been read. The
+ * caller drives the parse with {@link #peek()}, and the <code>begin</code>, <code>end</code> and
+ * <code>next</code> methods, in much the same way as the XML pull parser.
+ * </p>
+ * <p>
+ * If the whole document has already been read, such as by {@link StringReader#readChars()}, it
+ * can be parsed in place from its buffer instead, without being copied into this reader's.
+ * </p>
+ * <p>
+ * Values are not coerced behind the caller's back: a field that is sometimes a number and sometimes
+ * <code>false</code> shows up as {@link Token#NUMBER} or {@link Token#BOOLEAN}, and the caller can
+ * decide what to do with each.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 30/03/2015
+ */
+public class JSONStreamReader implements Closeable {
+
+	/**
+	 * The kinds of token that can be returned by {@link #peek()}.
+	 */
+	public enum Token {
+		/** The start of an object. */
+		BEGIN_OBJECT,
+		/** The end of an object. */
+		END_OBJECT,
+		/** The start of an array. */
+		BEGIN_ARRAY,
+		/** The end of an array. */
+		END_ARRAY,
+		/** The name of an object member. */
+		NAME,
+		/** A quoted string value. */
+		STRING,
+		/** A numeric value. */
+		NUMBER,
+		/** Either <code>true</code> or <code>false</code>. */
+		BOOLEAN,
+		/** A <code>null</code> literal. */
+		NULL,
+		/** The end of the input. */
+		END_DOCUMENT
+	}
+
+	/**
+	 * Scope for an array that has not had any values read yet.
+	 */
+	private static final int EMPTY_ARRAY = 1;
+
+	/**
+	 * Scope for an array that has had at least one value read.
+	 */
+	private static final int NONEMPTY_ARRAY = 2;
+
+	/**
+	 * Scope for an object that has not had any members read yet.
+	 */
+	private static final int EMPTY_OBJECT = 3;
+
+	/**
+	 * Scope for an object whose last member name has been read, but not its value.
+	 */
+	private static final int DANGLING_NAME = 4;
+
+	/**
+	 * Scope for an object that has had at least one member read.
+	 */
+	private static final int NONEMPTY_OBJECT = 5;
+
+	/**
+	 * Scope for a document whose top level value hasn't been read.
+	 */
+	private static final int EMPTY_DOCUMENT = 6;
+
+	/**
+	 * Scope for a document whose top level value has been read.
+	 */
+	private static final int NONEMPTY_DOCUMENT = 7;
+
+	/**
+	 * Scope for the elements of an array without its brackets, none of which have been read yet.
+	 */
+	private static final int EMPTY_ELEMENTS = 8;
+
+	/**
+	 * Scope for the elements of an array without its brackets, at least one of which has been
+	 * read.
+	 */
+	private static final int NONEMPTY_ELEMENTS = 9;
+
+	/**
+	 * The default size of the read buffer.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The {@link Reader} supplying the characters, or null if the whole document is in the buffer.
+	 */
+	private final Reader input;
+
+	/**
+	 * The characters read from the input but not yet consumed.
+	 */
+	private final char[] buffer;
+
+	/**
+	 * Scratch space for strings that span buffer refills, or contain escapes.
+	 */
+	private final StringBuilder builder = new StringBuilder ();
+
+	/**
+	 * The position of the next character to be read from the buffer.
+	 */
+	private int position;
+
+	/**
+	 * The number of valid characters in the buffer.
+	 */
+	private int limit;
+
+	/**
+	 * The nesting scopes of the document, innermost last.
+	 */
+	private int[] stack = new int[32];
+
+	/**
+	 * The number of entries in use on the scope stack.
+	 */
+	private int stackSize;
+
+	/**
+	 * The token found by the last call to {@link #peek()}, or null if it has been consumed.
+	 */
+	private Token peeked;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in The {@link Reader} containing the JSON to parse
+	 */
+	public JSONStreamReader (final Reader in) {
+		super ();
+
+		this.input = in;
+		this.buffer = new char[BUFFER_SIZE];
+		this.stack[this.stackSize++] = EMPTY_DOCUMENT;
+	}
+
+	/**
+	 * Constructor for a document that has already been read. The characters are parsed where they
+	 * are, so the buffer's backing array mustn't be changed until the parse has finished.
+	 *
+	 * @param document A {@link CharBuffer} backed by an array, containing the whole document from
+	 *                 its position to its limit
+	 */
+	public JSONStreamReader (final CharBuffer document) {
+		super ();
+
+		this.input = null;
+		this.buffer = document.array ();
+		this.position = document.arrayOffset () + document.position ();
+		this.limit = document.arrayOffset () + document.limit ();
+		this.stack[this.stackSize++] = EMPTY_DOCUMENT;
+	}
+
+	/**
+	 * Gets the type of the next token without consuming it.
+	 *
+	 * @return The next {@link Token}
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the input isn't valid JSON
+	 */
+	public Token peek () throws IOException, JSONException {
+		if (this.peeked == null) {
+			this.peeked = doPeek ();
+		}
+
+		return this.peeked;
+	}
+
+	/**
+	 * Consumes the start of an object.
+	 *
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the next token isn't the start of an object
+	 */
+	public void beginObject () throws IOException, JSONException {
+		expect (Token.BEGIN_OBJECT);
+		push (EMPTY_OBJECT);
+	}
+
+	/**
+	 * Consumes the end of an object.
+	 *
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the next token isn't the end of an object
+	 */
+	public void endObject () throws IOException, JSONException {
+		expect (Token.END_OBJECT);
+		this.stackSize--;
+	}
+
+	/**
+	 * Consumes the start of an array.
+	 *
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the next token isn't the start of an array
+	 */
+	public void beginArray () throws IOException, JSONException {
+		expect (Token.BEGIN_ARRAY);
+		push (EMPTY_ARRAY);
+	}
+
+	/**
+	 * Starts reading the input as the elements of an array whose brackets aren't there, such as a
+	 * run of values cut out of a bigger array. It's read as if it were an array, and the end of the
+	 * input is reported as {@link Token#END_ARRAY}, so it's finished with {@link #endArray()}.
+	 *
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If anything has been read already
+	 */
+	public void beginElements () throws IOException, JSONException {
+		if (this.peeked != null || this.stackSize != 1 || this.stack[0] != EMPTY_DOCUMENT) {
+			throw new JSONException ("Elements can only be read from the start of the input");
+		}
+
+		this.stack[0] = NONEMPTY_DOCUMENT;
+		push (EMPTY_ELEMENTS);
+	}
+
+	/**
+	 * Consumes the end of an array.
+	 *
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the next token isn't the end of an array
+	 */
+	public void endArray () throws IOException, JSONException {
+		expect (Token.END_ARRAY);
+		this.stackSize--;
+	}
+
+	/**
+	 * Checks whether the current array or object has any more elements.
+	 *
+	 * @return True if there's another element, false otherwise
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the input isn't valid JSON
+	 */
+	public boolean hasNext () throws IOException, JSONException {
+		final Token token = peek ();
+
+		return token != Token.END_OBJECT && token != Token.END_ARRAY
+				&& token != Token.END_DOCUMENT;
+	}
+
+	/**
+	 * Consumes the name of the next object member.
+	 *
+	 * @return The member's name
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the next token isn't a name
+	 */
+	public String nextName () throws IOException, JSONException {
+		expect (Token.NAME);
+
+		return readQuoted ();
+	}
+
+	/**
+	 * Consumes the next value as a {@link String}. Numbers are returned exactly as they appear in
+	 * the input.
+	 *
+	 * @return The value as a {@link String}
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the next token isn't a string or a number
+	 */
+	public String nextString () throws IOException, JSONException {
+		final Token token = peek ();
+		final String result;
+
+		if (token == Token.STRING) {
+			this.peeked = null;
+			result = readQuoted ();
+		} else if (token == Token.NUMBER) {
+			this.peeked = null;
+			result = readLiteral ();
+		} else {
+			throw unexpected (Token.STRING, token);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Consumes the next value as a <code>double</code>. Strings that contain a number are
+	 * converted, as some feeds quote their numbers.
+	 *
+	 * @return The value as a <code>double</code>
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the next token can't be read as a number
+	 */
+	public double nextDouble () throws IOException, JSONException {
+		final String text = nextString ();
+
+		try {
+			return Double.parseDouble (text);
+		} catch (final NumberFormatException nfe) {
+			throw new JSONException ("Expected a number but was \"" + text + '"');
+		}
+	}
+
+	/**
+	 * Consumes the next value as a <code>boolean</code>.
+	 *
+	 * @return The value as a <code>boolean</code>
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the next token isn't a boolean
+	 */
+	public boolean nextBoolean () throws IOException, JSONException {
+		expect (Token.BOOLEAN);
+
+		final String literal = readLiteral ();
+		final boolean result;
+
+		if ("true".equals (literal)) {
+			result = true;
+		} else if ("false".equals (literal)) {
+			result = false;
+		} else {
+			throw new JSONException ("Expected a boolean but was " + literal);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Consumes a <code>null</code> literal.
+	 *
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the next token isn't <code>null</code>
+	 */
+	public void nextNull () throws IOException, JSONException {
+		expect (Token.NULL);
+
+		final String literal = readLiteral ();
+
+		if (!"null".equals (literal)) {
+			throw new JSONException ("Expected null but was " + literal);
+		}
+	}
+
+	/**
+	 * Skips the next value, including any nested arrays and objects.
+	 *
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the input isn't valid JSON
+	 */
+	public void skipValue () throws IOException, JSONException {
+		int depth = 0;
+
+		do {
+			final Token token = peek ();
+
+			if (token == Token.BEGIN_ARRAY) {
+				beginArray ();
+				depth++;
+			} else if (token == Token.BEGIN_OBJECT) {
+				beginObject ();
+				depth++;
+			} else if (token == Token.END_ARRAY) {
+				endArray ();
+				depth--;
+			} else if (token == Token.END_OBJECT) {
+				endObject ();
+				depth--;
+			} else if (token == Token.NAME || token == Token.STRING) {
+				this.peeked = null;
+				skipQuoted ();
+			} else if (token == Token.END_DOCUMENT) {
+				throw new JSONException ("Unexpected end of document");
+			} else {
+				this.peeked = null;
+				skipLiteral ();
+			}
+		} while (depth > 0);
+	}
+
+	/**
+	 * Closes the underlying {@link Reader}.
+	 *
+	 * @throws IOException If there's an IO error
+	 */
+	@Override
+	public void close () throws IOException {
+		this.peeked = null;
+		this.stackSize = 0;
+
+		if (this.input != null) {
+			this.input.close ();
+		}
+	}
+
+	/**
+	 * Works out what the next token is, consuming any separators and structural characters that
+	 * precede it.
+	 *
+	 * @return The next {@link Token}
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the input isn't valid JSON
+	 */
+	private Token doPeek () throws IOException, JSONException {
+		final int scope = this.stack[this.stackSize - 1];
+		int c;
+
+		if (scope == EMPTY_ARRAY) {
+			this.stack[this.stackSize - 1] = NONEMPTY_ARRAY;
+
+			if (nextNonWhitespace () == ']') {
+				return Token.END_ARRAY;
+			}
+
+			this.position--;
+		} else if (scope == NONEMPTY_ARRAY) {
+			c = nextNonWhitespace ();
+
+			if (c == ']') {
+				return Token.END_ARRAY;
+			} else if (c != ',') {
+				throw syntaxError ("Unterminated array");
+			}
+		} else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+			this.stack[this.stackSize - 1] = DANGLING_NAME;
+
+			if (scope == NONEMPTY_OBJECT) {
+				c = nextNonWhitespace ();
+
+				if (c == '}') {
+					return Token.END_OBJECT;
+				} else if (c != ',') {
+					throw syntaxError ("Unterminated object");
+				}
+			}
+
+			c = nextNonWhitespace ();
+
+			if (c == '}' && scope == EMPTY_OBJECT) {
+				return Token.END_OBJECT;
+			} else if (c != '"') {
+				throw syntaxError ("Expected a quoted name");
+			}
+
+			return Token.NAME;
+		} else if (scope == DANGLING_NAME) {
+			this.stack[this.stackSize - 1] = NONEMPTY_OBJECT;
+
+			if (nextNonWhitespace () != ':') {
+				throw syntaxError ("Expected ':'");
+			}
+		} else if (scope == EMPTY_ELEMENTS || scope == NONEMPTY_ELEMENTS) {
+			// There's no closing bracket, so the array ends with the input.
+			if (!skipWhitespace ()) {
+				return Token.END_ARRAY;
+			}
+
+			this.stack[this.stackSize - 1] = NONEMPTY_ELEMENTS;
+
+			if (scope == NONEMPTY_ELEMENTS && this.buffer[this.position++] != ',') {
+				throw syntaxError ("Unterminated array");
+			}
+		} else if (scope == EMPTY_DOCUMENT) {
+			this.stack[this.stackSize - 1] = NONEMPTY_DOCUMENT;
+		} else if (scope == NONEMPTY_DOCUMENT) {
+			if (skipWhitespace ()) {
+				throw syntaxError ("Expected the end of the document");
+			}
+
+			return Token.END_DOCUMENT;
+		} else {
+			throw new IllegalStateException ("Reader is closed");
+		}
+
+		c = nextNonWhitespace ();
+
+		switch (c) {
+			case '{':
+				return Token.BEGIN_OBJECT;
+			case '[':
+				return Token.BEGIN_ARRAY;
+			case '"':
+				return Token.STRING;
+			case 't':
+			case 'f':
+				this.position--;
+				return Token.BOOLEAN;
+			case 'n':
+				this.position--;
+				return Token.NULL;
+			default:
+				if (c == '-' || (c >= '0' && c <= '9')) {
+					this.position--;
+					return Token.NUMBER;
+				}
+
+				throw syntaxError ("Unexpected character '" + (char) c + "'");
+		}
+	}
+
+	/**
+	 * Consumes the peeked token, checking that it's of the expected type.
+	 *
+	 * @param expected The {@link Token} the caller expects
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the next token is of a different type
+	 */
+	private void expect (final Token expected) throws IOException, JSONException {
+		final Token token = peek ();
+
+		if (token != expected) {
+			throw unexpected (expected, token);
+		}
+
+		this.peeked = null;
+	}
+
+	/**
+	 * Pushes a new scope onto the stack, growing it if necessary.
+	 *
+	 * @param scope The scope to push
+	 */
+	private void push (final int scope) {
+		if (this.stackSize == this.stack.length) {
+			final int[] grown = new int[this.stackSize * 2];
+
+			System.arraycopy (this.stack, 0, grown, 0, this.stackSize);
+			this.stack = grown;
+		}
+
+		this.stack[this.stackSize++] = scope;
+	}
+
+	/**
+	 * Refills the buffer if all of its contents have been consumed.
+	 *
+	 * @return True if there's at least one character available, false at the end of the input
+	 * @throws IOException If there's an IO error
+	 */
+	private boolean fill () throws IOException {
+		if (this.position < this.limit) {
+			return true;
+		} else if (this.input == null) {
+			return false;
+		}
+
+		int count;
+
+		// A reader is allowed to return zero characters, so keep going until it doesn't.
+		do {
+			count = this.input.read (this.buffer, 0, this.buffer.length);
+		} while (count == 0);
+
+		this.position = 0;
+		this.limit = Math.max (count, 0);
+
+		return count > 0;
+	}
+
+	/**
+	 * Skips any whitespace.
+	 *
+	 * @return True if there's a non-whitespace character waiting, false at the end of the input
+	 * @throws IOException If there's an IO error
+	 */
+	private boolean skipWhitespace () throws IOException {
+		while (fill ()) {
+			final char c = this.buffer[this.position];
+
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return true;
+			}
+
+			this.position++;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Consumes and returns the next non-whitespace character.
+	 *
+	 * @return The next non-whitespace character
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the end of the input is reached
+	 */
+	private int nextNonWhitespace () throws IOException, JSONException {
+		if (!skipWhitespace ()) {
+			throw syntaxError ("Unexpected end of input");
+		}
+
+		return this.buffer[this.position++];
+	}
+
+	/**
+	 * Reads a quoted string whose opening quote has already been consumed.
+	 *
+	 * @return The unescaped contents of the string
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the string is unterminated or badly escaped
+	 */
+	private String readQuoted () throws IOException, JSONException {
+		// Fast path: the whole string is already in the buffer, and has no escapes.
+		for (int i = this.position; i < this.limit; i++) {
+			final char c = this.buffer[i];
+
+			if (c == '"') {
+				final String result = new String (this.buffer, this.position, i - this.position);
+
+				this.position = i + 1;
+				return result;
+			} else if (c == '\\') {
+				break;
+			}
+		}
+
+		final StringBuilder text = this.builder;
+
+		text.setLength (0);
+
+		while (fill ()) {
+			final char c = this.buffer[this.position++];
+
+			if (c == '"') {
+				return text.toString ();
+			} else if (c == '\\') {
+				text.append (readEscape ());
+			} else {
+				text.append (c);
+			}
+		}
+
+		throw syntaxError ("Unterminated string");
+	}
+
+	/**
+	 * Skips a quoted string whose opening quote has already been consumed.
+	 *
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the string is unterminated
+	 */
+	private void skipQuoted () throws IOException, JSONException {
+		while (fill ()) {
+			final char c = this.buffer[this.position++];
+
+			if (c == '"') {
+				return;
+			} else if (c == '\\') {
+				readEscape ();
+			}
+		}
+
+		throw syntaxError ("Unterminated string");
+	}
+
+	/**
+	 * Reads the character represented by an escape sequence, whose backslash has already been
+	 * consumed.
+	 *
+	 * @return The escaped character
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the escape sequence is invalid
+	 */
+	private char readEscape () throws IOException, JSONException {
+		if (!fill ()) {
+			throw syntaxError ("Unterminated escape sequence");
+		}
+
+		final char c = this.buffer[this.position++];
+
+		switch (c) {
+			case 'b':
+				return '\b';
+			case 'f':
+				return '\f';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 't':
+				return '\t';
+			case 'u':
+				int value = 0;
+
+				for (int i = 0; i < 4; i++) {
+					if (!fill ()) {
+						throw syntaxError ("Unterminated escape sequence");
+					}
+
+					final int digit = Character.digit (this.buffer[this.position++], 16);
+
+					if (digit < 0) {
+						throw syntaxError ("Invalid unicode escape");
+					}
+
+					value = (value << 4) | digit;
+				}
+
+				return (char) value;
+			case '"':
+			case '\\':
+			case '/':
+				return c;
+			default:
+				throw syntaxError ("Invalid escape sequence '\\" + c + "'");
+		}
+	}
+
+	/**
+	 * Reads an unquoted literal, such as a number, <code>true</code> or <code>null</code>.
+	 *
+	 * @return The literal's text
+	 * @throws IOException If there's an IO error
+	 */
+	private String readLiteral () throws IOException {
+		// Fast path: the literal ends inside the buffer.
+		for (int i = this.position; i < this.limit; i++) {
+			if (isDelimiter (this.buffer[i])) {
+				final String result = new String (this.buffer, this.position, i - this.position);
+
+				this.position = i;
+				return result;
+			}
+		}
+
+		final StringBuilder text = this.builder;
+
+		text.setLength (0);
+
+		while (fill () && !isDelimiter (this.buffer[this.position])) {
+			text.append (this.buffer[this.position++]);
+		}
+
+		return text.toString ();
+	}
+
+	/**
+	 * Skips an unquoted literal.
+	 *
+	 * @throws IOException If there's an IO error
+	 */
+	private void skipLiteral () throws IOException {
+		while (fill () && !isDelimiter (this.buffer[this.position])) {
+			this.position++;
+		}
+	}
+
+	/**
+	 * Checks whether a character ends an unquoted literal.
+	 *
+	 * @param c The character to check
+	 * @return True if the character ends a literal, false otherwise
+	 */
+	private static boolean isDelimiter (final char c) {
+		switch (c) {
+			case ',':
+			case ':':
+			case ']':
+			case '}':
+			case '[':
+			case '{':
+			case '"':
+			case ' ':
+			case '\t':
+			case '\n':
+			case '\r':
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Creates an exception for a token that isn't the one the caller expected.
+	 *
+	 * @param expected The {@link Token} that was expected
+	 * @param actual The {@link Token} that was found
+	 * @return The exception to throw
+	 */
+	private static JSONException unexpected (final Token expected, final Token actual) {
+		return new JSONException ("Expected " + expected + " but was " + actual);
+	}
+
+	/**
+	 * Creates an exception for malformed input.
+	 *
+	 * @param message A description of the problem
+	 * @return The exception to throw
+	 */
+	private static JSONException syntaxError (final String message) {
+		return new JSONException (message);
+	}
+}
@@ -3,22 +3,106 @@ package com.kizio.reader;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.Arrays;
+import java.util.Locale;
 
 /**
  * Reads the contents of an {@link InputStreamReader} into a {@link String}.
+ * <p>
+ * The input is read in large chunks straight into a single buffer, sized up front when the length
+ * is known, and never split into lines, so line endings come through untouched. The buffer can be
+ * handed to a parser as it is with {@link #readChars()}, without making a {@link String} of it at
+ * all.
+ * </p>
  *
  * @author Graeme Sutherland
  * @since 27/03/2015
  */
 public class StringReader extends BufferedReader {
 
+	/**
+	 * The charset used when the server doesn't name one. JSON is UTF-8 unless stated otherwise.
+	 */
+	public static final String DEFAULT_CHARSET = "UTF-8";
+
+	/**
+	 * The size of the chunks to read, and of the buffer when the length isn't known.
+	 */
+	private static final int CHUNK_SIZE = 16 * 1024;
+
+	/**
+	 * The largest buffer that will be allocated up front on the strength of a length hint. Anything
+	 * longer than this grows as it's read, so a bad header can't exhaust the heap in one go.
+	 */
+	private static final int MAX_PRESIZE = 4 * 1024 * 1024;
+
+	/**
+	 * The expected length of the input, or -1 if it isn't known.
+	 */
+	private final int expectedLength;
+
 	/**
 	 * Constructor. Creates the reader based around the supplied {@link InputStreamReader}.
 	 *
 	 * @param input The {@link InputStreamReader} to be parsed
 	 */
 	public StringReader (final InputStreamReader input) {
-		super (input);
+		this (input, -1);
+	}
+
+	/**
+	 * Constructor. Creates the reader based around the supplied {@link Reader}, sizing the buffer
+	 * to fit the expected length of the input.
+	 *
+	 * @param input The {@link Reader} to be parsed
+	 * @param lengthHint The expected length of the input, such as the <code>Content-Length</code>
+	 *                   of a response, or -1 if it isn't known. For UTF-8 this is the number of
+	 *                   bytes, which is never less than the number of characters
+	 */
+	public StringReader (final Reader input, final int lengthHint) {
+		super (input, CHUNK_SIZE);
+
+		this.expectedLength = lengthHint;
+	}
+
+	/**
+	 * Gets the charset named in a <code>Content-Type</code> header, such as
+	 * <code>application/json; charset=ISO-8859-1</code>.
+	 *
+	 * @param contentType The value of the header, or null if there isn't one
+	 * @param defaultCharset The charset to use if none is named, or the named one isn't supported
+	 * @return The name of the charset
+	 */
+	public static String getCharset (final String contentType, final String defaultCharset) {
+		if (contentType == null) {
+			return defaultCharset;
+		}
+
+		for (final String parameter : contentType.split (";")) {
+			final String trimmed = parameter.trim ();
+
+			if (trimmed.toLowerCase (Locale.US).startsWith ("charset=")) {
+				String charset = trimmed.substring ("charset=".length ()).trim ();
+
+				if (charset.length () > 1 && charset.startsWith ("\"") && charset.endsWith ("\"")) {
+					charset = charset.substring (1, charset.length () - 1);
+				}
+
+				try {
+					if (Charset.isSupported (charset)) {
+						return charset;
+					}
+				} catch (final IllegalCharsetNameException icne) {
+					// Fall through to the default.
+				}
+			}
+		}
+
+		return defaultCharset;
 	}
 
 	/**
@@ -29,15 +113,81 @@ public class StringReader extends BufferedReader {
 	 * @throws IOException If there is an error during the IO process
 	 */
 	public String readString () throws IOException {
-		final StringBuffer buffer = new StringBuffer();
-		final String separator = System.getProperty("line.separator");
-		String line;
+		return readChars ().toString ();
+	}
+
+	/**
+	 * Reads the contents of the input stream into a buffer, without copying them into a
+	 * {@link String}. The {@link CharBuffer} wraps the array the characters were read into, so it
+	 * can be passed straight to a {@link JSONStreamReader}.
+	 *
+	 * @return The contents of the input, from the buffer's position to its limit
+	 * @throws IOException If there is an error during the IO process
+	 */
+	public CharBuffer readChars () throws IOException {
+		return readChars (Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Reads the start of the input stream into a buffer, as {@link #readChars()} does, stopping
+	 * once at least <code>limit</code> characters have been read. If fewer come back than that
+	 * then they're the whole input. Otherwise the rest can be added with
+	 * {@link #readChars(CharBuffer)}. This lets a caller see whether an input is long enough to be
+	 * worth holding in full before committing to it.
+	 *
+	 * @param limit The number of characters to stop after
+	 * @return The characters read, from the buffer's position to its limit
+	 * @throws IOException If there is an error during the IO process
+	 */
+	public CharBuffer readChars (final int limit) throws IOException {
+		// One spare character means reaching the end doesn't force the buffer to grow.
+		final int size = this.expectedLength >= 0 ? Math.min (this.expectedLength, MAX_PRESIZE) + 1
+				: CHUNK_SIZE;
+
+		return fill (new char[limit >= 0 && limit < size ? limit + 1 : size], 0, limit);
+	}
+
+	/**
+	 * Reads the rest of the input stream onto the end of what an earlier call to
+	 * {@link #readChars(int)} returned, growing its array if need be.
+	 *
+	 * @param start The {@link CharBuffer} returned by {@link #readChars(int)}
+	 * @return The whole of the input, from the buffer's position to its limit
+	 * @throws IOException If there is an error during the IO process
+	 */
+	public CharBuffer readChars (final CharBuffer start) throws IOException {
+		return fill (start.array (), start.limit (), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Reads characters onto the end of an array, growing it as they arrive.
+	 *
+	 * @param start The array to read into
+	 * @param startLength The number of characters already in the array
+	 * @param limit The number of characters to stop after
+	 * @return The characters in the array, from the buffer's position to its limit
+	 * @throws IOException If there is an error during the IO process
+	 */
+	private CharBuffer fill (final char[] start, final int startLength, final int limit)
+			throws IOException {
+		char[] chars = start;
+		int length = startLength;
+		int count;
+
+		while (length < limit) {
+			if (length == chars.length) {
+				chars = Arrays.copyOf (chars, chars.length * 2);
+			}
+
+			count = read (chars, length, chars.length - length);
+
+			if (count < 0) {
+				break;
+			}
 
-		while ((line = readLine()) != null) {
-			buffer.append(line);
-			buffer.append(separator);
+			length += count;
 		}
 
-		return buffer.toString();
+		return CharBuffer.wrap (chars, 0, length);
 	}
 }
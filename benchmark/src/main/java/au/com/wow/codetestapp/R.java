@@ -0,0 +1,37 @@
+package au.com.wow.codetestapp;
+
+/**
+ * Stands in for the app's generated resource class, which only exists in an Android build. The
+ * benchmarks never use the resources, but {@link FuelStationList} refers to one, so it has to be
+ * here for the shared sources to compile.
+ *
+ * @author Graeme Sutherland
+ * @since 06/04/2015
+ */
+public final class R {
+
+	/**
+	 * Constructor. This class only holds constants, so it can't be created.
+	 */
+	private R () {
+		super ();
+	}
+
+	/**
+	 * The string resources.
+	 */
+	public static final class string {
+
+		/**
+		 * Placeholder for a missing value.
+		 */
+		public static final int not_applicable = 0;
+
+		/**
+		 * Constructor. This class only holds constants, so it can't be created.
+		 */
+		private string () {
+			super ();
+		}
+	}
+}
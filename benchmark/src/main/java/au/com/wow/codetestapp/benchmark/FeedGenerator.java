@@ -0,0 +1,112 @@
+package au.com.wow.codetestapp.benchmark;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates synthetic fuel station feeds in the same shape as the real one, so the benchmarks can
+ * be run at sizes the real feed never reaches.
+ * <p>
+ * A feed is fully determined by its size and seed, so runs can be compared with each other. About
+ * a third of the prices are <code>false</code>, as in the real feed, and the rest are numbers.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 06/04/2015
+ */
+public final class FeedGenerator {
+
+	/**
+	 * The seed used when none is given.
+	 */
+	public static final long DEFAULT_SEED = 10025;
+
+	/**
+	 * The brands to pick from. A handful of brands shared by many stations is typical of the feed.
+	 */
+	private static final String[] BRANDS = {"Mobil", "Shell", "BP", "Sunoco", "Hess", "Citgo",
+			"Gulf", "Exxon"};
+
+	/**
+	 * The streets to build addresses from.
+	 */
+	private static final String[] STREETS = {"W 96th St", "11th Ave", "Broadway", "Amsterdam Ave",
+			"W 125th St", "Riverside Dr", "E Houston St", "Park Ave"};
+
+	/**
+	 * Constructor. This class only has static methods, so it can't be created.
+	 */
+	private FeedGenerator () {
+		super ();
+	}
+
+	/**
+	 * Generates a feed using the default seed.
+	 *
+	 * @param stations The number of stations in the feed
+	 * @return The feed's JSON
+	 */
+	public static String generate (final int stations) {
+		return generate (stations, DEFAULT_SEED);
+	}
+
+	/**
+	 * Generates a feed.
+	 *
+	 * @param stations The number of stations in the feed
+	 * @param seed The seed for the random number generator
+	 * @return The feed's JSON
+	 */
+	public static String generate (final int stations, final long seed) {
+		final Random random = new Random (seed);
+		final StringBuilder json = new StringBuilder (stations * 256);
+		final long now = 1408457760;
+
+		json.append ("{\"zip\":\"10025\",\"item\":[");
+
+		for (int i = 0; i < stations; i++) {
+			final String brand = BRANDS[random.nextInt (BRANDS.length)];
+			final double regular = 3.5 + random.nextInt (150) / 100.0;
+
+			if (i > 0) {
+				json.append (',');
+			}
+
+			json.append ("{\"regular\":");
+			appendPrice (json, random, regular);
+			json.append (",\"plus\":");
+			appendPrice (json, random, regular + 0.1);
+			json.append (",\"premium\":");
+			appendPrice (json, random, regular + 0.3);
+			json.append (",\"diesel\":");
+			appendPrice (json, random, regular + 0.2);
+			json.append (",\"brand\":\"").append (brand);
+			json.append ("\",\"img\":\"http:\\/\\/www.mshd.net\\/images\\/gas\\/");
+			json.append (brand.toLowerCase (Locale.US)).append (".gif\"");
+			json.append (",\"address\":\"").append (i + 1).append (' ');
+			json.append (STREETS[random.nextInt (STREETS.length)]);
+			json.append (", New York, NY 10025\",\"pupdate\":");
+			json.append (now + random.nextInt (86400 * 7));
+			json.append (",\"distance\":\"");
+			json.append (String.format (Locale.US, "%.7f", random.nextFloat () * 10)).append ("\"}");
+		}
+
+		return json.append ("]}").toString ();
+	}
+
+	/**
+	 * Appends a price, or <code>false</code> for roughly a third of them.
+	 *
+	 * @param json The {@link StringBuilder} to append to
+	 * @param random The {@link Random} number generator
+	 * @param price The price in Dollars
+	 */
+	private static void appendPrice (final StringBuilder json, final Random random,
+			final double price) {
+		if (random.nextInt (3) == 0) {
+			json.append ("false");
+		} else {
+			json.append (String.format (Locale.US, "%.2f", price));
+		}
+	}
+}
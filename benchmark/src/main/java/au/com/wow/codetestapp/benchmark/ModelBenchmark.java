@@ -0,0 +1,156 @@
+package au.com.wow.codetestapp.benchmark;
+
+import au.com.wow.codetestapp.FuelStationItem;
+import au.com.wow.codetestapp.FuelStationList;
+import au.com.wow.codetestapp.FuelStationParser;
+import au.com.wow.codetestapp.FuelStationRecord;
+
+import com.kizio.reader.JSONStreamReader;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what happens to a {@link FuelStationList} once it has been decoded: passing it between
+ * components, and reading and formatting its rows for display.
+ * <p>
+ * A real {@link android.os.Parcel} needs a device, but all a parcel does with the list is carry
+ * the bytes of its binary encoding, so the round trip here covers the same work.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 06/04/2015
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.SECONDS)
+public class ModelBenchmark {
+
+	/**
+	 * The number of stations in the list.
+	 */
+	@Param ({"100", "10000", "100000"})
+	public int stations;
+
+	/**
+	 * The decoded list.
+	 */
+	private FuelStationList list;
+
+	/**
+	 * Decodes a generated feed.
+	 *
+	 * @throws IOException If UTF-8 isn't supported
+	 * @throws JSONException If the feed is malformed
+	 */
+	@Setup
+	public void setUp () throws IOException, JSONException {
+		final byte[] feed = FeedGenerator.generate (this.stations).getBytes ("UTF-8");
+		final FuelStationList.Builder builder = new FuelStationList.Builder ("N/A");
+
+		new FuelStationParser (builder).parse (new JSONStreamReader (new InputStreamReader
+				(new ByteArrayInputStream (feed), "UTF-8")));
+
+		this.list = builder.build ();
+	}
+
+	/**
+	 * Encodes the list and decodes it again, as happens when it's sent in a parcel.
+	 *
+	 * @return The decoded copy
+	 * @throws IOException If there's an IO error
+	 */
+	@Benchmark
+	public FuelStationList parcelRoundTrip () throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+
+		this.list.write (new DataOutputStream (bytes));
+
+		return FuelStationList.read (new DataInputStream (new ByteArrayInputStream
+				(bytes.toByteArray ())));
+	}
+
+	/**
+	 * Reads every row through a {@link FuelStationItem}, as the detail screen does.
+	 *
+	 * @param blackhole The {@link Blackhole} that consumes the values
+	 */
+	@Benchmark
+	public void itemGetters (final Blackhole blackhole) {
+		for (int i = 0; i < this.list.getSize (); i++) {
+			final FuelStationItem item = this.list.get (i);
+
+			blackhole.consume (item.getBrand ());
+			blackhole.consume (item.getAddress ());
+			blackhole.consume (item.getDistance ());
+			blackhole.consume (item.getImageUrl ());
+		}
+	}
+
+	/**
+	 * Reads every row straight from the list's columns, as the list adapter does.
+	 *
+	 * @param blackhole The {@link Blackhole} that consumes the values
+	 */
+	@Benchmark
+	public void columnGetters (final Blackhole blackhole) {
+		for (int i = 0; i < this.list.getSize (); i++) {
+			blackhole.consume (this.list.getBrand (i));
+			blackhole.consume (this.list.getAddress (i));
+			blackhole.consume (this.list.getDistance (i));
+			blackhole.consume (this.list.getImageUrl (i));
+		}
+	}
+
+	/**
+	 * Formats every price with the shared {@link au.com.wow.codetestapp.PriceFormatter}.
+	 *
+	 * @param blackhole The {@link Blackhole} that consumes the values
+	 */
+	@Benchmark
+	public void formatPrices (final Blackhole blackhole) {
+		for (int i = 0; i < this.list.getSize (); i++) {
+			for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+				blackhole.consume (this.list.getPriceText (grade, i));
+			}
+		}
+	}
+
+	/**
+	 * Formats every price with a new {@link NumberFormat} for each row, as the items used to. This
+	 * is the baseline for {@link #formatPrices(Blackhole)}.
+	 *
+	 * @param blackhole The {@link Blackhole} that consumes the values
+	 */
+	@Benchmark
+	public void formatPricesWithNumberFormat (final Blackhole blackhole) {
+		for (int i = 0; i < this.list.getSize (); i++) {
+			final NumberFormat currency = NumberFormat.getCurrencyInstance (Locale.US);
+
+			for (int grade = 0; grade < FuelStationList.GRADES; grade++) {
+				final int cents = this.list.getPrice (grade, i);
+
+				blackhole.consume (cents != FuelStationRecord.NO_PRICE ? currency.format (cents
+						/ 100.0) : this.list.getNotApplicable ());
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package au.com.wow.codetestapp.benchmark;
+
+import au.com.wow.codetestapp.FuelStationList;
+import au.com.wow.codetestapp.FuelStationParallelParser;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding a feed that's already in memory with one or more threads, to show how the
+ * speedup grows with the number of cores and the size of the feed, and where the threshold for
+ * splitting a feed should sit. One thread is the serial parser the app used before.
+ * <p>
+ * The speedup can't be more than the number of cores the JVM has, so run this on a machine with at
+ * least as many cores as the largest thread count, e.g.
+ * <code>-Pjmh='ParallelParserBenchmark -p threads=1,2,4'</code>.
+ * </p>
+ *
+ * @author Graeme Sutherland
+ * @since 15/04/2015
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+public class ParallelParserBenchmark {
+
+	/**
+	 * The number of stations in the feed. A hundred stations is the size of a suburb's feed, and
+	 * sits well below the default threshold.
+	 */
+	@Param ({"100", "1000", "10000", "100000"})
+	public int stations;
+
+	/**
+	 * The number of threads decoding the feed, counting the calling thread.
+	 */
+	@Param ({"1", "2", "4", "8"})
+	public int threads;
+
+	/**
+	 * The feed.
+	 */
+	private char[] feed;
+
+	/**
+	 * The pool the chunks are decoded on, or null when decoding on one thread.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * The parser being measured.
+	 */
+	private FuelStationParallelParser parser;
+
+	/**
+	 * Generates the feed and starts the pool. The threshold is turned off, so that even the small
+	 * feeds are split up and the cost of doing that shows.
+	 */
+	@Setup
+	public void setUp () {
+		this.feed = FeedGenerator.generate (this.stations).toCharArray ();
+		this.executor = this.threads > 1 ? Executors.newFixedThreadPool (this.threads - 1) : null;
+		this.parser = new FuelStationParallelParser (this.executor, this.threads, 0);
+	}
+
+	/**
+	 * Stops the pool.
+	 */
+	@TearDown
+	public void tearDown () {
+		if (this.executor != null) {
+			this.executor.shutdown ();
+		}
+	}
+
+	/**
+	 * Decodes the feed.
+	 *
+	 * @return The decoded list
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the feed is malformed
+	 */
+	@Benchmark
+	public FuelStationList parse () throws IOException, JSONException {
+		return this.parser.parse (CharBuffer.wrap (this.feed), "N/A", null);
+	}
+}
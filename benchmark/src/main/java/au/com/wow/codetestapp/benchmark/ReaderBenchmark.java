@@ -0,0 +1,141 @@
+package au.com.wow.codetestapp.benchmark;
+
+import au.com.wow.codetestapp.FuelStationList;
+import au.com.wow.codetestapp.FuelStationParser;
+
+import com.kizio.reader.JSONReader;
+import com.kizio.reader.JSONStreamReader;
+import com.kizio.reader.StringReader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.CharBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures getting from the bytes of a feed to something the app can use: reading it into a
+ * string or a buffer, parsing it into a tree of {@link JSONObject}s, and decoding it straight into
+ * a {@link FuelStationList}, either as it streams in or in place from a buffer.
+ *
+ * @author Graeme Sutherland
+ * @since 06/04/2015
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.SECONDS)
+public class ReaderBenchmark {
+
+	/**
+	 * The number of stations in the feed.
+	 */
+	@Param ({"100", "10000", "100000"})
+	public int stations;
+
+	/**
+	 * The feed, encoded as it would come off the network.
+	 */
+	private byte[] feed;
+
+	/**
+	 * Generates the feed.
+	 *
+	 * @throws IOException If UTF-8 isn't supported
+	 */
+	@Setup
+	public void setUp () throws IOException {
+		this.feed = FeedGenerator.generate (this.stations).getBytes ("UTF-8");
+	}
+
+	/**
+	 * Reads the whole feed into a string, as the old download path did before parsing it.
+	 *
+	 * @return The feed
+	 * @throws IOException If there's an IO error
+	 */
+	@Benchmark
+	public String readToString () throws IOException {
+		return new StringReader (open ()).readString ();
+	}
+
+	/**
+	 * Reads the whole feed into a buffer sized from its length, without making a string of it.
+	 *
+	 * @return The feed
+	 * @throws IOException If there's an IO error
+	 */
+	@Benchmark
+	public CharBuffer readToChars () throws IOException {
+		return new StringReader (open (), this.feed.length).readChars ();
+	}
+
+	/**
+	 * Parses the feed into a tree of {@link JSONObject}s.
+	 *
+	 * @return The parsed feed
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the feed is malformed
+	 */
+	@Benchmark
+	public JSONObject parseTree () throws IOException, JSONException {
+		return new JSONReader (open ()).readJSON ();
+	}
+
+	/**
+	 * Streams the feed straight into a {@link FuelStationList}, as the app does now.
+	 *
+	 * @return The decoded list
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the feed is malformed
+	 */
+	@Benchmark
+	public FuelStationList parseStream () throws IOException, JSONException {
+		final FuelStationList.Builder builder = new FuelStationList.Builder ("N/A");
+
+		new FuelStationParser (builder).parse (new JSONStreamReader (open ()));
+
+		return builder.build ();
+	}
+
+	/**
+	 * Reads the whole feed into a buffer and decodes it in place, as the app does when the server
+	 * sends a <code>Content-Length</code>.
+	 *
+	 * @return The decoded list
+	 * @throws IOException If there's an IO error
+	 * @throws JSONException If the feed is malformed
+	 */
+	@Benchmark
+	public FuelStationList parseInPlace () throws IOException, JSONException {
+		final FuelStationList.Builder builder = new FuelStationList.Builder ("N/A");
+		final CharBuffer chars = new StringReader (open (), this.feed.length).readChars ();
+
+		new FuelStationParser (builder).parse (new JSONStreamReader (chars));
+
+		return builder.build ();
+	}
+
+	/**
+	 * Opens a reader over the feed.
+	 *
+	 * @return An {@link InputStreamReader} over the feed
+	 */
+	private InputStreamReader open () {
+		try {
+			return new InputStreamReader (new ByteArrayInputStream (this.feed), "UTF-8");
+		} catch (final IOException ioe) {
+			throw new IllegalStateException (ioe);
+		}
+	}
+}